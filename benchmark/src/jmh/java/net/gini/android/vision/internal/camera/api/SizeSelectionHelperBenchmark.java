@@ -0,0 +1,70 @@
+package net.gini.android.vision.internal.camera.api;
+
+import static org.mockito.Mockito.mock;
+
+import android.hardware.Camera;
+
+import net.gini.android.vision.internal.camera.photo.Size;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures selecting the picture and preview sizes from the sizes supported by a 16 MP camera.
+ */
+@State(Scope.Benchmark)
+public class SizeSelectionHelperBenchmark {
+
+    private static final int[][] PICTURE_SIZES = {
+            {4608, 3456}, {4608, 2592}, {4160, 3120}, {4160, 2340}, {4000, 3000},
+            {3840, 2160}, {3264, 2448}, {3264, 1836}, {3200, 2400}, {2976, 2976},
+            {2592, 1944}, {2592, 1458}, {2560, 1920}, {2048, 1536}, {2048, 1152},
+            {1920, 1080}, {1600, 1200}, {1440, 1080}, {1280, 960}, {1280, 768},
+            {1280, 720}, {1024, 768}, {800, 600}, {800, 480}, {720, 480},
+            {640, 480}, {352, 288}, {320, 240}, {176, 144}
+    };
+
+    private static final int[][] PREVIEW_SIZES = {
+            {1920, 1080}, {1440, 1080}, {1280, 960}, {1280, 720}, {1056, 864},
+            {960, 720}, {864, 480}, {800, 480}, {720, 480}, {640, 480},
+            {480, 320}, {352, 288}, {320, 240}, {176, 144}
+    };
+
+    private List<Camera.Size> mPictureSizes;
+    private List<Camera.Size> mPreviewSizes;
+    private Size mPictureSize;
+
+    @Setup
+    public void setUp() {
+        mPictureSizes = toSizesList(PICTURE_SIZES);
+        mPreviewSizes = toSizesList(PREVIEW_SIZES);
+        mPictureSize = SizeSelectionHelper.getLargestSize(mPictureSizes);
+    }
+
+    private static List<Camera.Size> toSizesList(final int[][] resolutions) {
+        final List<Camera.Size> sizes = new ArrayList<>(resolutions.length);
+        for (final int[] resolution : resolutions) {
+            final Camera.Size size = mock(Camera.Size.class);
+            size.width = resolution[0];
+            size.height = resolution[1];
+            sizes.add(size);
+        }
+        return sizes;
+    }
+
+    @Benchmark
+    public Size getLargestSize() {
+        return SizeSelectionHelper.getLargestSize(mPictureSizes);
+    }
+
+    @Benchmark
+    public Size getLargestSizeWithSimilarAspectRatio() {
+        return SizeSelectionHelper.getLargestSizeWithSimilarAspectRatio(mPreviewSizes,
+                mPictureSize);
+    }
+}
@@ -0,0 +1,74 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * <p>
+ *     Measures detecting and tracking the document in camera preview frames. The throughput is
+ *     the number of frames per second the detector sustains on the benchmark machine, the live
+ *     overlay needs at least 15 on a mid-range device.
+ * </p>
+ * <p>
+ *     The frames are taken in turn from the {@link PreviewFrameCorpus}. No recorded frames are
+ *     committed yet, so unless they are added to the resources the results are for frames
+ *     generated from a still image. Detection must not allocate: {@code gc.alloc.rate.norm}
+ *     should be 0 bytes per operation.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class DocumentDetectorBenchmark {
+
+    @Param({"640x480", "1280x960", "1440x1080"})
+    public String previewSize;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[][] mFrames;
+    private int mNextFrame;
+    private DocumentDetector mDetector;
+    private DocumentTracker mTracker;
+    private Quadrilateral mResult;
+
+    @Setup
+    public void setUp() throws Exception {
+        final String[] size = previewSize.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+        final List<byte[]> frames = PreviewFrameCorpus.getFrames(mWidth, mHeight);
+        // Printed to the report to tell results for recorded and for generated frames apart
+        System.out.println(previewSize + " preview frames: "
+                + (PreviewFrameCorpus.hasRecordedFrames(mWidth, mHeight)
+                ? frames.size() + " recorded" : frames.size() + " generated from invoice.jpg"));
+        mFrames = frames.toArray(new byte[frames.size()][]);
+        mDetector = new DocumentDetector();
+        mTracker = new DocumentTracker();
+        mResult = new Quadrilateral();
+        // Allocates the working memory for the frame size
+        if (!mDetector.detect(mFrames[0], mWidth, mHeight, mResult)) {
+            throw new IllegalStateException("No document detected in the first frame");
+        }
+    }
+
+    private byte[] nextFrame() {
+        final byte[] frame = mFrames[mNextFrame];
+        mNextFrame = (mNextFrame + 1) % mFrames.length;
+        return frame;
+    }
+
+    @Benchmark
+    public boolean detect() {
+        return mDetector.detect(nextFrame(), mWidth, mHeight, mResult);
+    }
+
+    @Benchmark
+    public boolean track() {
+        mTracker.process(nextFrame(), mWidth, mHeight, 90);
+        return mTracker.isTracking();
+    }
+}
@@ -0,0 +1,163 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * <p>
+ *     Provides the NV21 camera preview frames used by the document detection benchmarks.
+ * </p>
+ * <p>
+ *     Recorded preview frames named {@code frames/<width>x<height>_<index>.nv21} are loaded from
+ *     the benchmark resources, starting with index 0. They can be recorded by writing the
+ *     {@code byte[]} received in {@code Camera.PreviewCallback#onPreviewFrame()} to a file. If no
+ *     frames were recorded for a size, a sequence of frames is generated from the {@code
+ *     invoice.jpg} test image: the invoice is drawn onto a darker, textured background with a
+ *     slightly different position and rotation in each frame to simulate a hand held camera and
+ *     sensor noise is added.
+ * </p>
+ */
+public final class PreviewFrameCorpus {
+
+    private static final String SOURCE_JPEG = "invoice.jpg";
+    private static final int GENERATED_FRAMES = 8;
+    private static final int NOISE_AMPLITUDE = 8;
+    private static final long SEED = 42;
+
+    public static List<byte[]> getFrames(final int width, final int height) throws IOException {
+        final List<byte[]> recorded = getRecordedFrames(width, height);
+        if (!recorded.isEmpty()) {
+            return recorded;
+        }
+        return generateFrames(width, height);
+    }
+
+    /**
+     * @return whether {@link #getFrames(int, int)} returns recorded frames for the size instead of
+     * generated ones
+     */
+    public static boolean hasRecordedFrames(final int width, final int height)
+            throws IOException {
+        return readResource("frames/" + width + "x" + height + "_0.nv21") != null;
+    }
+
+    private static List<byte[]> getRecordedFrames(final int width, final int height)
+            throws IOException {
+        final List<byte[]> recorded = new ArrayList<>();
+        byte[] frame;
+        while ((frame = readResource(
+                "frames/" + width + "x" + height + "_" + recorded.size() + ".nv21")) != null) {
+            if (frame.length != width * height * 3 / 2) {
+                throw new IOException("Recorded frame " + recorded.size() + " is not a "
+                        + width + "x" + height + " NV21 frame");
+            }
+            recorded.add(frame);
+        }
+        return recorded;
+    }
+
+    private static List<byte[]> generateFrames(final int width, final int height)
+            throws IOException {
+        final InputStream inputStream = PreviewFrameCorpus.class.getClassLoader()
+                .getResourceAsStream(SOURCE_JPEG);
+        if (inputStream == null) {
+            throw new IOException("Resource not found: " + SOURCE_JPEG);
+        }
+        final BufferedImage invoice;
+        try {
+            invoice = ImageIO.read(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        final Random random = new Random(SEED);
+        final List<byte[]> frames = new ArrayList<>(GENERATED_FRAMES);
+        for (int i = 0; i < GENERATED_FRAMES; i++) {
+            final BufferedImage image = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_RGB);
+            final Graphics2D graphics = image.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            drawBackground(graphics, width, height, random);
+            // The preview is in landscape, the portrait invoice is turned by 90 degrees
+            final double documentHeight = height * 0.8;
+            final double documentWidth = documentHeight * invoice.getHeight()
+                    / invoice.getWidth();
+            graphics.translate(width / 2.0 + random.nextGaussian() * width * 0.01,
+                    height / 2.0 + random.nextGaussian() * height * 0.01);
+            graphics.rotate(Math.toRadians(90 + random.nextGaussian() * 3));
+            graphics.drawImage(invoice, (int) (-documentHeight / 2), (int) (-documentWidth / 2),
+                    (int) documentHeight, (int) documentWidth, null);
+            graphics.dispose();
+            frames.add(toNv21(image, random));
+        }
+        return frames;
+    }
+
+    private static void drawBackground(final Graphics2D graphics, final int width,
+            final int height, final Random random) {
+        graphics.setColor(new Color(92, 78, 64));
+        graphics.fillRect(0, 0, width, height);
+        // Wood grain like stripes
+        for (int y = 0; y < height; y += 3) {
+            final int shade = 70 + random.nextInt(30);
+            graphics.setColor(new Color(shade, shade * 85 / 100, shade * 70 / 100));
+            graphics.fillRect(0, y, width, 1 + random.nextInt(2));
+        }
+    }
+
+    private static byte[] toNv21(final BufferedImage image, final Random random) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final byte[] nv21 = new byte[width * height * 3 / 2];
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                final int rgb = row[x];
+                final int luminance = (299 * ((rgb >> 16) & 0xFF) + 587 * ((rgb >> 8) & 0xFF)
+                        + 114 * (rgb & 0xFF)) / 1000;
+                final int noise = random.nextInt(2 * NOISE_AMPLITUDE + 1) - NOISE_AMPLITUDE;
+                nv21[y * width + x] = (byte) Math.max(0, Math.min(255, luminance + noise));
+            }
+        }
+        // Neutral chroma, the detector uses only the luminance
+        for (int i = width * height; i < nv21.length; i++) {
+            nv21[i] = (byte) 128;
+        }
+        return nv21;
+    }
+
+    private static byte[] readResource(final String name) throws IOException {
+        final InputStream inputStream = PreviewFrameCorpus.class.getClassLoader()
+                .getResourceAsStream(name);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int readBytes;
+            while ((readBytes = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, readBytes);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private PreviewFrameCorpus() {
+    }
+}
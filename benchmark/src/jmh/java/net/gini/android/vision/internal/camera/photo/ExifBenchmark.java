@@ -0,0 +1,71 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import org.apache.commons.imaging.formats.tiff.constants.TiffConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures building the library's EXIF and writing it into camera jpegs.
+ */
+@State(Scope.Benchmark)
+public class ExifBenchmark {
+
+    // Same format as the Exif.UserCommentBuilder's output, which can't be used on the JVM because
+    // it reads the android.os.Build properties
+    static final String USER_COMMENT = "Platform=Android,OSVer=7.1.1,GiniVisionVer=2.4.0,"
+            + "ContentId=5a8e2c7e-5f2a-4d51-9d3e-2b6f0b7c1a4e,RotDeltaDeg=90";
+
+    @Param({"5", "8", "13", "16"})
+    public int megapixels;
+
+    private byte[] mJpeg;
+    private Exif.RequiredTags mRequiredTags;
+    private Exif mExif;
+
+    @Setup
+    public void setUp() throws Exception {
+        mJpeg = JpegCorpus.getJpeg(megapixels);
+        mRequiredTags = Exif.readRequiredTags(mJpeg);
+        mExif = buildExif(Exif.builder(mJpeg));
+    }
+
+    private Exif buildExif(final Exif.Builder builder) throws Exception {
+        return builder.setRequiredTags(mRequiredTags)
+                .setUserComment(USER_COMMENT)
+                .setOrientationFromDegrees(90)
+                .build();
+    }
+
+    @Benchmark
+    public Exif.Builder builder() throws Exception {
+        return Exif.builder(mJpeg);
+    }
+
+    @Benchmark
+    public Exif builderWithRequiredTags() throws Exception {
+        return buildExif(Exif.builder(mJpeg));
+    }
+
+    @Benchmark
+    public Exif.RequiredTags readRequiredTags() throws Exception {
+        return Exif.readRequiredTags(mJpeg);
+    }
+
+    @Benchmark
+    public byte[] writeToJpeg() throws Exception {
+        return mExif.writeToJpeg(mJpeg);
+    }
+
+    /**
+     * The path used by {@link Photo#updateExif()}, for comparison with {@link #writeToJpeg()}.
+     */
+    @Benchmark
+    public byte[] spliceExif() throws Exception {
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(mJpeg);
+        return splicer.splice(buildExif(Exif.builder(
+                splicer.getByteOrder(TiffConstants.DEFAULT_TIFF_BYTE_ORDER))).toTiff());
+    }
+}
@@ -0,0 +1,140 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffField;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures reading the required tags and the User Comment from jpegs which were processed by the
+ * library.
+ */
+public class ExifReaderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ProcessedJpeg {
+
+        @Param({"5", "8", "13", "16"})
+        public int megapixels;
+
+        byte[] jpeg;
+
+        @Setup
+        public void setUp() throws Exception {
+            final byte[] cameraJpeg = JpegCorpus.getJpeg(megapixels);
+            jpeg = Exif.builder(cameraJpeg)
+                    .setRequiredTags(Exif.readRequiredTags(cameraJpeg))
+                    .setUserComment(ExifBenchmark.USER_COMMENT)
+                    .build()
+                    .writeToJpeg(cameraJpeg);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class UserCommentCsv {
+
+        String userComment = ExifBenchmark.USER_COMMENT;
+        ExifReader exifReader;
+
+        @Setup
+        public void setUp() throws Exception {
+            final byte[] cameraJpeg = JpegCorpus.getJpeg(5);
+            exifReader = ExifReader.forJpeg(Exif.builder(cameraJpeg)
+                    .setUserComment(userComment)
+                    .build()
+                    .writeToJpeg(cameraJpeg));
+        }
+    }
+
+    @Benchmark
+    public ExifReader forJpeg(final ProcessedJpeg processedJpeg) {
+        return ExifReader.forJpeg(processedJpeg.jpeg);
+    }
+
+    @Benchmark
+    public String getUserComment(final ProcessedJpeg processedJpeg) {
+        // The reader caches the User Comment
+        return ExifReader.forJpeg(processedJpeg.jpeg).getUserComment();
+    }
+
+    @Benchmark
+    public UserComment getParsedUserComment(final ProcessedJpeg processedJpeg) {
+        return ExifReader.forJpeg(processedJpeg.jpeg).getParsedUserComment();
+    }
+
+    @Benchmark
+    public Exif.RequiredTags getRequiredTags(final ProcessedJpeg processedJpeg) {
+        return ExifReader.forJpeg(processedJpeg.jpeg).getRequiredTags();
+    }
+
+    /**
+     * Baseline: the commons-imaging metadata parsing which the reader replaced.
+     */
+    @Benchmark
+    public ImageMetadata commonsImagingGetMetadata(final ProcessedJpeg processedJpeg)
+            throws Exception {
+        return Imaging.getMetadata(processedJpeg.jpeg);
+    }
+
+    /**
+     * What a photo reads from its jpeg: the required tags and the User Comment's values.
+     */
+    @Benchmark
+    public void readRequiredTagsAndUserComment(final ProcessedJpeg processedJpeg,
+            final Blackhole blackhole) {
+        final ExifReader exifReader = ExifReader.forJpeg(processedJpeg.jpeg);
+        blackhole.consume(exifReader.getRequiredTags());
+        blackhole.consume(exifReader.getParsedUserComment());
+    }
+
+    /**
+     * Baseline: the photo used to parse the metadata with commons-imaging twice, once for the
+     * required tags and once for the User Comment.
+     */
+    @Benchmark
+    public void commonsImagingReadRequiredTagsAndUserComment(final ProcessedJpeg processedJpeg,
+            final Blackhole blackhole) throws Exception {
+        final JpegImageMetadata tagsMetadata =
+                (JpegImageMetadata) Imaging.getMetadata(processedJpeg.jpeg);
+        blackhole.consume(tagsMetadata.findEXIFValue(TiffTagConstants.TIFF_TAG_MAKE));
+        blackhole.consume(tagsMetadata.findEXIFValue(TiffTagConstants.TIFF_TAG_MODEL));
+        blackhole.consume(tagsMetadata.findEXIFValue(ExifTagConstants.EXIF_TAG_ISO));
+        blackhole.consume(tagsMetadata.findEXIFValue(ExifTagConstants.EXIF_TAG_EXPOSURE_TIME));
+        blackhole.consume(tagsMetadata.findEXIFValue(ExifTagConstants.EXIF_TAG_APERTURE_VALUE));
+        blackhole.consume(tagsMetadata.findEXIFValue(ExifTagConstants.EXIF_TAG_FLASH));
+        blackhole.consume(tagsMetadata.findEXIFValue(
+                ExifTagConstants.EXIF_TAG_COMPRESSED_BITS_PER_PIXEL));
+
+        final JpegImageMetadata userCommentMetadata =
+                (JpegImageMetadata) Imaging.getMetadata(processedJpeg.jpeg);
+        final TiffField userCommentField = userCommentMetadata.findEXIFValue(
+                ExifTagConstants.EXIF_TAG_USER_COMMENT);
+        final byte[] rawUserComment = userCommentField.getByteArrayValue();
+        final String userComment = new String(rawUserComment, 8, rawUserComment.length - 8,
+                "US-ASCII");
+        for (final String key : new String[]{Exif.USER_COMMENT_CONTENT_ID,
+                Exif.USER_COMMENT_ROTATION_DELTA}) {
+            for (final String keyValuePair : userComment.split(",")) {
+                final String[] keyAndValue = keyValuePair.split("=");
+                if (keyAndValue.length > 1 && keyAndValue[0].equals(key)) {
+                    blackhole.consume(keyAndValue[1]);
+                    break;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public String getValueForKeyFromUserComment(final UserCommentCsv userCommentCsv) {
+        return userCommentCsv.exifReader.getValueForKeyFromUserComment(
+                Exif.USER_COMMENT_CONTENT_ID, userCommentCsv.userComment);
+    }
+}
@@ -0,0 +1,199 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * <p>
+ *     Provides the camera jpegs used by the benchmarks.
+ * </p>
+ * <p>
+ *     Camera photos named {@code corpus/<megapixels>mp.jpg} are loaded from the benchmark
+ *     resources. If a photo is missing it is generated from the {@code invoice.jpg} test image by
+ *     scaling it to the camera resolution, adding sensor noise and copying its EXIF segment. The
+ *     generated jpegs have a size and layout similar to camera photos: an APP1 EXIF segment
+ *     without a JFIF segment and roughly 3 bits per pixel.
+ * </p>
+ */
+public final class JpegCorpus {
+
+    private static final String SOURCE_JPEG = "invoice.jpg";
+    private static final float GENERATED_JPEG_QUALITY = 0.92f;
+    private static final int NOISE_AMPLITUDE = 12;
+    private static final long NOISE_SEED = 42;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+
+    /**
+     * 4:3 resolutions of common smartphone cameras.
+     */
+    public enum Resolution {
+        MP_5(5, 2592, 1944),
+        MP_8(8, 3264, 2448),
+        MP_13(13, 4160, 3120),
+        MP_16(16, 4608, 3456);
+
+        final int megapixels;
+        final int width;
+        final int height;
+
+        Resolution(final int megapixels, final int width, final int height) {
+            this.megapixels = megapixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        public static Resolution forMegapixels(final int megapixels) {
+            for (final Resolution resolution : values()) {
+                if (resolution.megapixels == megapixels) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("No corpus jpeg with " + megapixels + " MP");
+        }
+    }
+
+    public static byte[] getJpeg(final int megapixels) throws IOException {
+        final Resolution resolution = Resolution.forMegapixels(megapixels);
+        final byte[] cameraJpeg = readResource("corpus/" + megapixels + "mp.jpg");
+        if (cameraJpeg != null) {
+            return cameraJpeg;
+        }
+        return generateJpeg(resolution);
+    }
+
+    private static byte[] generateJpeg(final Resolution resolution) throws IOException {
+        final byte[] sourceJpeg = readResource(SOURCE_JPEG);
+        if (sourceJpeg == null) {
+            throw new IOException("Resource not found: " + SOURCE_JPEG);
+        }
+        final BufferedImage source = ImageIO.read(new ByteArrayInputStream(sourceJpeg));
+        final BufferedImage image = new BufferedImage(resolution.width, resolution.height,
+                BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(source, 0, 0, resolution.width, resolution.height, null);
+        graphics.dispose();
+        addNoise(image);
+
+        final byte[] encoded = encode(image);
+        return replaceJfifWithExif(encoded, findExifSegment(sourceJpeg));
+    }
+
+    private static void addNoise(final BufferedImage image) {
+        final Random random = new Random(NOISE_SEED);
+        final int width = image.getWidth();
+        final int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                final int noise = random.nextInt(2 * NOISE_AMPLITUDE + 1) - NOISE_AMPLITUDE;
+                final int rgb = row[x];
+                row[x] = clamp(((rgb >> 16) & 0xFF) + noise) << 16
+                        | clamp(((rgb >> 8) & 0xFF) + noise) << 8
+                        | clamp((rgb & 0xFF) + noise);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    private static int clamp(final int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static byte[] encode(final BufferedImage image) throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream);
+        try {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(GENERATED_JPEG_QUALITY);
+            writer.setOutput(imageOutputStream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            imageOutputStream.close();
+            writer.dispose();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] findExifSegment(final byte[] jpeg) throws IOException {
+        int offset = 2;
+        while (offset + 4 <= jpeg.length && (jpeg[offset] & 0xFF) == 0xFF) {
+            final int marker = jpeg[offset + 1] & 0xFF;
+            final int length = 2 + segmentLength(jpeg, offset);
+            if (marker == MARKER_APP1) {
+                final byte[] segment = new byte[length];
+                System.arraycopy(jpeg, offset, segment, 0, length);
+                return segment;
+            }
+            if (marker < MARKER_APP0 || marker > 0xEF) {
+                break;
+            }
+            offset += length;
+        }
+        throw new IOException(SOURCE_JPEG + " has no EXIF segment");
+    }
+
+    /**
+     * Camera jpegs start with the EXIF segment, the JFIF segment written by ImageIO is dropped.
+     */
+    private static byte[] replaceJfifWithExif(final byte[] jpeg, final byte[] exifSegment)
+            throws IOException {
+        if ((jpeg[1] & 0xFF) != MARKER_SOI) {
+            throw new IOException("Not a jpeg");
+        }
+        int offset = 2;
+        if ((jpeg[offset + 1] & 0xFF) == MARKER_APP0) {
+            offset += 2 + segmentLength(jpeg, offset);
+        }
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+                jpeg.length + exifSegment.length);
+        outputStream.write(jpeg, 0, 2);
+        outputStream.write(exifSegment);
+        outputStream.write(jpeg, offset, jpeg.length - offset);
+        return outputStream.toByteArray();
+    }
+
+    private static int segmentLength(final byte[] jpeg, final int markerOffset) {
+        return ((jpeg[markerOffset + 2] & 0xFF) << 8) | (jpeg[markerOffset + 3] & 0xFF);
+    }
+
+    private static byte[] readResource(final String name) throws IOException {
+        final InputStream inputStream = JpegCorpus.class.getClassLoader().getResourceAsStream(
+                name);
+        if (inputStream == null) {
+            return null;
+        }
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int readBytes;
+            while ((readBytes = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, readBytes);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private JpegCorpus() {
+    }
+}
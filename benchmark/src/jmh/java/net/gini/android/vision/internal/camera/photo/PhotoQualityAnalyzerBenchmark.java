@@ -0,0 +1,71 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * <p>
+ *     Measures the quality analysis of photo previews. The previews are decoded to the display
+ *     size, so the benchmark runs with the preview sizes of common displays.
+ * </p>
+ * <p>
+ *     The analysis must take less than 30 ms on a mid-range device, which is more than 33
+ *     operations per second. On the JVM it should be well above that.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class PhotoQualityAnalyzerBenchmark {
+
+    private static final String SOURCE_JPEG = "invoice.jpg";
+
+    @Param({"720x1280", "1080x1920", "1440x2560"})
+    public String previewSize;
+
+    private int[] mPixels;
+    private int mWidth;
+    private int mHeight;
+
+    @Setup
+    public void setUp() throws Exception {
+        final String[] size = previewSize.split("x");
+        mWidth = Integer.parseInt(size[0]);
+        mHeight = Integer.parseInt(size[1]);
+        final BufferedImage preview = new BufferedImage(mWidth, mHeight,
+                BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = preview.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(readSourceImage(), 0, 0, mWidth, mHeight, null);
+        graphics.dispose();
+        mPixels = preview.getRGB(0, 0, mWidth, mHeight, null, 0, mWidth);
+    }
+
+    private static BufferedImage readSourceImage() throws IOException {
+        final InputStream inputStream = PhotoQualityAnalyzerBenchmark.class.getClassLoader()
+                .getResourceAsStream(SOURCE_JPEG);
+        if (inputStream == null) {
+            throw new IOException("Resource not found: " + SOURCE_JPEG);
+        }
+        try {
+            return ImageIO.read(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Benchmark
+    public PhotoQuality analyze() {
+        return PhotoQualityAnalyzer.analyze(mPixels, mWidth, mHeight);
+    }
+}
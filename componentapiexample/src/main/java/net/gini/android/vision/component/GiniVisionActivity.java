@@ -23,6 +23,8 @@ import net.gini.android.vision.camera.CameraFragmentListener;
 import net.gini.android.vision.camera.CameraFragmentStandard;
 import net.gini.android.vision.onboarding.OnboardingFragmentListener;
 import net.gini.android.vision.onboarding.OnboardingFragmentStandard;
+import net.gini.android.vision.review.DocumentQuality;
+import net.gini.android.vision.review.DocumentQualityListener;
 import net.gini.android.vision.review.ReviewFragmentListener;
 import net.gini.android.vision.review.ReviewFragmentStandard;
 import net.gini.android.visionadvtest.R;
@@ -45,7 +47,8 @@ import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
  * </p>
  */
 public class GiniVisionActivity extends Activity
-        implements CameraFragmentListener, OnboardingFragmentListener, ReviewFragmentListener, AnalysisFragmentListener {
+        implements CameraFragmentListener, OnboardingFragmentListener, ReviewFragmentListener, DocumentQualityListener,
+        AnalysisFragmentListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(GiniVisionActivity.class);
 
@@ -59,6 +62,7 @@ public class GiniVisionActivity extends Activity
 
     private String mDocumentAnalysisErrorMessage;
     private Map<String, SpecificExtraction> mExtractionsFromReviewScreen;
+    private DocumentQuality mDocumentQuality;
     private boolean mShowCameraOnStart = false;
     private String mTitleBeforeOnboarding;
 
@@ -246,6 +250,7 @@ public class GiniVisionActivity extends Activity
         LOG.debug("Document available {}", document);
         // Cancel analysis to make sure, that the document analysis will start in onShouldAnalyzeDocument()
         mSingleDocumentAnalyzer.cancelAnalysis();
+        mDocumentQuality = null;
         showFragment(getReviewFragment(document), R.string.title_review);
     }
 
@@ -260,6 +265,13 @@ public class GiniVisionActivity extends Activity
         LOG.debug("Should analyze document in the Review Screen {}", document);
         GiniVisionDebug.writeDocumentToFile(this, document, "_for_review");
 
+        if (mDocumentQuality != null && !mDocumentQuality.isAcceptable()) {
+            // We don't upload blurry, overexposed or too dark photos right away. If the user doesn't retake the photo,
+            // the Gini Vision Library will request you to proceed to the Analysis Screen where it will be analyzed.
+            LOG.debug("Deferring the analysis of a document with poor quality");
+            return;
+        }
+
         // We should start analyzing the document by sending it to the Gini API.
         // If the user did not modify the image we can get the analysis results earlier.
         // The Gini Vision Library will not request you to proceed to the Analysis Screen, if the results were
@@ -318,6 +330,12 @@ public class GiniVisionActivity extends Activity
         }
     }
 
+    @Override
+    public void onDocumentQualityAnalyzed(@NonNull DocumentQuality quality) {
+        LOG.debug("Document quality analyzed: {}", quality);
+        mDocumentQuality = quality;
+    }
+
     @Override
     public void onDocumentWasRotated(@NonNull Document document, int oldRotation, int newRotation) {
         LOG.debug("Document was rotated: oldRotation={}, newRotation={}, document={}", oldRotation, newRotation, document);
@@ -23,6 +23,8 @@ import net.gini.android.vision.camera.CameraFragmentCompat;
 import net.gini.android.vision.camera.CameraFragmentListener;
 import net.gini.android.vision.onboarding.OnboardingFragmentCompat;
 import net.gini.android.vision.onboarding.OnboardingFragmentListener;
+import net.gini.android.vision.review.DocumentQuality;
+import net.gini.android.vision.review.DocumentQualityListener;
 import net.gini.android.vision.review.ReviewFragmentCompat;
 import net.gini.android.vision.review.ReviewFragmentListener;
 import net.gini.android.visionadvtest.R;
@@ -45,7 +47,8 @@ import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
  * </p>
  */
 public class GiniVisionAppCompatActivity extends AppCompatActivity
-        implements CameraFragmentListener, OnboardingFragmentListener, ReviewFragmentListener, AnalysisFragmentListener {
+        implements CameraFragmentListener, OnboardingFragmentListener, ReviewFragmentListener, DocumentQualityListener,
+        AnalysisFragmentListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(GiniVisionActivity.class);
 
@@ -59,6 +62,7 @@ public class GiniVisionAppCompatActivity extends AppCompatActivity
 
     private String mDocumentAnalysisErrorMessage;
     private Map<String, SpecificExtraction> mExtractionsFromReviewScreen;
+    private DocumentQuality mDocumentQuality;
     private boolean mShowCameraOnStart = false;
     private String mTitleBeforeOnboarding;
 
@@ -243,6 +247,7 @@ public class GiniVisionAppCompatActivity extends AppCompatActivity
     public void onDocumentAvailable(@NonNull Document document) {
         LOG.debug("Document available {}", document);
         mSingleDocumentAnalyzer.cancelAnalysis();
+        mDocumentQuality = null;
         showFragment(getReviewFragment(document), R.string.title_review);
     }
 
@@ -257,6 +262,13 @@ public class GiniVisionAppCompatActivity extends AppCompatActivity
         LOG.debug("Should analyze document in the Review Screen {}", document);
         GiniVisionDebug.writeDocumentToFile(this, document, "_for_review");
 
+        if (mDocumentQuality != null && !mDocumentQuality.isAcceptable()) {
+            // We don't upload blurry, overexposed or too dark photos right away. If the user doesn't retake the photo,
+            // the Gini Vision Library will request you to proceed to the Analysis Screen where it will be analyzed.
+            LOG.debug("Deferring the analysis of a document with poor quality");
+            return;
+        }
+
         // We should start analyzing the document by sending it to the Gini API.
         // If the user did not modify the image we can get the analysis results earlier.
         // The Gini Vision Library will not request you to proceed to the Analysis Screen, if the results were
@@ -315,6 +327,12 @@ public class GiniVisionAppCompatActivity extends AppCompatActivity
         }
     }
 
+    @Override
+    public void onDocumentQualityAnalyzed(@NonNull DocumentQuality quality) {
+        LOG.debug("Document quality analyzed: {}", quality);
+        mDocumentQuality = quality;
+    }
+
     @Override
     public void onDocumentWasRotated(@NonNull Document document, int oldRotation, int newRotation) {
         LOG.debug("Document was rotated: oldRotation={}, newRotation={}, document={}", oldRotation, newRotation, document);
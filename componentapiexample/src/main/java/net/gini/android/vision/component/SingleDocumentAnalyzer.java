@@ -188,7 +188,13 @@ public class SingleDocumentAnalyzer {
                         @Override
                         public Map<String, SpecificExtraction> then(final Task<Map<String, SpecificExtraction>> task) throws Exception {
                             if (isCancelled()) {
-                                LOG.debug("Analysis completed with cancellation for document: {}", getGiniApiDocument().getId());
+                                LOG.debug("Analysis completed with cancellation");
+                                return null;
+                            }
+                            if (getGiniApiDocument() == null) {
+                                LOG.debug("Analysis completed with upload fault");
+                                setResultTask(task);
+                                publishResult();
                                 return null;
                             }
                             LOG.debug("Analysis completed with {} for document: {}", task.isFaulted() ? "fault" : "success", getGiniApiDocument().getId());
@@ -104,6 +104,18 @@ public class CameraScreenTest {
         cameraActivity.readExtras();
     }
 
+    @Test(expected = IllegalStateException.class)
+    public void should_throwException_whenAutoCaptureStableFrames_isLessThanOne() {
+        CameraActivity cameraActivity = new CameraActivity();
+
+        Intent intent = getCameraActivityIntent();
+        intent.putExtra(CameraActivity.EXTRA_IN_AUTO_CAPTURE, true);
+        intent.putExtra(CameraActivity.EXTRA_IN_AUTO_CAPTURE_STABLE_FRAMES, 0);
+        cameraActivity.setIntent(intent);
+
+        cameraActivity.readExtras();
+    }
+
     @Test
     public void should_showOnboarding_onFirstLaunch_ifNotDisabled() {
         Intent intent = getCameraActivityIntent();
@@ -9,6 +9,7 @@ import static net.gini.android.vision.test.PermissionsHelper.grantCameraPermissi
 
 import android.content.Intent;
 import android.hardware.Camera;
+import android.os.Looper;
 import android.support.test.rule.ActivityTestRule;
 import android.support.test.runner.AndroidJUnit4;
 
@@ -20,6 +21,10 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
 @RunWith(AndroidJUnit4.class)
 public class CameraControllerTest {
 
@@ -42,14 +47,15 @@ public class CameraControllerTest {
     }
 
     @Test
-    public void should_useLargestPictureResolution() throws InterruptedException {
+    public void should_usePictureResolution_selectedByThePolicy() throws InterruptedException {
         mCameraController = new CameraController(createNoOpActivity());
         final Camera.Parameters parameters = openAndGetCamera().getParameters();
-        final Size largestSize = SizeSelectionHelper.getLargestSize(parameters.getSupportedPictureSizes());
-        assertThat(largestSize).isNotNull();
+        final Size selectedSize = PictureSizePolicy.getCurrent().selectPictureSize(
+                CameraCapabilities.fromParameters(parameters).getPictureSizes());
+        assertThat(selectedSize).isNotNull();
         final Camera.Size usedSize = parameters.getPictureSize();
-        assertThat(usedSize.width).isEqualTo(largestSize.width);
-        assertThat(usedSize.height).isEqualTo(largestSize.height);
+        assertThat(usedSize.width).isEqualTo(selectedSize.width);
+        assertThat(usedSize.height).isEqualTo(selectedSize.height);
     }
 
     private NoOpActivity createNoOpActivity() {
@@ -70,17 +76,54 @@ public class CameraControllerTest {
     }
 
     @Test
-    public void should_useLargestPreviewResolution_withSimilarAspectRatio_asPictureSize() throws InterruptedException {
+    public void should_usePreviewResolution_withSimilarAspectRatio_asPictureSize() throws InterruptedException {
         mCameraController = new CameraController(createNoOpActivity());
         final Camera.Parameters parameters = openAndGetCamera().getParameters();
         final Size pictureSize = new Size(parameters.getPictureSize().width, parameters.getPictureSize().height);
-        final Size largestSize = SizeSelectionHelper.getLargestSizeWithSimilarAspectRatio(parameters.getSupportedPreviewSizes(), pictureSize);
+        final Size largestSize = PictureSizePolicy.getCurrent().selectPreviewSize(
+                CameraCapabilities.fromParameters(parameters).getPreviewSizes(), pictureSize);
         assertThat(largestSize).isNotNull();
         final Camera.Size usedSize = parameters.getPreviewSize();
         assertThat(usedSize.width).isEqualTo(largestSize.width);
         assertThat(usedSize.height).isEqualTo(largestSize.height);
     }
 
+    @Test
+    public void should_openCamera_offTheUiThread() throws InterruptedException {
+        // Given
+        final AtomicReference<Thread> openingThread = new AtomicReference<>();
+        mCameraController = new CameraController(createNoOpActivity()) {
+            @Override
+            protected Camera openCamera() {
+                openingThread.set(Thread.currentThread());
+                return super.openCamera();
+            }
+        };
+        // When
+        openAndGetCamera();
+        // Then
+        assertThat(openingThread.get()).isNotNull();
+        assertThat(openingThread.get()).isNotEqualTo(Looper.getMainLooper().getThread());
+    }
+
+    @Test
+    public void should_completeOpenFuture_onTheUiThread() throws InterruptedException {
+        // Given
+        final AtomicReference<Thread> completingThread = new AtomicReference<>();
+        mCameraController = new CameraController(createNoOpActivity());
+        // When
+        mCameraController.open()
+                .handle(new CompletableFuture.BiFun<Void, Throwable, Void>() {
+                    @Override
+                    public Void apply(final Void aVoid, final Throwable throwable) {
+                        completingThread.set(Thread.currentThread());
+                        return null;
+                    }
+                }).join();
+        // Then
+        assertThat(completingThread.get()).isEqualTo(Looper.getMainLooper().getThread());
+    }
+
     @Test
     @Ignore
     public void should_useContinuousFocusMode_ifAvailable() {
@@ -0,0 +1,75 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertAbout;
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.test.Helpers.getTestJpeg;
+import static net.gini.android.vision.test.PhotoSubject.photo;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(AndroidJUnit4.class)
+public class CapturePipelineTest {
+
+    private static byte[] TEST_JPEG = null;
+
+    @BeforeClass
+    public static void setupClass() throws IOException {
+        TEST_JPEG = getTestJpeg();
+    }
+
+    @AfterClass
+    public static void teardownClass() throws IOException {
+        TEST_JPEG = null;
+    }
+
+    @Test
+    public void should_completeWithProcessedPhoto() throws Exception {
+        // When
+        Photo photo = CapturePipeline.process(TEST_JPEG, 90).get(10, TimeUnit.SECONDS);
+        // Then
+        assertThat(photo.getBitmapPreview()).isNotNull();
+        assertThat(photo.getRotationForDisplay()).isEqualTo(90);
+        assertAbout(photo()).that(photo).hasContentIdInUserComment(photo.getContentId());
+    }
+
+    @Test
+    public void should_handOffRawJpeg_beforeProcessing() throws Exception {
+        // When
+        Photo photo = CapturePipeline.processInBackground(TEST_JPEG, 0);
+        // Then
+        assertThat(photo.getContentId()).isNotEmpty();
+        Photo processedPhoto = photo.whenProcessed().get(10, TimeUnit.SECONDS);
+        assertThat(processedPhoto).isSameAs(photo);
+        assertThat(photo.getBitmapPreview()).isNotNull();
+        assertAbout(photo()).that(photo).hasContentIdInUserComment(photo.getContentId());
+    }
+
+    @Test
+    public void should_notDecodePreview_ifNotRequested() throws Exception {
+        // When
+        Photo photo = CapturePipeline.processInBackground(TEST_JPEG, 0, false);
+        // Then
+        photo.whenProcessed().get(10, TimeUnit.SECONDS);
+        assertThat(photo.getBitmapPreview()).isNull();
+        assertAbout(photo()).that(photo).hasContentIdInUserComment(photo.getContentId());
+    }
+
+    @Test
+    public void should_createSameExif_asSynchronousCreation() throws Exception {
+        // Given
+        Photo synchronousPhoto = Photo.fromJpeg(TEST_JPEG, 0);
+        // When
+        Photo photo = CapturePipeline.process(TEST_JPEG, 0).get(10, TimeUnit.SECONDS);
+        // Then
+        assertThat(photo.getJpeg().length).isEqualTo(synchronousPhoto.getJpeg().length);
+    }
+}
@@ -11,6 +11,8 @@ import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.google.common.collect.Range;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -79,7 +81,47 @@ public class PhotoEditTest {
         assertThat(photoEdit.mPhotoModifiers).hasSize(1);
         assertThat(((PhotoCompressionModifier) photoEdit.mPhotoModifiers.get(0))
                 .getQuality()).isEqualTo(100);
+    }
+
+    @Test
+    public void should_compressFullBitmap_byDefault() throws Exception {
+        // Given
+        final Photo photo = getPhoto();
+        final PhotoEdit photoEdit = new PhotoEdit(photo);
+        // When
+        photoEdit.compressBy(50);
+        // Then
+        assertThat(((PhotoCompressionModifier) photoEdit.mPhotoModifiers.get(0))
+                .getMode()).isEqualTo(PhotoEdit.CompressionMode.FULL_BITMAP);
+    }
+
+    @Test
+    public void should_compressToSizeBudget() throws Exception {
+        // Given
+        final Photo photo = getPhoto();
+        final int maxBytes = photo.getJpeg().length / 2;
+        // When
+        photo.edit()
+                .compressToSize(maxBytes, 90)
+                .apply();
+        // Then
+        // The size is estimated on a probe of the jpeg
+        assertThat(photo.getJpeg().length).isAtMost((int) (maxBytes * 1.1));
+        assertThat(photo.getJpegQuality()).isIn(Range.closed(JpegQualitySearch.MIN_QUALITY, 90));
+    }
 
+    @Test
+    public void should_allowOnlyOne_compressionModifier_withSizeBudget() throws Exception {
+        // Given
+        final Photo photo = getPhoto();
+        final PhotoEdit photoEdit = new PhotoEdit(photo);
+        // When
+        photoEdit.compressBy(50)
+                .compressToSize(500000, 80);
+        // Then
+        assertThat(photoEdit.mPhotoModifiers).hasSize(1);
+        assertThat(((PhotoCompressionModifier) photoEdit.mPhotoModifiers.get(0))
+                .getSizeBudget()).isNotNull();
     }
 
-}
\ No newline at end of file
+}
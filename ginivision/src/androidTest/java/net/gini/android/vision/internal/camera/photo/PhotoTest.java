@@ -122,6 +122,17 @@ public class PhotoTest {
         assertAbout(photo()).that(photo).hasContentIdInUserComment(contentId);
     }
 
+    @Test
+    public void should_keepContentId_afterTiledCompression() {
+        // Given
+        Photo photo = Photo.fromJpeg(TEST_JPEG, 0);
+        String contentId = photo.getContentId();
+        // When
+        photo.edit().compressBy(10, PhotoEdit.CompressionMode.TILED).apply();
+        // Then
+        assertAbout(photo()).that(photo).hasContentIdInUserComment(contentId);
+    }
+
     @Test
     public void should_initRotationDelta_whenCreated() {
         // When
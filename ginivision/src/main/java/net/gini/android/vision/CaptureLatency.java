@@ -0,0 +1,147 @@
+package net.gini.android.vision;
+
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ *     The time taken by the phases between the tap on the camera trigger button and showing the
+ *     picture on the Review Screen.
+ * </p>
+ * <p>
+ *     All timestamps are monotonic {@link System#nanoTime()} values and can only be compared with
+ *     each other. Phases which were skipped, for example focusing when the camera focuses
+ *     continuously, have no timestamps.
+ * </p>
+ * <p>
+ *     Register a {@link GiniVisionMetrics.CaptureLatencyListener} with {@link
+ *     GiniVisionMetrics#setCaptureLatencyListener(GiniVisionMetrics.CaptureLatencyListener)} to
+ *     receive them.
+ * </p>
+ */
+public final class CaptureLatency {
+
+    /**
+     * The phases of taking a picture in the order they are started.
+     */
+    public enum Phase {
+        /**
+         * Auto-focus run before taking the picture. Skipped, if the camera focuses continuously.
+         */
+        FOCUS,
+        /**
+         * From requesting the picture until the camera delivered the jpeg.
+         */
+        CAPTURE,
+        /**
+         * Decoding the preview and normalizing the EXIF of the camera's jpeg.
+         */
+        PHOTO_PROCESSING,
+        /**
+         * Creating the {@link Document} from the processed photo.
+         */
+        DOCUMENT_CREATION,
+        /**
+         * Until the Review Screen shows the picture, starting when the {@link Document} was
+         * passed to your app. Contains the (un)parceling of the document and the Review Screen's
+         * creation, for example starting the Review Activity.
+         */
+        REVIEW_START,
+        /**
+         * Storing the jpeg in a memory cache when parceling the {@link Document}.
+         */
+        DOCUMENT_PARCELING,
+        /**
+         * Reading the jpeg from the memory cache when unparceling the {@link Document}.
+         */
+        DOCUMENT_UNPARCELING,
+        /**
+         * Decoding the preview shown on the Review Screen.
+         */
+        REVIEW_PREVIEW_DECODING
+    }
+
+    private static final long NOT_RECORDED = -1;
+
+    private final long mStartNanos;
+    private final long mEndNanos;
+    private final long[] mPhaseStartNanos;
+    private final long[] mPhaseEndNanos;
+
+    CaptureLatency(final long startNanos, final long endNanos,
+            @NonNull final long[] phaseStartNanos, @NonNull final long[] phaseEndNanos) {
+        mStartNanos = startNanos;
+        mEndNanos = endNanos;
+        mPhaseStartNanos = phaseStartNanos;
+        mPhaseEndNanos = phaseEndNanos;
+    }
+
+    /**
+     * @return the time of the tap on the camera trigger button or of the automatic capture
+     */
+    public long getStartNanos() {
+        return mStartNanos;
+    }
+
+    /**
+     * @return the time when the Review Screen showed the picture
+     */
+    public long getEndNanos() {
+        return mEndNanos;
+    }
+
+    /**
+     * @return the time between the start and the end
+     */
+    public long getTotalNanos() {
+        return mEndNanos - mStartNanos;
+    }
+
+    /**
+     * @param phase a phase
+     * @return {@code true}, if the phase was started and finished
+     */
+    public boolean hasPhase(@NonNull final Phase phase) {
+        return mPhaseStartNanos[phase.ordinal()] != NOT_RECORDED
+                && mPhaseEndNanos[phase.ordinal()] != NOT_RECORDED;
+    }
+
+    /**
+     * @param phase a phase
+     * @return the time when the phase started or -1, if it was skipped
+     */
+    public long getPhaseStartNanos(@NonNull final Phase phase) {
+        return hasPhase(phase) ? mPhaseStartNanos[phase.ordinal()] : NOT_RECORDED;
+    }
+
+    /**
+     * @param phase a phase
+     * @return the time when the phase finished or -1, if it was skipped
+     */
+    public long getPhaseEndNanos(@NonNull final Phase phase) {
+        return hasPhase(phase) ? mPhaseEndNanos[phase.ordinal()] : NOT_RECORDED;
+    }
+
+    /**
+     * @param phase a phase
+     * @return the duration of the phase or -1, if it was skipped
+     */
+    public long getPhaseDurationNanos(@NonNull final Phase phase) {
+        return hasPhase(phase)
+                ? mPhaseEndNanos[phase.ordinal()] - mPhaseStartNanos[phase.ordinal()]
+                : NOT_RECORDED;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CaptureLatency{");
+        sb.append("totalMillis=").append(getTotalNanos() / 1000000);
+        for (final Phase phase : Phase.values()) {
+            if (hasPhase(phase)) {
+                sb.append(", ").append(phase).append('=')
+                        .append(getPhaseDurationNanos(phase) / 1000000);
+            }
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -3,10 +3,23 @@ package net.gini.android.vision;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
 import net.gini.android.vision.internal.camera.photo.ImageCache;
 import net.gini.android.vision.internal.camera.photo.Photo;
+import net.gini.android.vision.internal.metrics.CaptureTrace;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <p>
@@ -21,39 +34,220 @@ import net.gini.android.vision.internal.camera.photo.Photo;
  * </p>
  *
  * <p>
+ * A document can also be backed by a file or a {@link ByteBuffer}, for example a memory-mapped file. Use {@link
+ * #openStream()} or {@link #writeTo(OutputStream)} to read the JPEG without holding it in a byte array. {@link
+ * #getJpeg()} reads the whole JPEG into a byte array on the first call. Parcelling such a document doesn't copy the
+ * JPEG.
+ * </p>
+ *
+ * <p>
  * <b>Warning:</b> Always retrieve the {@link Document} extras from a Bundle to force unparceling and removing of the
  * reference to
  * the JPEG byte array from the memory cache. Failing to do so will lead to memory leaks.
  * </p>
+ *
+ * <p>
+ * The JPEG is cached only once, no matter how often the document is parcelled. If a parcel may never be read, for
+ * example the saved state of an Activity which finishes, call {@link #close()} to remove the JPEG from the memory cache
+ * right away.
+ * </p>
  */
-public class Document implements Parcelable {
+public class Document implements Parcelable, Closeable {
+
+    private static final int SOURCE_IMAGE_CACHE = 0;
+    private static final int SOURCE_FILE = 1;
+    private static final int COPY_BUFFER_SIZE = 8192;
 
-    private final byte[] mJpeg;
+    private byte[] mJpeg;
+    private final File mJpegFile;
+    private final ByteBuffer mJpegBuffer;
     private final int mRotationForDisplay;
+    private final List<ImageCache.Token> mParcelTokens = new ArrayList<>();
 
     /**
+     * <p>
+     * Creates a document from a photo whose processing has completed. Before that the jpeg lacks the EXIF with the
+     * content id, which the {@link DocumentKey} relies on.
+     * </p>
+     *
+     * @throws IllegalStateException if {@link Photo#whenProcessed()} has not completed yet
      * @exclude
      */
     public static Document fromPhoto(@NonNull Photo photo) {
-        return new Document(photo.getJpeg(), photo.getRotationForDisplay());
+        if (!photo.whenProcessed().isDone()) {
+            throw new IllegalStateException("Photo is still being processed");
+        }
+        return new Document(photo.getJpeg(), null, null, photo.getRotationForDisplay());
     }
 
-    private Document(@NonNull byte[] jpeg, int rotationForDisplay) {
+    /**
+     * <p>
+     * Creates a document backed by a JPEG file. The file is read only when the JPEG is requested and must not be
+     * deleted while the document is used.
+     * </p>
+     *
+     * @param jpegFile           a JPEG file
+     * @param rotationForDisplay degrees by which the image should be rotated clockwise before displaying
+     * @return a new document
+     */
+    @NonNull
+    public static Document fromFile(@NonNull File jpegFile, int rotationForDisplay) {
+        return new Document(null, jpegFile, null, rotationForDisplay);
+    }
+
+    /**
+     * <p>
+     * Creates a document backed by a buffer containing a JPEG between its position and limit, for example a
+     * memory-mapped file. The buffer's position is not changed by the document.
+     * </p>
+     *
+     * @param jpegBuffer         a buffer containing a JPEG
+     * @param rotationForDisplay degrees by which the image should be rotated clockwise before displaying
+     * @return a new document
+     */
+    @NonNull
+    public static Document fromByteBuffer(@NonNull ByteBuffer jpegBuffer, int rotationForDisplay) {
+        return new Document(null, null, jpegBuffer.slice(), rotationForDisplay);
+    }
+
+    private Document(@Nullable byte[] jpeg, @Nullable File jpegFile, @Nullable ByteBuffer jpegBuffer,
+            int rotationForDisplay) {
         mJpeg = jpeg;
+        mJpegFile = jpegFile;
+        mJpegBuffer = jpegBuffer;
         mRotationForDisplay = rotationForDisplay;
     }
 
     /**
      * <p>
      * The image of a document as a JPEG.
-     *</p>
+     * </p>
+     * <p>
+     * If the document is backed by a file or a buffer, the JPEG is read into a byte array on the first call. Prefer
+     * {@link #openStream()} or {@link #writeTo(OutputStream)} for these documents.
+     * </p>
+     *
      * @return a byte array containg a JPEG
+     * @throws IllegalStateException if the JPEG file could not be read
      */
     @NonNull
-    public byte[] getJpeg() {
+    public synchronized byte[] getJpeg() {
+        if (mJpeg == null) {
+            mJpeg = readJpeg();
+        }
         return mJpeg;
     }
 
+    /**
+     * <p>
+     * Opens a stream for reading the JPEG without copying it into a byte array first.
+     * </p>
+     *
+     * @return a new stream, which has to be closed by the caller
+     * @throws IOException if the JPEG file could not be opened
+     */
+    @NonNull
+    public InputStream openStream() throws IOException {
+        final byte[] jpeg;
+        synchronized (this) {
+            jpeg = mJpeg;
+        }
+        if (jpeg != null) {
+            return new ByteArrayInputStream(jpeg);
+        } else if (mJpegFile != null) {
+            return new FileInputStream(mJpegFile);
+        } else if (mJpegBuffer != null) {
+            return new ByteBufferInputStream(mJpegBuffer.duplicate());
+        }
+        throw new IOException("The JPEG is not available");
+    }
+
+    /**
+     * <p>
+     * Writes the JPEG to a stream, for example to upload it or to save it to a file. The stream is not closed.
+     * </p>
+     *
+     * @param outputStream the destination
+     * @throws IOException if the JPEG could not be read or written
+     */
+    public void writeTo(@NonNull OutputStream outputStream) throws IOException {
+        final byte[] jpeg;
+        synchronized (this) {
+            jpeg = mJpeg;
+        }
+        if (jpeg != null) {
+            outputStream.write(jpeg);
+            return;
+        }
+        final InputStream inputStream = openStream();
+        try {
+            final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * @return the size of the JPEG in bytes
+     */
+    public synchronized long getJpegSize() {
+        if (mJpeg != null) {
+            return mJpeg.length;
+        } else if (mJpegFile != null) {
+            return mJpegFile.length();
+        } else if (mJpegBuffer != null) {
+            return mJpegBuffer.remaining();
+        }
+        return 0;
+    }
+
+    private byte[] readJpeg() {
+        if (mJpegBuffer != null) {
+            if (mJpegBuffer.hasArray() && mJpegBuffer.arrayOffset() == 0
+                    && mJpegBuffer.remaining() == mJpegBuffer.array().length) {
+                // Wraps a whole array, no need to copy it
+                return mJpegBuffer.array();
+            }
+            final byte[] jpeg = new byte[mJpegBuffer.remaining()];
+            mJpegBuffer.duplicate().get(jpeg);
+            return jpeg;
+        } else if (mJpegFile != null) {
+            try {
+                return readFile(mJpegFile);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + mJpegFile.getAbsolutePath(), e);
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private static byte[] readFile(@NonNull File file) throws IOException {
+        final long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Too large for a byte array (" + length + " bytes): " + file.getAbsolutePath());
+        }
+        final byte[] bytes = new byte[(int) length];
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                final int read = inputStream.read(bytes, offset, bytes.length - offset);
+                if (read == -1) {
+                    throw new IOException("Unexpected end of file " + file.getAbsolutePath());
+                }
+                offset += read;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return bytes;
+    }
+
     /**
      * <p>
      * The amount of clockwise rotation needed to display the image in the correct orientation.
@@ -72,14 +266,72 @@ public class Document implements Parcelable {
      */
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        ImageCache cache = ImageCache.getInstance();
-
-        ImageCache.Token token = cache.storeJpeg(mJpeg);
-        dest.writeParcelable(token, flags);
+        CaptureTrace trace = CaptureTrace.current();
+        trace.beginPhase(CaptureLatency.Phase.DOCUMENT_PARCELING);
+        if (mJpegFile != null) {
+            // The file is read only by the receiver
+            dest.writeInt(SOURCE_FILE);
+            dest.writeString(mJpegFile.getAbsolutePath());
+        } else {
+            ImageCache.Token token = storeJpegInCache();
+            dest.writeInt(SOURCE_IMAGE_CACHE);
+            dest.writeParcelable(token, flags);
+        }
+        trace.endPhase(CaptureLatency.Phase.DOCUMENT_PARCELING);
 
         dest.writeInt(mRotationForDisplay);
     }
 
+    /**
+     * Stores the JPEG in the memory cache for a parcel. Buffer-backed documents are stored without copying the JPEG
+     * into a byte array.
+     */
+    @VisibleForTesting
+    @NonNull
+    ImageCache.Token storeJpegInCache() {
+        final ImageCache cache = ImageCache.getInstance();
+        final ImageCache.Token token = mJpegBuffer != null ? cache.storeJpegBuffer(mJpegBuffer)
+                : cache.storeJpeg(getJpeg());
+        synchronized (this) {
+            // Tokens of parcels which were read are released by the reader
+            for (int i = mParcelTokens.size() - 1; i >= 0; i--) {
+                if (!cache.isStored(mParcelTokens.get(i))) {
+                    mParcelTokens.remove(i);
+                }
+            }
+            mParcelTokens.add(token);
+        }
+        return token;
+    }
+
+    @VisibleForTesting
+    synchronized int getParcelTokenCount() {
+        return mParcelTokens.size();
+    }
+
+    /**
+     * <p>
+     * Removes the JPEG from the memory cache, if it was stored there when parcelling this document and not all parcels
+     * were read. Parcels written before will not contain the JPEG anymore, so call it only when they won't be read,
+     * for example when the Activity which holds the document finishes.
+     * </p>
+     * <p>
+     * The document itself can still be used.
+     * </p>
+     */
+    @Override
+    public void close() {
+        final List<ImageCache.Token> tokens;
+        synchronized (this) {
+            tokens = new ArrayList<>(mParcelTokens);
+            mParcelTokens.clear();
+        }
+        final ImageCache cache = ImageCache.getInstance();
+        for (final ImageCache.Token token : tokens) {
+            cache.release(token);
+        }
+    }
+
     /**
      * @exclude
      */
@@ -104,11 +356,22 @@ public class Document implements Parcelable {
     };
 
     private Document(Parcel in) {
-        ImageCache cache = ImageCache.getInstance();
+        CaptureTrace trace = CaptureTrace.current();
+        trace.beginPhase(CaptureLatency.Phase.DOCUMENT_UNPARCELING);
+        if (in.readInt() == SOURCE_FILE) {
+            mJpegFile = new File(in.readString());
+            mJpegBuffer = null;
+        } else {
+            ImageCache cache = ImageCache.getInstance();
 
-        ImageCache.Token token = in.readParcelable(ImageCache.Token.class.getClassLoader());
-        mJpeg = cache.getJpeg(token);
-        cache.removeJpeg(token);
+            ImageCache.Token token = in.readParcelable(ImageCache.Token.class.getClassLoader());
+            // Spilled JPEGs are memory-mapped instead of being copied to the heap. The mapping stays valid after
+            // the spill file was deleted.
+            mJpegFile = null;
+            mJpegBuffer = cache.getJpegBuffer(token);
+            cache.removeJpeg(token);
+        }
+        trace.endPhase(CaptureLatency.Phase.DOCUMENT_UNPARCELING);
 
         mRotationForDisplay = in.readInt();
     }
@@ -116,9 +379,47 @@ public class Document implements Parcelable {
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("Document{");
-        sb.append("mJpeg=[bytes]");
+        if (mJpegFile != null) {
+            sb.append("mJpegFile=").append(mJpegFile.getAbsolutePath());
+        } else if (mJpegBuffer != null) {
+            sb.append("mJpegBuffer=[").append(mJpegBuffer.remaining()).append(" bytes]");
+        } else {
+            sb.append("mJpeg=[bytes]");
+        }
         sb.append(", mRotationForDisplay=").append(mRotationForDisplay);
         sb.append('}');
         return sb.toString();
     }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer mBuffer;
+
+        ByteBufferInputStream(@NonNull ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(length, mBuffer.remaining());
+            mBuffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+    }
 }
@@ -0,0 +1,172 @@
+package net.gini.android.vision;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import net.gini.android.vision.internal.camera.photo.UserComment;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>
+ *     Identifies the content of a {@link Document}, for example to cache the results of analyzing it.
+ * </p>
+ * <p>
+ *     Every picture taken by the Gini Vision Library has a content id, which is kept when the picture is rotated. The
+ *     rotation relative to the picture as it was taken and a digest of the JPEG distinguish the versions of the same
+ *     picture.
+ * </p>
+ * <p>
+ *     The key hashes the whole JPEG, so create it only once for a document and not on the main thread, if possible.
+ * </p>
+ */
+public final class DocumentKey {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final String mContentId;
+    private final int mRotationDelta;
+    private final String mJpegDigest;
+
+    /**
+     * <p>
+     *     Creates the key of a document.
+     * </p>
+     *
+     * @param document a document
+     * @return the document's key
+     */
+    @NonNull
+    public static DocumentKey of(@NonNull final Document document) {
+        return fromJpeg(document.getJpeg());
+    }
+
+    /**
+     * <p>
+     *     Reads only the content id of a document without hashing the JPEG, for example to remove the cached results of
+     *     all versions of a picture.
+     * </p>
+     *
+     * @param document a document
+     * @return the id of the picture's content or {@code null}, if the JPEG wasn't created by the Gini Vision Library
+     */
+    @Nullable
+    public static String readContentId(@NonNull final Document document) {
+        final UserComment userComment = UserComment.readFromJpeg(document.getJpeg());
+        return userComment != null ? userComment.getContentId() : null;
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static DocumentKey fromJpeg(@NonNull final byte[] jpeg) {
+        final UserComment userComment = UserComment.readFromJpeg(jpeg);
+        String contentId = null;
+        int rotationDelta = 0;
+        if (userComment != null) {
+            contentId = userComment.getContentId();
+            try {
+                rotationDelta = userComment.getRotationDelta();
+            } catch (NumberFormatException e) {
+                // The digest still identifies the version of the picture
+            }
+        }
+        return new DocumentKey(contentId, rotationDelta, digest(jpeg));
+    }
+
+    DocumentKey(@Nullable final String contentId, final int rotationDelta,
+            @NonNull final String jpegDigest) {
+        mContentId = contentId;
+        mRotationDelta = rotationDelta;
+        mJpegDigest = jpegDigest;
+    }
+
+    /**
+     * @return the id of the picture's content or {@code null}, if the JPEG wasn't created by the Gini Vision Library
+     */
+    @Nullable
+    public String getContentId() {
+        return mContentId;
+    }
+
+    /**
+     * @return the degrees by which the picture was rotated after it was taken
+     */
+    public int getRotationDelta() {
+        return mRotationDelta;
+    }
+
+    /**
+     * @return the SHA-256 digest of the JPEG as a lowercase hexadecimal string
+     */
+    @NonNull
+    public String getJpegDigest() {
+        return mJpegDigest;
+    }
+
+    /**
+     * <p>
+     *     The key as a string containing only letters, digits, dashes and underscores, for example to use it as a file
+     *     name.
+     * </p>
+     *
+     * @return the key as a string
+     */
+    @NonNull
+    public String asString() {
+        return (mContentId != null ? mContentId : "") + "_" + mRotationDelta + "_" + mJpegDigest;
+    }
+
+    @NonNull
+    private static String digest(@NonNull final byte[] jpeg) {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        final byte[] digest = messageDigest.digest(jpeg);
+        final char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final DocumentKey that = (DocumentKey) o;
+        if (mRotationDelta != that.mRotationDelta) {
+            return false;
+        }
+        if (mContentId != null ? !mContentId.equals(that.mContentId) : that.mContentId != null) {
+            return false;
+        }
+        return mJpegDigest.equals(that.mJpegDigest);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mContentId != null ? mContentId.hashCode() : 0;
+        result = 31 * result + mRotationDelta;
+        result = 31 * result + mJpegDigest.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentKey{"
+                + "contentId='" + mContentId + '\''
+                + ", rotationDelta=" + mRotationDelta
+                + ", jpegDigest='" + mJpegDigest + '\''
+                + '}';
+    }
+}
@@ -1,13 +1,17 @@
 package net.gini.android.vision;
 
 import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
-import net.gini.android.vision.internal.camera.photo.Photo;
+import net.gini.android.vision.internal.camera.photo.ImageCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Date;
 
 /**
@@ -26,6 +30,10 @@ import java.util.Date;
  *         <li>
  *          The reviewed jpegs are written to a folder called {@code ginivisionlib} in your app's external directory.
  *         </li>
+ *         <li>
+ *          Images which were passed between the screens but not picked up again are logged with the stack trace
+ *          showing where they were stored.
+ *         </li>
  *     </ul>
  * </p>
  */
@@ -42,6 +50,7 @@ public final class GiniVisionDebug {
      */
     public static void enable() {
         sEnabled = true;
+        ImageCache.getInstance().setTrackStoreOrigins(true);
     }
 
     /**
@@ -51,6 +60,7 @@ public final class GiniVisionDebug {
      */
     public static void disable() {
         sEnabled = false;
+        ImageCache.getInstance().setTrackStoreOrigins(false);
     }
 
     /**
@@ -72,8 +82,62 @@ public final class GiniVisionDebug {
         long time = new Date().getTime();
         String jpegFilename = time + suffix + ".jpeg";
         File jpegFile = new File(giniVisionDir, jpegFilename);
-        Photo.fromDocument(document).saveJpegToFile(jpegFile);
-        LOG.debug("Document written to {}", jpegFile.getAbsolutePath());
+        try {
+            final FileOutputStream outputStream = new FileOutputStream(jpegFile);
+            try {
+                document.writeTo(outputStream);
+            } finally {
+                outputStream.close();
+            }
+            LOG.debug("Document written to {}", jpegFile.getAbsolutePath());
+        } catch (IOException e) {
+            LOG.error("Could not write document to {}", jpegFile.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets a listener which is notified when an image passed between the Gini Vision Library's
+     *     screens was not picked up again. This happens, for example, if an activity is destroyed
+     *     after its state was saved and is not recreated.
+     * </p>
+     * <p>
+     *     Leaked images are moved out of memory and reported regardless of whether debugging is
+     *     enabled.
+     * </p>
+     *
+     * @param listener a listener or {@code null} to remove the current one
+     */
+    public static void setImageLeakListener(final ImageLeakListener listener) {
+        if (listener == null) {
+            ImageCache.getInstance().setLeakListener(null);
+            return;
+        }
+        ImageCache.getInstance().setLeakListener(new ImageCache.LeakListener() {
+            @Override
+            public void onTokenLeaked(@NonNull final ImageCache.Token token, final long ageMillis,
+                    final long sizeInBytes, @Nullable final Throwable storeOrigin) {
+                listener.onImageLeaked(ageMillis, sizeInBytes);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     *     Interface for receiving notifications about leaked images.
+     * </p>
+     */
+    public interface ImageLeakListener {
+
+        /**
+         * <p>
+         *     Called when an image was not picked up within a few minutes after it was stored.
+         * </p>
+         *
+         * @param ageMillis   milliseconds since the image was stored
+         * @param sizeInBytes size of the image
+         */
+        void onImageLeaked(long ageMillis, long sizeInBytes);
     }
 
     private static File createGiniVisionDir(Context context) {
@@ -0,0 +1,67 @@
+package net.gini.android.vision;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.gini.android.vision.internal.metrics.CaptureTrace;
+
+/**
+ * <p>
+ * This class allows you to receive performance metrics from the Gini Vision Library, for example to
+ * send them to your own telemetry.
+ * </p>
+ * <p>
+ * No metrics are recorded while no listener is set.
+ * </p>
+ */
+public final class GiniVisionMetrics {
+
+    /**
+     * <p>
+     *     Sets a listener which receives the {@link CaptureLatency} of every picture shown on the
+     *     Review Screen.
+     * </p>
+     * <p>
+     *     Pictures for which taking or showing failed are not reported.
+     * </p>
+     *
+     * @param listener a listener or {@code null} to remove the current one
+     */
+    public static void setCaptureLatencyListener(
+            @Nullable final CaptureLatencyListener listener) {
+        if (listener == null) {
+            CaptureTrace.setListener(null);
+            return;
+        }
+        CaptureTrace.setListener(new CaptureTrace.Listener() {
+            @Override
+            public void onTraceFinished(final long startNanos, final long endNanos,
+                    @NonNull final long[] phaseStartNanos, @NonNull final long[] phaseEndNanos) {
+                listener.onCaptureLatencyMeasured(
+                        new CaptureLatency(startNanos, endNanos, phaseStartNanos,
+                                phaseEndNanos));
+            }
+        });
+    }
+
+    /**
+     * <p>
+     *     Interface for receiving the latency of taking pictures.
+     * </p>
+     */
+    public interface CaptureLatencyListener {
+
+        /**
+         * <p>
+         *     Called on the main thread when the Review Screen showed the picture. Keep it short,
+         *     the Review Screen is being displayed.
+         * </p>
+         *
+         * @param latency the timestamps of the phases
+         */
+        void onCaptureLatencyMeasured(@NonNull CaptureLatency latency);
+    }
+
+    private GiniVisionMetrics() {
+    }
+}
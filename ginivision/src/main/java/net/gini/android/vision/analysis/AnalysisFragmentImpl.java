@@ -1,5 +1,6 @@
 package net.gini.android.vision.analysis;
 
+import android.app.Activity;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -16,6 +17,7 @@ import android.widget.RelativeLayout;
 import net.gini.android.vision.Document;
 import net.gini.android.vision.GiniVisionError;
 import net.gini.android.vision.R;
+import net.gini.android.vision.internal.camera.photo.ImageCache;
 import net.gini.android.vision.internal.camera.photo.Photo;
 import net.gini.android.vision.internal.ui.ErrorSnackbar;
 import net.gini.android.vision.internal.ui.FragmentImplCallback;
@@ -33,6 +35,7 @@ class AnalysisFragmentImpl implements AnalysisFragmentInterface {
     };
 
     private final FragmentImplCallback mFragment;
+    private final Document mDocument;
     private Photo mPhoto;
     private final String mDocumentAnalysisErrorMessage;
 
@@ -44,6 +47,7 @@ class AnalysisFragmentImpl implements AnalysisFragmentInterface {
 
     public AnalysisFragmentImpl(FragmentImplCallback fragment, Document document, String documentAnalysisErrorMessage) {
         mFragment = fragment;
+        mDocument = document;
         mPhoto = Photo.fromDocument(document);
         mDocumentAnalysisErrorMessage = documentAnalysisErrorMessage;
     }
@@ -67,6 +71,9 @@ class AnalysisFragmentImpl implements AnalysisFragmentInterface {
     }
 
     public void onCreate(Bundle savedInstanceState) {
+        if (mFragment.getActivity() != null) {
+            ImageCache.getInstance().init(mFragment.getActivity());
+        }
     }
 
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -141,8 +148,27 @@ class AnalysisFragmentImpl implements AnalysisFragmentInterface {
     }
 
     public void onDestroy() {
+        releasePreview();
         mPhoto = null;
         stopScanAnimation();
+        releaseCachedDocument();
+    }
+
+    private void releaseCachedDocument() {
+        final Activity activity = mFragment.getActivity();
+        if (activity == null || activity.isFinishing()) {
+            // The fragment's arguments won't be restored anymore
+            mDocument.close();
+        }
+    }
+
+    private void releasePreview() {
+        if (mImageDocument != null) {
+            mImageDocument.setImageBitmap(null);
+        }
+        if (mPhoto != null) {
+            mPhoto.releaseBitmapPreview();
+        }
     }
 
     @Override
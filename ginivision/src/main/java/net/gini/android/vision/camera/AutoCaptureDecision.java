@@ -0,0 +1,104 @@
+package net.gini.android.vision.camera;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ *     The automatic capture's decision for an analysed camera preview frame.
+ * </p>
+ * <p>
+ *     A picture is taken automatically once the required number of consecutive preview frames were
+ *     sharp, the focus settled and the camera didn't move.
+ * </p>
+ */
+public final class AutoCaptureDecision {
+
+    /**
+     * <p>
+     *     The outcome of the analysis of a preview frame.
+     * </p>
+     */
+    public enum Result {
+        /**
+         * The preview frame is too blurry.
+         */
+        NOT_SHARP,
+        /**
+         * The sharpness is still changing, the camera is focusing.
+         */
+        FOCUSING,
+        /**
+         * The camera or the document moves.
+         */
+        MOVING,
+        /**
+         * The preview frame is stable, but not enough consecutive frames were stable yet.
+         */
+        STABILIZING,
+        /**
+         * Enough consecutive preview frames were stable and a picture is taken.
+         */
+        CAPTURE
+    }
+
+    private final Result mResult;
+    private final float mSharpness;
+    private final float mMotion;
+    private final int mStableFrames;
+    private final int mRequiredStableFrames;
+
+    AutoCaptureDecision(@NonNull final Result result, final float sharpness, final float motion,
+            final int stableFrames, final int requiredStableFrames) {
+        mResult = result;
+        mSharpness = sharpness;
+        mMotion = motion;
+        mStableFrames = stableFrames;
+        mRequiredStableFrames = requiredStableFrames;
+    }
+
+    /**
+     * @return the outcome of the analysis
+     */
+    @NonNull
+    public Result getResult() {
+        return mResult;
+    }
+
+    /**
+     * @return the gradient energy of the preview frame, higher values mean sharper frames
+     */
+    public float getSharpness() {
+        return mSharpness;
+    }
+
+    /**
+     * @return the mean luminance difference (0 to 255) to the previous preview frame or {@link
+     * Float#NaN}, if it was the first analysed frame
+     */
+    public float getMotion() {
+        return mMotion;
+    }
+
+    /**
+     * @return the number of consecutive stable preview frames
+     */
+    public int getStableFrames() {
+        return mStableFrames;
+    }
+
+    /**
+     * @return the number of consecutive stable preview frames required to take a picture
+     */
+    public int getRequiredStableFrames() {
+        return mRequiredStableFrames;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "AutoCaptureDecision{result=%s, sharpness=%.1f, motion=%.2f, stable=%d/%d}",
+                mResult, mSharpness, mMotion, mStableFrames, mRequiredStableFrames);
+    }
+}
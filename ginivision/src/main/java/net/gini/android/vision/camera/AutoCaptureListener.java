@@ -0,0 +1,25 @@
+package net.gini.android.vision.camera;
+
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ *     Interface used by {@link CameraFragmentStandard} and {@link CameraFragmentCompat} to report
+ *     the decisions of the automatic capture.
+ * </p>
+ * <p>
+ *     Can be used to show hints to the user (for example to hold the device still) or to tune the
+ *     required number of stable frames.
+ * </p>
+ */
+public interface AutoCaptureListener {
+    /**
+     * <p>
+     *     Called on the main thread for analysed camera preview frames while the automatic capture
+     *     is enabled. If the main thread is busy, decisions for older frames are skipped.
+     * </p>
+     *
+     * @param decision the decision for the latest analysed preview frame
+     */
+    void onAutoCaptureDecision(@NonNull AutoCaptureDecision decision);
+}
@@ -16,6 +16,7 @@ import net.gini.android.vision.GiniVisionCoordinator;
 import net.gini.android.vision.GiniVisionError;
 import net.gini.android.vision.R;
 import net.gini.android.vision.analysis.AnalysisActivity;
+import net.gini.android.vision.internal.camera.detection.AutoCaptureTrigger;
 import net.gini.android.vision.onboarding.OnboardingActivity;
 import net.gini.android.vision.onboarding.OnboardingPage;
 import net.gini.android.vision.review.ReviewActivity;
@@ -49,6 +50,9 @@ import java.util.ArrayList;
  *         <li>{@link CameraActivity#EXTRA_IN_SHOW_ONBOARDING} - if set to {@code true} the Onboarding Screen is shown when the Gini Vision Library is started</li>
  *         <li>{@link CameraActivity#EXTRA_IN_ONBOARDING_PAGES} - custom pages for the Onboarding Screen as an {@link ArrayList} containing {@link OnboardingPage} objects</li>
  *         <li>{@link CameraActivity#EXTRA_IN_BACK_BUTTON_SHOULD_CLOSE_LIBRARY} - if set to {@code true} the back button closes the Gini Vision Library from any of its activities with result code {@link CameraActivity#RESULT_CANCELED}</li>
+ *         <li>{@link CameraActivity#EXTRA_IN_AUTO_CAPTURE} - if set to {@code true} a picture is taken automatically once the document is held still and in focus</li>
+ *         <li>{@link CameraActivity#EXTRA_IN_AUTO_CAPTURE_STABLE_FRAMES} - the number of consecutive stable camera preview frames required to take a picture automatically</li>
+ *         <li>{@link CameraActivity#EXTRA_IN_RETAIN_CAMERA} - if set to {@code true} the camera is kept open while the Review Screen is shown, so retaking a picture doesn't have to open the camera again</li>
  *     </ul>
  * </p>
  * <p>
@@ -69,6 +73,9 @@ import java.util.ArrayList;
  *     <b>Note:</b> For returning the extractions from the Gini API you can add your own extras in {@link ReviewActivity#onAddDataToResult(Intent)} or {@link AnalysisActivity#onAddDataToResult(Intent)}.
  * </p>
  * <p>
+ *     If automatic capture is enabled, you can observe its decisions by overriding {@link CameraActivity#onAutoCaptureDecision(AutoCaptureDecision)} in a subclass.
+ * </p>
+ * <p>
  *     If the camera could not be opened due to missing permissions, the content of the Camera Screen is replaced with a no-camera icon, a short message and an optional button. The button is shown only on Android 6.0+ and tapping the button leads the user to the Application Details page in the Settings. If these are shown on Android 5.0 and earlier means that the camera permission was not declared in your manifest.
  * </p>
  *
@@ -84,6 +91,9 @@ import java.util.ArrayList;
  *             <b>Document corner guides:</b> via images for mdpi, hdpi, xhdpi, xxhdpi, xxxhdpi named {@code gv_camera_preview_corners.png}
  *         </li>
  *         <li>
+ *             <b>Document outline:</b> shown instead of the corner guides while a document is detected in the camera preview, via the color resource named {@code gv_camera_document_outline} and the dimension resource named {@code gv_camera_document_outline_width}
+ *         </li>
+ *         <li>
  *             <b>Camera trigger button:</b> via images for mdpi, hdpi, xhdpi, xxhdpi, xxxhdpi named {@code gv_camera_trigger_default.png} and {@code gv_camera_trigger_pressed.png}
  *         </li>
  *         <li>
@@ -158,7 +168,7 @@ import java.util.ArrayList;
  *     </ul>
  * </p>
  */
-public class CameraActivity extends AppCompatActivity implements CameraFragmentListener {
+public class CameraActivity extends AppCompatActivity implements CameraFragmentListener, AutoCaptureListener {
 
     /**
      * <p>
@@ -213,6 +223,36 @@ public class CameraActivity extends AppCompatActivity implements CameraFragmentL
      */
     public static final String EXTRA_IN_BACK_BUTTON_SHOULD_CLOSE_LIBRARY = "GV_EXTRA_IN_BACK_BUTTON_SHOULD_CLOSE_LIBRARY";
 
+    /**
+     * <p>
+     *     Optional extra which must contain a boolean and indicates whether a picture should be taken automatically once the document is held still and in focus. The camera trigger button can still be used.
+     * </p>
+     * <p>
+     *     Default value is {@code false}.
+     * </p>
+     */
+    public static final String EXTRA_IN_AUTO_CAPTURE = "GV_EXTRA_IN_AUTO_CAPTURE";
+
+    /**
+     * <p>
+     *     Optional extra which must contain an int and sets how many consecutive stable camera preview frames are required to take a picture automatically. Used only if {@link CameraActivity#EXTRA_IN_AUTO_CAPTURE} is {@code true}.
+     * </p>
+     * <p>
+     *     Default value is {@code 10}.
+     * </p>
+     */
+    public static final String EXTRA_IN_AUTO_CAPTURE_STABLE_FRAMES = "GV_EXTRA_IN_AUTO_CAPTURE_STABLE_FRAMES";
+
+    /**
+     * <p>
+     *     Optional extra which must contain a boolean and indicates whether the camera should be kept open while the other screens of the Gini Vision Library are shown. Returning to the Camera Screen, for example to retake a picture, then only restarts the camera preview. See {@link CameraFragmentInterface#enableCameraRetention()} for details.
+     * </p>
+     * <p>
+     *     Default value is {@code false}.
+     * </p>
+     */
+    public static final String EXTRA_IN_RETAIN_CAMERA = "GV_EXTRA_IN_RETAIN_CAMERA";
+
     /**
      * <p>
      *     Returned when the result code is {@link CameraActivity#RESULT_ERROR} and contains a {@link GiniVisionError} object detailing what went wrong.
@@ -238,6 +278,9 @@ public class CameraActivity extends AppCompatActivity implements CameraFragmentL
     private boolean mShowOnboardingAtFirstRun = true;
     private boolean mOnboardingShown = false;
     private boolean mBackButtonShouldCloseLibrary = false;
+    private boolean mAutoCapture = false;
+    private int mAutoCaptureStableFrames = AutoCaptureTrigger.DEFAULT_STABLE_FRAMES;
+    private boolean mRetainCamera = false;
     private GiniVisionCoordinator mGiniVisionCoordinator;
     private Document mDocument;
 
@@ -285,6 +328,8 @@ public class CameraActivity extends AppCompatActivity implements CameraFragmentL
         readExtras();
         createGiniVisionCoordinator();
         bindViews();
+        setUpAutoCapture();
+        setUpCameraRetention();
         showOnboardingIfRequested();
     }
 
@@ -299,6 +344,21 @@ public class CameraActivity extends AppCompatActivity implements CameraFragmentL
         mFragment = (CameraFragmentCompat) getSupportFragmentManager().findFragmentById(R.id.gv_fragment_camera);
     }
 
+    private void setUpAutoCapture() {
+        if (!mAutoCapture) {
+            return;
+        }
+        mFragment.setAutoCaptureStableFrames(mAutoCaptureStableFrames);
+        mFragment.setAutoCaptureListener(this);
+        mFragment.enableAutoCapture();
+    }
+
+    private void setUpCameraRetention() {
+        if (mRetainCamera) {
+            mFragment.enableCameraRetention();
+        }
+    }
+
     @Override
     protected void onStart() {
         super.onStart();
@@ -324,6 +384,10 @@ public class CameraActivity extends AppCompatActivity implements CameraFragmentL
             mShowOnboarding = extras.getBoolean(EXTRA_IN_SHOW_ONBOARDING, false);
             mShowOnboardingAtFirstRun = extras.getBoolean(EXTRA_IN_SHOW_ONBOARDING_AT_FIRST_RUN, true);
             mBackButtonShouldCloseLibrary = extras.getBoolean(EXTRA_IN_BACK_BUTTON_SHOULD_CLOSE_LIBRARY, false);
+            mAutoCapture = extras.getBoolean(EXTRA_IN_AUTO_CAPTURE, false);
+            mAutoCaptureStableFrames = extras.getInt(EXTRA_IN_AUTO_CAPTURE_STABLE_FRAMES,
+                    AutoCaptureTrigger.DEFAULT_STABLE_FRAMES);
+            mRetainCamera = extras.getBoolean(EXTRA_IN_RETAIN_CAMERA, false);
         }
         checkRequiredExtras();
     }
@@ -335,6 +399,9 @@ public class CameraActivity extends AppCompatActivity implements CameraFragmentL
         if (mAnalyzeDocumentActivityIntent == null) {
             throw new IllegalStateException("CameraActivity requires an AnalyzeDocumentActivity class. Call setAnalyzeDocumentActivityExtra() to set it.");
         }
+        if (mAutoCaptureStableFrames < 1) {
+            throw new IllegalStateException("CameraActivity requires at least one stable frame for the automatic capture. Check the EXTRA_IN_AUTO_CAPTURE_STABLE_FRAMES extra.");
+        }
     }
 
     private void createGiniVisionCoordinator() {
@@ -394,6 +461,20 @@ public class CameraActivity extends AppCompatActivity implements CameraFragmentL
         startActivityForResult(mReviewDocumentActivityIntent, REVIEW_DOCUMENT_REQUEST);
     }
 
+    /**
+     * <p>
+     *     Called on the main thread with the decisions of the automatic capture, if it was enabled with {@link CameraActivity#EXTRA_IN_AUTO_CAPTURE}.
+     * </p>
+     * <p>
+     *     Override this method in a subclass to observe the decisions. The default implementation does nothing.
+     * </p>
+     *
+     * @param decision the decision for the latest analysed camera preview frame
+     */
+    @Override
+    public void onAutoCaptureDecision(@NonNull AutoCaptureDecision decision) {
+    }
+
     @Override
     public void onError(@NonNull GiniVisionError error) {
         Intent result = new Intent();
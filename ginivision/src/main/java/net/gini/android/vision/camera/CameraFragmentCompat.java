@@ -2,6 +2,7 @@ package net.gini.android.vision.camera;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.view.LayoutInflater;
@@ -78,6 +79,15 @@ public class CameraFragmentCompat extends Fragment implements CameraFragmentInte
         mFragmentImpl.onStop();
     }
 
+    /**
+     * @exclude
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mFragmentImpl.onDestroy();
+    }
+
     @Override
     public void showDocumentCornerGuides() {
         mFragmentImpl.showDocumentCornerGuides();
@@ -97,4 +107,40 @@ public class CameraFragmentCompat extends Fragment implements CameraFragmentInte
     public void hideCameraTriggerButton() {
         mFragmentImpl.hideCameraTriggerButton();
     }
+
+    @NonNull
+    @Override
+    public PreviewFrameStatistics getPreviewFrameStatistics() {
+        return mFragmentImpl.getPreviewFrameStatistics();
+    }
+
+    @Override
+    public void enableAutoCapture() {
+        mFragmentImpl.enableAutoCapture();
+    }
+
+    @Override
+    public void disableAutoCapture() {
+        mFragmentImpl.disableAutoCapture();
+    }
+
+    @Override
+    public void setAutoCaptureStableFrames(final int frameCount) {
+        mFragmentImpl.setAutoCaptureStableFrames(frameCount);
+    }
+
+    @Override
+    public void setAutoCaptureListener(@Nullable final AutoCaptureListener listener) {
+        mFragmentImpl.setAutoCaptureListener(listener);
+    }
+
+    @Override
+    public void enableCameraRetention() {
+        mFragmentImpl.enableCameraRetention();
+    }
+
+    @Override
+    public void disableCameraRetention() {
+        mFragmentImpl.disableCameraRetention();
+    }
 }
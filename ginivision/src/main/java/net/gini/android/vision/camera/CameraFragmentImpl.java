@@ -24,22 +24,36 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 
+import net.gini.android.vision.CaptureLatency.Phase;
 import net.gini.android.vision.Document;
 import net.gini.android.vision.GiniVisionError;
 import net.gini.android.vision.R;
-import net.gini.android.vision.internal.camera.api.CameraController;
+import net.gini.android.vision.analysis.AnalysisActivity;
+import net.gini.android.vision.internal.camera.api.CameraControllerFactory;
 import net.gini.android.vision.internal.camera.api.CameraException;
 import net.gini.android.vision.internal.camera.api.CameraInterface;
+import net.gini.android.vision.internal.camera.api.CameraRetention;
+import net.gini.android.vision.internal.camera.api.PreviewFramePipeline;
 import net.gini.android.vision.internal.camera.api.UIExecutor;
+import net.gini.android.vision.internal.camera.detection.AutoCaptureTrigger;
+import net.gini.android.vision.internal.camera.detection.DocumentTracker;
+import net.gini.android.vision.internal.camera.detection.Quadrilateral;
+import net.gini.android.vision.internal.camera.photo.ImageCache;
 import net.gini.android.vision.internal.camera.photo.Photo;
 import net.gini.android.vision.internal.camera.view.CameraPreviewSurface;
+import net.gini.android.vision.internal.camera.view.DocumentCornersView;
+import net.gini.android.vision.internal.metrics.CaptureTrace;
 import net.gini.android.vision.internal.ui.FragmentImplCallback;
 import net.gini.android.vision.internal.ui.ViewStubSafeInflater;
+import net.gini.android.vision.onboarding.OnboardingActivity;
+import net.gini.android.vision.review.ReviewActivity;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import jersey.repackaged.jsr166e.CompletableFuture;
 
@@ -60,12 +74,12 @@ class CameraFragmentImpl implements CameraFragmentInterface {
     private final FragmentImplCallback mFragment;
     private CameraFragmentListener mListener = NO_OP_LISTENER;
     private final UIExecutor mUIExecutor = new UIExecutor();
-    private CameraController mCameraController;
+    private CameraInterface mCameraController;
 
     private RelativeLayout mLayoutRoot;
     private CameraPreviewSurface mCameraPreview;
     private ImageView mCameraFocusIndicator;
-    private ImageView mImageCorners;
+    private DocumentCornersView mImageCorners;
     private ImageButton mButtonCameraTrigger;
     private LinearLayout mLayoutNoPermission;
 
@@ -74,6 +88,107 @@ class CameraFragmentImpl implements CameraFragmentInterface {
     private CompletableFuture<SurfaceHolder> mSurfaceCreatedFuture = new CompletableFuture<>();
     private boolean mIsTakingPicture = false;
 
+    private final DocumentTracker mDocumentTracker = new DocumentTracker();
+    // The latest tracked document, guarded by itself
+    private final Quadrilateral mTrackedDocument = new Quadrilateral();
+    private boolean mDocumentTracked = false;
+    private final AtomicBoolean mDocumentUpdatePosted = new AtomicBoolean();
+
+    private final Runnable mUpdateDocumentCorners = new Runnable() {
+        @Override
+        public void run() {
+            mDocumentUpdatePosted.set(false);
+            synchronized (mTrackedDocument) {
+                mImageCorners.setDocument(mDocumentTracked ? mTrackedDocument : null);
+            }
+        }
+    };
+
+    private final DocumentTracker.Listener mDocumentTrackerListener =
+            new DocumentTracker.Listener() {
+                @Override
+                public void onDocumentTracked(@NonNull final Quadrilateral document) {
+                    synchronized (mTrackedDocument) {
+                        mTrackedDocument.set(document);
+                        mDocumentTracked = true;
+                    }
+                    postDocumentCornersUpdate();
+                }
+
+                @Override
+                public void onDocumentLost() {
+                    synchronized (mTrackedDocument) {
+                        mDocumentTracked = false;
+                    }
+                    postDocumentCornersUpdate();
+                }
+            };
+
+    private final AutoCaptureTrigger mAutoCaptureTrigger = new AutoCaptureTrigger();
+    private boolean mAutoCaptureEnabled = false;
+    private boolean mAutoCaptureRunning = false;
+    private volatile AutoCaptureListener mAutoCaptureListener;
+    // Only the latest decision is posted to the UI thread
+    private final AtomicReference<AutoCaptureDecision> mAutoCaptureDecision =
+            new AtomicReference<>();
+
+    // Keeps the camera open while stopped, if enabled
+    private CameraRetention mCameraRetention;
+
+    private final Runnable mReleaseRetainedCamera = new Runnable() {
+        @Override
+        public void run() {
+            if (mCameraController != null) {
+                mCameraController.close();
+            }
+        }
+    };
+
+    private final Runnable mTakePictureAutomatically = new Runnable() {
+        @Override
+        public void run() {
+            if (!mAutoCaptureRunning) {
+                return;
+            }
+            if (!mButtonCameraTrigger.isEnabled()) {
+                LOG.info("Will not take picture automatically: camera trigger button is hidden");
+                mAutoCaptureTrigger.arm();
+                return;
+            }
+            LOG.info("Taking picture automatically");
+            if (!takePicture()) {
+                mAutoCaptureTrigger.arm();
+            }
+        }
+    };
+
+    private final Runnable mNotifyAutoCaptureDecision = new Runnable() {
+        @Override
+        public void run() {
+            final AutoCaptureDecision decision = mAutoCaptureDecision.getAndSet(null);
+            final AutoCaptureListener listener = mAutoCaptureListener;
+            if (decision != null && listener != null) {
+                listener.onAutoCaptureDecision(decision);
+            }
+        }
+    };
+
+    private final AutoCaptureTrigger.Listener mAutoCaptureTriggerListener =
+            new AutoCaptureTrigger.Listener() {
+                @Override
+                public void onDecision(@NonNull final AutoCaptureTrigger.Decision decision,
+                        final float sharpness, final float motion, final int stableFrames) {
+                    if (mAutoCaptureListener != null) {
+                        postAutoCaptureDecision(new AutoCaptureDecision(
+                                toAutoCaptureResult(decision), sharpness, motion, stableFrames,
+                                mAutoCaptureTrigger.getRequiredStableFrames()));
+                    }
+                    if (decision == AutoCaptureTrigger.Decision.CAPTURE) {
+                        mUIExecutor.runOnUiThread(mTakePictureAutomatically);
+                    }
+                }
+            };
+
     CameraFragmentImpl(@NonNull FragmentImplCallback fragment) {
         mFragment = fragment;
     }
@@ -99,7 +214,15 @@ class CameraFragmentImpl implements CameraFragmentInterface {
         if (mFragment.getActivity() == null) {
             return;
         }
+        ImageCache.getInstance().init(mFragment.getActivity());
         initCameraController(mFragment.getActivity());
+        if (mCameraRetention != null) {
+            mCameraRetention.register(mFragment.getActivity().getApplication(),
+                    mFragment.getActivity());
+            if (mCameraRetention.onCameraStarted()) {
+                LOG.info("Reusing the retained camera");
+            }
+        }
 
         final CompletableFuture<Void> openCameraCompletable = openCamera();
         final CompletableFuture<SurfaceHolder> surfaceCreationCompletable = handleSurfaceCreation();
@@ -118,6 +241,10 @@ class CameraFragmentImpl implements CameraFragmentInterface {
                                 mCameraPreview.setPreviewSize(mCameraController.getPreviewSize());
                                 startPreview(surfaceHolder);
                                 enableTapToFocus();
+                                startDocumentTracking();
+                                if (mAutoCaptureEnabled) {
+                                    startAutoCapture();
+                                }
                             } else {
                                 handleError(GiniVisionError.ErrorCode.CAMERA_NO_PREVIEW,
                                         "Cannot start preview: no SurfaceHolder received for SurfaceView", null);
@@ -143,6 +270,95 @@ class CameraFragmentImpl implements CameraFragmentInterface {
                 });
     }
 
+    private void startDocumentTracking() {
+        mDocumentTracker.setListener(mDocumentTrackerListener);
+        mCameraController.addPreviewFrameProcessor(mDocumentTracker);
+    }
+
+    private void stopDocumentTracking() {
+        mCameraController.removePreviewFrameProcessor(mDocumentTracker);
+        mDocumentTracker.setListener(null);
+        synchronized (mTrackedDocument) {
+            mDocumentTracked = false;
+        }
+        mImageCorners.setDocument(null);
+    }
+
+    public void enableAutoCapture() {
+        mAutoCaptureEnabled = true;
+        if (mCameraController != null && mCameraController.isPreviewRunning()) {
+            startAutoCapture();
+        }
+    }
+
+    public void disableAutoCapture() {
+        mAutoCaptureEnabled = false;
+        stopAutoCapture();
+    }
+
+    public void setAutoCaptureStableFrames(final int frameCount) {
+        mAutoCaptureTrigger.setRequiredStableFrames(frameCount);
+    }
+
+    public void setAutoCaptureListener(@Nullable final AutoCaptureListener listener) {
+        mAutoCaptureListener = listener;
+    }
+
+    private void startAutoCapture() {
+        if (mAutoCaptureRunning) {
+            return;
+        }
+        LOG.info("Starting automatic capture");
+        mAutoCaptureRunning = true;
+        mAutoCaptureTrigger.arm();
+        mAutoCaptureTrigger.setListener(mAutoCaptureTriggerListener);
+        mCameraController.addPreviewFrameProcessor(mAutoCaptureTrigger);
+    }
+
+    private void stopAutoCapture() {
+        if (!mAutoCaptureRunning) {
+            return;
+        }
+        LOG.info("Stopping automatic capture");
+        mAutoCaptureRunning = false;
+        mCameraController.removePreviewFrameProcessor(mAutoCaptureTrigger);
+        mAutoCaptureTrigger.setListener(null);
+    }
+
+    private void postAutoCaptureDecision(@NonNull final AutoCaptureDecision decision) {
+        if (mAutoCaptureDecision.getAndSet(decision) == null) {
+            mUIExecutor.runOnUiThread(mNotifyAutoCaptureDecision);
+        }
+    }
+
+    @NonNull
+    private static AutoCaptureDecision.Result toAutoCaptureResult(
+            @NonNull final AutoCaptureTrigger.Decision decision) {
+        switch (decision) {
+            case NOT_SHARP:
+                return AutoCaptureDecision.Result.NOT_SHARP;
+            case FOCUSING:
+                return AutoCaptureDecision.Result.FOCUSING;
+            case MOVING:
+                return AutoCaptureDecision.Result.MOVING;
+            case STABILIZING:
+                return AutoCaptureDecision.Result.STABILIZING;
+            case CAPTURE:
+                return AutoCaptureDecision.Result.CAPTURE;
+            default:
+                throw new IllegalArgumentException("Unknown decision: " + decision);
+        }
+    }
+
+    /**
+     * Only one update is posted at a time, the UI shows the latest tracked document.
+     */
+    private void postDocumentCornersUpdate() {
+        if (mDocumentUpdatePosted.compareAndSet(false, true)) {
+            mUIExecutor.runOnUiThread(mUpdateDocumentCorners);
+        }
+    }
+
     private void enableTapToFocus() {
         mCameraController.enableTapToFocus(mCameraPreview, new CameraInterface.TapToFocusListener() {
             @Override
@@ -219,22 +435,57 @@ class CameraFragmentImpl implements CameraFragmentInterface {
     }
 
     public void onStop() {
-        closeCamera();
+        if (mCameraRetention != null) {
+            LOG.info("Retaining camera");
+            stopCamera();
+            mCameraRetention.onCameraStopped();
+        } else {
+            closeCamera();
+        }
+    }
+
+    public void onDestroy() {
+        if (mCameraRetention != null) {
+            mCameraRetention.unregister();
+        }
+    }
+
+    public void enableCameraRetention() {
+        if (mCameraRetention != null) {
+            return;
+        }
+        mCameraRetention = new CameraRetention(mReleaseRetainedCamera,
+                CameraRetention.DEFAULT_GRACE_PERIOD_MS, CameraActivity.class,
+                ReviewActivity.class, AnalysisActivity.class, OnboardingActivity.class);
+    }
+
+    public void disableCameraRetention() {
+        if (mCameraRetention == null) {
+            return;
+        }
+        mCameraRetention.unregister();
+        mCameraRetention = null;
     }
 
     private void closeCamera() {
         LOG.info("Closing camera");
-        mCameraController.disableTapToFocus(mCameraPreview);
-        mCameraController.stopPreview();
+        stopCamera();
         mCameraController.close();
         LOG.info("Camera closed");
     }
 
+    private void stopCamera() {
+        stopDocumentTracking();
+        stopAutoCapture();
+        mCameraController.disableTapToFocus(mCameraPreview);
+        mCameraController.stopPreview();
+    }
+
     private void bindViews(View view) {
         mLayoutRoot = (RelativeLayout) view.findViewById(R.id.gv_root);
         mCameraPreview = (CameraPreviewSurface) view.findViewById(R.id.gv_camera_preview);
         mCameraFocusIndicator = (ImageView) view.findViewById(R.id.gv_camera_focus_indicator);
-        mImageCorners = (ImageView) view.findViewById(R.id.gv_image_corners);
+        mImageCorners = (DocumentCornersView) view.findViewById(R.id.gv_image_corners);
         mButtonCameraTrigger = (ImageButton) view.findViewById(R.id.gv_button_camera_trigger);
         ViewStub stubNoPermission = (ViewStub) view.findViewById(R.id.gv_stub_camera_no_permission);
         mViewStubInflater = new ViewStubSafeInflater(stubNoPermission);
@@ -245,46 +496,66 @@ class CameraFragmentImpl implements CameraFragmentInterface {
             @Override
             public void onClick(View v) {
                 LOG.info("Taking picture");
-                if (!mCameraController.isPreviewRunning()) {
-                    LOG.info("Will not take picture: preview must be running");
-                    return;
-                }
-                if (mIsTakingPicture) {
-                    LOG.info("Already taking a picture");
-                    return;
-                }
-                mIsTakingPicture = true;
-                mCameraController.takePicture()
-                        .handle(new CompletableFuture.BiFun<Photo, Throwable, Void>() {
+                takePicture();
+            }
+        });
+    }
+
+    /**
+     * @return {@code false}, if no picture is taken
+     */
+    @UiThread
+    private boolean takePicture() {
+        if (!mCameraController.isPreviewRunning()) {
+            LOG.info("Will not take picture: preview must be running");
+            return false;
+        }
+        if (mIsTakingPicture) {
+            LOG.info("Already taking a picture");
+            return false;
+        }
+        mIsTakingPicture = true;
+        CaptureTrace.start();
+        mCameraController.takePicture()
+                .handle(new CompletableFuture.BiFun<Photo, Throwable, Void>() {
+                    @Override
+                    public Void apply(final Photo photo, final Throwable throwable) {
+                        mUIExecutor.runOnUiThread(new Runnable() {
                             @Override
-                            public Void apply(final Photo photo, final Throwable throwable) {
-                                mUIExecutor.runOnUiThread(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        mIsTakingPicture = false;
-                                        callListener(photo, throwable);
-                                    }
-                                });
-                                return null;
+                            public void run() {
+                                mIsTakingPicture = false;
+                                callListener(photo, throwable);
                             }
                         });
-            }
-        });
+                        return null;
+                    }
+                });
+        return true;
     }
 
     @UiThread
     private void callListener(final Photo photo, final Throwable throwable) {
+        final CaptureTrace trace = CaptureTrace.current();
         if (throwable != null) {
+            trace.discard();
             handleError(GiniVisionError.ErrorCode.CAMERA_SHOT_FAILED, "Failed to take picture", throwable);
             mCameraController.startPreview();
+            mAutoCaptureTrigger.arm();
         } else {
             if (photo != null) {
                 LOG.info("Picture taken");
-                mListener.onDocumentAvailable(Document.fromPhoto(photo));
+                trace.beginPhase(Phase.DOCUMENT_CREATION);
+                final Document document = Document.fromPhoto(photo);
+                trace.endPhase(Phase.DOCUMENT_CREATION);
+                // Ends when the Review Screen shows the document
+                trace.beginPhase(Phase.REVIEW_START);
+                mListener.onDocumentAvailable(document);
             } else {
+                trace.discard();
                 handleError(GiniVisionError.ErrorCode.CAMERA_SHOT_FAILED,
                         "Failed to take picture: no picture from the camera", null);
                 mCameraController.startPreview();
+                mAutoCaptureTrigger.arm();
             }
         }
     }
@@ -364,6 +635,17 @@ class CameraFragmentImpl implements CameraFragmentInterface {
         mButtonCameraTrigger.setEnabled(false);
     }
 
+    @NonNull
+    @Override
+    public PreviewFrameStatistics getPreviewFrameStatistics() {
+        if (mCameraController == null) {
+            return new PreviewFrameStatistics(0, 0, 0);
+        }
+        final PreviewFramePipeline pipeline = mCameraController.getPreviewFramePipeline();
+        return new PreviewFrameStatistics(pipeline.getProcessedFrameCount(),
+                pipeline.getDroppedFrameCount(), pipeline.getProcessedFramesPerSecond());
+    }
+
     private void showNoPermissionView() {
         hideCameraPreviewAnimated();
         hideCameraTriggerButtonAnimated();
@@ -453,10 +735,10 @@ class CameraFragmentImpl implements CameraFragmentInterface {
         mFragment.startActivity(intent);
     }
 
-    private CameraController initCameraController(Activity activity) {
+    private CameraInterface initCameraController(Activity activity) {
         if (mCameraController == null) {
             LOG.debug("CameraController created");
-            mCameraController = new CameraController(activity);
+            mCameraController = CameraControllerFactory.createCameraController(activity);
         }
         return mCameraController;
     }
@@ -1,5 +1,8 @@
 package net.gini.android.vision.camera;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
 /**
  * <p>
  *     Methods which both Camera Fragments must implement.
@@ -45,4 +48,96 @@ public interface CameraFragmentInterface {
      * </p>
      */
     void hideCameraTriggerButton();
+
+    /**
+     * <p>
+     *     Call this method to get the counters of the camera preview frame analysis.
+     * </p>
+     * <p>
+     *     Can be used to monitor how many preview frames are analysed per second on a device.
+     * </p>
+     *
+     * @return the current {@link PreviewFrameStatistics}
+     */
+    @NonNull
+    PreviewFrameStatistics getPreviewFrameStatistics();
+
+    /**
+     * <p>
+     *     Call this method to take pictures automatically once the document is held still and in
+     *     focus.
+     * </p>
+     * <p>
+     *     The camera preview frames are analysed and a picture is taken when enough consecutive
+     *     frames were sharp and didn't move. The camera trigger button can still be used. No picture
+     *     is taken automatically while the camera trigger button is hidden.
+     * </p>
+     * <p>
+     *     <b>Note:</b> automatic capture is disabled by default.
+     * </p>
+     */
+    void enableAutoCapture();
+
+    /**
+     * <p>
+     *     Call this method to take pictures only with the camera trigger button.
+     * </p>
+     * <p>
+     *     <b>Note:</b> automatic capture is disabled by default.
+     * </p>
+     */
+    void disableAutoCapture();
+
+    /**
+     * <p>
+     *     Call this method to set how many consecutive stable camera preview frames are required to
+     *     take a picture automatically. Higher values avoid blurry pictures, but the user has to
+     *     hold the device still for longer.
+     * </p>
+     * <p>
+     *     <b>Note:</b> the default is 10 frames.
+     * </p>
+     *
+     * @param frameCount the number of stable preview frames, at least 1
+     * @throws IllegalArgumentException if the frame count is less than 1
+     */
+    void setAutoCaptureStableFrames(int frameCount);
+
+    /**
+     * <p>
+     *     Call this method to observe the decisions of the automatic capture.
+     * </p>
+     *
+     * @param listener an {@link AutoCaptureListener} or {@code null} to remove the listener
+     */
+    void setAutoCaptureListener(@Nullable AutoCaptureListener listener);
+
+    /**
+     * <p>
+     *     Call this method to keep the camera open while the Camera Screen is stopped, so returning
+     *     to it, for example to retake a picture from the Review Screen, only restarts the camera
+     *     preview.
+     * </p>
+     * <p>
+     *     The camera stays open while an activity of the Gini Vision Library is shown and for 10
+     *     seconds after your app left them. It is closed right away when the system is low on
+     *     memory, when your app's UI is hidden or when the Camera Fragment is destroyed. Other apps
+     *     can't use the camera while it's open.
+     * </p>
+     * <p>
+     *     <b>Note:</b> keeping the camera open is disabled by default.
+     * </p>
+     */
+    void enableCameraRetention();
+
+    /**
+     * <p>
+     *     Call this method to close the camera whenever the Camera Screen is stopped. A camera kept
+     *     open is closed right away.
+     * </p>
+     * <p>
+     *     <b>Note:</b> keeping the camera open is disabled by default.
+     * </p>
+     */
+    void disableCameraRetention();
 }
@@ -5,6 +5,7 @@ import android.app.Fragment;
 import android.content.Context;
 import android.os.Build;
 import android.os.Bundle;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -90,6 +91,15 @@ public class CameraFragmentStandard extends Fragment implements CameraFragmentIn
         mFragmentImpl.onStop();
     }
 
+    /**
+     * @exclude
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        mFragmentImpl.onDestroy();
+    }
+
     @Override
     public void showDocumentCornerGuides() {
         mFragmentImpl.showDocumentCornerGuides();
@@ -109,4 +119,40 @@ public class CameraFragmentStandard extends Fragment implements CameraFragmentIn
     public void hideCameraTriggerButton() {
         mFragmentImpl.hideCameraTriggerButton();
     }
+
+    @NonNull
+    @Override
+    public PreviewFrameStatistics getPreviewFrameStatistics() {
+        return mFragmentImpl.getPreviewFrameStatistics();
+    }
+
+    @Override
+    public void enableAutoCapture() {
+        mFragmentImpl.enableAutoCapture();
+    }
+
+    @Override
+    public void disableAutoCapture() {
+        mFragmentImpl.disableAutoCapture();
+    }
+
+    @Override
+    public void setAutoCaptureStableFrames(final int frameCount) {
+        mFragmentImpl.setAutoCaptureStableFrames(frameCount);
+    }
+
+    @Override
+    public void setAutoCaptureListener(@Nullable final AutoCaptureListener listener) {
+        mFragmentImpl.setAutoCaptureListener(listener);
+    }
+
+    @Override
+    public void enableCameraRetention() {
+        mFragmentImpl.enableCameraRetention();
+    }
+
+    @Override
+    public void disableCameraRetention() {
+        mFragmentImpl.disableCameraRetention();
+    }
 }
@@ -0,0 +1,55 @@
+package net.gini.android.vision.camera;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ *     A snapshot of the counters of the camera preview frame analysis.
+ * </p>
+ * <p>
+ *     Preview frames are analysed one at a time. While a frame is analysed only the newest
+ *     camera frame is kept and older ones are dropped, so the preview is never slowed down.
+ * </p>
+ */
+public final class PreviewFrameStatistics {
+
+    private final long mProcessedFrames;
+    private final long mDroppedFrames;
+    private final float mProcessedFramesPerSecond;
+
+    PreviewFrameStatistics(final long processedFrames, final long droppedFrames,
+            final float processedFramesPerSecond) {
+        mProcessedFrames = processedFrames;
+        mDroppedFrames = droppedFrames;
+        mProcessedFramesPerSecond = processedFramesPerSecond;
+    }
+
+    /**
+     * @return the number of analysed preview frames
+     */
+    public long getProcessedFrames() {
+        return mProcessedFrames;
+    }
+
+    /**
+     * @return the number of preview frames which were dropped because the analysis of a previous
+     * frame was still running
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * @return the average number of preview frames analysed per second
+     */
+    public float getProcessedFramesPerSecond() {
+        return mProcessedFramesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "PreviewFrameStatistics{processed=%d, dropped=%d, fps=%.1f}",
+                mProcessedFrames, mDroppedFrames, mProcessedFramesPerSecond);
+    }
+}
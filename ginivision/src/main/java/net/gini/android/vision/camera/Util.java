@@ -17,7 +17,11 @@ final class Util {
         // Here are the possible error messages:
         // https://android.googlesource.com/platform/frameworks/base/+/marshmallow-release/core/java/android/hardware/Camera.java#415
         String message = exception.getMessage();
-        if (message.equals(CAMERA_EXCEPTION_MESSAGE_NO_ACCESS)) {
+        if (exception instanceof SecurityException) {
+            // The Camera2 API reports a missing permission with a SecurityException
+            return new GiniVisionError(GiniVisionError.ErrorCode.CAMERA_NO_ACCESS, message);
+        }
+        if (CAMERA_EXCEPTION_MESSAGE_NO_ACCESS.equals(message)) {
             return new GiniVisionError(GiniVisionError.ErrorCode.CAMERA_NO_ACCESS, message);
         } else {
             return new GiniVisionError(GiniVisionError.ErrorCode.CAMERA_UNKNOWN, message);
@@ -0,0 +1,408 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.View;
+
+import net.gini.android.vision.CaptureLatency.Phase;
+import net.gini.android.vision.internal.camera.photo.CapturePipeline;
+import net.gini.android.vision.internal.camera.photo.Photo;
+import net.gini.android.vision.internal.camera.photo.Size;
+import net.gini.android.vision.internal.metrics.CaptureTrace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
+/**
+ * <p>
+ *     Controls the back-facing camera using the Camera2 API.
+ * </p>
+ * <p>
+ *     Like the {@link CameraController} the camera is used only on the {@link CameraThread} and
+ *     the returned futures are completed on the UI thread. The preview runs as a repeating request
+ *     and keeps running while pictures are taken.
+ * </p>
+ *
+ * @exclude
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class Camera2Controller implements CameraInterface {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Camera2Controller.class);
+
+    /**
+     * Half of the tap area's side relative to the sensor's shorter side.
+     */
+    private static final float FOCUS_AREA_HALF_SIZE = 0.05f;
+
+    private final Camera2Session mSession;
+    private final Handler mCameraHandler;
+    private final UIExecutor mUIExecutor = new UIExecutor();
+    private final Size mPreviewSize;
+    private final Size mPictureSize;
+    private final int mSensorOrientation;
+    private final Rect mActiveArray;
+    private final PreviewFramePipeline mFramePipeline = new PreviewFramePipeline();
+
+    Camera2Controller(@NonNull final CameraManager cameraManager, @NonNull final String cameraId,
+            @NonNull final CameraCharacteristics characteristics) {
+        mCameraHandler = CameraThread.getHandler();
+        final StreamConfigurationMap configurationMap = characteristics.get(
+                CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (configurationMap == null) {
+            throw new CameraException("No stream configurations for camera " + cameraId);
+        }
+        final PictureSizePolicy sizePolicy = PictureSizePolicy.getCurrent();
+        final Size pictureSize = sizePolicy.selectPictureSize(
+                toSizes(configurationMap.getOutputSizes(ImageFormat.JPEG)));
+        if (pictureSize == null) {
+            throw new CameraException("No jpeg output sizes for camera " + cameraId);
+        }
+        mPictureSize = pictureSize;
+        final Size previewSize = sizePolicy.selectPreviewSize(
+                toSizes(configurationMap.getOutputSizes(SurfaceHolder.class)), mPictureSize);
+        mPreviewSize = previewSize != null ? previewSize : new Size(0, 0);
+        LOG.debug("Picture size ({}, {})", mPictureSize.width, mPictureSize.height);
+        LOG.debug("Preview size ({}, {})", mPreviewSize.width, mPreviewSize.height);
+
+        final Integer sensorOrientation = characteristics.get(
+                CameraCharacteristics.SENSOR_ORIENTATION);
+        mSensorOrientation = sensorOrientation != null ? sensorOrientation : 0;
+        mActiveArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+
+        mSession = new Camera2Session(new Camera2DeviceImpl(cameraManager, cameraId,
+                characteristics, mPreviewSize, mPictureSize, mFramePipeline, mCameraHandler));
+    }
+
+    @NonNull
+    private static Size[] toSizes(@Nullable final android.util.Size[] outputSizes) {
+        if (outputSizes == null) {
+            return new Size[0];
+        }
+        final Size[] sizes = new Size[outputSizes.length];
+        for (int i = 0; i < outputSizes.length; i++) {
+            sizes[i] = new Size(outputSizes[i].getWidth(), outputSizes[i].getHeight());
+        }
+        return sizes;
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<Void> open() {
+        LOG.info("Open camera");
+        return runOnCameraThread(new SessionTask<Void>() {
+            @Override
+            public CompletableFuture<Void> run() {
+                return mSession.open();
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        LOG.info("Closing camera");
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSession.close();
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<Void> startPreview(@NonNull final SurfaceHolder surfaceHolder) {
+        LOG.info("Start preview for the given SurfaceHolder");
+        if (mPreviewSize.width > 0 && mPreviewSize.height > 0) {
+            // Otherwise the camera uses the nearest supported size
+            surfaceHolder.setFixedSize(mPreviewSize.width, mPreviewSize.height);
+        }
+        return runOnCameraThread(new SessionTask<Void>() {
+            @Override
+            public CompletableFuture<Void> run() {
+                return mSession.startPreview(surfaceHolder.getSurface());
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<Void> startPreview() {
+        LOG.info("Start preview");
+        return runOnCameraThread(new SessionTask<Void>() {
+            @Override
+            public CompletableFuture<Void> run() {
+                return mSession.startPreview();
+            }
+        });
+    }
+
+    @Override
+    public void stopPreview() {
+        LOG.info("Stop preview");
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSession.stopPreview();
+            }
+        });
+    }
+
+    @Override
+    public boolean isPreviewRunning() {
+        return mSession.isPreviewRunning();
+    }
+
+    @Override
+    public void enableTapToFocus(@NonNull final View tapView,
+            @Nullable final TapToFocusListener listener) {
+        LOG.info("Tap to focus enabled");
+        tapView.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(final View view, final MotionEvent event) {
+                if (event.getAction() != MotionEvent.ACTION_UP) {
+                    return true;
+                }
+                final float x = event.getX();
+                final float y = event.getY();
+                LOG.debug("Handling tap to focus touch at point ({}, {})", x, y);
+                if (!mSession.isOpen()) {
+                    LOG.error("Cannot focus on tap: camera not open");
+                    return false;
+                }
+                final Rect focusArea = calculateFocusArea(x, y, view.getWidth(),
+                        view.getHeight());
+                if (listener != null) {
+                    listener.onFocusing(new Point(Math.round(x), Math.round(y)));
+                }
+                runOnCameraThread(new SessionTask<Boolean>() {
+                    @Override
+                    public CompletableFuture<Boolean> run() {
+                        return mSession.focus(focusArea);
+                    }
+                }).handle(new CompletableFuture.BiFun<Boolean, Throwable, Void>() {
+                    @Override
+                    public Void apply(final Boolean focused, final Throwable throwable) {
+                        if (listener != null) {
+                            listener.onFocused(focused != null && focused);
+                        }
+                        return null;
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Maps the tap in the portrait preview to a rect in the sensor's active array coordinates.
+     */
+    @Nullable
+    private Rect calculateFocusArea(final float x, final float y, final int tapViewWidth,
+            final int tapViewHeight) {
+        if (mActiveArray == null || tapViewWidth == 0 || tapViewHeight == 0) {
+            return null;
+        }
+        final float viewX = x / tapViewWidth;
+        final float viewY = y / tapViewHeight;
+        final float sensorX;
+        final float sensorY;
+        switch (mSensorOrientation) {
+            case 90:
+                sensorX = viewY;
+                sensorY = 1 - viewX;
+                break;
+            case 180:
+                sensorX = 1 - viewX;
+                sensorY = 1 - viewY;
+                break;
+            case 270:
+                sensorX = 1 - viewY;
+                sensorY = viewX;
+                break;
+            default:
+                sensorX = viewX;
+                sensorY = viewY;
+                break;
+        }
+        final int halfSize = Math.round(
+                Math.min(mActiveArray.width(), mActiveArray.height()) * FOCUS_AREA_HALF_SIZE);
+        final int centerX = mActiveArray.left + Math.round(sensorX * mActiveArray.width());
+        final int centerY = mActiveArray.top + Math.round(sensorY * mActiveArray.height());
+        final Rect focusArea = new Rect(centerX - halfSize, centerY - halfSize,
+                centerX + halfSize, centerY + halfSize);
+        if (!focusArea.intersect(mActiveArray)) {
+            return null;
+        }
+        return focusArea;
+    }
+
+    @Override
+    public void disableTapToFocus(@NonNull final View tapView) {
+        LOG.info("Tap to focus disabled");
+        tapView.setOnTouchListener(null);
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<Boolean> focus() {
+        LOG.info("Start focusing");
+        return runOnCameraThread(new SessionTask<Boolean>() {
+            @Override
+            public CompletableFuture<Boolean> run() {
+                return mSession.focus(null);
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public CompletableFuture<Photo> takePicture() {
+        LOG.info("Take picture");
+        final CompletableFuture<Photo> pictureTaken = new CompletableFuture<>();
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSession.takePicture().handle(
+                        new CompletableFuture.BiFun<byte[], Throwable, Void>() {
+                            @Override
+                            public Void apply(final byte[] jpeg, final Throwable throwable) {
+                                if (throwable != null) {
+                                    completeOnUiThread(pictureTaken, null, throwable);
+                                    return null;
+                                }
+                                onPictureTaken(jpeg, pictureTaken);
+                                return null;
+                            }
+                        });
+            }
+        });
+        return pictureTaken;
+    }
+
+    private void onPictureTaken(@NonNull final byte[] jpeg,
+            @NonNull final CompletableFuture<Photo> pictureTaken) {
+        // Only the raw jpeg is handed off here, the photo is processed on worker threads
+        final CaptureTrace trace = CaptureTrace.current();
+        trace.beginPhase(Phase.PHOTO_PROCESSING);
+        final Photo photo = CapturePipeline.processInBackground(jpeg, mSensorOrientation,
+                false);
+        photo.whenProcessed().handle(new CompletableFuture.BiFun<Photo, Throwable, Void>() {
+            @Override
+            public Void apply(final Photo processedPhoto, final Throwable throwable) {
+                trace.endPhase(Phase.PHOTO_PROCESSING);
+                completeOnUiThread(pictureTaken, processedPhoto, throwable);
+                return null;
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public Size getPreviewSize() {
+        return mPreviewSize;
+    }
+
+    @NonNull
+    @Override
+    public Size getPictureSize() {
+        return mPictureSize;
+    }
+
+    @Override
+    public void addPreviewFrameProcessor(@NonNull final PreviewFrameProcessor processor) {
+        LOG.info("Add preview frame processor");
+        mFramePipeline.addProcessor(processor);
+        updatePreviewFrames();
+    }
+
+    @Override
+    public void removePreviewFrameProcessor(@NonNull final PreviewFrameProcessor processor) {
+        LOG.info("Remove preview frame processor");
+        mFramePipeline.removeProcessor(processor);
+        updatePreviewFrames();
+    }
+
+    private void updatePreviewFrames() {
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mSession.setPreviewFramesEnabled(mFramePipeline.hasProcessors());
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public PreviewFramePipeline getPreviewFramePipeline() {
+        return mFramePipeline;
+    }
+
+    @VisibleForTesting
+    @NonNull
+    Camera2Session getSession() {
+        return mSession;
+    }
+
+    /**
+     * Runs the task on the camera thread and completes the returned future with the result of
+     * the task's future on the UI thread.
+     */
+    @NonNull
+    private <T> CompletableFuture<T> runOnCameraThread(@NonNull final SessionTask<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final CompletableFuture<T> taskFuture;
+                try {
+                    taskFuture = task.run();
+                } catch (RuntimeException e) {
+                    completeOnUiThread(future, null, e);
+                    return;
+                }
+                taskFuture.handle(new CompletableFuture.BiFun<T, Throwable, Void>() {
+                    @Override
+                    public Void apply(final T result, final Throwable throwable) {
+                        completeOnUiThread(future, result, throwable);
+                        return null;
+                    }
+                });
+            }
+        });
+        return future;
+    }
+
+    private <T> void completeOnUiThread(@NonNull final CompletableFuture<T> future,
+            @Nullable final T result, @Nullable final Throwable throwable) {
+        mUIExecutor.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(result);
+                }
+            }
+        });
+    }
+
+    private interface SessionTask<T> {
+
+        CompletableFuture<T> run();
+    }
+}
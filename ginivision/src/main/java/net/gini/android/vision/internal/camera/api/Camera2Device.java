@@ -0,0 +1,75 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Surface;
+
+/**
+ * <p>
+ *     The Camera2 operations used by the {@link Camera2Session}: a {@link
+ *     android.hardware.camera2.CameraDevice}, its capture session and the {@link
+ *     android.media.ImageReader} receiving the jpegs.
+ * </p>
+ * <p>
+ *     The methods are called and the listener is notified on the {@link CameraThread}. Failures
+ *     are thrown as {@link CameraException}s.
+ * </p>
+ *
+ * @exclude
+ */
+interface Camera2Device {
+
+    interface Listener {
+
+        void onOpened();
+
+        /**
+         * The camera was disconnected or had a fatal error.
+         */
+        void onClosed(@NonNull Throwable reason);
+
+        void onSessionConfigured();
+
+        void onSessionConfigurationFailed();
+
+        void onFocusCompleted(boolean focused);
+
+        void onPictureTaken(@NonNull byte[] jpeg);
+
+        void onPictureFailed();
+    }
+
+    void open(@NonNull Listener listener);
+
+    /**
+     * Creates a capture session with the preview surface, the preview frame output and the jpeg
+     * output.
+     */
+    void createSession(@NonNull Surface previewSurface);
+
+    void startRepeatingPreview();
+
+    void stopRepeatingPreview();
+
+    /**
+     * Adds the preview frame output to the repeating preview request or removes it. Takes effect
+     * right away, if the preview is running.
+     */
+    void setPreviewFramesEnabled(boolean enabled);
+
+    boolean isAutoFocusSupported();
+
+    boolean isUsingContinuousFocus();
+
+    /**
+     * @param focusArea the area in sensor coordinates or {@code null} to let the camera decide
+     */
+    void triggerAutoFocus(@Nullable Rect focusArea);
+
+    boolean isZeroShutterLagSupported();
+
+    void capture(boolean zeroShutterLag);
+
+    void close();
+}
@@ -0,0 +1,613 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.hardware.camera2.params.MeteringRectangle;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Surface;
+
+import net.gini.android.vision.internal.camera.photo.Size;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>
+ *     Implements the {@link Camera2Device} with a {@link CameraDevice}.
+ * </p>
+ * <p>
+ *     Jpegs are received through an {@link ImageReader}. Its image queue is the buffer pool for the
+ *     captures: the reader allocates its buffers once and each image is returned to it right
+ *     after the jpeg was copied out, so consecutive captures reuse the same native buffers.
+ * </p>
+ * <p>
+ *     Preview frames for the {@link PreviewFramePipeline} are received as YUV images through a
+ *     second {@link ImageReader}. Its output is part of every capture session, but it is a target
+ *     of the repeating preview request only while preview frames are enabled. The latest image is
+ *     converted to NV21 into a free buffer of the pipeline's ring. If all buffers are in use the
+ *     image is dropped.
+ * </p>
+ * <p>
+ *     The flash is fired automatically when the scene needs it. In that case a precapture metering
+ *     sequence runs before the capture. Otherwise pictures are captured with the zero shutter lag
+ *     template, if the camera supports reprocessing.
+ * </p>
+ *
+ * @exclude
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class Camera2DeviceImpl implements Camera2Device {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Camera2DeviceImpl.class);
+
+    /**
+     * Allows a second capture to be delivered while the jpeg of the first one is copied.
+     */
+    private static final int MAX_IMAGES = 2;
+    /**
+     * One image is converted while the camera writes the next one.
+     */
+    private static final int MAX_FRAME_IMAGES = 2;
+    private static final long RESET_FOCUS_DELAY_MS = 5000;
+
+    private final CameraManager mCameraManager;
+    private final String mCameraId;
+    private final Size mPreviewSize;
+    private final Size mPictureSize;
+    private final PreviewFramePipeline mFramePipeline;
+    private final Handler mHandler;
+    private final boolean mAutoFocusSupported;
+    private final boolean mContinuousFocusSupported;
+    private final boolean mFlashAvailable;
+    private final boolean mZeroShutterLagSupported;
+    private final int mMaxFocusRegions;
+    private final int mSensorOrientation;
+
+    private Listener mListener;
+    private CameraDevice.StateCallback mStateCallback;
+    private CameraDevice mCameraDevice;
+    private CameraCaptureSession mSession;
+    private ImageReader mImageReader;
+    private ImageReader mFrameReader;
+    private boolean mPreviewFramesEnabled;
+    // Filled by the pipeline's worker, emptied on the camera thread
+    private final Queue<byte[]> mFreeFrameBuffers = new ConcurrentLinkedQueue<>();
+    private Surface mPreviewSurface;
+    private CaptureRequest.Builder mPreviewRequestBuilder;
+
+    private boolean mUsingContinuousFocus;
+    private boolean mFocusTriggered;
+    private boolean mPrecaptureTriggered;
+    private Integer mAeState;
+
+    private final Runnable mResetFocus = new Runnable() {
+        @Override
+        public void run() {
+            if (mSession == null || mPreviewRequestBuilder == null) {
+                return;
+            }
+            try {
+                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                        CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+                mSession.capture(mPreviewRequestBuilder.build(), mPreviewCallback, mHandler);
+                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                        CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, null);
+                setDefaultFocusMode(mPreviewRequestBuilder);
+                mSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mPreviewCallback,
+                        mHandler);
+            } catch (CameraAccessException | RuntimeException e) {
+                LOG.error("Could not reset the focus mode", e);
+            }
+        }
+    };
+
+    private final CameraCaptureSession.CaptureCallback mPreviewCallback =
+            new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureCompleted(@NonNull final CameraCaptureSession session,
+                        @NonNull final CaptureRequest request,
+                        @NonNull final TotalCaptureResult result) {
+                    mAeState = result.get(CaptureResult.CONTROL_AE_STATE);
+                    if (mFocusTriggered) {
+                        handleFocusState(result.get(CaptureResult.CONTROL_AF_STATE));
+                    }
+                    if (mPrecaptureTriggered) {
+                        handlePrecaptureState(mAeState);
+                    }
+                }
+            };
+
+    private final CameraCaptureSession.CaptureCallback mStillCaptureCallback =
+            new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureFailed(@NonNull final CameraCaptureSession session,
+                        @NonNull final CaptureRequest request,
+                        @NonNull final CaptureFailure failure) {
+                    LOG.error("Capture failed with reason {}", failure.getReason());
+                    if (mListener != null) {
+                        mListener.onPictureFailed();
+                    }
+                }
+            };
+
+    private final ImageReader.OnImageAvailableListener mOnImageAvailableListener =
+            new ImageReader.OnImageAvailableListener() {
+                @Override
+                public void onImageAvailable(final ImageReader reader) {
+                    final Image image = reader.acquireNextImage();
+                    if (image == null) {
+                        return;
+                    }
+                    final byte[] jpeg;
+                    try {
+                        final ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                        jpeg = new byte[buffer.remaining()];
+                        buffer.get(jpeg);
+                    } finally {
+                        // Returns the buffer to the reader for the next capture
+                        image.close();
+                    }
+                    if (mListener != null) {
+                        mListener.onPictureTaken(jpeg);
+                    }
+                }
+            };
+
+    private final PreviewFramePipeline.BufferRecycler mFrameBufferRecycler =
+            new PreviewFramePipeline.BufferRecycler() {
+                @Override
+                public void recycle(@NonNull final byte[] buffer) {
+                    mFreeFrameBuffers.offer(buffer);
+                }
+            };
+
+    private final ImageReader.OnImageAvailableListener mOnFrameAvailableListener =
+            new ImageReader.OnImageAvailableListener() {
+                @Override
+                public void onImageAvailable(final ImageReader reader) {
+                    // Older images are skipped, if the camera thread fell behind
+                    final Image image = reader.acquireLatestImage();
+                    if (image == null) {
+                        return;
+                    }
+                    try {
+                        final byte[] buffer = mFreeFrameBuffers.poll();
+                        if (buffer == null) {
+                            mFramePipeline.countDroppedFrame();
+                            return;
+                        }
+                        copyToNv21(image, buffer);
+                        mFramePipeline.submit(buffer, image.getWidth(), image.getHeight(),
+                                mSensorOrientation, System.nanoTime());
+                    } finally {
+                        image.close();
+                    }
+                }
+            };
+
+    Camera2DeviceImpl(@NonNull final CameraManager cameraManager, @NonNull final String cameraId,
+            @NonNull final CameraCharacteristics characteristics, @NonNull final Size previewSize,
+            @NonNull final Size pictureSize, @NonNull final PreviewFramePipeline framePipeline,
+            @NonNull final Handler handler) {
+        mCameraManager = cameraManager;
+        mCameraId = cameraId;
+        mPreviewSize = previewSize;
+        mPictureSize = pictureSize;
+        mFramePipeline = framePipeline;
+        mHandler = handler;
+        final int[] afModes = characteristics.get(
+                CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        mAutoFocusSupported = contains(afModes, CameraMetadata.CONTROL_AF_MODE_AUTO);
+        mContinuousFocusSupported = contains(afModes,
+                CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        mFlashAvailable = Boolean.TRUE.equals(
+                characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE));
+        mZeroShutterLagSupported = isZeroShutterLagSupported(characteristics);
+        final Integer maxFocusRegions = characteristics.get(
+                CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+        mMaxFocusRegions = maxFocusRegions != null ? maxFocusRegions : 0;
+        final Integer sensorOrientation = characteristics.get(
+                CameraCharacteristics.SENSOR_ORIENTATION);
+        mSensorOrientation = sensorOrientation != null ? sensorOrientation : 0;
+    }
+
+    private static boolean isZeroShutterLagSupported(
+            @NonNull final CameraCharacteristics characteristics) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return false;
+        }
+        final int[] capabilities = characteristics.get(
+                CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        return contains(capabilities,
+                CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_PRIVATE_REPROCESSING)
+                || contains(capabilities,
+                CameraMetadata.REQUEST_AVAILABLE_CAPABILITIES_YUV_REPROCESSING);
+    }
+
+    private static boolean contains(@Nullable final int[] values, final int value) {
+        if (values == null) {
+            return false;
+        }
+        for (final int element : values) {
+            if (element == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void open(@NonNull final Listener listener) {
+        mListener = listener;
+        mImageReader = ImageReader.newInstance(mPictureSize.width, mPictureSize.height,
+                ImageFormat.JPEG, MAX_IMAGES);
+        mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, mHandler);
+        mFrameReader = ImageReader.newInstance(mPreviewSize.width, mPreviewSize.height,
+                ImageFormat.YUV_420_888, MAX_FRAME_IMAGES);
+        mFrameReader.setOnImageAvailableListener(mOnFrameAvailableListener, mHandler);
+        if (mPreviewFramesEnabled) {
+            allocateFrameBuffers();
+        }
+        // A new callback for each open call, callbacks of a previous open are ignored
+        final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(@NonNull final CameraDevice camera) {
+                if (mStateCallback != this) {
+                    camera.close();
+                    return;
+                }
+                mCameraDevice = camera;
+                mListener.onOpened();
+            }
+
+            @Override
+            public void onDisconnected(@NonNull final CameraDevice camera) {
+                camera.close();
+                if (mStateCallback == this) {
+                    mCameraDevice = null;
+                    mListener.onClosed(new CameraException("Camera disconnected"));
+                }
+            }
+
+            @Override
+            public void onError(@NonNull final CameraDevice camera, final int error) {
+                camera.close();
+                if (mStateCallback == this) {
+                    mCameraDevice = null;
+                    mListener.onClosed(new CameraException("Camera error " + error));
+                }
+            }
+        };
+        mStateCallback = stateCallback;
+        try {
+            mCameraManager.openCamera(mCameraId, stateCallback, mHandler);
+        } catch (CameraAccessException e) {
+            close();
+            throw new CameraException("Cannot open camera: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // SecurityException, if the camera permission is missing
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void createSession(@NonNull final Surface previewSurface) {
+        if (mCameraDevice == null) {
+            throw new CameraException("Cannot create capture session: camera not open");
+        }
+        mPreviewSurface = previewSurface;
+        try {
+            mCameraDevice.createCaptureSession(
+                    Arrays.asList(previewSurface, mFrameReader.getSurface(),
+                            mImageReader.getSurface()),
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(@NonNull final CameraCaptureSession session) {
+                            if (mCameraDevice == null) {
+                                session.close();
+                                return;
+                            }
+                            mSession = session;
+                            mListener.onSessionConfigured();
+                        }
+
+                        @Override
+                        public void onConfigureFailed(
+                                @NonNull final CameraCaptureSession session) {
+                            mListener.onSessionConfigurationFailed();
+                        }
+                    }, mHandler);
+        } catch (CameraAccessException e) {
+            throw new CameraException("Cannot create capture session: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void startRepeatingPreview() {
+        if (mSession == null) {
+            throw new CameraException("Cannot start preview: no capture session");
+        }
+        try {
+            mPreviewRequestBuilder = mCameraDevice.createCaptureRequest(
+                    CameraDevice.TEMPLATE_PREVIEW);
+            mPreviewRequestBuilder.addTarget(mPreviewSurface);
+            if (mPreviewFramesEnabled) {
+                mPreviewRequestBuilder.addTarget(mFrameReader.getSurface());
+            }
+            setDefaultFocusMode(mPreviewRequestBuilder);
+            setAutoExposureMode(mPreviewRequestBuilder);
+            mSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mPreviewCallback,
+                    mHandler);
+        } catch (CameraAccessException e) {
+            throw new CameraException("Cannot start preview: " + e.getMessage());
+        }
+    }
+
+    private void setDefaultFocusMode(@NonNull final CaptureRequest.Builder builder) {
+        mUsingContinuousFocus = mContinuousFocusSupported;
+        if (mContinuousFocusSupported) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE,
+                    CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+        } else if (mAutoFocusSupported) {
+            builder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_AUTO);
+        }
+    }
+
+    private void setAutoExposureMode(@NonNull final CaptureRequest.Builder builder) {
+        builder.set(CaptureRequest.CONTROL_AE_MODE, mFlashAvailable
+                ? CameraMetadata.CONTROL_AE_MODE_ON_AUTO_FLASH
+                : CameraMetadata.CONTROL_AE_MODE_ON);
+    }
+
+    @Override
+    public void stopRepeatingPreview() {
+        if (mSession == null) {
+            return;
+        }
+        mHandler.removeCallbacks(mResetFocus);
+        try {
+            mSession.stopRepeating();
+        } catch (CameraAccessException e) {
+            throw new CameraException("Cannot stop preview: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void setPreviewFramesEnabled(final boolean enabled) {
+        if (mPreviewFramesEnabled == enabled) {
+            return;
+        }
+        mPreviewFramesEnabled = enabled;
+        if (mFrameReader != null) {
+            if (enabled) {
+                allocateFrameBuffers();
+            } else {
+                releaseFrameBuffers();
+            }
+        }
+        if (mSession == null || mPreviewRequestBuilder == null) {
+            return;
+        }
+        if (enabled) {
+            mPreviewRequestBuilder.addTarget(mFrameReader.getSurface());
+        } else {
+            mPreviewRequestBuilder.removeTarget(mFrameReader.getSurface());
+        }
+        try {
+            mSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mPreviewCallback,
+                    mHandler);
+        } catch (CameraAccessException e) {
+            throw new CameraException("Cannot update preview: " + e.getMessage());
+        }
+    }
+
+    private void allocateFrameBuffers() {
+        mFreeFrameBuffers.clear();
+        final int bufferSize = mPreviewSize.width * mPreviewSize.height
+                * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+        Collections.addAll(mFreeFrameBuffers,
+                mFramePipeline.allocateBuffers(bufferSize, mFrameBufferRecycler));
+    }
+
+    private void releaseFrameBuffers() {
+        mFramePipeline.releaseBuffers();
+        mFreeFrameBuffers.clear();
+    }
+
+    /**
+     * Copies the Y plane and then the interleaved V and U values into the buffer. The planes'
+     * row and pixel strides depend on the device.
+     */
+    private static void copyToNv21(@NonNull final Image image, @NonNull final byte[] nv21) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final Image.Plane[] planes = image.getPlanes();
+
+        final ByteBuffer yBuffer = planes[0].getBuffer();
+        final int yRowStride = planes[0].getRowStride();
+        for (int row = 0; row < height; row++) {
+            yBuffer.position(row * yRowStride);
+            yBuffer.get(nv21, row * width, width);
+        }
+
+        final ByteBuffer uBuffer = planes[1].getBuffer();
+        final ByteBuffer vBuffer = planes[2].getBuffer();
+        final int chromaRowStride = planes[1].getRowStride();
+        final int chromaPixelStride = planes[1].getPixelStride();
+        int offset = width * height;
+        for (int row = 0; row < height / 2; row++) {
+            final int rowStart = row * chromaRowStride;
+            for (int column = 0; column < width / 2; column++) {
+                final int index = rowStart + column * chromaPixelStride;
+                nv21[offset++] = vBuffer.get(index);
+                nv21[offset++] = uBuffer.get(index);
+            }
+        }
+    }
+
+    @Override
+    public boolean isAutoFocusSupported() {
+        return mAutoFocusSupported;
+    }
+
+    @Override
+    public boolean isUsingContinuousFocus() {
+        return mUsingContinuousFocus;
+    }
+
+    @Override
+    public void triggerAutoFocus(@Nullable final Rect focusArea) {
+        if (mSession == null || mPreviewRequestBuilder == null) {
+            throw new CameraException("Cannot focus: preview not running");
+        }
+        mHandler.removeCallbacks(mResetFocus);
+        try {
+            if (focusArea != null && mMaxFocusRegions > 0) {
+                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS,
+                        new MeteringRectangle[]{new MeteringRectangle(focusArea,
+                                MeteringRectangle.METERING_WEIGHT_MAX)});
+            }
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
+                    CameraMetadata.CONTROL_AF_MODE_AUTO);
+            mUsingContinuousFocus = false;
+            mSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mPreviewCallback,
+                    mHandler);
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                    CameraMetadata.CONTROL_AF_TRIGGER_START);
+            mSession.capture(mPreviewRequestBuilder.build(), mPreviewCallback, mHandler);
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
+                    CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+            mFocusTriggered = true;
+        } catch (CameraAccessException e) {
+            throw new CameraException("Cannot focus: " + e.getMessage());
+        }
+    }
+
+    private void handleFocusState(@Nullable final Integer afState) {
+        if (afState == null) {
+            return;
+        }
+        final boolean focused = afState == CameraMetadata.CONTROL_AF_STATE_FOCUSED_LOCKED;
+        if (focused || afState == CameraMetadata.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
+            mFocusTriggered = false;
+            // Like the Camera API controller, continuous focus is restored after a while
+            mHandler.postDelayed(mResetFocus, RESET_FOCUS_DELAY_MS);
+            mListener.onFocusCompleted(focused);
+        }
+    }
+
+    @Override
+    public boolean isZeroShutterLagSupported() {
+        // Frames captured before the request can't include the flash
+        return mZeroShutterLagSupported && !isFlashRequired();
+    }
+
+    private boolean isFlashRequired() {
+        return mFlashAvailable && mAeState != null
+                && mAeState == CameraMetadata.CONTROL_AE_STATE_FLASH_REQUIRED;
+    }
+
+    @Override
+    public void capture(final boolean zeroShutterLag) {
+        if (mSession == null || mPreviewRequestBuilder == null) {
+            throw new CameraException("Cannot take picture: no capture session");
+        }
+        if (!zeroShutterLag && isFlashRequired()) {
+            triggerPrecapture();
+            return;
+        }
+        captureStill(zeroShutterLag);
+    }
+
+    private void triggerPrecapture() {
+        try {
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
+                    CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_START);
+            mSession.capture(mPreviewRequestBuilder.build(), mPreviewCallback, mHandler);
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
+                    CameraMetadata.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
+            mPrecaptureTriggered = true;
+        } catch (CameraAccessException e) {
+            throw new CameraException("Cannot take picture: " + e.getMessage());
+        }
+    }
+
+    private void handlePrecaptureState(@Nullable final Integer aeState) {
+        if (aeState == null
+                || aeState == CameraMetadata.CONTROL_AE_STATE_PRECAPTURE) {
+            return;
+        }
+        mPrecaptureTriggered = false;
+        try {
+            captureStill(false);
+        } catch (CameraException e) {
+            LOG.error("Capture after precapture metering failed", e);
+            mListener.onPictureFailed();
+        }
+    }
+
+    private void captureStill(final boolean zeroShutterLag) {
+        try {
+            final CaptureRequest.Builder builder = mCameraDevice.createCaptureRequest(
+                    zeroShutterLag ? CameraDevice.TEMPLATE_ZERO_SHUTTER_LAG
+                            : CameraDevice.TEMPLATE_STILL_CAPTURE);
+            builder.addTarget(mImageReader.getSurface());
+            builder.set(CaptureRequest.CONTROL_AF_MODE,
+                    mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
+            setAutoExposureMode(builder);
+            mSession.capture(builder.build(), mStillCaptureCallback, mHandler);
+        } catch (CameraAccessException e) {
+            throw new CameraException("Cannot take picture: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        mHandler.removeCallbacks(mResetFocus);
+        mStateCallback = null;
+        mFocusTriggered = false;
+        mPrecaptureTriggered = false;
+        mPreviewRequestBuilder = null;
+        if (mSession != null) {
+            mSession.close();
+            mSession = null;
+        }
+        if (mCameraDevice != null) {
+            mCameraDevice.close();
+            mCameraDevice = null;
+        }
+        if (mImageReader != null) {
+            mImageReader.close();
+            mImageReader = null;
+        }
+        if (mFrameReader != null) {
+            mFrameReader.close();
+            mFrameReader = null;
+            releaseFrameBuffers();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.view.Surface;
+
+import net.gini.android.vision.CaptureLatency.Phase;
+import net.gini.android.vision.internal.metrics.CaptureTrace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
+/**
+ * <p>
+ *     Tracks the state of a {@link Camera2Device} from opening it through the repeating preview to
+ *     focusing and capturing pictures.
+ * </p>
+ * <p>
+ *     Must be used on the {@link CameraThread}. The futures complete on the camera thread. The
+ *     preview keeps running while a picture is captured, so the next picture can be taken without
+ *     restarting it.
+ * </p>
+ *
+ * @exclude
+ */
+class Camera2Session implements Camera2Device.Listener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Camera2Session.class);
+
+    enum State {
+        CLOSED,
+        OPENING,
+        OPENED,
+        CONFIGURING,
+        /**
+         * The capture session is configured, but the preview is stopped.
+         */
+        IDLE,
+        PREVIEW
+    }
+
+    private final Camera2Device mDevice;
+    private volatile State mState = State.CLOSED;
+
+    private CompletableFuture<Void> mOpenFuture;
+    private CompletableFuture<Void> mPreviewFuture;
+    private CompletableFuture<Boolean> mFocusFuture;
+    private CompletableFuture<byte[]> mPictureFuture;
+    private CaptureTrace mPictureTrace = CaptureTrace.current();
+
+    Camera2Session(@NonNull final Camera2Device device) {
+        mDevice = device;
+    }
+
+    @VisibleForTesting
+    @NonNull
+    State getState() {
+        return mState;
+    }
+
+    boolean isOpen() {
+        return mState != State.CLOSED && mState != State.OPENING;
+    }
+
+    boolean isPreviewRunning() {
+        return mState == State.PREVIEW;
+    }
+
+    @NonNull
+    CompletableFuture<Void> open() {
+        switch (mState) {
+            case CLOSED:
+                mState = State.OPENING;
+                mOpenFuture = new CompletableFuture<>();
+                final CompletableFuture<Void> openFuture = mOpenFuture;
+                try {
+                    mDevice.open(this);
+                } catch (RuntimeException e) {
+                    LOG.error("Cannot open camera", e);
+                    mState = State.CLOSED;
+                    mOpenFuture = null;
+                    openFuture.completeExceptionally(e);
+                }
+                return openFuture;
+            case OPENING:
+                return mOpenFuture;
+            default:
+                LOG.debug("Camera already open");
+                return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Starts the preview in a new capture session. If the preview was stopped, the previous
+     * session's surface may have been destroyed in the meantime, for example while a retained
+     * camera was not shown, so a new session is created for the given surface.
+     */
+    @NonNull
+    CompletableFuture<Void> startPreview(@NonNull final Surface previewSurface) {
+        switch (mState) {
+            case OPENED:
+            case IDLE:
+                mState = State.CONFIGURING;
+                mPreviewFuture = new CompletableFuture<>();
+                final CompletableFuture<Void> previewFuture = mPreviewFuture;
+                try {
+                    mDevice.createSession(previewSurface);
+                } catch (RuntimeException e) {
+                    LOG.error("Cannot create capture session", e);
+                    mState = State.OPENED;
+                    mPreviewFuture = null;
+                    previewFuture.completeExceptionally(e);
+                }
+                return previewFuture;
+            case CONFIGURING:
+                return mPreviewFuture;
+            default:
+                return startPreview();
+        }
+    }
+
+    /**
+     * Restarts the preview of an existing capture session.
+     */
+    @NonNull
+    CompletableFuture<Void> startPreview() {
+        switch (mState) {
+            case CLOSED:
+            case OPENING:
+                return failedFuture(new CameraException("Cannot start preview: camera not open"));
+            case OPENED:
+                return failedFuture(
+                        new CameraException("Cannot start preview: no preview surface"));
+            case CONFIGURING:
+                return mPreviewFuture;
+            case IDLE:
+                try {
+                    mDevice.startRepeatingPreview();
+                } catch (RuntimeException e) {
+                    LOG.error("Cannot start preview", e);
+                    return failedFuture(e);
+                }
+                mState = State.PREVIEW;
+                LOG.info("Preview started");
+                return CompletableFuture.completedFuture(null);
+            case PREVIEW:
+            default:
+                LOG.info("Preview already running");
+                return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    void stopPreview() {
+        if (mState != State.PREVIEW) {
+            LOG.info("Preview not running");
+            return;
+        }
+        try {
+            mDevice.stopRepeatingPreview();
+        } catch (RuntimeException e) {
+            LOG.error("Cannot stop preview", e);
+        }
+        mState = State.IDLE;
+        LOG.info("Preview stopped");
+    }
+
+    void setPreviewFramesEnabled(final boolean enabled) {
+        try {
+            mDevice.setPreviewFramesEnabled(enabled);
+        } catch (RuntimeException e) {
+            LOG.error("Cannot {} preview frames", enabled ? "enable" : "disable", e);
+        }
+    }
+
+    @NonNull
+    CompletableFuture<Boolean> focus(@Nullable final Rect focusArea) {
+        if (mFocusFuture != null) {
+            LOG.info("Already focusing");
+            return mFocusFuture;
+        }
+        if (mState != State.PREVIEW) {
+            LOG.error("Cannot focus: preview not running");
+            return CompletableFuture.completedFuture(false);
+        }
+        if (!mDevice.isAutoFocusSupported()) {
+            LOG.error("Cannot focus: auto-focus not supported");
+            return CompletableFuture.completedFuture(false);
+        }
+        mFocusFuture = new CompletableFuture<>();
+        final CompletableFuture<Boolean> focusFuture = mFocusFuture;
+        try {
+            mDevice.triggerAutoFocus(focusArea);
+            LOG.info("Focusing started");
+        } catch (RuntimeException e) {
+            LOG.error("Could not focus", e);
+            mFocusFuture = null;
+            focusFuture.complete(false);
+        }
+        return focusFuture;
+    }
+
+    @NonNull
+    CompletableFuture<byte[]> takePicture() {
+        if (mPictureFuture != null) {
+            LOG.info("Already taking a picture");
+            return mPictureFuture;
+        }
+        if (mState != State.PREVIEW && mState != State.IDLE) {
+            return failedFuture(new CameraException("Cannot take picture: no capture session"));
+        }
+        mPictureFuture = new CompletableFuture<>();
+        mPictureTrace = CaptureTrace.current();
+        final CompletableFuture<byte[]> pictureFuture = mPictureFuture;
+        final CaptureTrace trace = mPictureTrace;
+        if (mDevice.isUsingContinuousFocus() || !mDevice.isAutoFocusSupported()
+                || mState != State.PREVIEW) {
+            // When continuous focus mode is used no auto-focus run is needed
+            capture();
+        } else {
+            trace.beginPhase(Phase.FOCUS);
+            focus(null).handle(new CompletableFuture.BiFun<Boolean, Throwable, Void>() {
+                @Override
+                public Void apply(final Boolean focused, final Throwable throwable) {
+                    trace.endPhase(Phase.FOCUS);
+                    // Focusing completes on the camera thread
+                    if (mPictureFuture == pictureFuture && isOpen()) {
+                        capture();
+                    }
+                    return null;
+                }
+            });
+        }
+        return pictureFuture;
+    }
+
+    private void capture() {
+        final boolean zeroShutterLag = mDevice.isZeroShutterLagSupported();
+        LOG.info("Capturing picture{}", zeroShutterLag ? " with zero shutter lag" : "");
+        mPictureTrace.beginPhase(Phase.CAPTURE);
+        try {
+            mDevice.capture(zeroShutterLag);
+        } catch (RuntimeException e) {
+            LOG.error("Cannot take picture", e);
+            failPicture(e);
+        }
+    }
+
+    void close() {
+        if (mState == State.CLOSED) {
+            LOG.debug("Camera already closed");
+            return;
+        }
+        mDevice.close();
+        failPending(new CameraException("Camera closed"));
+        LOG.info("Camera closed");
+    }
+
+    @Override
+    public void onOpened() {
+        if (mState != State.OPENING) {
+            return;
+        }
+        mState = State.OPENED;
+        LOG.info("Camera opened");
+        final CompletableFuture<Void> openFuture = mOpenFuture;
+        mOpenFuture = null;
+        openFuture.complete(null);
+    }
+
+    @Override
+    public void onClosed(@NonNull final Throwable reason) {
+        LOG.error("Camera closed unexpectedly", reason);
+        mDevice.close();
+        failPending(reason);
+    }
+
+    @Override
+    public void onSessionConfigured() {
+        if (mState != State.CONFIGURING) {
+            return;
+        }
+        mState = State.IDLE;
+        final CompletableFuture<Void> previewFuture = mPreviewFuture;
+        mPreviewFuture = null;
+        startPreview().handle(new CompletableFuture.BiFun<Void, Throwable, Void>() {
+            @Override
+            public Void apply(final Void aVoid, final Throwable throwable) {
+                if (throwable != null) {
+                    previewFuture.completeExceptionally(throwable);
+                } else {
+                    previewFuture.complete(null);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void onSessionConfigurationFailed() {
+        if (mState != State.CONFIGURING) {
+            return;
+        }
+        LOG.error("Capture session configuration failed");
+        mState = State.OPENED;
+        final CompletableFuture<Void> previewFuture = mPreviewFuture;
+        mPreviewFuture = null;
+        previewFuture.completeExceptionally(
+                new CameraException("Capture session configuration failed"));
+    }
+
+    @Override
+    public void onFocusCompleted(final boolean focused) {
+        LOG.info("Focusing finished with result: {}", focused);
+        final CompletableFuture<Boolean> focusFuture = mFocusFuture;
+        mFocusFuture = null;
+        if (focusFuture != null) {
+            focusFuture.complete(focused);
+        }
+    }
+
+    @Override
+    public void onPictureTaken(@NonNull final byte[] jpeg) {
+        LOG.info("Picture taken");
+        mPictureTrace.endPhase(Phase.CAPTURE);
+        final CompletableFuture<byte[]> pictureFuture = mPictureFuture;
+        mPictureFuture = null;
+        if (pictureFuture != null) {
+            pictureFuture.complete(jpeg);
+        }
+    }
+
+    @Override
+    public void onPictureFailed() {
+        failPicture(new CameraException("Capture failed"));
+    }
+
+    private void failPicture(@NonNull final Throwable throwable) {
+        final CompletableFuture<byte[]> pictureFuture = mPictureFuture;
+        mPictureFuture = null;
+        if (pictureFuture != null) {
+            pictureFuture.completeExceptionally(throwable);
+        }
+    }
+
+    private void failPending(@NonNull final Throwable throwable) {
+        mState = State.CLOSED;
+        failPicture(throwable);
+        final CompletableFuture<Void> openFuture = mOpenFuture;
+        final CompletableFuture<Void> previewFuture = mPreviewFuture;
+        final CompletableFuture<Boolean> focusFuture = mFocusFuture;
+        mOpenFuture = null;
+        mPreviewFuture = null;
+        mFocusFuture = null;
+        if (openFuture != null) {
+            openFuture.completeExceptionally(throwable);
+        }
+        if (previewFuture != null) {
+            previewFuture.completeExceptionally(throwable);
+        }
+        if (focusFuture != null) {
+            focusFuture.complete(false);
+        }
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(final Throwable throwable) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+}
@@ -0,0 +1,195 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.hardware.Camera;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import net.gini.android.vision.internal.camera.photo.Size;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *     Snapshot of what a camera supports: picture and preview sizes, focus and flash modes and
+ *     the maximum number of focus areas.
+ * </p>
+ * <p>
+ *     {@link Camera#getParameters()} asks the camera service for the parameters and parses a long
+ *     string every time. The capabilities don't change while the camera is open, so they are read
+ *     once and can be persisted with {@link CameraCapabilitiesStore}.
+ * </p>
+ *
+ * @exclude
+ */
+public final class CameraCapabilities {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String SECTION_SEPARATOR = ";";
+    private static final String VALUE_SEPARATOR = ",";
+    private static final String SIZE_SEPARATOR = "x";
+    private static final int SECTIONS = 6;
+
+    private final Size[] mPictureSizes;
+    private final Size[] mPreviewSizes;
+    private final List<String> mFocusModes;
+    private final List<String> mFlashModes;
+    private final int mMaxNumFocusAreas;
+
+    public CameraCapabilities(@NonNull final Size[] pictureSizes,
+            @NonNull final Size[] previewSizes, @NonNull final List<String> focusModes,
+            @NonNull final List<String> flashModes, final int maxNumFocusAreas) {
+        mPictureSizes = pictureSizes.clone();
+        mPreviewSizes = previewSizes.clone();
+        mFocusModes = Collections.unmodifiableList(new ArrayList<>(focusModes));
+        mFlashModes = Collections.unmodifiableList(new ArrayList<>(flashModes));
+        mMaxNumFocusAreas = maxNumFocusAreas;
+    }
+
+    @NonNull
+    public static CameraCapabilities fromParameters(@NonNull final Camera.Parameters parameters) {
+        return new CameraCapabilities(
+                toSizes(parameters.getSupportedPictureSizes()),
+                toSizes(parameters.getSupportedPreviewSizes()),
+                nonNull(parameters.getSupportedFocusModes()),
+                nonNull(parameters.getSupportedFlashModes()),
+                parameters.getMaxNumFocusAreas());
+    }
+
+    @NonNull
+    public Size[] getPictureSizes() {
+        return mPictureSizes.clone();
+    }
+
+    @NonNull
+    public Size[] getPreviewSizes() {
+        return mPreviewSizes.clone();
+    }
+
+    @NonNull
+    public List<String> getFocusModes() {
+        return mFocusModes;
+    }
+
+    @NonNull
+    public List<String> getFlashModes() {
+        return mFlashModes;
+    }
+
+    public int getMaxNumFocusAreas() {
+        return mMaxNumFocusAreas;
+    }
+
+    public boolean isFocusModeSupported(@NonNull final String focusMode) {
+        return mFocusModes.contains(focusMode);
+    }
+
+    public boolean isFlashModeSupported(@NonNull final String flashMode) {
+        return mFlashModes.contains(flashMode);
+    }
+
+    /**
+     * @return a compact string representation which can be read with {@link #unflatten(String)}
+     */
+    @NonNull
+    public String flatten() {
+        return FORMAT_VERSION
+                + SECTION_SEPARATOR + flattenSizes(mPictureSizes)
+                + SECTION_SEPARATOR + flattenSizes(mPreviewSizes)
+                + SECTION_SEPARATOR + TextUtils.join(VALUE_SEPARATOR, mFocusModes)
+                + SECTION_SEPARATOR + TextUtils.join(VALUE_SEPARATOR, mFlashModes)
+                + SECTION_SEPARATOR + mMaxNumFocusAreas;
+    }
+
+    /**
+     * @param flattened a string returned by {@link #flatten()}
+     * @return the capabilities or {@code null}, if the string was malformed or written in another
+     * format version
+     */
+    @Nullable
+    public static CameraCapabilities unflatten(@NonNull final String flattened) {
+        // -1 keeps the trailing empty sections
+        final String[] sections = flattened.split(SECTION_SEPARATOR, -1);
+        if (sections.length != SECTIONS
+                || !String.valueOf(FORMAT_VERSION).equals(sections[0])) {
+            return null;
+        }
+        try {
+            return new CameraCapabilities(
+                    unflattenSizes(sections[1]),
+                    unflattenSizes(sections[2]),
+                    unflattenValues(sections[3]),
+                    unflattenValues(sections[4]),
+                    Integer.parseInt(sections[5]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    private static Size[] toSizes(@Nullable final List<Camera.Size> cameraSizes) {
+        if (cameraSizes == null) {
+            return new Size[0];
+        }
+        final Size[] sizes = new Size[cameraSizes.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            final Camera.Size cameraSize = cameraSizes.get(i);
+            sizes[i] = new Size(cameraSize.width, cameraSize.height);
+        }
+        return sizes;
+    }
+
+    @NonNull
+    private static List<String> nonNull(@Nullable final List<String> values) {
+        return values != null ? values : Collections.<String>emptyList();
+    }
+
+    @NonNull
+    private static String flattenSizes(@NonNull final Size[] sizes) {
+        final StringBuilder builder = new StringBuilder();
+        for (final Size size : sizes) {
+            if (builder.length() > 0) {
+                builder.append(VALUE_SEPARATOR);
+            }
+            builder.append(size.width).append(SIZE_SEPARATOR).append(size.height);
+        }
+        return builder.toString();
+    }
+
+    @NonNull
+    private static Size[] unflattenSizes(@NonNull final String flattened) {
+        final List<String> values = unflattenValues(flattened);
+        final Size[] sizes = new Size[values.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            final String[] dimensions = values.get(i).split(SIZE_SEPARATOR);
+            if (dimensions.length != 2) {
+                throw new NumberFormatException("Malformed size: " + values.get(i));
+            }
+            sizes[i] = new Size(Integer.parseInt(dimensions[0]),
+                    Integer.parseInt(dimensions[1]));
+        }
+        return sizes;
+    }
+
+    @NonNull
+    private static List<String> unflattenValues(@NonNull final String flattened) {
+        if (flattened.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(flattened.split(VALUE_SEPARATOR));
+    }
+
+    @Override
+    public String toString() {
+        return "CameraCapabilities{"
+                + "pictureSizes=" + Arrays.toString(mPictureSizes)
+                + ", previewSizes=" + Arrays.toString(mPreviewSizes)
+                + ", focusModes=" + mFocusModes
+                + ", flashModes=" + mFlashModes
+                + ", maxNumFocusAreas=" + mMaxNumFocusAreas
+                + '}';
+    }
+}
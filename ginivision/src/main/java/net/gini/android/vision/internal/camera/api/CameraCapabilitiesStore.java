@@ -0,0 +1,59 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *     Persists the {@link CameraCapabilities} per device model and camera id.
+ * </p>
+ * <p>
+ *     The capabilities are stored every time a camera was opened, so a stale snapshot (for example
+ *     after a system update) is replaced the next time the camera is used.
+ * </p>
+ *
+ * @exclude
+ */
+public class CameraCapabilitiesStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CameraCapabilitiesStore.class);
+
+    private static final String CAMERA_CAPABILITIES = "GV_CAMERA_CAPABILITIES";
+
+    private final SharedPreferences mSharedPreferences;
+
+    public CameraCapabilitiesStore(@NonNull final Context context) {
+        mSharedPreferences = context.getSharedPreferences(CAMERA_CAPABILITIES,
+                Context.MODE_PRIVATE);
+    }
+
+    @Nullable
+    public CameraCapabilities get(final int cameraId) {
+        final String flattened = mSharedPreferences.getString(key(Build.MODEL, cameraId), null);
+        if (flattened == null) {
+            return null;
+        }
+        final CameraCapabilities capabilities = CameraCapabilities.unflatten(flattened);
+        if (capabilities == null) {
+            LOG.warn("Ignoring unreadable camera capabilities for camera {}", cameraId);
+        }
+        return capabilities;
+    }
+
+    public void put(final int cameraId, @NonNull final CameraCapabilities capabilities) {
+        mSharedPreferences.edit()
+                .putString(key(Build.MODEL, cameraId), capabilities.flatten())
+                .apply();
+        LOG.debug("Saved capabilities of camera {}", cameraId);
+    }
+
+    private static String key(@Nullable final String model, final int cameraId) {
+        return model + "/" + cameraId;
+    }
+}
@@ -1,18 +1,16 @@
 package net.gini.android.vision.internal.camera.api;
 
-import static net.gini.android.vision.internal.camera.api.CameraParametersHelper.isFlashModeSupported;
-import static net.gini.android.vision.internal.camera.api.CameraParametersHelper.isFocusModeSupported;
 import static net.gini.android.vision.internal.camera.api.CameraParametersHelper.isUsingFocusMode;
-import static net.gini.android.vision.internal.camera.api.SizeSelectionHelper.getLargestSize;
-import static net.gini.android.vision.internal.camera.api.SizeSelectionHelper.getLargestSizeWithSimilarAspectRatio;
 
 import android.app.Activity;
+import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.hardware.Camera;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
@@ -21,8 +19,11 @@ import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.View;
 
+import net.gini.android.vision.CaptureLatency.Phase;
+import net.gini.android.vision.internal.camera.photo.CapturePipeline;
 import net.gini.android.vision.internal.camera.photo.Photo;
 import net.gini.android.vision.internal.camera.photo.Size;
+import net.gini.android.vision.internal.metrics.CaptureTrace;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,24 +36,73 @@ import java.util.concurrent.atomic.AtomicReference;
 import jersey.repackaged.jsr166e.CompletableFuture;
 
 /**
+ * <p>
+ *     Controls the back-facing camera using the deprecated Camera API.
+ * </p>
+ * <p>
+ *     The camera is opened, configured and used only on the {@link CameraThread}. Opening and
+ *     configuring the camera takes several hundred milliseconds on many devices and would
+ *     otherwise block the UI thread. The camera delivers its callbacks on the thread which opened
+ *     it, so they also arrive on the camera thread. The returned futures are completed on the UI
+ *     thread.
+ * </p>
+ *
  * @exclude
  */
 public class CameraController implements CameraInterface {
 
     private static final Logger LOG = LoggerFactory.getLogger(CameraController.class);
 
-    private Camera mCamera;
+    private volatile Camera mCamera;
 
-    private boolean mPreviewRunning = false;
+    private volatile boolean mPreviewRunning = false;
     private AtomicReference<CompletableFuture<Boolean>> mFocusingFuture = new AtomicReference<>();
     private AtomicReference<CompletableFuture<Photo>> mTakingPictureFuture =
             new AtomicReference<>();
 
-    private Size mPreviewSize = new Size(0, 0);
-    private Size mPictureSize = new Size(0, 0);
+    private volatile Size mPreviewSize = new Size(0, 0);
+    private volatile Size mPictureSize = new Size(0, 0);
+    private volatile int mCameraOrientation = 0;
+
+    private final PreviewFramePipeline mFramePipeline = new PreviewFramePipeline();
+    // Accessed only on the camera thread
+    private boolean mPreviewFramesEnabled = false;
+
+    private final CameraCapabilitiesStore mCapabilitiesStore;
+    // Read once when the camera is opened, accessed only on the camera thread
+    private CameraCapabilities mCapabilities;
+    // Local copy of the parameters set on the camera, accessed only on the camera thread. Reading
+    // them from the camera would ask the camera service every time.
+    private Camera.Parameters mParameters;
 
     private final Activity mActivity;
-    private final Handler mResetFocusHandler;
+    private final Handler mCameraHandler;
+    private final UIExecutor mUIExecutor = new UIExecutor();
+
+    private final Camera.PreviewCallback mPreviewCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(final byte[] data, final Camera camera) {
+            mFramePipeline.submit(data, mPreviewSize.width, mPreviewSize.height,
+                    mCameraOrientation, System.nanoTime());
+        }
+    };
+
+    // One preallocated task per callback buffer, which returns the buffer to the camera on the
+    // camera thread
+    private volatile CallbackBufferReturn[] mCallbackBufferReturns = new CallbackBufferReturn[0];
+
+    private final PreviewFramePipeline.BufferRecycler mBufferRecycler =
+            new PreviewFramePipeline.BufferRecycler() {
+                @Override
+                public void recycle(@NonNull final byte[] buffer) {
+                    for (final CallbackBufferReturn bufferReturn : mCallbackBufferReturns) {
+                        if (bufferReturn.mBuffer == buffer) {
+                            mCameraHandler.post(bufferReturn);
+                            return;
+                        }
+                    }
+                }
+            };
 
     private Runnable mResetFocusMode = new Runnable() {
         @Override
@@ -60,19 +110,19 @@ public class CameraController implements CameraInterface {
             if (mCamera == null) {
                 return;
             }
-            Camera.Parameters parameters = mCamera.getParameters();
-            if (!isUsingFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE, mCamera)
-                    && isFocusModeSupported(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE,
-                    mCamera)) {
-                parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+            if (!isUsingFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE, mParameters)
+                    && mCapabilities.isFocusModeSupported(
+                    Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
+                mParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+                applyParameters();
             }
-            mCamera.setParameters(parameters);
         }
     };
 
     public CameraController(@NonNull Activity activity) {
         mActivity = activity;
-        mResetFocusHandler = new Handler();
+        mCameraHandler = CameraThread.getHandler();
+        mCapabilitiesStore = new CameraCapabilitiesStore(activity);
     }
 
     @Nullable
@@ -85,25 +135,33 @@ public class CameraController implements CameraInterface {
     @Override
     public CompletableFuture<Void> open() {
         LOG.info("Open camera");
-        if (mCamera != null) {
-            LOG.debug("Camera already open");
-            LOG.info("Camera opened");
-            return CompletableFuture.completedFuture(null);
-        }
-        try {
-            mCamera = openCamera();
-            if (mCamera != null) {
-                configureCamera(mActivity);
-                LOG.info("Camera opened");
-                return CompletableFuture.completedFuture(null);
-            } else {
-                LOG.error("No back-facing camera");
-                return failedFuture(new CameraException("No back-facing camera"));
+        // Read on the calling thread, the display belongs to the UI
+        final int displayRotation = getDisplayRotationDegrees(mActivity);
+        final long openRequestTime = SystemClock.elapsedRealtime();
+        return runOnCameraThread(new CameraTask<Void>() {
+            @Override
+            public Void run() {
+                if (mCamera != null) {
+                    LOG.debug("Camera already open");
+                    LOG.info("Camera opened");
+                    return null;
+                }
+                try {
+                    mCamera = openCamera();
+                    if (mCamera == null) {
+                        LOG.error("No back-facing camera");
+                        throw new CameraException("No back-facing camera");
+                    }
+                    configureCamera(displayRotation);
+                } catch (RuntimeException e) {
+                    LOG.error("Cannot start camera", e);
+                    throw e;
+                }
+                LOG.info("Camera opened in {} ms",
+                        SystemClock.elapsedRealtime() - openRequestTime);
+                return null;
             }
-        } catch (RuntimeException e) {
-            LOG.error("Cannot start camera", e);
-            return failedFuture(e);
-        }
+        });
     }
 
     @VisibleForTesting
@@ -115,68 +173,110 @@ public class CameraController implements CameraInterface {
     @Override
     public void close() {
         LOG.info("Closing camera");
-        if (mCamera == null) {
-            LOG.debug("Camera already closed");
-            LOG.info("Camera closed");
-            return;
-        }
-        mCamera.release();
-        mCamera = null;
-        LOG.info("Camera closed");
+        mCameraHandler.removeCallbacks(mResetFocusMode);
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null) {
+                    LOG.debug("Camera already closed");
+                    LOG.info("Camera closed");
+                    return;
+                }
+                mCamera.release();
+                mCamera = null;
+                mParameters = null;
+                mCapabilities = null;
+                mPreviewRunning = false;
+                mPreviewFramesEnabled = false;
+                mFramePipeline.releaseBuffers();
+                mCallbackBufferReturns = new CallbackBufferReturn[0];
+                // Callbacks of a released camera are not delivered
+                final CompletableFuture<Boolean> focusing = mFocusingFuture.getAndSet(null);
+                if (focusing != null) {
+                    completeOnUiThread(focusing, false, null);
+                }
+                final CompletableFuture<Photo> takingPicture = mTakingPictureFuture.getAndSet(
+                        null);
+                if (takingPicture != null) {
+                    completeOnUiThread(takingPicture, null,
+                            new CameraException("Camera closed while taking a picture"));
+                }
+                LOG.info("Camera closed");
+            }
+        });
     }
 
     @NonNull
     @Override
-    public CompletableFuture<Void> startPreview(@NonNull SurfaceHolder surfaceHolder) {
+    public CompletableFuture<Void> startPreview(@NonNull final SurfaceHolder surfaceHolder) {
         LOG.info("Start preview for the given SurfaceHolder");
-        if (mCamera == null) {
-            LOG.error("Cannot start preview: camera not open");
-            return failedFuture(new CameraException("Cannot start preview: camera not open"));
-        }
-        if (mPreviewRunning) {
-            LOG.info("Preview already running");
-            return CompletableFuture.completedFuture(null);
-        }
-        try {
-            mCamera.setPreviewDisplay(surfaceHolder);
-            mCamera.startPreview();
-            mPreviewRunning = true;
-            LOG.info("Preview started");
-        } catch (IOException e) {
-            LOG.error("Cannot start preview", e);
-            return failedFuture(e);
-        }
-        return CompletableFuture.completedFuture(null);
+        return runOnCameraThread(new CameraTask<Void>() {
+            @Override
+            public Void run() throws IOException {
+                if (mCamera == null) {
+                    LOG.error("Cannot start preview: camera not open");
+                    throw new CameraException("Cannot start preview: camera not open");
+                }
+                if (mPreviewRunning) {
+                    LOG.info("Preview already running");
+                    return null;
+                }
+                try {
+                    mCamera.setPreviewDisplay(surfaceHolder);
+                } catch (IOException e) {
+                    LOG.error("Cannot start preview", e);
+                    throw e;
+                }
+                updatePreviewFrameCallback();
+                mCamera.startPreview();
+                mPreviewRunning = true;
+                LOG.info("Preview started");
+                return null;
+            }
+        });
     }
 
     @NonNull
     @Override
     public CompletableFuture<Void> startPreview() {
         LOG.info("Start preview");
-        if (mCamera == null) {
-            LOG.error("Cannot start preview: camera not open");
-            return failedFuture(new CameraException("Cannot start preview: camera not open"));
-        }
-        if (mPreviewRunning) {
-            LOG.info("Preview already running");
-            return CompletableFuture.completedFuture(null);
-        }
-        mCamera.startPreview();
-        mPreviewRunning = true;
-        LOG.info("Preview started");
-        return CompletableFuture.completedFuture(null);
+        return runOnCameraThread(new CameraTask<Void>() {
+            @Override
+            public Void run() {
+                if (mCamera == null) {
+                    LOG.error("Cannot start preview: camera not open");
+                    throw new CameraException("Cannot start preview: camera not open");
+                }
+                if (mPreviewRunning) {
+                    LOG.info("Preview already running");
+                    return null;
+                }
+                updatePreviewFrameCallback();
+                mCamera.startPreview();
+                mPreviewRunning = true;
+                LOG.info("Preview started");
+                return null;
+            }
+        });
     }
 
     @Override
     public void stopPreview() {
         LOG.info("Stop preview");
-        if (mCamera == null) {
-            LOG.info("Preview not running: camera is stopped");
-            return;
-        }
-        mCamera.stopPreview();
+        // Pictures can't be taken from now on
         mPreviewRunning = false;
-        LOG.info("Preview stopped");
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mCamera == null) {
+                    LOG.info("Preview not running: camera is stopped");
+                    return;
+                }
+                mCamera.stopPreview();
+                mPreviewRunning = false;
+                LOG.info("Preview stopped");
+            }
+        });
     }
 
     @Override
@@ -212,53 +312,91 @@ public class CameraController implements CameraInterface {
                         // Otherwise we set the new completable and exit the loop
                     } while (!mFocusingFuture.compareAndSet(null, focused));
 
-                    mCamera.cancelAutoFocus();
-                    Rect focusRect = calculateTapArea(x, y, getBackFacingCameraOrientation(),
+                    final Rect focusRect = calculateTapArea(x, y, mCameraOrientation,
                             view.getWidth(), view.getHeight());
                     LOG.debug("Focus rect calculated (l:{}, t:{}, r:{}, b:{})", focusRect.left,
                             focusRect.top, focusRect.right, focusRect.bottom);
 
-                    Camera.Parameters parameters = mCamera.getParameters();
-                    if (!isUsingFocusMode(Camera.Parameters.FOCUS_MODE_AUTO, mCamera)
-                            && isFocusModeSupported(Camera.Parameters.FOCUS_MODE_AUTO, mCamera)) {
-                        parameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
-                    }
-                    if (parameters.getMaxNumFocusAreas() > 0) {
-                        List<Camera.Area> mylist = new ArrayList<Camera.Area>();
-                        mylist.add(new Camera.Area(focusRect, 1000));
-                        parameters.setFocusAreas(mylist);
-                        LOG.debug("Focus area set");
-                    } else {
-                        LOG.warn("Focus areas not supported");
+                    if (listener != null) {
+                        listener.onFocusing(new Point(Math.round(x), Math.round(y)));
                     }
-
-                    try {
-                        if (listener != null) {
-                            listener.onFocusing(new Point(Math.round(x), Math.round(y)));
+                    mCameraHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            focusOnArea(focusRect, focused, listener);
                         }
-                        mCamera.setParameters(parameters);
-                        LOG.info("Focusing started");
-                        mCamera.autoFocus(new Camera.AutoFocusCallback() {
+                    });
+                }
+                return true;
+            }
+        });
+    }
+
+    private void focusOnArea(@NonNull final Rect focusRect,
+            @NonNull final CompletableFuture<Boolean> focused,
+            @Nullable final TapToFocusListener listener) {
+        if (mCamera == null) {
+            LOG.error("Cannot focus on tap: camera not open");
+            focusingFailed(focused, listener);
+            return;
+        }
+        try {
+            mCamera.cancelAutoFocus();
+            if (!isUsingFocusMode(Camera.Parameters.FOCUS_MODE_AUTO, mParameters)
+                    && mCapabilities.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_AUTO)) {
+                mParameters.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
+            }
+            if (mCapabilities.getMaxNumFocusAreas() > 0) {
+                List<Camera.Area> mylist = new ArrayList<Camera.Area>();
+                mylist.add(new Camera.Area(focusRect, 1000));
+                mParameters.setFocusAreas(mylist);
+                LOG.debug("Focus area set");
+            } else {
+                LOG.warn("Focus areas not supported");
+            }
+
+            applyParameters();
+            LOG.info("Focusing started");
+            mCamera.autoFocus(new Camera.AutoFocusCallback() {
+                @Override
+                public void onAutoFocus(final boolean success, Camera camera) {
+                    LOG.info("Focusing finished with result: {}", success);
+                    mFocusingFuture.set(null);
+                    completeOnUiThread(focused, success, null);
+                    if (listener != null) {
+                        mUIExecutor.runOnUiThread(new Runnable() {
                             @Override
-                            public void onAutoFocus(final boolean success, Camera camera) {
-                                LOG.info("Focusing finished with result: {}", success);
-                                mFocusingFuture.set(null);
-                                focused.complete(success);
-                                if (listener != null) {
-                                    listener.onFocused(success);
-                                }
-                                mResetFocusHandler.removeCallbacks(mResetFocusMode);
-                                mResetFocusHandler.postDelayed(mResetFocusMode, 5000);
+                            public void run() {
+                                listener.onFocused(success);
                             }
                         });
-                    } catch (Exception e) {
-                        mFocusingFuture.set(null);
-                        LOG.error("Could not focus", e);
                     }
+                    mCameraHandler.removeCallbacks(mResetFocusMode);
+                    mCameraHandler.postDelayed(mResetFocusMode, 5000);
                 }
-                return true;
-            }
-        });
+            });
+        } catch (Exception e) {
+            LOG.error("Could not focus", e);
+            focusingFailed(focused, listener);
+        }
+    }
+
+    /**
+     * Completes the focusing with {@code false} to let waiting callers, like {@link
+     * #takePicture()}, continue.
+     */
+    private void focusingFailed(@NonNull final CompletableFuture<Boolean> focused,
+            @Nullable final TapToFocusListener listener) {
+        mFocusingFuture.compareAndSet(focused, null);
+        completeOnUiThread(focused, false, null);
+        if (listener != null) {
+            mUIExecutor.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onFocused(false);
+                }
+            });
+        }
     }
 
     @Override
@@ -277,11 +415,6 @@ public class CameraController implements CameraInterface {
             return CompletableFuture.completedFuture(false);
         }
 
-        if (!CameraParametersHelper.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_AUTO, mCamera)) {
-            LOG.error("Cannot focus: auto-focus mode not supported");
-            return CompletableFuture.completedFuture(false);
-        }
-
         final CompletableFuture<Boolean> completed = new CompletableFuture<>();
         do {
             // Checking whether a completable is already available in which case focusing is in
@@ -295,13 +428,33 @@ public class CameraController implements CameraInterface {
             // Otherwise we set the new completable and exit the loop
         } while (!mFocusingFuture.compareAndSet(null, completed));
 
-        mCamera.cancelAutoFocus();
-        mCamera.autoFocus(new Camera.AutoFocusCallback() {
+        mCameraHandler.post(new Runnable() {
             @Override
-            public void onAutoFocus(final boolean success, Camera camera) {
-                LOG.info("Focusing finished with result: {}", success);
-                mFocusingFuture.set(null);
-                completed.complete(success);
+            public void run() {
+                if (mCamera == null) {
+                    LOG.error("Cannot focus: camera not open");
+                    focusingFailed(completed, null);
+                    return;
+                }
+                if (!mCapabilities.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_AUTO)) {
+                    LOG.error("Cannot focus: auto-focus mode not supported");
+                    focusingFailed(completed, null);
+                    return;
+                }
+                try {
+                    mCamera.cancelAutoFocus();
+                    mCamera.autoFocus(new Camera.AutoFocusCallback() {
+                        @Override
+                        public void onAutoFocus(final boolean success, Camera camera) {
+                            LOG.info("Focusing finished with result: {}", success);
+                            mFocusingFuture.set(null);
+                            completeOnUiThread(completed, success, null);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    LOG.error("Could not focus", e);
+                    focusingFailed(completed, null);
+                }
             }
         });
 
@@ -336,34 +489,78 @@ public class CameraController implements CameraInterface {
         // as being stopped before it is really stopped
         mPreviewRunning = false;
 
-        CompletableFuture<Boolean> focusFuture = new CompletableFuture<>();
-        if (isUsingFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE, mCamera)) {
-            // When continuous focus mode is used no auto-focus run is needed
-            focusFuture.complete(true);
-        } else {
-            // Continuous focus mode is not used and we need to do an auto-focus run
-            focusFuture = focus();
-        }
-
-        focusFuture.handle(new CompletableFuture.BiFun<Boolean, Throwable, Void>() {
+        final CaptureTrace trace = CaptureTrace.current();
+        mCameraHandler.post(new Runnable() {
             @Override
-            public Void apply(final Boolean aBoolean, final Throwable throwable) {
-                takePicture(new Camera.PictureCallback() {
+            public void run() {
+                if (mCamera == null) {
+                    // Closed in the meantime, which failed the future
+                    return;
+                }
+                if (isUsingFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE,
+                        mParameters)) {
+                    // When continuous focus mode is used no auto-focus run is needed
+                    capturePicture(pictureTaken, trace);
+                    return;
+                }
+                // Continuous focus mode is not used and we need to do an auto-focus run
+                trace.beginPhase(Phase.FOCUS);
+                focus().handle(new CompletableFuture.BiFun<Boolean, Throwable, Void>() {
                     @Override
-                    public void onPictureTaken(final byte[] bytes, Camera camera) {
-                        mTakingPictureFuture.set(null);
-                        final Photo photo = Photo.fromJpeg(bytes, getBackFacingCameraOrientation());
-                        LOG.info("Picture taken");
-                        pictureTaken.complete(photo);
+                    public Void apply(final Boolean aBoolean, final Throwable throwable) {
+                        trace.endPhase(Phase.FOCUS);
+                        mCameraHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                capturePicture(pictureTaken, trace);
+                            }
+                        });
+                        return null;
                     }
                 });
-                return null;
             }
         });
 
         return pictureTaken;
     }
 
+    private void capturePicture(@NonNull final CompletableFuture<Photo> pictureTaken,
+            @NonNull final CaptureTrace trace) {
+        if (mCamera == null) {
+            return;
+        }
+        try {
+            trace.beginPhase(Phase.CAPTURE);
+            takePicture(new Camera.PictureCallback() {
+                @Override
+                public void onPictureTaken(final byte[] bytes, Camera camera) {
+                    trace.endPhase(Phase.CAPTURE);
+                    mTakingPictureFuture.set(null);
+                    LOG.info("Picture taken");
+                    // Only the raw jpeg is handed off here, the photo is processed on
+                    // worker threads
+                    trace.beginPhase(Phase.PHOTO_PROCESSING);
+                    final Photo photo = CapturePipeline.processInBackground(bytes,
+                            mCameraOrientation, false);
+                    photo.whenProcessed().handle(
+                            new CompletableFuture.BiFun<Photo, Throwable, Void>() {
+                                @Override
+                                public Void apply(final Photo processedPhoto,
+                                        final Throwable throwable) {
+                                    trace.endPhase(Phase.PHOTO_PROCESSING);
+                                    completeOnUiThread(pictureTaken, processedPhoto, throwable);
+                                    return null;
+                                }
+                            });
+                }
+            });
+        } catch (RuntimeException e) {
+            LOG.error("Cannot take picture", e);
+            mTakingPictureFuture.set(null);
+            completeOnUiThread(pictureTaken, null, e);
+        }
+    }
+
     @VisibleForTesting
     protected void takePicture(Camera.PictureCallback callback) {
         if (mCamera == null) {
@@ -384,26 +581,172 @@ public class CameraController implements CameraInterface {
         return mPictureSize;
     }
 
-    private void configureCamera(Activity activity) {
+    @Override
+    public void addPreviewFrameProcessor(@NonNull final PreviewFrameProcessor processor) {
+        LOG.info("Add preview frame processor");
+        mFramePipeline.addProcessor(processor);
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                updatePreviewFrameCallback();
+            }
+        });
+    }
+
+    @Override
+    public void removePreviewFrameProcessor(@NonNull final PreviewFrameProcessor processor) {
+        LOG.info("Remove preview frame processor");
+        mFramePipeline.removeProcessor(processor);
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                updatePreviewFrameCallback();
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public PreviewFramePipeline getPreviewFramePipeline() {
+        return mFramePipeline;
+    }
+
+    /**
+     * Sets the preview callback with a ring of callback buffers while there are frame processors
+     * and removes it otherwise. Must be called on the camera thread.
+     */
+    private void updatePreviewFrameCallback() {
+        if (mCamera == null) {
+            return;
+        }
+        if (mFramePipeline.hasProcessors() && !mPreviewFramesEnabled) {
+            final int bufferSize = mPreviewSize.width * mPreviewSize.height
+                    * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+            final byte[][] buffers = mFramePipeline.allocateBuffers(bufferSize, mBufferRecycler);
+            final CallbackBufferReturn[] bufferReturns = new CallbackBufferReturn[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                bufferReturns[i] = new CallbackBufferReturn(buffers[i]);
+                mCamera.addCallbackBuffer(buffers[i]);
+            }
+            mCallbackBufferReturns = bufferReturns;
+            mCamera.setPreviewCallbackWithBuffer(mPreviewCallback);
+            mPreviewFramesEnabled = true;
+            LOG.debug("Preview frame callback set");
+        } else if (!mFramePipeline.hasProcessors() && mPreviewFramesEnabled) {
+            mCamera.setPreviewCallbackWithBuffer(null);
+            mFramePipeline.releaseBuffers();
+            mCallbackBufferReturns = new CallbackBufferReturn[0];
+            mPreviewFramesEnabled = false;
+            LOG.debug("Preview frame callback removed");
+        }
+    }
+
+    /**
+     * Runs the task on the camera thread and completes the returned future with its result on the
+     * UI thread.
+     */
+    @NonNull
+    private <T> CompletableFuture<T> runOnCameraThread(@NonNull final CameraTask<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        mCameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    completeOnUiThread(future, task.run(), null);
+                } catch (IOException | RuntimeException e) {
+                    completeOnUiThread(future, null, e);
+                }
+            }
+        });
+        return future;
+    }
+
+    private <T> void completeOnUiThread(@NonNull final CompletableFuture<T> future,
+            @Nullable final T result, @Nullable final Throwable throwable) {
+        mUIExecutor.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a preview frame buffer to the camera. Runs on the camera thread.
+     */
+    private class CallbackBufferReturn implements Runnable {
+
+        private final byte[] mBuffer;
+
+        CallbackBufferReturn(@NonNull final byte[] buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public void run() {
+            // Buffers added while the callback is not set would be discarded
+            if (mCamera != null && mPreviewFramesEnabled) {
+                mCamera.addCallbackBuffer(mBuffer);
+            }
+        }
+    }
+
+    private interface CameraTask<T> {
+
+        T run() throws IOException;
+    }
+
+
+    private void configureCamera(int displayRotation) {
         LOG.debug("Configuring camera");
         if (mCamera == null) {
             LOG.error("Cannot configure camera: camera not open");
             return;
         }
 
-        Camera.Parameters params = mCamera.getParameters();
+        // The only time the parameters are read from the camera
+        final Camera.Parameters params = mCamera.getParameters();
+        mParameters = params;
+        mCapabilities = CameraCapabilities.fromParameters(params);
+        final Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
+        final int cameraId = getBackFacingCameraId(cameraInfo);
+        if (cameraId >= 0) {
+            mCapabilitiesStore.put(cameraId, mCapabilities);
+        }
+
         selectPictureSize(params);
         selectPreviewSize(params);
+        // Default format, set explicitly because the preview frame buffers are sized for it
+        params.setPreviewFormat(ImageFormat.NV21);
         selectFocusMode(params);
         selectFlashMode(params);
-        mCamera.setParameters(params);
+        applyParameters();
 
-        setCameraDisplayOrientation(activity, mCamera);
+        if (cameraId >= 0) {
+            setCameraDisplayOrientation(displayRotation, cameraInfo, mCamera);
+        }
+    }
+
+    /**
+     * Sets the local copy of the parameters on the camera. If the camera rejects them, the local
+     * copy is replaced with the parameters the camera uses.
+     */
+    private void applyParameters() {
+        try {
+            mCamera.setParameters(mParameters);
+        } catch (RuntimeException e) {
+            mParameters = mCamera.getParameters();
+            throw e;
+        }
     }
 
     private void selectPictureSize(final Camera.Parameters params) {
-        List<Camera.Size> pictureSizes = params.getSupportedPictureSizes();
-        Size pictureSize = getLargestSize(pictureSizes);
+        Size pictureSize = PictureSizePolicy.getCurrent().selectPictureSize(
+                mCapabilities.getPictureSizes());
         if (pictureSize != null) {
             mPictureSize = pictureSize;
             params.setPictureSize(mPictureSize.width, mPictureSize.height);
@@ -414,8 +757,8 @@ public class CameraController implements CameraInterface {
     }
 
     private void selectPreviewSize(final Camera.Parameters params) {
-        List<Camera.Size> previewSizes = params.getSupportedPreviewSizes();
-        Size previewSize = getLargestSizeWithSimilarAspectRatio(previewSizes, mPictureSize);
+        Size previewSize = PictureSizePolicy.getCurrent().selectPreviewSize(
+                mCapabilities.getPreviewSizes(), mPictureSize);
         if (previewSize != null) {
             mPreviewSize = previewSize;
             params.setPreviewSize(mPreviewSize.width, mPreviewSize.height);
@@ -426,7 +769,7 @@ public class CameraController implements CameraInterface {
     }
 
     private void selectFocusMode(final Camera.Parameters params) {
-        if (isFocusModeSupported(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE, mCamera)) {
+        if (mCapabilities.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
             params.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
             LOG.debug("Focus mode continuous picture");
         } else {
@@ -435,7 +778,7 @@ public class CameraController implements CameraInterface {
     }
 
     private void selectFlashMode(final Camera.Parameters params) {
-        if (isFlashModeSupported(Camera.Parameters.FLASH_MODE_ON, mCamera)) {
+        if (mCapabilities.isFlashModeSupported(Camera.Parameters.FLASH_MODE_ON)) {
             params.setFlashMode(Camera.Parameters.FLASH_MODE_ON);
             LOG.debug("Flash on");
         } else {
@@ -443,12 +786,23 @@ public class CameraController implements CameraInterface {
         }
     }
 
-    private void setCameraDisplayOrientation(Activity activity, android.hardware.Camera camera) {
+    private void setCameraDisplayOrientation(int degrees, @NonNull Camera.CameraInfo info,
+            android.hardware.Camera camera) {
         LOG.debug("Setting camera display orientation");
-        Camera.CameraInfo info = getBackFacingCameraInfo();
-        if (info == null) {
-            return;
+        mCameraOrientation = info.orientation;
+
+        int result;
+        if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+            result = (info.orientation + degrees) % 360;
+            result = (360 - result) % 360;  // compensate the mirror
+        } else {  // back-facing
+            result = (info.orientation - degrees + 360) % 360;
         }
+        camera.setDisplayOrientation(result);
+        LOG.debug("Camera display orientation set to {}", result);
+    }
+
+    private static int getDisplayRotationDegrees(Activity activity) {
         int rotation = activity.getWindowManager().getDefaultDisplay()
                 .getRotation();
         int degrees = 0;
@@ -467,43 +821,28 @@ public class CameraController implements CameraInterface {
                 break;
         }
         LOG.debug("Default display rotation {}", degrees);
-
-        int result;
-        if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            result = (info.orientation + degrees) % 360;
-            result = (360 - result) % 360;  // compensate the mirror
-        } else {  // back-facing
-            result = (info.orientation - degrees + 360) % 360;
-        }
-        camera.setDisplayOrientation(result);
-        LOG.debug("Camera display orientation set to {}", result);
+        return degrees;
     }
 
-    @Nullable
-    private Camera.CameraInfo getBackFacingCameraInfo() {
+    /**
+     * Finds the camera which is opened by {@link Camera#open()}. Reading the camera infos doesn't
+     * require opening the camera.
+     *
+     * @param cameraInfo receives the info of the back-facing camera
+     * @return the id of the first back-facing camera or -1, if there is none
+     */
+    public static int getBackFacingCameraId(@NonNull final Camera.CameraInfo cameraInfo) {
         LOG.debug("Getting back facing camera info");
         int numberOfCameras = Camera.getNumberOfCameras();
-        Camera.CameraInfo cameraInfo = new Camera.CameraInfo();
         for (int i = 0; i < numberOfCameras; i++) {
             Camera.getCameraInfo(i, cameraInfo);
             if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
                 LOG.debug("Camera info found");
-                return cameraInfo;
+                return i;
             }
         }
         LOG.debug("No camera info found");
-        return null;
-    }
-
-    private int getBackFacingCameraOrientation() {
-        LOG.debug("Getting back facing camera orientation");
-        Camera.CameraInfo cameraInfo = getBackFacingCameraInfo();
-        if (cameraInfo != null) {
-            LOG.debug("Camera orientation: {}", cameraInfo.orientation);
-            return cameraInfo.orientation;
-        }
-        LOG.debug("No camera info, using default camera orientation: 0");
-        return 0;
+        return -1;
     }
 
     /**
@@ -0,0 +1,81 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *     Creates the {@link CameraInterface} implementation for the device.
+ * </p>
+ * <p>
+ *     The Camera2 API is used on Lollipop and later, if the back-facing camera has a Camera2
+ *     hardware level above legacy. Otherwise, or if the camera's characteristics can't be read,
+ *     the Camera API is used. On legacy devices Camera2 is only a wrapper around the Camera API.
+ * </p>
+ *
+ * @exclude
+ */
+public final class CameraControllerFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CameraControllerFactory.class);
+
+    @NonNull
+    public static CameraInterface createCameraController(@NonNull final Activity activity) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            final CameraInterface camera2Controller = createCamera2Controller(activity);
+            if (camera2Controller != null) {
+                LOG.info("Using the Camera2 API");
+                return camera2Controller;
+            }
+        }
+        LOG.info("Using the Camera API");
+        return new CameraController(activity);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Nullable
+    private static CameraInterface createCamera2Controller(@NonNull final Activity activity) {
+        final CameraManager cameraManager = (CameraManager) activity.getSystemService(
+                Context.CAMERA_SERVICE);
+        if (cameraManager == null) {
+            return null;
+        }
+        try {
+            for (final String cameraId : cameraManager.getCameraIdList()) {
+                final CameraCharacteristics characteristics =
+                        cameraManager.getCameraCharacteristics(cameraId);
+                final Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+                if (facing == null || facing != CameraMetadata.LENS_FACING_BACK) {
+                    continue;
+                }
+                final Integer hardwareLevel = characteristics.get(
+                        CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+                if (hardwareLevel == null
+                        || hardwareLevel
+                        == CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
+                    LOG.debug("Camera2 hardware level is legacy");
+                    return null;
+                }
+                return new Camera2Controller(cameraManager, cameraId, characteristics);
+            }
+            LOG.debug("No back-facing camera found with the Camera2 API");
+        } catch (CameraAccessException | RuntimeException e) {
+            LOG.warn("Cannot use the Camera2 API", e);
+        }
+        return null;
+    }
+
+    private CameraControllerFactory() {
+    }
+}
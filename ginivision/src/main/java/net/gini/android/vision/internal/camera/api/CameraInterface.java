@@ -110,6 +110,9 @@ public interface CameraInterface {
      * <p>
      *     Take a picture with the camera.
      * </p>
+     * <p>
+     *     The photo has no preview. It is decoded by the screen which displays the photo.
+     * </p>
      * @return a {@link CompletableFuture} that completes with the {@link Photo} object taken
      */
     @NonNull
@@ -117,7 +120,9 @@ public interface CameraInterface {
 
     /**
      * <p>
-     *     The selected preview size for the camera. It is the largest preview size which has an aspect ratio of 4:3.
+     *     The selected preview size for the camera. It is the largest preview size with the picture size's aspect
+     *     ratio which is not larger than the picture size, as selected by {@link
+     *     PictureSizePolicy#selectPreviewSize(Size[], Size)}.
      * </p>
      * @return preview size
      */
@@ -126,13 +131,44 @@ public interface CameraInterface {
 
     /**
      *<p>
-     *     The selected picture size for the camera. It is the largest picture size which has an aspect ratio of 4:3.
+     *     The selected picture size for the camera. It is selected by the {@linkplain PictureSizePolicy#getCurrent()
+     *     current} {@link PictureSizePolicy}, by default the smallest 4:3 picture size with at least {@link
+     *     PictureSizePolicy#MIN_PICTURE_AREA} pixels (about 8MP).
      *</p>
      * @return picture size
      */
     @NonNull
     Size getPictureSize();
 
+    /**
+     * <p>
+     *     Adds a processor for the camera preview frames.
+     * </p>
+     * <p>
+     *     Preview frames are delivered only while at least one processor was added.
+     * </p>
+     * @param processor a {@link PreviewFrameProcessor}
+     */
+    void addPreviewFrameProcessor(@NonNull PreviewFrameProcessor processor);
+
+    /**
+     * <p>
+     *     Removes a processor added with {@link CameraInterface#addPreviewFrameProcessor(PreviewFrameProcessor)}.
+     * </p>
+     * @param processor a {@link PreviewFrameProcessor}
+     */
+    void removePreviewFrameProcessor(@NonNull PreviewFrameProcessor processor);
+
+    /**
+     * <p>
+     *     The pipeline which delivers the preview frames to the processors. Its counters show how
+     *     many frames were processed and dropped.
+     * </p>
+     * @return the {@link PreviewFramePipeline}
+     */
+    @NonNull
+    PreviewFramePipeline getPreviewFramePipeline();
+
     public interface TapToFocusListener {
         void onFocusing(Point point);
 
@@ -3,8 +3,6 @@ package net.gini.android.vision.internal.camera.api;
 import android.hardware.Camera;
 import android.support.annotation.NonNull;
 
-import java.util.List;
-
 /**
  * @exclude
  */
@@ -13,16 +11,13 @@ final class CameraParametersHelper {
     private CameraParametersHelper() {
     }
 
-    static boolean isFocusModeSupported(@NonNull String focusMode, @NonNull Camera camera) {
-        return camera.getParameters().getSupportedFocusModes().contains(focusMode);
-    }
-
-    static boolean isUsingFocusMode(@NonNull String focusMode, @NonNull Camera camera) {
-        return camera.getParameters().getFocusMode().equals(focusMode);
-    }
-
-    static boolean isFlashModeSupported(@NonNull String flashMode, @NonNull Camera camera) {
-        List<String> supportedFlashModes = camera.getParameters().getSupportedFlashModes();
-        return supportedFlashModes != null && supportedFlashModes.contains(flashMode);
+    /**
+     * @param focusMode  a focus mode
+     * @param parameters the parameters which were last set on the camera. Use the local copy
+     *                   instead of {@link Camera#getParameters()} which asks the camera service.
+     */
+    static boolean isUsingFocusMode(@NonNull String focusMode,
+            @NonNull Camera.Parameters parameters) {
+        return focusMode.equals(parameters.getFocusMode());
     }
 }
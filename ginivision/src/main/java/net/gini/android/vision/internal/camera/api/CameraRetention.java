@@ -0,0 +1,259 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.UiThread;
+import android.support.annotation.VisibleForTesting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *     Decides how long a stopped Camera Screen keeps its camera open, so returning to it (for
+ *     example retaking a picture from the Review Screen) only restarts the preview instead of
+ *     opening and configuring the camera again.
+ * </p>
+ * <p>
+ *     The camera is retained while one of the library's activities is started and for a grace
+ *     period after the last one was stopped. It is released right away when the system asks to
+ *     trim memory or when the app's UI is hidden.
+ * </p>
+ * <p>
+ *     Must be used on the main thread. The release action is run on the main thread.
+ * </p>
+ *
+ * @exclude
+ */
+public class CameraRetention implements Application.ActivityLifecycleCallbacks,
+        ComponentCallbacks2 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CameraRetention.class);
+
+    public static final long DEFAULT_GRACE_PERIOD_MS = 10000;
+
+    private final Runnable mReleaseCamera;
+    private final long mGracePeriodMs;
+    private final Class<?>[] mLibraryActivities;
+    private final Runnable mGracePeriodElapsed = new Runnable() {
+        @Override
+        public void run() {
+            LOG.info("Camera retention grace period elapsed");
+            release();
+        }
+    };
+
+    private Handler mHandler;
+    private Application mApplication;
+    private Activity mHostActivity;
+    private int mStartedLibraryActivities = 0;
+    private boolean mRetained = false;
+    private boolean mReleaseScheduled = false;
+
+    /**
+     * @param releaseCamera     closes the retained camera
+     * @param gracePeriodMs     how long the camera is kept open after the last library activity
+     *                          was stopped
+     * @param libraryActivities the activities during which the camera is kept open
+     */
+    public CameraRetention(@NonNull final Runnable releaseCamera, final long gracePeriodMs,
+            @NonNull final Class<?>... libraryActivities) {
+        mReleaseCamera = releaseCamera;
+        mGracePeriodMs = gracePeriodMs;
+        mLibraryActivities = libraryActivities;
+    }
+
+    /**
+     * Starts observing the activities and the memory callbacks of the application. Has no effect,
+     * if it was already registered.
+     *
+     * @param application  the host activity's application
+     * @param hostActivity the activity showing the camera preview
+     */
+    public void register(@NonNull final Application application,
+            @NonNull final Activity hostActivity) {
+        if (mApplication != null) {
+            return;
+        }
+        mApplication = application;
+        mHostActivity = hostActivity;
+        application.registerActivityLifecycleCallbacks(this);
+        application.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Releases the retained camera and stops observing the application.
+     */
+    public void unregister() {
+        release();
+        if (mApplication == null) {
+            return;
+        }
+        mApplication.unregisterActivityLifecycleCallbacks(this);
+        mApplication.unregisterComponentCallbacks(this);
+        mApplication = null;
+        mHostActivity = null;
+        mStartedLibraryActivities = 0;
+    }
+
+    /**
+     * Call when the camera preview is shown again.
+     *
+     * @return {@code true}, if the camera was retained and is still open
+     */
+    @UiThread
+    public boolean onCameraStarted() {
+        cancelScheduledRelease();
+        final boolean wasRetained = mRetained;
+        mRetained = false;
+        return wasRetained;
+    }
+
+    /**
+     * Call when the camera preview was stopped, but the camera was left open.
+     */
+    @UiThread
+    public void onCameraStopped() {
+        mRetained = true;
+        if (mStartedLibraryActivities == 0) {
+            scheduleRelease();
+        }
+    }
+
+    public boolean isRetained() {
+        return mRetained;
+    }
+
+    /**
+     * Releases the retained camera right away.
+     */
+    @UiThread
+    public void release() {
+        cancelScheduledRelease();
+        if (!mRetained) {
+            return;
+        }
+        mRetained = false;
+        LOG.info("Releasing the retained camera");
+        mReleaseCamera.run();
+    }
+
+    @Override
+    public void onActivityStarted(final Activity activity) {
+        if (!isLibraryActivity(activity)) {
+            return;
+        }
+        mStartedLibraryActivities++;
+        cancelScheduledRelease();
+    }
+
+    @Override
+    public void onActivityStopped(final Activity activity) {
+        if (!isLibraryActivity(activity) || mStartedLibraryActivities == 0) {
+            return;
+        }
+        mStartedLibraryActivities--;
+        if (mRetained && mStartedLibraryActivities == 0) {
+            scheduleRelease();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        if (shouldReleaseOnTrimMemory(level)) {
+            release();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        release();
+    }
+
+    /**
+     * @param level the level passed to {@link ComponentCallbacks2#onTrimMemory(int)}
+     * @return {@code true}, if memory is getting low or the app's UI was hidden
+     */
+    @VisibleForTesting
+    static boolean shouldReleaseOnTrimMemory(final int level) {
+        return level >= TRIM_MEMORY_RUNNING_LOW;
+    }
+
+    private boolean isLibraryActivity(@NonNull final Activity activity) {
+        // The host activity is stopped while the camera is retained
+        if (activity == mHostActivity) {
+            return false;
+        }
+        for (final Class<?> libraryActivity : mLibraryActivities) {
+            if (libraryActivity.isInstance(activity)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scheduleRelease() {
+        if (mReleaseScheduled) {
+            return;
+        }
+        LOG.debug("Releasing the retained camera in {} ms", mGracePeriodMs);
+        mReleaseScheduled = true;
+        postDelayed(mGracePeriodElapsed, mGracePeriodMs);
+    }
+
+    private void cancelScheduledRelease() {
+        if (!mReleaseScheduled) {
+            return;
+        }
+        mReleaseScheduled = false;
+        removeCallbacks(mGracePeriodElapsed);
+    }
+
+    @VisibleForTesting
+    protected void postDelayed(@NonNull final Runnable runnable, final long delayMs) {
+        getHandler().postDelayed(runnable, delayMs);
+    }
+
+    @VisibleForTesting
+    protected void removeCallbacks(@NonNull final Runnable runnable) {
+        getHandler().removeCallbacks(runnable);
+    }
+
+    @NonNull
+    private Handler getHandler() {
+        if (mHandler == null) {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
+        return mHandler;
+    }
+
+    @Override
+    public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(final Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(final Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(final Activity activity) {
+    }
+
+    @Override
+    public void onConfigurationChanged(final Configuration newConfig) {
+    }
+}
@@ -0,0 +1,35 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ *     The thread on which the camera controllers open and use the camera.
+ * </p>
+ * <p>
+ *     All controllers share the thread. This keeps the camera calls of successive controllers in
+ *     order, e.g. an activity recreated after a configuration change opens the camera only after
+ *     the previous activity released it.
+ * </p>
+ *
+ * @exclude
+ */
+final class CameraThread {
+
+    private static Handler sHandler;
+
+    @NonNull
+    static synchronized Handler getHandler() {
+        if (sHandler == null) {
+            final HandlerThread thread = new HandlerThread("Camera");
+            thread.start();
+            sHandler = new Handler(thread.getLooper());
+        }
+        return sHandler;
+    }
+
+    private CameraThread() {
+    }
+}
@@ -0,0 +1,191 @@
+package net.gini.android.vision.internal.camera.api;
+
+import static net.gini.android.vision.internal.camera.api.SizeSelectionHelper.getLargestSize;
+import static net.gini.android.vision.internal.camera.api.SizeSelectionHelper.getLargestSizeWithSimilarAspectRatio;
+import static net.gini.android.vision.internal.camera.api.SizeSelectionHelper.isSimilarAspectRatio;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.gini.android.vision.internal.camera.photo.Size;
+
+/**
+ * <p>
+ *     Selects the picture size and a matching preview size from the sizes supported by the
+ *     camera.
+ * </p>
+ * <p>
+ *     The largest picture size of modern cameras (16 to 48MP) is far more than the analysis
+ *     needs, and every step from decoding to uploading gets slower with the picture's size. By
+ *     default the smallest 4:3 picture size with about 8MP or more is used.
+ * </p>
+ * <p>
+ *     The camera controllers and the requirements check use the {@link #getCurrent()} policy, so
+ *     the requirements are checked for the size which is actually used.
+ * </p>
+ *
+ * @exclude
+ */
+public abstract class PictureSizePolicy {
+
+    /**
+     * About 8MP, the resolution required for a good analysis.
+     */
+    public static final int MIN_PICTURE_AREA = 7900000;
+
+    /**
+     * Share of the maximum memory the decoded pictures may use by default.
+     */
+    private static final float DEFAULT_MEMORY_SHARE = 0.5f;
+
+    private static final Size ASPECT_RATIO_4_3 = new Size(4, 3);
+
+    private static volatile PictureSizePolicy sCurrent = minimumArea(MIN_PICTURE_AREA);
+
+    @NonNull
+    public static PictureSizePolicy getCurrent() {
+        return sCurrent;
+    }
+
+    /**
+     * @param policy the policy used for cameras opened afterwards
+     */
+    public static void setCurrent(@NonNull final PictureSizePolicy policy) {
+        sCurrent = policy;
+    }
+
+    /**
+     * @return a policy which selects the largest picture size
+     */
+    @NonNull
+    public static PictureSizePolicy largest() {
+        return new PictureSizePolicy() {
+            @Nullable
+            @Override
+            public Size selectPictureSize(@NonNull final Size[] pictureSizes) {
+                return getLargestSize(pictureSizes);
+            }
+        };
+    }
+
+    /**
+     * @param minArea the minimum number of pixels
+     * @return a policy which selects the smallest 4:3 picture size with at least the given area.
+     * Falls back to the smallest size of any aspect ratio with at least the given area and then to
+     * the largest size.
+     */
+    @NonNull
+    public static PictureSizePolicy minimumArea(final int minArea) {
+        return new PictureSizePolicy() {
+            @Nullable
+            @Override
+            public Size selectPictureSize(@NonNull final Size[] pictureSizes) {
+                Size smallest = null;
+                Size smallest4to3 = null;
+                for (final Size size : pictureSizes) {
+                    if (getArea(size) < minArea) {
+                        continue;
+                    }
+                    if (smallest == null || getArea(size) < getArea(smallest)) {
+                        smallest = size;
+                    }
+                    if (isSimilarAspectRatio(size, ASPECT_RATIO_4_3)
+                            && (smallest4to3 == null
+                            || getArea(size) < getArea(smallest4to3))) {
+                        smallest4to3 = size;
+                    }
+                }
+                if (smallest4to3 != null) {
+                    return smallest4to3;
+                }
+                return smallest != null ? smallest : getLargestSize(pictureSizes);
+            }
+        };
+    }
+
+    /**
+     * @return a policy which selects the largest picture size whose decoded footprint fits into
+     * half of the maximum memory
+     * @see #memoryBudget(Runtime, float)
+     */
+    @NonNull
+    public static PictureSizePolicy memoryBudget() {
+        return memoryBudget(Runtime.getRuntime(), DEFAULT_MEMORY_SHARE);
+    }
+
+    /**
+     * @param runtime     the runtime whose {@link Runtime#maxMemory()} is used
+     * @param memoryShare the share of the maximum memory the decoded pictures may use
+     * @return a policy which selects the largest picture size whose {@linkplain
+     * #getDecodedFootprint(Size) decoded footprint} fits into the share of the maximum memory.
+     * Falls back to the smallest size.
+     */
+    @NonNull
+    public static PictureSizePolicy memoryBudget(@NonNull final Runtime runtime,
+            final float memoryShare) {
+        return new PictureSizePolicy() {
+            @Nullable
+            @Override
+            public Size selectPictureSize(@NonNull final Size[] pictureSizes) {
+                final long budget = (long) (runtime.maxMemory() * memoryShare);
+                Size largestFitting = null;
+                Size smallest = null;
+                for (final Size size : pictureSizes) {
+                    if (getDecodedFootprint(size) <= budget
+                            && (largestFitting == null
+                            || getArea(size) > getArea(largestFitting))) {
+                        largestFitting = size;
+                    }
+                    if (smallest == null || getArea(size) < getArea(smallest)) {
+                        smallest = size;
+                    }
+                }
+                return largestFitting != null ? largestFitting : smallest;
+            }
+        };
+    }
+
+    /**
+     * @param size a picture size
+     * @return the memory in bytes needed while processing a picture of this size: three channels
+     * of one byte each and about three pictures held in memory
+     */
+    public static long getDecodedFootprint(@NonNull final Size size) {
+        return getArea(size) * 3 * 3;
+    }
+
+    /**
+     * @param pictureSizes the supported picture sizes
+     * @return the picture size to use or {@code null}, if no size is suitable
+     */
+    @Nullable
+    public abstract Size selectPictureSize(@NonNull Size[] pictureSizes);
+
+    /**
+     * Selects the largest preview size with the same aspect ratio as the picture size which is not
+     * larger than the picture. Falls back to the largest preview size with the same aspect ratio.
+     *
+     * @param previewSizes the supported preview sizes
+     * @param pictureSize  the selected picture size
+     * @return the preview size to use or {@code null}, if no preview size has the picture's aspect
+     * ratio
+     */
+    @Nullable
+    public Size selectPreviewSize(@NonNull final Size[] previewSizes,
+            @NonNull final Size pictureSize) {
+        Size largest = null;
+        for (final Size size : previewSizes) {
+            if (size.width <= pictureSize.width && size.height <= pictureSize.height
+                    && isSimilarAspectRatio(size, pictureSize)
+                    && (largest == null || getArea(size) > getArea(largest))) {
+                largest = size;
+            }
+        }
+        return largest != null ? largest
+                : getLargestSizeWithSimilarAspectRatio(previewSizes, pictureSize);
+    }
+
+    private static long getArea(@NonNull final Size size) {
+        return (long) size.width * size.height;
+    }
+}
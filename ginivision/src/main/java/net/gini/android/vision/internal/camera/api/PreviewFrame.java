@@ -0,0 +1,71 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.support.annotation.NonNull;
+
+/**
+ * <p>
+ *     A camera preview frame in the NV21 format: the full resolution Y plane followed by the
+ *     interleaved V and U values of each 2x2 pixel block.
+ * </p>
+ * <p>
+ *     The frame and its data are reused for the next frames. They are valid only while {@link
+ *     PreviewFrameProcessor#process(PreviewFrame)} runs.
+ * </p>
+ *
+ * @exclude
+ */
+public final class PreviewFrame {
+
+    private byte[] mData;
+    private int mWidth;
+    private int mHeight;
+    private int mRotation;
+    private long mTimestampNanos;
+
+    PreviewFrame() {
+    }
+
+    void set(@NonNull final byte[] data, final int width, final int height, final int rotation,
+            final long timestampNanos) {
+        mData = data;
+        mWidth = width;
+        mHeight = height;
+        mRotation = rotation;
+        mTimestampNanos = timestampNanos;
+    }
+
+    void clear() {
+        mData = null;
+    }
+
+    /**
+     * @return the NV21 data, the luminance of the pixel at (x, y) is at {@code y * width + x}
+     */
+    @NonNull
+    public byte[] getData() {
+        return mData;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the clockwise rotation in degrees which shows the frame upright in the portrait
+     * camera preview
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * @return the time the frame was received in {@link System#nanoTime()} nanoseconds
+     */
+    public long getTimestampNanos() {
+        return mTimestampNanos;
+    }
+}
@@ -0,0 +1,249 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     Hands camera preview frames to the {@link PreviewFrameProcessor}s on a single worker
+ *     thread.
+ * </p>
+ * <p>
+ *     The frames are written by the camera into a small ring of preallocated buffers. At most one
+ *     frame waits for the worker: a newer frame replaces an unprocessed one, whose buffer is
+ *     returned to the camera right away. Processed buffers are returned through the {@link
+ *     BufferRecycler}. Neither the camera nor the worker allocate memory per frame and the
+ *     preview is never blocked by the processors.
+ * </p>
+ *
+ * @exclude
+ */
+public class PreviewFramePipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PreviewFramePipeline.class);
+
+    /**
+     * One buffer is filled by the camera, one waits for the worker and one is processed.
+     */
+    static final int BUFFER_COUNT = 3;
+
+    /**
+     * Receives the buffers which can be filled with the next frames.
+     */
+    interface BufferRecycler {
+
+        void recycle(@NonNull byte[] buffer);
+    }
+
+    private final Executor mWorker;
+    private final List<PreviewFrameProcessor> mProcessors = new CopyOnWriteArrayList<>();
+    private final Object mLock = new Object();
+    // Used only by the worker
+    private final PreviewFrame mFrame = new PreviewFrame();
+
+    private volatile BufferRecycler mRecycler;
+    private volatile byte[][] mBuffers = new byte[0][];
+
+    private byte[] mPendingData;
+    private int mPendingWidth;
+    private int mPendingHeight;
+    private int mPendingRotation;
+    private long mPendingTimestampNanos;
+    private boolean mDraining;
+
+    private final AtomicLong mProcessedFrames = new AtomicLong();
+    private final AtomicLong mDroppedFrames = new AtomicLong();
+    private volatile long mFirstProcessedNanos;
+    private volatile long mLastProcessedNanos;
+
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    PreviewFramePipeline() {
+        this(createWorker());
+    }
+
+    @VisibleForTesting
+    PreviewFramePipeline(@NonNull final Executor worker) {
+        mWorker = worker;
+    }
+
+    @NonNull
+    private static Executor createWorker() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "PreviewFrames");
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        // The thread stops while no frames arrive
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    void addProcessor(@NonNull final PreviewFrameProcessor processor) {
+        mProcessors.add(processor);
+    }
+
+    void removeProcessor(@NonNull final PreviewFrameProcessor processor) {
+        mProcessors.remove(processor);
+    }
+
+    boolean hasProcessors() {
+        return !mProcessors.isEmpty();
+    }
+
+    /**
+     * Allocates a new ring of buffers. Buffers of a previous ring are not recycled anymore.
+     *
+     * @param bufferSize the size of a frame in bytes
+     * @param recycler   receives the buffers after they were processed or dropped
+     * @return the buffers to be filled by the camera
+     */
+    @NonNull
+    byte[][] allocateBuffers(final int bufferSize, @NonNull final BufferRecycler recycler) {
+        final byte[][] buffers = new byte[BUFFER_COUNT][];
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            buffers[i] = new byte[bufferSize];
+        }
+        mBuffers = buffers;
+        mRecycler = recycler;
+        LOG.debug("Allocated {} preview frame buffers of {} bytes", BUFFER_COUNT, bufferSize);
+        return buffers;
+    }
+
+    /**
+     * Stops recycling the buffers. Frames which are already submitted are still processed.
+     */
+    void releaseBuffers() {
+        mBuffers = new byte[0][];
+        mRecycler = null;
+    }
+
+    /**
+     * Queues the frame for processing. An unprocessed frame is dropped.
+     */
+    void submit(@NonNull final byte[] data, final int width, final int height,
+            final int rotation, final long timestampNanos) {
+        if (mProcessors.isEmpty()) {
+            recycle(data);
+            return;
+        }
+        final byte[] replaced;
+        final boolean startDraining;
+        synchronized (mLock) {
+            replaced = mPendingData;
+            mPendingData = data;
+            mPendingWidth = width;
+            mPendingHeight = height;
+            mPendingRotation = rotation;
+            mPendingTimestampNanos = timestampNanos;
+            startDraining = !mDraining;
+            mDraining = true;
+        }
+        if (replaced != null) {
+            mDroppedFrames.incrementAndGet();
+            recycle(replaced);
+        }
+        if (startDraining) {
+            mWorker.execute(mDrainTask);
+        }
+    }
+
+    /**
+     * Counts a frame which the camera delivered, but which couldn't be copied into a buffer.
+     */
+    void countDroppedFrame() {
+        mDroppedFrames.incrementAndGet();
+    }
+
+    private void drain() {
+        while (true) {
+            synchronized (mLock) {
+                if (mPendingData == null) {
+                    mDraining = false;
+                    return;
+                }
+                mFrame.set(mPendingData, mPendingWidth, mPendingHeight, mPendingRotation,
+                        mPendingTimestampNanos);
+                mPendingData = null;
+            }
+            for (final PreviewFrameProcessor processor : mProcessors) {
+                try {
+                    processor.process(mFrame);
+                } catch (RuntimeException e) {
+                    LOG.error("Preview frame processor failed", e);
+                }
+            }
+            final long now = System.nanoTime();
+            if (mProcessedFrames.getAndIncrement() == 0) {
+                mFirstProcessedNanos = now;
+            }
+            mLastProcessedNanos = now;
+            final byte[] data = mFrame.getData();
+            mFrame.clear();
+            recycle(data);
+        }
+    }
+
+    private void recycle(@NonNull final byte[] buffer) {
+        final BufferRecycler recycler = mRecycler;
+        if (recycler == null) {
+            return;
+        }
+        for (final byte[] ringBuffer : mBuffers) {
+            if (ringBuffer == buffer) {
+                recycler.recycle(buffer);
+                return;
+            }
+        }
+    }
+
+    public long getProcessedFrameCount() {
+        return mProcessedFrames.get();
+    }
+
+    public long getDroppedFrameCount() {
+        return mDroppedFrames.get();
+    }
+
+    /**
+     * @return the average number of frames processed per second since the first one or 0, if
+     * less than two frames were processed
+     */
+    public float getProcessedFramesPerSecond() {
+        final long processedFrames = mProcessedFrames.get();
+        final long duration = mLastProcessedNanos - mFirstProcessedNanos;
+        if (processedFrames < 2 || duration <= 0) {
+            return 0;
+        }
+        return (processedFrames - 1) * 1e9f / duration;
+    }
+
+    @Nullable
+    @VisibleForTesting
+    BufferRecycler getRecycler() {
+        return mRecycler;
+    }
+}
@@ -0,0 +1,25 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+/**
+ * <p>
+ *     Analyses camera preview frames. Add it with {@link CameraInterface#addPreviewFrameProcessor(PreviewFrameProcessor)}.
+ * </p>
+ * <p>
+ *     Frames are processed one at a time on the {@link PreviewFramePipeline}'s worker thread. If
+ *     processing takes longer than the frame interval, frames are dropped in favour of the newest
+ *     one.
+ * </p>
+ *
+ * @exclude
+ */
+public interface PreviewFrameProcessor {
+
+    /**
+     * @param frame the frame, valid only during this call
+     */
+    @WorkerThread
+    void process(@NonNull PreviewFrame frame);
+}
@@ -47,6 +47,39 @@ public final class SizeSelectionHelper {
         return sameAspectSizes;
     }
 
+    @Nullable
+    public static Size getLargestSize(@NonNull final Size[] sizes) {
+        Size largest = null;
+        for (final Size size : sizes) {
+            if (largest == null || largest.compareTo(size) < 0) {
+                largest = size;
+            }
+        }
+        return largest;
+    }
+
+    @Nullable
+    public static Size getLargestSizeWithSimilarAspectRatio(@NonNull final Size[] sizes,
+            @NonNull final Size referenceSize) {
+        final float referenceAspectRatio =
+                (float) referenceSize.width / (float) referenceSize.height;
+        Size largest = null;
+        for (final Size size : sizes) {
+            final float aspectRatio = (float) size.width / (float) size.height;
+            if (isSimilarAspectRatio(aspectRatio, referenceAspectRatio)
+                    && (largest == null || largest.compareTo(size) < 0)) {
+                largest = size;
+            }
+        }
+        return largest;
+    }
+
+    static boolean isSimilarAspectRatio(@NonNull final Size size,
+            @NonNull final Size referenceSize) {
+        return isSimilarAspectRatio((float) size.width / (float) size.height,
+                (float) referenceSize.width / (float) referenceSize.height);
+    }
+
     private static boolean isSimilarAspectRatio(final float aspectRatio,
             final float referenceAspectRatio) {
         return Math.abs(aspectRatio - referenceAspectRatio) < 0.1f;
@@ -0,0 +1,188 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import net.gini.android.vision.internal.camera.api.PreviewFrame;
+import net.gini.android.vision.internal.camera.api.PreviewFrameProcessor;
+
+/**
+ * <p>
+ *     Decides when to take a picture automatically from the camera preview frames.
+ * </p>
+ * <p>
+ *     A frame is stable, if it is sharp, its sharpness didn't change much since the previous frame
+ *     (the focus settled) and it barely differs from the previous frame (the camera doesn't move).
+ *     The capture is triggered once the required number of consecutive frames were stable. After
+ *     that the trigger is disarmed and ignores the frames until {@link #arm()} is called.
+ * </p>
+ *
+ * @exclude
+ */
+public class AutoCaptureTrigger implements PreviewFrameProcessor {
+
+    public static final int DEFAULT_STABLE_FRAMES = 10;
+
+    /**
+     * Gradient energy below which a frame is too blurry. A document with text has an energy of
+     * more than 1000, a blank document still more than 200.
+     */
+    @VisibleForTesting
+    static final float MIN_SHARPNESS = 200;
+    /**
+     * Maximum relative sharpness change between two frames while the focus is settled.
+     */
+    @VisibleForTesting
+    static final float MAX_SHARPNESS_CHANGE = 0.15f;
+    /**
+     * Maximum mean luminance difference between two frames of a still camera. Sensor noise alone
+     * causes a difference of about 1 to 3.
+     */
+    @VisibleForTesting
+    static final float MAX_MOTION = 4;
+
+    public enum Decision {
+        /**
+         * The frame is too blurry.
+         */
+        NOT_SHARP,
+        /**
+         * The sharpness is still changing.
+         */
+        FOCUSING,
+        /**
+         * The camera or the document moves.
+         */
+        MOVING,
+        /**
+         * The frame is stable, but not enough consecutive frames were stable yet.
+         */
+        STABILIZING,
+        /**
+         * Enough consecutive frames were stable, the picture should be taken.
+         */
+        CAPTURE
+    }
+
+    /**
+     * Notified on the preview frame worker thread.
+     */
+    public interface Listener {
+
+        /**
+         * @param decision     the decision for the frame
+         * @param sharpness    the gradient energy of the frame
+         * @param motion       the mean luminance difference to the previous frame or {@link
+         *                     Float#NaN} for the first frame
+         * @param stableFrames the number of consecutive stable frames including this one
+         */
+        @WorkerThread
+        void onDecision(@NonNull Decision decision, float sharpness, float motion,
+                int stableFrames);
+    }
+
+    private final FrameStabilityMetrics mMetrics;
+    private volatile Listener mListener;
+    private volatile int mRequiredStableFrames = DEFAULT_STABLE_FRAMES;
+    private volatile boolean mArmed = true;
+
+    private int mStableFrames;
+    private float mPreviousSharpness;
+
+    public AutoCaptureTrigger() {
+        this(new FrameStabilityMetrics());
+    }
+
+    @VisibleForTesting
+    AutoCaptureTrigger(@NonNull final FrameStabilityMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public void setListener(@Nullable final Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @param stableFrames the number of consecutive stable frames which trigger the capture
+     * @throws IllegalArgumentException if the number is less than 1
+     */
+    public void setRequiredStableFrames(final int stableFrames) {
+        if (stableFrames < 1) {
+            throw new IllegalArgumentException("At least one stable frame is required");
+        }
+        mRequiredStableFrames = stableFrames;
+    }
+
+    public int getRequiredStableFrames() {
+        return mRequiredStableFrames;
+    }
+
+    /**
+     * Starts evaluating the frames again after a capture was triggered. The stability is measured
+     * from scratch.
+     */
+    public void arm() {
+        mArmed = true;
+    }
+
+    public boolean isArmed() {
+        return mArmed;
+    }
+
+    @Override
+    public void process(@NonNull final PreviewFrame frame) {
+        // The luminance plane is at the beginning of the NV21 data
+        process(frame.getData(), frame.getWidth(), frame.getHeight());
+    }
+
+    @VisibleForTesting
+    void process(@NonNull final byte[] luminance, final int width, final int height) {
+        if (!mArmed || !mMetrics.measure(luminance, width, height)) {
+            return;
+        }
+        final float sharpness = mMetrics.getSharpness();
+        final float motion = mMetrics.getMotion();
+        final Decision decision = decide(sharpness, motion);
+        mPreviousSharpness = sharpness;
+        if (decision == Decision.CAPTURE) {
+            // The state is reset before disarming, because arm() may be called right after
+            mMetrics.reset();
+            final int stableFrames = mStableFrames;
+            mStableFrames = 0;
+            mArmed = false;
+            notifyListener(decision, sharpness, motion, stableFrames);
+        } else {
+            notifyListener(decision, sharpness, motion, mStableFrames);
+        }
+    }
+
+    @NonNull
+    private Decision decide(final float sharpness, final float motion) {
+        if (sharpness < MIN_SHARPNESS) {
+            mStableFrames = 0;
+            return Decision.NOT_SHARP;
+        }
+        if (Math.abs(sharpness - mPreviousSharpness)
+                > MAX_SHARPNESS_CHANGE * Math.max(sharpness, mPreviousSharpness)) {
+            mStableFrames = 0;
+            return Decision.FOCUSING;
+        }
+        // The first frame has no motion estimate (NaN)
+        if (!(motion <= MAX_MOTION)) {
+            mStableFrames = 0;
+            return Decision.MOVING;
+        }
+        mStableFrames++;
+        return mStableFrames >= mRequiredStableFrames ? Decision.CAPTURE : Decision.STABILIZING;
+    }
+
+    private void notifyListener(@NonNull final Decision decision, final float sharpness,
+            final float motion, final int stableFrames) {
+        final Listener listener = mListener;
+        if (listener != null) {
+            listener.onDecision(decision, sharpness, motion, stableFrames);
+        }
+    }
+}
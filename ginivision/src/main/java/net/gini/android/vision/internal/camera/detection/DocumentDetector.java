@@ -0,0 +1,435 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     Finds the quadrilateral of a document in the luminance plane of a camera preview frame.
+ * </p>
+ * <p>
+ *     The luminance is averaged down to at most {@link #MAX_WORKING_SIZE} pixels on the longer
+ *     side. Strong Sobel edges vote in four Hough accumulators, one for each side of the document:
+ *     horizontal edges in the upper half vote for the top side, those in the lower half for the
+ *     bottom side and vertical edges in the left and right halves for the left and right sides.
+ *     Only lines within {@link #MAX_ANGLE_DEGREES} of the frame's axes are considered. For each
+ *     side the strongest line at the outermost strong edge is selected, which skips text lines and
+ *     tables inside the document. The corners are the intersections of the four lines.
+ * </p>
+ * <p>
+ *     The quadrilateral is rejected if it is not convex, not completely inside the frame, too
+ *     small or if its sides are not supported by enough edge pixels.
+ * </p>
+ * <p>
+ *     All working memory is allocated when the frame size changes. Detecting a document allocates
+ *     nothing, so it can run for every preview frame without causing garbage collections. Not
+ *     thread safe.
+ * </p>
+ *
+ * @exclude
+ */
+final class DocumentDetector {
+
+    /**
+     * The longer side of the downscaled luminance. Documents fill a large part of the frame, so
+     * their edges remain clear at this size and detection takes a few milliseconds.
+     */
+    @VisibleForTesting
+    static final int MAX_WORKING_SIZE = 240;
+    private static final int MAX_ANGLE_DEGREES = 20;
+    private static final int ANGLES = 2 * MAX_ANGLE_DEGREES + 1;
+    private static final int RHO_BIN_SIZE = 2;
+
+    /**
+     * The Sobel magnitude (|gx| + |gy|) ranges from 0 to 8 * 255.
+     */
+    private static final int MAX_MAGNITUDE = 8 * 255;
+    private static final int MIN_EDGE_MAGNITUDE = 48;
+    /**
+     * Only the strongest edges vote.
+     */
+    private static final float EDGE_PERCENTILE = 0.9f;
+    /**
+     * Lines with at least this fraction of the strongest line's votes are candidates for the
+     * outermost line.
+     */
+    private static final float CANDIDATE_LINE_VOTES = 0.6f;
+    /**
+     * Lines within this distance (in working pixels) of the outermost line belong to the same
+     * edge.
+     */
+    private static final float EDGE_WIDTH = 4;
+    /**
+     * The fraction of a side's length which must be covered by edge pixels.
+     */
+    private static final float MIN_SIDE_SUPPORT = 0.4f;
+    private static final float MIN_AREA = 0.15f;
+    /**
+     * Corners may lie slightly outside the frame because of the line quantization.
+     */
+    private static final float CORNER_MARGIN = 0.02f;
+
+    private static final int TOP = 0;
+    private static final int BOTTOM = 1;
+    private static final int LEFT = 2;
+    private static final int RIGHT = 3;
+    private static final int SIDES = 4;
+
+    /**
+     * Cosine and sine of the line normals: around 90 degrees for the horizontal lines and around
+     * 0 degrees for the vertical ones.
+     */
+    private final float[] mHorizontalCos = new float[ANGLES];
+    private final float[] mHorizontalSin = new float[ANGLES];
+    private final float[] mVerticalCos = new float[ANGLES];
+    private final float[] mVerticalSin = new float[ANGLES];
+
+    private final int[] mHistogram = new int[MAX_MAGNITUDE + 1];
+    // Results of selectLine()
+    private final int[] mLineAngle = new int[SIDES];
+    private final int[] mLineRho = new int[SIDES];
+    private final int[] mLineVotes = new int[SIDES];
+    private final float[] mCornerX = new float[4];
+    private final float[] mCornerY = new float[4];
+
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private int mScale;
+    private int mWidth;
+    private int mHeight;
+    private int mRhoOffset;
+    private int mRhoBins;
+    private int[] mLuminance = new int[0];
+    private int[] mRowSums = new int[0];
+    private int[] mMagnitude = new int[0];
+    private boolean[] mHorizontalEdge = new boolean[0];
+    private int[][] mAccumulators = new int[SIDES][0];
+
+    DocumentDetector() {
+        for (int i = 0; i < ANGLES; i++) {
+            final double angle = Math.toRadians(i - MAX_ANGLE_DEGREES);
+            mVerticalCos[i] = (float) Math.cos(angle);
+            mVerticalSin[i] = (float) Math.sin(angle);
+            mHorizontalCos[i] = (float) Math.cos(angle + Math.PI / 2);
+            mHorizontalSin[i] = (float) Math.sin(angle + Math.PI / 2);
+        }
+    }
+
+    /**
+     * @param luminance   the luminance plane, for example the beginning of an NV21 frame
+     * @param frameWidth  the width of the frame
+     * @param frameHeight the height of the frame
+     * @param result      receives the corners relative to the frame, if a document was found
+     * @return {@code true}, if a document was found
+     */
+    boolean detect(@NonNull final byte[] luminance, final int frameWidth, final int frameHeight,
+            @NonNull final Quadrilateral result) {
+        if (frameWidth <= 0 || frameHeight <= 0
+                || luminance.length < frameWidth * frameHeight) {
+            return false;
+        }
+        prepare(frameWidth, frameHeight);
+        if (mWidth < 3 || mHeight < 3) {
+            return false;
+        }
+        downscale(luminance);
+        final int threshold = computeEdges();
+        vote(threshold);
+        for (int side = 0; side < SIDES; side++) {
+            if (!selectLine(side)) {
+                return false;
+            }
+        }
+        return intersectLines() && isPlausible() && setResult(result);
+    }
+
+    private void prepare(final int frameWidth, final int frameHeight) {
+        if (frameWidth == mFrameWidth && frameHeight == mFrameHeight) {
+            return;
+        }
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        final int longerSide = Math.max(frameWidth, frameHeight);
+        mScale = (longerSide + MAX_WORKING_SIZE - 1) / MAX_WORKING_SIZE;
+        mWidth = frameWidth / mScale;
+        mHeight = frameHeight / mScale;
+        final int pixels = mWidth * mHeight;
+        mLuminance = new int[pixels];
+        mRowSums = new int[mWidth];
+        mMagnitude = new int[pixels];
+        mHorizontalEdge = new boolean[pixels];
+        final int diagonal = (int) Math.ceil(Math.sqrt(mWidth * mWidth + mHeight * mHeight));
+        mRhoOffset = diagonal;
+        mRhoBins = 2 * diagonal / RHO_BIN_SIZE + 1;
+        for (int side = 0; side < SIDES; side++) {
+            mAccumulators[side] = new int[ANGLES * mRhoBins];
+        }
+    }
+
+    /**
+     * Averages blocks of scale x scale pixels. Reads the luminance row by row.
+     */
+    private void downscale(@NonNull final byte[] luminance) {
+        final int scale = mScale;
+        final int blockPixels = scale * scale;
+        final int[] rowSums = mRowSums;
+        for (int y = 0; y < mHeight; y++) {
+            Arrays.fill(rowSums, 0);
+            for (int dy = 0; dy < scale; dy++) {
+                int offset = (y * scale + dy) * mFrameWidth;
+                for (int x = 0; x < mWidth; x++) {
+                    int sum = 0;
+                    for (int dx = 0; dx < scale; dx++) {
+                        sum += luminance[offset++] & 0xFF;
+                    }
+                    rowSums[x] += sum;
+                }
+            }
+            final int rowOffset = y * mWidth;
+            for (int x = 0; x < mWidth; x++) {
+                mLuminance[rowOffset + x] = rowSums[x] / blockPixels;
+            }
+        }
+    }
+
+    /**
+     * Computes the Sobel magnitudes and orientations.
+     *
+     * @return the magnitude above which pixels are edges
+     */
+    private int computeEdges() {
+        final int width = mWidth;
+        final int[] lum = mLuminance;
+        Arrays.fill(mHistogram, 0);
+        int edgeCandidates = 0;
+        for (int y = 1; y < mHeight - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                final int i = y * width + x;
+                final int topLeft = lum[i - width - 1];
+                final int top = lum[i - width];
+                final int topRight = lum[i - width + 1];
+                final int left = lum[i - 1];
+                final int right = lum[i + 1];
+                final int bottomLeft = lum[i + width - 1];
+                final int bottom = lum[i + width];
+                final int bottomRight = lum[i + width + 1];
+                final int gx = (topRight + 2 * right + bottomRight)
+                        - (topLeft + 2 * left + bottomLeft);
+                final int gy = (bottomLeft + 2 * bottom + bottomRight)
+                        - (topLeft + 2 * top + topRight);
+                final int absGx = gx < 0 ? -gx : gx;
+                final int absGy = gy < 0 ? -gy : gy;
+                final int magnitude = absGx + absGy;
+                mMagnitude[i] = magnitude;
+                // A vertical gradient belongs to a horizontal edge
+                mHorizontalEdge[i] = absGy >= absGx;
+                if (magnitude >= MIN_EDGE_MAGNITUDE) {
+                    mHistogram[magnitude]++;
+                    edgeCandidates++;
+                }
+            }
+        }
+        // The percentile is taken over all inner pixels, most of them aren't edge candidates
+        final int innerPixels = (width - 2) * (mHeight - 2);
+        final int strongerPixels = Math.min(edgeCandidates,
+                (int) (innerPixels * (1 - EDGE_PERCENTILE)));
+        int count = 0;
+        for (int magnitude = MAX_MAGNITUDE; magnitude > MIN_EDGE_MAGNITUDE; magnitude--) {
+            count += mHistogram[magnitude];
+            if (count >= strongerPixels) {
+                return magnitude;
+            }
+        }
+        return MIN_EDGE_MAGNITUDE;
+    }
+
+    private void vote(final int threshold) {
+        for (int side = 0; side < SIDES; side++) {
+            Arrays.fill(mAccumulators[side], 0);
+        }
+        final int width = mWidth;
+        final int halfWidth = width / 2;
+        final int halfHeight = mHeight / 2;
+        final float rhoOffset = mRhoOffset;
+        final int rhoBins = mRhoBins;
+        for (int y = 1; y < mHeight - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                final int i = y * width + x;
+                if (mMagnitude[i] < threshold) {
+                    continue;
+                }
+                final int[] accumulator;
+                final float[] cos;
+                final float[] sin;
+                if (mHorizontalEdge[i]) {
+                    accumulator = mAccumulators[y < halfHeight ? TOP : BOTTOM];
+                    cos = mHorizontalCos;
+                    sin = mHorizontalSin;
+                } else {
+                    accumulator = mAccumulators[x < halfWidth ? LEFT : RIGHT];
+                    cos = mVerticalCos;
+                    sin = mVerticalSin;
+                }
+                for (int angle = 0; angle < ANGLES; angle++) {
+                    final float rho = x * cos[angle] + y * sin[angle] + rhoOffset;
+                    accumulator[angle * rhoBins + (int) (rho / RHO_BIN_SIZE)]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Selects the strongest line near the outermost line among the lines with a similar number of
+     * votes as the strongest line of the side.
+     */
+    private boolean selectLine(final int side) {
+        final int[] accumulator = mAccumulators[side];
+        int maxVotes = 0;
+        for (final int votes : accumulator) {
+            if (votes > maxVotes) {
+                maxVotes = votes;
+            }
+        }
+        if (maxVotes == 0) {
+            return false;
+        }
+        final int minVotes = (int) (maxVotes * CANDIDATE_LINE_VOTES);
+        final boolean towardsZero = side == TOP || side == LEFT;
+        float outermost = towardsZero ? Float.MAX_VALUE : -Float.MAX_VALUE;
+        for (int angle = 0; angle < ANGLES; angle++) {
+            final int rowOffset = angle * mRhoBins;
+            for (int bin = 0; bin < mRhoBins; bin++) {
+                if (accumulator[rowOffset + bin] < minVotes) {
+                    continue;
+                }
+                final float position = linePosition(side, angle, bin);
+                if (towardsZero ? position < outermost : position > outermost) {
+                    outermost = position;
+                }
+            }
+        }
+        // Slightly rotated lines through a thick edge also have many votes, the edge itself is
+        // the strongest of them
+        int bestVotes = 0;
+        for (int angle = 0; angle < ANGLES; angle++) {
+            final int rowOffset = angle * mRhoBins;
+            for (int bin = 0; bin < mRhoBins; bin++) {
+                final int votes = accumulator[rowOffset + bin];
+                if (votes < minVotes || votes <= bestVotes) {
+                    continue;
+                }
+                if (Math.abs(linePosition(side, angle, bin) - outermost) <= EDGE_WIDTH) {
+                    bestVotes = votes;
+                    mLineAngle[side] = angle;
+                    mLineRho[side] = bin;
+                    mLineVotes[side] = votes;
+                }
+            }
+        }
+        return bestVotes > 0;
+    }
+
+    /**
+     * @return the y coordinate of a horizontal line in the middle of the width or the x
+     * coordinate of a vertical line in the middle of the height
+     */
+    private float linePosition(final int side, final int angle, final int bin) {
+        final float rho = binToRho(bin);
+        if (side == TOP || side == BOTTOM) {
+            return (rho - mWidth / 2f * mHorizontalCos[angle]) / mHorizontalSin[angle];
+        }
+        return (rho - mHeight / 2f * mVerticalSin[angle]) / mVerticalCos[angle];
+    }
+
+    private float binToRho(final int bin) {
+        return bin * RHO_BIN_SIZE + RHO_BIN_SIZE / 2f - mRhoOffset;
+    }
+
+    private boolean intersectLines() {
+        return intersect(TOP, LEFT, Quadrilateral.TOP_LEFT)
+                && intersect(TOP, RIGHT, Quadrilateral.TOP_RIGHT)
+                && intersect(BOTTOM, RIGHT, Quadrilateral.BOTTOM_RIGHT)
+                && intersect(BOTTOM, LEFT, Quadrilateral.BOTTOM_LEFT);
+    }
+
+    private boolean intersect(final int horizontalSide, final int verticalSide, final int corner) {
+        final float cos1 = mHorizontalCos[mLineAngle[horizontalSide]];
+        final float sin1 = mHorizontalSin[mLineAngle[horizontalSide]];
+        final float rho1 = binToRho(mLineRho[horizontalSide]);
+        final float cos2 = mVerticalCos[mLineAngle[verticalSide]];
+        final float sin2 = mVerticalSin[mLineAngle[verticalSide]];
+        final float rho2 = binToRho(mLineRho[verticalSide]);
+        final float determinant = cos1 * sin2 - sin1 * cos2;
+        if (Math.abs(determinant) < 1e-3f) {
+            return false;
+        }
+        mCornerX[corner] = (rho1 * sin2 - rho2 * sin1) / determinant;
+        mCornerY[corner] = (cos1 * rho2 - cos2 * rho1) / determinant;
+        return true;
+    }
+
+    private boolean isPlausible() {
+        final float marginX = mWidth * CORNER_MARGIN;
+        final float marginY = mHeight * CORNER_MARGIN;
+        for (int corner = 0; corner < 4; corner++) {
+            if (mCornerX[corner] < -marginX || mCornerX[corner] > mWidth + marginX
+                    || mCornerY[corner] < -marginY || mCornerY[corner] > mHeight + marginY) {
+                return false;
+            }
+        }
+        // Convex if all turns have the same direction, the corners are clockwise in image
+        // coordinates
+        float doubleArea = 0;
+        for (int corner = 0; corner < 4; corner++) {
+            final int next = (corner + 1) % 4;
+            final int afterNext = (corner + 2) % 4;
+            final float cross = (mCornerX[next] - mCornerX[corner])
+                    * (mCornerY[afterNext] - mCornerY[next])
+                    - (mCornerY[next] - mCornerY[corner])
+                    * (mCornerX[afterNext] - mCornerX[next]);
+            if (cross <= 0) {
+                return false;
+            }
+            doubleArea += mCornerX[corner] * mCornerY[next] - mCornerX[next] * mCornerY[corner];
+        }
+        if (doubleArea / 2 < MIN_AREA * mWidth * mHeight) {
+            return false;
+        }
+        return isSupported(TOP, Quadrilateral.TOP_LEFT, Quadrilateral.TOP_RIGHT)
+                && isSupported(RIGHT, Quadrilateral.TOP_RIGHT, Quadrilateral.BOTTOM_RIGHT)
+                && isSupported(BOTTOM, Quadrilateral.BOTTOM_RIGHT, Quadrilateral.BOTTOM_LEFT)
+                && isSupported(LEFT, Quadrilateral.BOTTOM_LEFT, Quadrilateral.TOP_LEFT);
+    }
+
+    private boolean isSupported(final int side, final int startCorner, final int endCorner) {
+        final float dx = mCornerX[endCorner] - mCornerX[startCorner];
+        final float dy = mCornerY[endCorner] - mCornerY[startCorner];
+        final float length = (float) Math.sqrt(dx * dx + dy * dy);
+        return mLineVotes[side] >= length * MIN_SIDE_SUPPORT;
+    }
+
+    private boolean setResult(@NonNull final Quadrilateral result) {
+        for (int corner = 0; corner < 4; corner++) {
+            result.setCorner(corner,
+                    clamp(mCornerX[corner] / mWidth),
+                    clamp(mCornerY[corner] / mHeight));
+        }
+        return true;
+    }
+
+    private static float clamp(final float value) {
+        return value < 0 ? 0 : (value > 1 ? 1 : value);
+    }
+
+    @VisibleForTesting
+    int getWorkingWidth() {
+        return mWidth;
+    }
+
+    @VisibleForTesting
+    int getWorkingHeight() {
+        return mHeight;
+    }
+}
@@ -0,0 +1,124 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+
+import net.gini.android.vision.internal.camera.api.PreviewFrame;
+import net.gini.android.vision.internal.camera.api.PreviewFrameProcessor;
+
+/**
+ * <p>
+ *     Tracks the document in the camera preview frames.
+ * </p>
+ * <p>
+ *     The document is reported after it was detected in {@link #FRAMES_TO_ACQUIRE} consecutive
+ *     frames and lost after it was missed in {@link #FRAMES_TO_LOSE} consecutive frames, so the
+ *     overlay doesn't flicker. While tracking, the corners are smoothed unless the document jumped.
+ *     The corners are rotated to the portrait camera preview.
+ * </p>
+ *
+ * @exclude
+ */
+public class DocumentTracker implements PreviewFrameProcessor {
+
+    @VisibleForTesting
+    static final int FRAMES_TO_ACQUIRE = 2;
+    @VisibleForTesting
+    static final int FRAMES_TO_LOSE = 5;
+    /**
+     * Weight of the new corners when smoothing.
+     */
+    private static final float SMOOTHING_WEIGHT = 0.5f;
+    /**
+     * A corner moving farther than this (relative to the frame) is not smoothed.
+     */
+    private static final float MAX_SMOOTHED_DISTANCE = 0.1f;
+
+    /**
+     * Notified on the preview frame worker thread. The quadrilateral is reused for the next frames.
+     */
+    public interface Listener {
+
+        @WorkerThread
+        void onDocumentTracked(@NonNull Quadrilateral document);
+
+        @WorkerThread
+        void onDocumentLost();
+    }
+
+    private final DocumentDetector mDetector;
+    private final Quadrilateral mDetected = new Quadrilateral();
+    private final Quadrilateral mTracked = new Quadrilateral();
+    private volatile Listener mListener;
+
+    private int mConsecutiveHits;
+    private int mConsecutiveMisses;
+    private volatile boolean mTracking;
+
+    public DocumentTracker() {
+        this(new DocumentDetector());
+    }
+
+    @VisibleForTesting
+    DocumentTracker(@NonNull final DocumentDetector detector) {
+        mDetector = detector;
+    }
+
+    public void setListener(@Nullable final Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void process(@NonNull final PreviewFrame frame) {
+        // The luminance plane is at the beginning of the NV21 data
+        process(frame.getData(), frame.getWidth(), frame.getHeight(), frame.getRotation());
+    }
+
+    @VisibleForTesting
+    void process(@NonNull final byte[] luminance, final int width, final int height,
+            final int rotation) {
+        if (mDetector.detect(luminance, width, height, mDetected)) {
+            mDetected.rotate(rotation);
+            onDetected();
+        } else {
+            onMissed();
+        }
+    }
+
+    private void onDetected() {
+        mConsecutiveMisses = 0;
+        mConsecutiveHits++;
+        final boolean continuing = mTracking || mConsecutiveHits > 1;
+        if (!continuing || mTracked.maxCornerDistance(mDetected) > MAX_SMOOTHED_DISTANCE) {
+            mTracked.set(mDetected);
+        } else {
+            mTracked.interpolate(mDetected, SMOOTHING_WEIGHT);
+        }
+        // A few missed frames don't interrupt tracking
+        if (mTracking || mConsecutiveHits >= FRAMES_TO_ACQUIRE) {
+            mTracking = true;
+            final Listener listener = mListener;
+            if (listener != null) {
+                listener.onDocumentTracked(mTracked);
+            }
+        }
+    }
+
+    private void onMissed() {
+        mConsecutiveHits = 0;
+        mConsecutiveMisses++;
+        if (mTracking && mConsecutiveMisses >= FRAMES_TO_LOSE) {
+            mTracking = false;
+            final Listener listener = mListener;
+            if (listener != null) {
+                listener.onDocumentLost();
+            }
+        }
+    }
+
+    public boolean isTracking() {
+        return mTracking;
+    }
+}
@@ -0,0 +1,167 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     Measures the sharpness of a camera preview frame and how much it changed since the previous
+ *     frame.
+ * </p>
+ * <p>
+ *     The luminance is averaged down to at most {@link #MAX_WORKING_SIZE} pixels on the longer
+ *     side. The sharpness is the gradient energy: the mean of the squared horizontal and vertical
+ *     differences between neighbouring pixels. Blurred frames have weak gradients and a low
+ *     energy. The motion is the mean absolute luminance difference to the previous frame.
+ * </p>
+ * <p>
+ *     All working memory is allocated when the frame size changes. Measuring allocates nothing.
+ *     Not thread safe.
+ * </p>
+ *
+ * @exclude
+ */
+final class FrameStabilityMetrics {
+
+    /**
+     * The longer side of the downscaled luminance. Larger than the document detector's working
+     * size, because averaging also hides blur.
+     */
+    @VisibleForTesting
+    static final int MAX_WORKING_SIZE = 320;
+
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private int mScale;
+    private int mWidth;
+    private int mHeight;
+    private int[] mLuminance = new int[0];
+    private int[] mPreviousLuminance = new int[0];
+    private int[] mRowSums = new int[0];
+    private boolean mHasPrevious;
+
+    private float mSharpness;
+    private float mMotion = Float.NaN;
+
+    /**
+     * @param luminance   the luminance plane, for example the beginning of an NV21 frame
+     * @param frameWidth  the width of the frame
+     * @param frameHeight the height of the frame
+     * @return {@code false}, if the frame could not be measured
+     */
+    boolean measure(@NonNull final byte[] luminance, final int frameWidth,
+            final int frameHeight) {
+        if (frameWidth <= 0 || frameHeight <= 0
+                || luminance.length < frameWidth * frameHeight) {
+            return false;
+        }
+        prepare(frameWidth, frameHeight);
+        if (mWidth < 2 || mHeight < 2) {
+            return false;
+        }
+        swapBuffers();
+        downscale(luminance);
+        mSharpness = computeGradientEnergy();
+        mMotion = mHasPrevious ? computeMeanDifference() : Float.NaN;
+        mHasPrevious = true;
+        return true;
+    }
+
+    /**
+     * Forgets the previous frame. The next frame has no motion estimate.
+     */
+    void reset() {
+        mHasPrevious = false;
+        mMotion = Float.NaN;
+    }
+
+    /**
+     * @return the gradient energy of the last measured frame
+     */
+    float getSharpness() {
+        return mSharpness;
+    }
+
+    /**
+     * @return the mean absolute luminance difference (0 to 255) between the last two measured
+     * frames or {@link Float#NaN}, if there was no previous frame
+     */
+    float getMotion() {
+        return mMotion;
+    }
+
+    private void prepare(final int frameWidth, final int frameHeight) {
+        if (frameWidth == mFrameWidth && frameHeight == mFrameHeight) {
+            return;
+        }
+        mFrameWidth = frameWidth;
+        mFrameHeight = frameHeight;
+        final int longerSide = Math.max(frameWidth, frameHeight);
+        mScale = (longerSide + MAX_WORKING_SIZE - 1) / MAX_WORKING_SIZE;
+        mWidth = frameWidth / mScale;
+        mHeight = frameHeight / mScale;
+        mLuminance = new int[mWidth * mHeight];
+        mPreviousLuminance = new int[mWidth * mHeight];
+        mRowSums = new int[mWidth];
+        reset();
+    }
+
+    private void swapBuffers() {
+        final int[] previous = mPreviousLuminance;
+        mPreviousLuminance = mLuminance;
+        mLuminance = previous;
+    }
+
+    /**
+     * Averages blocks of scale x scale pixels. Reads the luminance row by row.
+     */
+    private void downscale(@NonNull final byte[] luminance) {
+        final int scale = mScale;
+        final int blockPixels = scale * scale;
+        final int[] rowSums = mRowSums;
+        for (int y = 0; y < mHeight; y++) {
+            Arrays.fill(rowSums, 0);
+            for (int dy = 0; dy < scale; dy++) {
+                int offset = (y * scale + dy) * mFrameWidth;
+                for (int x = 0; x < mWidth; x++) {
+                    int sum = 0;
+                    for (int dx = 0; dx < scale; dx++) {
+                        sum += luminance[offset++] & 0xFF;
+                    }
+                    rowSums[x] += sum;
+                }
+            }
+            final int rowOffset = y * mWidth;
+            for (int x = 0; x < mWidth; x++) {
+                mLuminance[rowOffset + x] = rowSums[x] / blockPixels;
+            }
+        }
+    }
+
+    private float computeGradientEnergy() {
+        final int width = mWidth;
+        final int[] lum = mLuminance;
+        long energy = 0;
+        for (int y = 0; y < mHeight - 1; y++) {
+            int i = y * width;
+            for (int x = 0; x < width - 1; x++, i++) {
+                final int dx = lum[i + 1] - lum[i];
+                final int dy = lum[i + width] - lum[i];
+                energy += dx * dx + dy * dy;
+            }
+        }
+        return (float) energy / ((width - 1) * (mHeight - 1));
+    }
+
+    private float computeMeanDifference() {
+        final int[] lum = mLuminance;
+        final int[] previous = mPreviousLuminance;
+        long difference = 0;
+        for (int i = 0; i < lum.length; i++) {
+            difference += Math.abs(lum[i] - previous[i]);
+        }
+        return (float) difference / lum.length;
+    }
+}
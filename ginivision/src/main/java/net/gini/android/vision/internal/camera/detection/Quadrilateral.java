@@ -0,0 +1,135 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <p>
+ *     The corners of a document in coordinates relative to the image: (0, 0) is the top left and
+ *     (1, 1) the bottom right corner of the image.
+ * </p>
+ * <p>
+ *     The corners are ordered clockwise starting with the top left one. Instances are mutable
+ *     so they can be reused for every preview frame.
+ * </p>
+ *
+ * @exclude
+ */
+public final class Quadrilateral {
+
+    public static final int TOP_LEFT = 0;
+    public static final int TOP_RIGHT = 1;
+    public static final int BOTTOM_RIGHT = 2;
+    public static final int BOTTOM_LEFT = 3;
+
+    private static final int CORNERS = 4;
+
+    private final float[] mX = new float[CORNERS];
+    private final float[] mY = new float[CORNERS];
+
+    public float getX(final int corner) {
+        return mX[corner];
+    }
+
+    public float getY(final int corner) {
+        return mY[corner];
+    }
+
+    void setCorner(final int corner, final float x, final float y) {
+        mX[corner] = x;
+        mY[corner] = y;
+    }
+
+    public void set(@NonNull final Quadrilateral other) {
+        System.arraycopy(other.mX, 0, mX, 0, CORNERS);
+        System.arraycopy(other.mY, 0, mY, 0, CORNERS);
+    }
+
+    /**
+     * Rotates the image clockwise by a multiple of 90 degrees and keeps the corners in clockwise
+     * order starting with the top left one.
+     *
+     * @param degrees 0, 90, 180 or 270
+     */
+    void rotate(final int degrees) {
+        final int quarterTurns = ((degrees / 90) % 4 + 4) % 4;
+        for (int turn = 0; turn < quarterTurns; turn++) {
+            // (x, y) -> (1 - y, x) and the previous bottom left corner becomes the top left one
+            final float lastX = 1 - mY[BOTTOM_LEFT];
+            final float lastY = mX[BOTTOM_LEFT];
+            for (int corner = BOTTOM_LEFT; corner > TOP_LEFT; corner--) {
+                final float x = mX[corner - 1];
+                final float y = mY[corner - 1];
+                mX[corner] = 1 - y;
+                mY[corner] = x;
+            }
+            mX[TOP_LEFT] = lastX;
+            mY[TOP_LEFT] = lastY;
+        }
+    }
+
+    /**
+     * Moves each corner towards the other's corner.
+     *
+     * @param weight the weight of the other's corners, between 0 and 1
+     */
+    void interpolate(@NonNull final Quadrilateral other, final float weight) {
+        for (int corner = 0; corner < CORNERS; corner++) {
+            mX[corner] += (other.mX[corner] - mX[corner]) * weight;
+            mY[corner] += (other.mY[corner] - mY[corner]) * weight;
+        }
+    }
+
+    /**
+     * @return the largest distance between corresponding corners
+     */
+    public float maxCornerDistance(@NonNull final Quadrilateral other) {
+        float maxDistanceSquared = 0;
+        for (int corner = 0; corner < CORNERS; corner++) {
+            final float dx = other.mX[corner] - mX[corner];
+            final float dy = other.mY[corner] - mY[corner];
+            maxDistanceSquared = Math.max(maxDistanceSquared, dx * dx + dy * dy);
+        }
+        return (float) Math.sqrt(maxDistanceSquared);
+    }
+
+    /**
+     * @return the area relative to the image's area
+     */
+    public float area() {
+        // Shoelace formula
+        float doubleArea = 0;
+        for (int corner = 0; corner < CORNERS; corner++) {
+            final int next = (corner + 1) % CORNERS;
+            doubleArea += mX[corner] * mY[next] - mX[next] * mY[corner];
+        }
+        return Math.abs(doubleArea) / 2;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Quadrilateral that = (Quadrilateral) o;
+        return Arrays.equals(mX, that.mX) && Arrays.equals(mY, that.mY);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mX) + Arrays.hashCode(mY);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "Quadrilateral{(%.3f, %.3f), (%.3f, %.3f), (%.3f, %.3f), (%.3f, %.3f)}",
+                mX[TOP_LEFT], mY[TOP_LEFT], mX[TOP_RIGHT], mY[TOP_RIGHT],
+                mX[BOTTOM_RIGHT], mY[BOTTOM_RIGHT], mX[BOTTOM_LEFT], mY[BOTTOM_LEFT]);
+    }
+}
@@ -0,0 +1,109 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * <p>
+ *     A small pool of mutable bitmaps which can be reused as {@link
+ *     android.graphics.BitmapFactory.Options#inBitmap} when decoding photo previews.
+ * </p>
+ * <p>
+ *     Only bitmaps which are not displayed anymore may be returned to the pool. Reusing bitmaps
+ *     of a different size requires Android 4.4 or later, on older versions the pool is disabled.
+ * </p>
+ *
+ * @exclude
+ */
+enum BitmapPool {
+
+    INSTANCE;
+
+    private static final Logger LOG = LoggerFactory.getLogger(BitmapPool.class);
+
+    private static final int MAX_POOLED_BITMAPS = 2;
+
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<>();
+
+    @NonNull
+    static BitmapPool getInstance() {
+        return INSTANCE;
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * Removes and returns a pooled bitmap which can hold a decoded image with the given size and
+     * config.
+     *
+     * @return a reusable bitmap or {@code null}, if none was suitable
+     */
+    @Nullable
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    synchronized Bitmap get(final int width, final int height,
+            @NonNull final Bitmap.Config config) {
+        if (!isSupported()) {
+            return null;
+        }
+        final long requiredBytes = (long) width * height * getBytesPerPixel(config);
+        final Iterator<Bitmap> iterator = mBitmaps.iterator();
+        while (iterator.hasNext()) {
+            final Bitmap bitmap = iterator.next();
+            if (bitmap.isRecycled()) {
+                iterator.remove();
+                continue;
+            }
+            if (bitmap.getConfig() == config && bitmap.getAllocationByteCount() >= requiredBytes) {
+                iterator.remove();
+                LOG.debug("Reusing pooled bitmap for {}x{}", width, height);
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a bitmap to the pool. The bitmap must not be used anymore by the caller.
+     */
+    synchronized void put(@Nullable final Bitmap bitmap) {
+        if (!isSupported() || bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        if (mBitmaps.contains(bitmap)) {
+            return;
+        }
+        if (mBitmaps.size() >= MAX_POOLED_BITMAPS) {
+            // Drop the oldest one, the garbage collector will free it
+            mBitmaps.removeFirst();
+        }
+        mBitmaps.addLast(bitmap);
+    }
+
+    synchronized void clear() {
+        mBitmaps.clear();
+    }
+
+    static int getBytesPerPixel(@NonNull final Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case ARGB_8888:
+            default:
+                return 4;
+        }
+    }
+}
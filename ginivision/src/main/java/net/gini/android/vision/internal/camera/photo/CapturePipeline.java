@@ -0,0 +1,152 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
+/**
+ * <p>
+ *     Creates photos from the jpegs received from the camera without blocking the camera
+ *     callback's thread.
+ * </p>
+ * <p>
+ *     The raw jpeg is handed off to a {@link Photo} first. Then decoding the preview and
+ *     normalizing the EXIF run in parallel on worker threads. Both stages read the raw jpeg, the
+ *     preview doesn't depend on the EXIF.
+ * </p>
+ * <p>
+ *     The Camera Screen doesn't display the photo, so it skips the preview and leaves decoding
+ *     it to the screen showing the document.
+ * </p>
+ *
+ * @exclude
+ */
+public final class CapturePipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CapturePipeline.class);
+
+    private static final int WORKER_COUNT = 2;
+
+    private static Executor sWorkers;
+
+    /**
+     * Processes the jpeg in the background.
+     *
+     * @param jpeg        a jpeg received from the camera
+     * @param orientation the orientation of the camera
+     * @return a future which completes with the photo after the preview was decoded and the EXIF
+     * was normalized
+     */
+    @NonNull
+    public static CompletableFuture<Photo> process(@NonNull final byte[] jpeg,
+            final int orientation) {
+        return processInBackground(jpeg, orientation).whenProcessed();
+    }
+
+    /**
+     * Hands off the jpeg to a photo and processes it in the background. Use {@link
+     * Photo#whenProcessed()} to wait for the preview and the EXIF.
+     *
+     * @param jpeg        a jpeg received from the camera
+     * @param orientation the orientation of the camera
+     * @return a photo containing the raw jpeg
+     */
+    @NonNull
+    public static Photo processInBackground(@NonNull final byte[] jpeg, final int orientation) {
+        return processInBackground(jpeg, orientation, true, getWorkers());
+    }
+
+    /**
+     * Hands off the jpeg to a photo and processes it in the background. Use {@link
+     * Photo#whenProcessed()} to wait for the processing.
+     *
+     * @param jpeg          a jpeg received from the camera
+     * @param orientation   the orientation of the camera
+     * @param decodePreview whether to decode the preview, if {@code false} the photo has no
+     *                      preview
+     * @return a photo containing the raw jpeg
+     */
+    @NonNull
+    public static Photo processInBackground(@NonNull final byte[] jpeg, final int orientation,
+            final boolean decodePreview) {
+        return processInBackground(jpeg, orientation, decodePreview, getWorkers());
+    }
+
+    @VisibleForTesting
+    @NonNull
+    static Photo processInBackground(@NonNull final byte[] jpeg, final int orientation,
+            final boolean decodePreview, @NonNull final Executor workers) {
+        final CompletableFuture<Photo> processed = new CompletableFuture<>();
+        final Photo photo = Photo.fromRawJpeg(jpeg, orientation, processed);
+
+        final CompletableFuture<Bitmap> previewDecoded;
+        if (decodePreview) {
+            previewDecoded = CompletableFuture.supplyAsync(
+                    new CompletableFuture.Generator<Bitmap>() {
+                        @Override
+                        public Bitmap get() {
+                            return Photo.decodePreview(jpeg);
+                        }
+                    }, workers);
+        } else {
+            previewDecoded = CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> exifNormalized = CompletableFuture.runAsync(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!photo.normalizeExif()) {
+                            LOG.warn("Could not normalize the EXIF of the captured jpeg");
+                        }
+                    }
+                }, workers);
+
+        previewDecoded.thenAcceptBoth(exifNormalized,
+                new CompletableFuture.BiAction<Bitmap, Void>() {
+                    @Override
+                    public void accept(final Bitmap preview, final Void aVoid) {
+                        photo.setBitmapPreview(preview);
+                        LOG.debug("Captured jpeg processed");
+                        processed.complete(photo);
+                    }
+                }).exceptionally(new CompletableFuture.Fun<Throwable, Void>() {
+            @Override
+            public Void apply(final Throwable throwable) {
+                LOG.error("Processing the captured jpeg failed", throwable);
+                processed.completeExceptionally(throwable);
+                return null;
+            }
+        });
+        return photo;
+    }
+
+    @NonNull
+    private static synchronized Executor getWorkers() {
+        if (sWorkers == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            sWorkers = Executors.newFixedThreadPool(WORKER_COUNT, new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable,
+                            "CapturePipeline-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sWorkers;
+    }
+
+    private CapturePipeline() {
+    }
+}
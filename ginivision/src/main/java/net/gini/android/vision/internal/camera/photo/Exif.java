@@ -21,6 +21,7 @@ import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
 import org.apache.commons.imaging.formats.tiff.fieldtypes.FieldType;
 import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossy;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputField;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
@@ -44,6 +45,7 @@ class Exif {
     static final String USER_COMMENT_GINI_VISION_VERSION = "GiniVisionVer";
     static final String USER_COMMENT_CONTENT_ID = "ContentId";
     static final String USER_COMMENT_ROTATION_DELTA = "RotDeltaDeg";
+    static final String USER_COMMENT_JPEG_QUALITY = "JpegQuality";
 
     private final TiffOutputSet mTiffOutputSet;
 
@@ -54,7 +56,30 @@ class Exif {
     @NonNull
     public static Builder builder(@NonNull final byte[] jpeg)
             throws ImageWriteException, IOException, ImageReadException {
-        return new Builder(jpeg);
+        return new Builder(readByteOrder(jpeg, TiffConstants.DEFAULT_TIFF_BYTE_ORDER));
+    }
+
+    /**
+     * Creates a builder without parsing the JPEG's metadata. Use it together with the
+     * {@link ExifSegmentSplicer} which reads the byte order directly from the EXIF segment.
+     */
+    @NonNull
+    static Builder builder(@NonNull final ByteOrder byteOrder) throws ImageWriteException {
+        return new Builder(byteOrder);
+    }
+
+    @NonNull
+    private static ByteOrder readByteOrder(@NonNull final byte[] jpeg,
+            @NonNull final ByteOrder defaultByteOrder)
+            throws IOException, ImageReadException, ImageWriteException {
+        JpegImageMetadata jpegMetadata = (JpegImageMetadata) getMetadata(jpeg);
+        if (jpegMetadata != null) {
+            TiffImageMetadata exif = jpegMetadata.getExif();
+            if (exif != null) {
+                return exif.getOutputSet().byteOrder;
+            }
+        }
+        return defaultByteOrder;
     }
 
     static UserCommentBuilder userCommentBuilder() {
@@ -72,27 +97,27 @@ class Exif {
         return outputStream.toByteArray();
     }
 
+    /**
+     * Serializes the EXIF data to a TIFF header followed by the IFDs. This is the payload of an
+     * EXIF APP1 segment after the {@code Exif\0\0} identifier.
+     */
     @NonNull
-    public static RequiredTags readRequiredTags(@NonNull byte[] jpeg)
-            throws IOException, ImageReadException {
-        RequiredTags requiredTags = new RequiredTags();
+    byte[] toTiff() throws ImageWriteException, IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
-        JpegImageMetadata jpegMetadata = (JpegImageMetadata) getMetadata(jpeg);
+        TiffImageWriterLossy tiffWriter = new TiffImageWriterLossy(mTiffOutputSet.byteOrder);
+        tiffWriter.write(outputStream, mTiffOutputSet);
 
-        if (jpegMetadata != null) {
-            requiredTags.make = jpegMetadata.findEXIFValue(TiffTagConstants.TIFF_TAG_MAKE);
-            requiredTags.model = jpegMetadata.findEXIFValue(TiffTagConstants.TIFF_TAG_MODEL);
-            requiredTags.iso = jpegMetadata.findEXIFValue(ExifTagConstants.EXIF_TAG_ISO);
-            requiredTags.exposure = jpegMetadata.findEXIFValue(
-                    ExifTagConstants.EXIF_TAG_EXPOSURE_TIME);
-            requiredTags.aperture = jpegMetadata.findEXIFValue(
-                    ExifTagConstants.EXIF_TAG_APERTURE_VALUE);
-            requiredTags.flash = jpegMetadata.findEXIFValue(ExifTagConstants.EXIF_TAG_FLASH);
-            requiredTags.compressedBitsPerPixel = jpegMetadata.findEXIFValue(
-                    ExifTagConstants.EXIF_TAG_COMPRESSED_BITS_PER_PIXEL);
-        }
+        return outputStream.toByteArray();
+    }
 
-        return requiredTags;
+    /**
+     * Reads the required tags directly from the EXIF segment without parsing the JPEG's metadata.
+     */
+    @NonNull
+    public static RequiredTags readRequiredTags(@NonNull byte[] jpeg)
+            throws IOException, ImageReadException {
+        return ExifReader.readRequiredTags(jpeg);
     }
 
     static class Builder {
@@ -101,10 +126,9 @@ class Exif {
         private TiffOutputDirectory mIfd0Directory;
         private TiffOutputDirectory mExifDirectory;
 
-        private Builder(@NonNull final byte[] jpeg)
-                throws ImageWriteException, IOException, ImageReadException {
+        private Builder(@NonNull final ByteOrder byteOrder) throws ImageWriteException {
             // Create a new exif metadata set, to keep only the required exif tags
-            mTiffOutputSet = createOutputSetForJpeg(jpeg, TiffConstants.DEFAULT_TIFF_BYTE_ORDER);
+            mTiffOutputSet = new TiffOutputSet(byteOrder);
 
             mExifDirectory = mTiffOutputSet.getOrCreateExifDirectory();
             mIfd0Directory = mTiffOutputSet.findDirectory(
@@ -117,22 +141,6 @@ class Exif {
             }
         }
 
-        private static TiffOutputSet createOutputSetForJpeg(@NonNull final byte[] jpeg,
-                final ByteOrder defaultByteOrder)
-                throws IOException, ImageReadException, ImageWriteException {
-            ByteOrder byteOrder = defaultByteOrder;
-
-            JpegImageMetadata jpegMetadata = (JpegImageMetadata) getMetadata(jpeg);
-            if (jpegMetadata != null) {
-                TiffImageMetadata exif = jpegMetadata.getExif();
-                if (exif != null) {
-                    byteOrder = exif.getOutputSet().byteOrder;
-                }
-            }
-
-            return new TiffOutputSet(byteOrder);
-        }
-
         @NonNull
         public Builder setRequiredTags(@NonNull RequiredTags requiredTags)
                 throws ImageReadException, ImageWriteException {
@@ -331,6 +339,7 @@ class Exif {
         private boolean mAddModel;
         private String mContentId;
         private int mRotationDelta;
+        private int mJpegQuality;
 
         private UserCommentBuilder() {
 
@@ -356,6 +365,15 @@ class Exif {
             return this;
         }
 
+        /**
+         * @param jpegQuality the quality the jpeg was compressed with or 0, if it wasn't
+         *                    recompressed
+         */
+        UserCommentBuilder setJpegQuality(final int jpegQuality) {
+            mJpegQuality = jpegQuality;
+            return this;
+        }
+
         @NonNull
         public String build() {
             if (mContentId == null) {
@@ -391,6 +409,10 @@ class Exif {
             map.put(USER_COMMENT_CONTENT_ID, mContentId);
             // Rotation Delta
             map.put(USER_COMMENT_ROTATION_DELTA, String.valueOf(mRotationDelta));
+            // Jpeg Quality
+            if (mJpegQuality > 0) {
+                map.put(USER_COMMENT_JPEG_QUALITY, String.valueOf(mJpegQuality));
+            }
             return map;
         }
 
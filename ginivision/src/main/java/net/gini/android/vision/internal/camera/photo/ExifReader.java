@@ -1,71 +1,323 @@
 package net.gini.android.vision.internal.camera.photo;
 
-import static org.apache.commons.imaging.Imaging.getMetadata;
-
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import org.apache.commons.imaging.ImageReadException;
-import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
 import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.fieldtypes.FieldType;
 
-import java.io.IOException;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
+ * <p>
+ *     Reads the tags needed by the library directly from the JPEG's EXIF APP1 segment.
+ * </p>
+ * <p>
+ *     Only the TIFF header is read when the reader is created. The IFD0 and EXIF IFD entries are
+ *     looked up when a tag is requested and only the tag's value is copied out of the JPEG.
+ * </p>
+ *
  * @exclude
  */
 class ExifReader {
 
-    private final JpegImageMetadata mJpegMetadata;
+    // Tag (2 bytes) + type (2 bytes) + count (4 bytes) + value or offset (4 bytes)
+    private static final int IFD_ENTRY_LENGTH = 12;
+    private static final int NO_OFFSET = -1;
+
+    // The tags looked up in each IFD, an IFD is scanned only once for all its tags
+    private static final int[] IFD0_TAGS = {
+            TiffTagConstants.TIFF_TAG_MAKE.tag,
+            TiffTagConstants.TIFF_TAG_MODEL.tag,
+            ExifTagConstants.EXIF_TAG_EXIF_OFFSET.tag
+    };
+    private static final int IFD0_MAKE = 0;
+    private static final int IFD0_MODEL = 1;
+    private static final int IFD0_EXIF_OFFSET = 2;
+
+    private static final int[] EXIF_IFD_TAGS = {
+            ExifTagConstants.EXIF_TAG_ISO.tag,
+            ExifTagConstants.EXIF_TAG_EXPOSURE_TIME.tag,
+            ExifTagConstants.EXIF_TAG_APERTURE_VALUE.tag,
+            ExifTagConstants.EXIF_TAG_FLASH.tag,
+            ExifTagConstants.EXIF_TAG_COMPRESSED_BITS_PER_PIXEL.tag,
+            ExifTagConstants.EXIF_TAG_USER_COMMENT.tag
+    };
+    private static final int EXIF_IFD_ISO = 0;
+    private static final int EXIF_IFD_EXPOSURE = 1;
+    private static final int EXIF_IFD_APERTURE = 2;
+    private static final int EXIF_IFD_FLASH = 3;
+    private static final int EXIF_IFD_COMPRESSED_BITS_PER_PIXEL = 4;
+    private static final int EXIF_IFD_USER_COMMENT = 5;
+
+    private static final int IFD0_DIRECTORY = TiffDirectoryType.TIFF_DIRECTORY_IFD0.directoryType;
+    private static final int EXIF_DIRECTORY =
+            TiffDirectoryType.EXIF_DIRECTORY_EXIF_IFD.directoryType;
+
+    private final byte[] mJpeg;
+    private final int mTiffOffset;
+    private final int mTiffEnd;
+    private final ByteOrder mByteOrder;
+    private final int mIfd0Offset;
+    private int[] mIfd0Entries;
+    private int[] mExifIfdEntries;
+    private String mUserComment;
+    private UserComment mParsedUserComment;
 
+    @NonNull
     static ExifReader forJpeg(@NonNull final byte[] jpeg) {
+        final ExifSegmentSplicer splicer;
         try {
-            final JpegImageMetadata jpegMetadata = (JpegImageMetadata) getMetadata(jpeg);
-            if (jpegMetadata == null) {
-                throw new ExifReaderException("No jpeg metadata found");
-            }
-            return new ExifReader(jpegMetadata);
-        } catch (IOException | ImageReadException e) {
+            splicer = ExifSegmentSplicer.forJpeg(jpeg);
+        } catch (final ImageReadException e) {
             throw new ExifReaderException("Could not read jpeg metadata: " + e.getMessage(), e);
         }
+        if (!splicer.hasExifSegment()) {
+            throw new ExifReaderException("No jpeg metadata found");
+        }
+        return new ExifReader(jpeg, splicer.getTiffOffset(), splicer.getTiffEnd());
+    }
+
+    /**
+     * Reads the camera's EXIF tags which are kept by the library.
+     *
+     * @return the required tags, which are all {@code null} if the jpeg has no EXIF
+     * @throws ImageReadException if the byte array is not a JPEG
+     */
+    @NonNull
+    static Exif.RequiredTags readRequiredTags(@NonNull final byte[] jpeg)
+            throws ImageReadException {
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(jpeg);
+        if (!splicer.hasExifSegment()) {
+            return new Exif.RequiredTags();
+        }
+        return new ExifReader(jpeg, splicer.getTiffOffset(), splicer.getTiffEnd())
+                .getRequiredTags();
+    }
+
+    private ExifReader(@NonNull final byte[] jpeg, final int tiffOffset, final int tiffEnd) {
+        mJpeg = jpeg;
+        mTiffOffset = tiffOffset;
+        mTiffEnd = tiffEnd;
+        mByteOrder = readByteOrder();
+        mIfd0Offset = mByteOrder != null ? readTiffOffset(mTiffOffset + 4) : NO_OFFSET;
     }
 
-    private ExifReader(@NonNull final JpegImageMetadata jpegMetadata) {
-        mJpegMetadata = jpegMetadata;
+    @Nullable
+    private ByteOrder readByteOrder() {
+        if (mTiffOffset + 8 > mTiffEnd) {
+            return null;
+        }
+        final int first = mJpeg[mTiffOffset] & 0xFF;
+        final int second = mJpeg[mTiffOffset + 1] & 0xFF;
+        if (first == 'I' && second == 'I') {
+            return ByteOrder.LITTLE_ENDIAN;
+        } else if (first == 'M' && second == 'M') {
+            return ByteOrder.BIG_ENDIAN;
+        }
+        return null;
+    }
+
+    /**
+     * @return the camera's EXIF tags which are kept by the library, missing tags are {@code null}
+     */
+    @NonNull
+    Exif.RequiredTags getRequiredTags() {
+        final Exif.RequiredTags requiredTags = new Exif.RequiredTags();
+        final int[] ifd0Entries = getIfd0Entries();
+        requiredTags.make = readField(ifd0Entries[IFD0_MAKE], IFD0_DIRECTORY);
+        requiredTags.model = readField(ifd0Entries[IFD0_MODEL], IFD0_DIRECTORY);
+        final int[] exifIfdEntries = getExifIfdEntries();
+        requiredTags.iso = readField(exifIfdEntries[EXIF_IFD_ISO], EXIF_DIRECTORY);
+        requiredTags.exposure = readField(exifIfdEntries[EXIF_IFD_EXPOSURE], EXIF_DIRECTORY);
+        requiredTags.aperture = readField(exifIfdEntries[EXIF_IFD_APERTURE], EXIF_DIRECTORY);
+        requiredTags.flash = readField(exifIfdEntries[EXIF_IFD_FLASH], EXIF_DIRECTORY);
+        requiredTags.compressedBitsPerPixel = readField(
+                exifIfdEntries[EXIF_IFD_COMPRESSED_BITS_PER_PIXEL], EXIF_DIRECTORY);
+        return requiredTags;
     }
 
     @NonNull
     String getUserComment() {
-        final TiffField userCommentField = mJpegMetadata.findEXIFValue(
-                ExifTagConstants.EXIF_TAG_USER_COMMENT);
-        if (userCommentField == null) {
-            throw new ExifReaderException("No User Comment found");
+        if (mUserComment != null) {
+            return mUserComment;
         }
-
-        final byte[] rawUserComment = userCommentField.getByteArrayValue();
+        final int entryOffset = getExifIfdEntries()[EXIF_IFD_USER_COMMENT];
+        final byte[] rawUserComment = entryOffset != NO_OFFSET ? readValue(entryOffset) : null;
         if (rawUserComment == null) {
             throw new ExifReaderException("No User Comment found");
         }
 
         if (rawUserComment.length >= 8) {
-            return new String(Arrays.copyOfRange(rawUserComment, 8, rawUserComment.length));
+            mUserComment = new String(Arrays.copyOfRange(rawUserComment, 8,
+                    rawUserComment.length));
         } else {
-            return new String(rawUserComment);
+            mUserComment = new String(rawUserComment);
+        }
+        return mUserComment;
+    }
+
+    /**
+     * @return the key-value pairs of the User Comment, parsed only once
+     * @throws ExifReaderException if there is no User Comment
+     */
+    @NonNull
+    UserComment getParsedUserComment() {
+        if (mParsedUserComment == null) {
+            mParsedUserComment = UserComment.parse(getUserComment());
         }
+        return mParsedUserComment;
     }
 
     @Nullable
     String getValueForKeyFromUserComment(@NonNull final String key,
             @NonNull final String userComment) {
-        final String[] keyValuePairs = userComment.split(",");
-        for (final String keyValuePair : keyValuePairs) {
-            final String[] keyAndValue = keyValuePair.split("=");
-            if (keyAndValue.length > 1 && keyAndValue[0].equals(key)) {
-                return keyAndValue[1];
+        return UserComment.parse(userComment).getValue(key);
+    }
+
+    @NonNull
+    private int[] getIfd0Entries() {
+        if (mIfd0Entries == null) {
+            mIfd0Entries = findEntries(mIfd0Offset, IFD0_TAGS);
+        }
+        return mIfd0Entries;
+    }
+
+    @NonNull
+    private int[] getExifIfdEntries() {
+        if (mExifIfdEntries == null) {
+            final int entryOffset = getIfd0Entries()[IFD0_EXIF_OFFSET];
+            final int exifIfdOffset = entryOffset != NO_OFFSET
+                    ? readTiffOffset(entryOffset + 8) : NO_OFFSET;
+            mExifIfdEntries = findEntries(exifIfdOffset, EXIF_IFD_TAGS);
+        }
+        return mExifIfdEntries;
+    }
+
+    /**
+     * Scans the IFD's entries once.
+     *
+     * @return the offsets of the tags' IFD entries in the jpeg in the same order as the tags,
+     * {@link #NO_OFFSET} for tags which were not found
+     */
+    @NonNull
+    private int[] findEntries(final int ifdOffset, @NonNull final int[] tags) {
+        final int[] entries = new int[tags.length];
+        Arrays.fill(entries, NO_OFFSET);
+        if (ifdOffset == NO_OFFSET) {
+            return entries;
+        }
+        final int entryCount = readUnsignedShort(ifdOffset);
+        final int firstEntryOffset = ifdOffset + 2;
+        for (int i = 0; i < entryCount; i++) {
+            final int entryOffset = firstEntryOffset + i * IFD_ENTRY_LENGTH;
+            if (entryOffset + IFD_ENTRY_LENGTH > mTiffEnd) {
+                break;
+            }
+            final int tag = readUnsignedShort(entryOffset);
+            for (int j = 0; j < tags.length; j++) {
+                if (tags[j] == tag && entries[j] == NO_OFFSET) {
+                    entries[j] = entryOffset;
+                }
             }
         }
-        return null;
+        return entries;
+    }
+
+    @Nullable
+    private TiffField readField(final int entryOffset, final int directoryType) {
+        if (entryOffset == NO_OFFSET) {
+            return null;
+        }
+        final byte[] value = readValue(entryOffset);
+        if (value == null) {
+            return null;
+        }
+        final FieldType fieldType = getFieldType(entryOffset);
+        final long count = readInt(entryOffset + 4) & 0xFFFFFFFFL;
+        return new TiffField(readUnsignedShort(entryOffset), directoryType, fieldType, count,
+                getValueOffset(entryOffset, fieldType, count) - mTiffOffset, value, mByteOrder,
+                0);
+    }
+
+    /**
+     * Copies the value of an IFD entry.
+     *
+     * @return the value's bytes or {@code null} if the entry is malformed
+     */
+    @Nullable
+    private byte[] readValue(final int entryOffset) {
+        final FieldType fieldType = getFieldType(entryOffset);
+        if (fieldType == null) {
+            return null;
+        }
+        final long count = readInt(entryOffset + 4) & 0xFFFFFFFFL;
+        final int valueOffset = getValueOffset(entryOffset, fieldType, count);
+        if (valueOffset == NO_OFFSET) {
+            return null;
+        }
+        return Arrays.copyOfRange(mJpeg, valueOffset,
+                valueOffset + (int) count * fieldType.getSize());
+    }
+
+    @Nullable
+    private FieldType getFieldType(final int entryOffset) {
+        try {
+            return FieldType.getFieldType(readUnsignedShort(entryOffset + 2));
+        } catch (final ImageReadException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the offset of the entry's value in the jpeg or {@link #NO_OFFSET} if the value
+     * doesn't fit into the EXIF segment
+     */
+    private int getValueOffset(final int entryOffset, @NonNull final FieldType fieldType,
+            final long count) {
+        final long length = count * fieldType.getSize();
+        if (length > mTiffEnd - mTiffOffset) {
+            return NO_OFFSET;
+        }
+        // Values of up to four bytes are stored in the entry
+        final int valueOffset = length <= 4 ? entryOffset + 8 : readTiffOffset(entryOffset + 8);
+        if (valueOffset == NO_OFFSET || valueOffset + length > mTiffEnd) {
+            return NO_OFFSET;
+        }
+        return valueOffset;
+    }
+
+    /**
+     * Reads an offset relative to the TIFF header and converts it to an offset in the jpeg.
+     *
+     * @return the offset in the jpeg or {@link #NO_OFFSET} if it points outside of the EXIF segment
+     */
+    private int readTiffOffset(final int offset) {
+        final long tiffOffset = readInt(offset) & 0xFFFFFFFFL;
+        if (tiffOffset < 8 || mTiffOffset + tiffOffset + 2 > mTiffEnd) {
+            return NO_OFFSET;
+        }
+        return mTiffOffset + (int) tiffOffset;
+    }
+
+    private int readUnsignedShort(final int offset) {
+        final int first = mJpeg[offset] & 0xFF;
+        final int second = mJpeg[offset + 1] & 0xFF;
+        if (mByteOrder == ByteOrder.LITTLE_ENDIAN) {
+            return (second << 8) | first;
+        }
+        return (first << 8) | second;
+    }
+
+    private int readInt(final int offset) {
+        if (mByteOrder == ByteOrder.LITTLE_ENDIAN) {
+            return (readUnsignedShort(offset + 2) << 16) | readUnsignedShort(offset);
+        }
+        return (readUnsignedShort(offset) << 16) | readUnsignedShort(offset + 2);
     }
 }
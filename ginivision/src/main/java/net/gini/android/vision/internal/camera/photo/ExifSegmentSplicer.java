@@ -0,0 +1,288 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.support.annotation.NonNull;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     Replaces the EXIF APP1 segment of a JPEG without parsing the image or its metadata.
+ * </p>
+ * <p>
+ *     The JPEG markers are scanned once up to the start of the scan data to locate the EXIF
+ *     segments. Splicing writes the bytes before the EXIF segment, the new APP1 segment and the
+ *     untouched remainder of the JPEG in a single pass, either into one preallocated array or
+ *     directly into an {@link OutputStream}.
+ * </p>
+ * <p>
+ *     Other APP1 segments (e.g. XMP) are kept. If the JPEG had no EXIF segment, the new one is
+ *     inserted after the SOI marker and any leading APP0 (JFIF) segments.
+ * </p>
+ *
+ * @exclude
+ */
+final class ExifSegmentSplicer {
+
+    private static final int MARKER_PREFIX = 0xFF;
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_TEM = 0x01;
+    private static final int MARKER_RST0 = 0xD0;
+    private static final int MARKER_RST7 = 0xD7;
+
+    private static final byte[] EXIF_IDENTIFIER = new byte[]{0x45, 0x78, 0x69, 0x66, 0x00, 0x00};
+    // Marker (2 bytes) + length (2 bytes) + identifier (6 bytes)
+    private static final int APP1_HEADER_LENGTH = 4 + EXIF_IDENTIFIER.length;
+    private static final int MAX_SEGMENT_LENGTH = 0xFFFF;
+
+    private final byte[] mJpeg;
+    private final List<Segment> mExifSegments;
+    private final int mInsertionOffset;
+
+    private ExifSegmentSplicer(@NonNull final byte[] jpeg,
+            @NonNull final List<Segment> exifSegments, final int insertionOffset) {
+        mJpeg = jpeg;
+        mExifSegments = exifSegments;
+        mInsertionOffset = insertionOffset;
+    }
+
+    /**
+     * Scans the JPEG's markers up to the start of scan and records the EXIF APP1 segments.
+     *
+     * @param jpeg a JPEG
+     * @return a splicer for the JPEG
+     * @throws ImageReadException if the byte array is not a JPEG or its segments are malformed
+     */
+    @NonNull
+    static ExifSegmentSplicer forJpeg(@NonNull final byte[] jpeg) throws ImageReadException {
+        if (jpeg.length < 4
+                || (jpeg[0] & 0xFF) != MARKER_PREFIX
+                || (jpeg[1] & 0xFF) != MARKER_SOI) {
+            throw new ImageReadException("Not a JPEG: SOI marker missing");
+        }
+        final List<Segment> exifSegments = new ArrayList<>(1);
+        int insertionOffset = 2;
+        boolean onlyApp0Segments = true;
+        int offset = 2;
+        while (offset < jpeg.length) {
+            if ((jpeg[offset] & 0xFF) != MARKER_PREFIX) {
+                throw new ImageReadException("Malformed JPEG: marker expected at " + offset);
+            }
+            // Skip fill bytes
+            int markerOffset = offset;
+            while (markerOffset + 1 < jpeg.length
+                    && (jpeg[markerOffset + 1] & 0xFF) == MARKER_PREFIX) {
+                markerOffset++;
+            }
+            if (markerOffset + 1 >= jpeg.length) {
+                throw new ImageReadException("Malformed JPEG: truncated marker at " + offset);
+            }
+            final int marker = jpeg[markerOffset + 1] & 0xFF;
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                break;
+            }
+            if (marker == MARKER_TEM || (marker >= MARKER_RST0 && marker <= MARKER_RST7)) {
+                // Standalone markers have no length
+                offset = markerOffset + 2;
+                continue;
+            }
+            if (markerOffset + 3 >= jpeg.length) {
+                throw new ImageReadException("Malformed JPEG: truncated segment at " + offset);
+            }
+            final int length = ((jpeg[markerOffset + 2] & 0xFF) << 8)
+                    | (jpeg[markerOffset + 3] & 0xFF);
+            final int segmentEnd = markerOffset + 2 + length;
+            if (length < 2 || segmentEnd > jpeg.length) {
+                throw new ImageReadException("Malformed JPEG: invalid segment length at " + offset);
+            }
+            if (marker == MARKER_APP1 && hasExifIdentifier(jpeg, markerOffset + 4, segmentEnd)) {
+                exifSegments.add(new Segment(offset, segmentEnd - offset));
+            }
+            if (marker == MARKER_APP0 && onlyApp0Segments) {
+                insertionOffset = segmentEnd;
+            } else {
+                onlyApp0Segments = false;
+            }
+            offset = segmentEnd;
+        }
+        if (!exifSegments.isEmpty()) {
+            insertionOffset = exifSegments.get(0).offset;
+        }
+        return new ExifSegmentSplicer(jpeg, exifSegments, insertionOffset);
+    }
+
+    private static boolean hasExifIdentifier(@NonNull final byte[] jpeg, final int start,
+            final int end) {
+        if (end - start < EXIF_IDENTIFIER.length) {
+            return false;
+        }
+        for (int i = 0; i < EXIF_IDENTIFIER.length; i++) {
+            if (jpeg[start + i] != EXIF_IDENTIFIER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean hasExifSegment() {
+        return !mExifSegments.isEmpty();
+    }
+
+    /**
+     * @return the offset of the TIFF header in the first EXIF segment or -1 if there is no EXIF
+     * segment
+     */
+    int getTiffOffset() {
+        if (mExifSegments.isEmpty()) {
+            return -1;
+        }
+        return mExifSegments.get(0).offset + APP1_HEADER_LENGTH;
+    }
+
+    /**
+     * @return the offset after the end of the first EXIF segment or -1 if there is no EXIF segment
+     */
+    int getTiffEnd() {
+        if (mExifSegments.isEmpty()) {
+            return -1;
+        }
+        final Segment segment = mExifSegments.get(0);
+        return segment.offset + segment.length;
+    }
+
+    /**
+     * Reads the byte order from the TIFF header of the first EXIF segment.
+     *
+     * @param defaultByteOrder returned if there is no EXIF segment or its TIFF header is invalid
+     * @return the byte order of the existing EXIF data
+     */
+    @NonNull
+    ByteOrder getByteOrder(@NonNull final ByteOrder defaultByteOrder) {
+        if (mExifSegments.isEmpty()) {
+            return defaultByteOrder;
+        }
+        final Segment segment = mExifSegments.get(0);
+        final int tiffOffset = segment.offset + APP1_HEADER_LENGTH;
+        if (tiffOffset + 1 >= segment.offset + segment.length) {
+            return defaultByteOrder;
+        }
+        final int first = mJpeg[tiffOffset] & 0xFF;
+        final int second = mJpeg[tiffOffset + 1] & 0xFF;
+        if (first == 'I' && second == 'I') {
+            return ByteOrder.LITTLE_ENDIAN;
+        } else if (first == 'M' && second == 'M') {
+            return ByteOrder.BIG_ENDIAN;
+        }
+        return defaultByteOrder;
+    }
+
+    /**
+     * Calculates the length of the JPEG after splicing in an APP1 segment with the given TIFF data.
+     *
+     * @param tiff the TIFF data (header and IFDs) for the new EXIF segment
+     * @return the length of the spliced JPEG in bytes
+     */
+    int getSplicedLength(@NonNull final byte[] tiff) {
+        int length = mJpeg.length + APP1_HEADER_LENGTH + tiff.length;
+        for (final Segment segment : mExifSegments) {
+            length -= segment.length;
+        }
+        return length;
+    }
+
+    /**
+     * Creates a new JPEG where the EXIF segments are replaced with one containing the given TIFF
+     * data. The result is written into a single array allocated with the final size.
+     *
+     * @param tiff the TIFF data (header and IFDs) for the new EXIF segment
+     * @return the spliced JPEG
+     * @throws ImageWriteException if the TIFF data doesn't fit into an APP1 segment
+     */
+    @NonNull
+    byte[] splice(@NonNull final byte[] tiff) throws ImageWriteException {
+        final byte[] spliced = new byte[getSplicedLength(tiff)];
+        try {
+            splice(tiff, new ByteArraySink(spliced));
+        } catch (final IOException e) {
+            // Writing into the preallocated array cannot fail
+            throw new IllegalStateException("Could not write to the preallocated array", e);
+        }
+        return spliced;
+    }
+
+    /**
+     * Writes a new JPEG where the EXIF segments are replaced with one containing the given TIFF
+     * data to the output stream. The stream is not closed.
+     *
+     * @param tiff         the TIFF data (header and IFDs) for the new EXIF segment
+     * @param outputStream destination for the spliced JPEG
+     * @throws ImageWriteException if the TIFF data doesn't fit into an APP1 segment
+     * @throws IOException         if writing to the output stream failed
+     */
+    void splice(@NonNull final byte[] tiff, @NonNull final OutputStream outputStream)
+            throws ImageWriteException, IOException {
+        final int segmentLength = APP1_HEADER_LENGTH - 2 + tiff.length;
+        if (segmentLength > MAX_SEGMENT_LENGTH) {
+            throw new ImageWriteException(
+                    "EXIF data too large for an APP1 segment: " + segmentLength + " bytes");
+        }
+        outputStream.write(mJpeg, 0, mInsertionOffset);
+        outputStream.write(MARKER_PREFIX);
+        outputStream.write(MARKER_APP1);
+        outputStream.write(segmentLength >> 8);
+        outputStream.write(segmentLength & 0xFF);
+        outputStream.write(EXIF_IDENTIFIER);
+        outputStream.write(tiff);
+        int offset = mInsertionOffset;
+        for (final Segment segment : mExifSegments) {
+            outputStream.write(mJpeg, offset, segment.offset - offset);
+            offset = segment.offset + segment.length;
+        }
+        outputStream.write(mJpeg, offset, mJpeg.length - offset);
+    }
+
+    private static final class Segment {
+
+        final int offset;
+        final int length;
+
+        Segment(final int offset, final int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Writes into a fixed size array without any intermediate buffering.
+     */
+    private static final class ByteArraySink extends OutputStream {
+
+        private final byte[] mDestination;
+        private int mPosition;
+
+        ByteArraySink(@NonNull final byte[] destination) {
+            mDestination = destination;
+        }
+
+        @Override
+        public void write(final int b) {
+            mDestination[mPosition++] = (byte) b;
+        }
+
+        @Override
+        public void write(@NonNull final byte[] bytes, final int offset, final int length) {
+            System.arraycopy(bytes, offset, mDestination, mPosition, length);
+            mPosition += length;
+        }
+    }
+}
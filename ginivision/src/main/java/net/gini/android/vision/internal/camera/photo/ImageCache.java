@@ -1,13 +1,37 @@
 package net.gini.android.vision.internal.camera.photo;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -16,12 +40,41 @@ import java.util.concurrent.atomic.AtomicInteger;
  *
  * You should never use this service directly but instead work with the Photo.
  *
+ * <p>
+ *     The cache is bounded by a memory budget. When the budget is exceeded the least recently
+ *     used entries are moved out of memory: jpegs are spilled to files in the app's cache
+ *     directory (if the cache was initialized with {@link #init(Context)}) and bitmaps are
+ *     dropped, as previews can be decoded again from the jpeg. Spilled jpegs are memory-mapped
+ *     when read back. The spill files are bounded by a disk budget: a jpeg which doesn't fit
+ *     into it is kept in memory. Jpegs are never dropped while a token refers to them.
+ * </p>
+ * <p>
+ *     A token which is stored but never read back (e.g. the activity was destroyed after its
+ *     state was written to a parcel) is considered leaked after the leak timeout. A check is
+ *     scheduled for when the oldest token times out. Leaked entries are spilled regardless of
+ *     the memory budget and reported to the {@link LeakListener}.
+ * </p>
+ * <p>
+ *     Each image is stored only once, no matter how often it is stored: storing the same array,
+ *     buffer or bitmap again returns a new token referring to the stored image. Every token has to be
+ *     released once with {@link #release(Token)} (or {@link #removeJpeg(Token)} and {@link
+ *     #removeBitmap(Token)}). The image is removed when its last token was released.
+ * </p>
+ *
  * @exclude
  */
 public enum ImageCache {
 
     INSTANCE;
 
+    private static final Logger LOG = LoggerFactory.getLogger(ImageCache.class);
+
+    private static final String SPILL_DIRECTORY_NAME = "ginivisionlib-image-cache";
+    private static final String SPILL_FILE_SUFFIX = ".jpeg";
+
+    private static final long DEFAULT_MAX_DISK_BYTES = 64 * 1024 * 1024;
+    private static final long DEFAULT_LEAK_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
     /**
      * Opaque token type to identify a document.
      */
@@ -76,45 +129,702 @@ public enum ImageCache {
         public int hashCode() {
             return token;
         }
+
+        @Override
+        public String toString() {
+            return "Token{" + token + '}';
+        }
+    }
+
+    /**
+     * Diagnostics hook which is notified about tokens which were not read back within the leak
+     * timeout.
+     */
+    public interface LeakListener {
+
+        /**
+         * @param token       the leaked token
+         * @param ageMillis   milliseconds since the token was stored
+         * @param sizeInBytes size of the cached image
+         * @param storeOrigin where the token was stored, if store origins are tracked
+         */
+        void onTokenLeaked(@NonNull Token token, long ageMillis, long sizeInBytes,
+                @Nullable Throwable storeOrigin);
+    }
+
+    // Access ordered: iteration starts with the least recently used reference
+    private final LinkedHashMap<Token, Reference> mReferences = new LinkedHashMap<>(16, 0.75f, true);
+    // Stored images by their identity hash code, to store each image only once
+    private final Map<Integer, List<Entry>> mEntriesByImage = new HashMap<>();
+    private long mMemoryBytes;
+    private long mDiskBytes;
+    private long mMaxMemoryBytes = Runtime.getRuntime().maxMemory() / 8;
+    private long mMaxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+    private long mLeakTimeoutMillis = DEFAULT_LEAK_TIMEOUT_MILLIS;
+    private File mSpillDirectory;
+    private Executor mSpillExecutor;
+    private ScheduledExecutorService mLeakCheckExecutor;
+    private ScheduledFuture<?> mLeakCheck;
+    private boolean mLeakCheckScheduled;
+    private LeakListener mLeakListener;
+    private boolean mTrackStoreOrigins;
+
+    /**
+     * Enables spilling jpegs to the app's cache directory. Spill files left over from a previous
+     * process are deleted on the first call.
+     */
+    public synchronized void init(@NonNull final Context context) {
+        if (mSpillDirectory != null) {
+            return;
+        }
+        setSpillDirectory(new File(context.getApplicationContext().getCacheDir(),
+                SPILL_DIRECTORY_NAME));
     }
 
-    private Map<Token, Bitmap> mBitmapCache = new ConcurrentHashMap<>();
-    private Map<Token, byte[]> mJpegCache = new ConcurrentHashMap<>();
+    @VisibleForTesting
+    synchronized void setSpillDirectory(@Nullable final File spillDirectory) {
+        mSpillDirectory = spillDirectory;
+        if (spillDirectory == null) {
+            return;
+        }
+        if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+            LOG.error("Could not create spill directory {}", spillDirectory.getAbsolutePath());
+            mSpillDirectory = null;
+            return;
+        }
+        // Tokens are only valid within a process, spilled files of earlier processes are unused
+        final File[] staleFiles = spillDirectory.listFiles();
+        if (staleFiles != null) {
+            for (final File staleFile : staleFiles) {
+                if (isSpilled(staleFile)) {
+                    continue;
+                }
+                deleteFile(staleFile);
+            }
+        }
+    }
+
+    private boolean isSpilled(@NonNull final File file) {
+        for (final Reference reference : mReferences.values()) {
+            if (file.equals(reference.entry.file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void setLeakListener(@Nullable final LeakListener leakListener) {
+        mLeakListener = leakListener;
+    }
+
+    /**
+     * Records the stack trace of every store call to log where a leaked token was stored. Meant
+     * for debugging only, as it slows down storing.
+     */
+    public synchronized void setTrackStoreOrigins(final boolean trackStoreOrigins) {
+        mTrackStoreOrigins = trackStoreOrigins;
+    }
+
+    @VisibleForTesting
+    synchronized void setMaxMemoryBytes(final long maxMemoryBytes) {
+        mMaxMemoryBytes = maxMemoryBytes;
+        trimMemory();
+    }
+
+    /**
+     * Spilled jpegs are kept when the budget is lowered, only further spills are limited.
+     */
+    @VisibleForTesting
+    synchronized void setMaxDiskBytes(final long maxDiskBytes) {
+        mMaxDiskBytes = maxDiskBytes;
+    }
+
+    @VisibleForTesting
+    synchronized void setLeakTimeoutMillis(final long leakTimeoutMillis) {
+        mLeakTimeoutMillis = leakTimeoutMillis;
+    }
+
+    @VisibleForTesting
+    synchronized void setSpillExecutor(@Nullable final Executor spillExecutor) {
+        mSpillExecutor = spillExecutor;
+    }
+
+    @VisibleForTesting
+    synchronized void setLeakCheckExecutor(
+            @Nullable final ScheduledExecutorService leakCheckExecutor) {
+        cancelLeakCheck();
+        mLeakCheckExecutor = leakCheckExecutor;
+    }
 
     @Nullable
-    public Bitmap getBitmap(@NonNull final Token token) {
-        return mBitmapCache.get(token);
+    public synchronized Bitmap getBitmap(@NonNull final Token token) {
+        final Reference reference = mReferences.get(token);
+        return reference != null ? reference.entry.bitmap : null;
     }
 
+    /**
+     * Stores the bitmap, if it isn't stored yet, and returns a new token which holds a reference
+     * to it until the token is released.
+     */
     @NonNull
-    public Token storeBitmap(@Nullable final Bitmap documentBitmap) {
+    public synchronized Token storeBitmap(@Nullable final Bitmap documentBitmap) {
         final Token token = Token.next();
         if (documentBitmap != null) {
-            mBitmapCache.put(token, documentBitmap);
+            Entry entry = findEntry(documentBitmap);
+            if (entry == null) {
+                entry = new Entry(documentBitmap);
+                entry.bitmap = documentBitmap;
+                entry.size = documentBitmap.getRowBytes() * documentBitmap.getHeight();
+                addEntry(entry);
+            }
+            addReference(token, entry);
         }
         return token;
     }
 
-    public void removeBitmap(@NonNull final Token token) {
-        mBitmapCache.remove(token);
+    /**
+     * Releases the token's reference to the bitmap. See {@link #release(Token)}.
+     */
+    public synchronized void removeBitmap(@NonNull final Token token) {
+        release(token);
     }
 
+    @Nullable
     public byte[] getJpeg(@NonNull final Token token) {
-        return mJpegCache.get(token);
+        final File file;
+        synchronized (this) {
+            final Reference reference = mReferences.get(token);
+            if (reference == null) {
+                return null;
+            }
+            if (reference.entry.jpeg != null) {
+                return reference.entry.jpeg;
+            }
+            if (reference.entry.buffer != null) {
+                final byte[] jpeg = new byte[reference.entry.buffer.remaining()];
+                reference.entry.buffer.duplicate().get(jpeg);
+                return jpeg;
+            }
+            file = reference.entry.file;
+        }
+        if (file == null) {
+            return null;
+        }
+        try {
+            return readSpilledJpeg(file);
+        } catch (final IOException e) {
+            LOG.error("Could not read spilled jpeg from {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the jpeg without copying it: jpegs in memory are wrapped and spilled jpegs are
+     * memory-mapped. The mapping stays valid after the token was removed.
+     */
+    @Nullable
+    public ByteBuffer getJpegBuffer(@NonNull final Token token) {
+        final File file;
+        synchronized (this) {
+            final Reference reference = mReferences.get(token);
+            if (reference == null) {
+                return null;
+            }
+            if (reference.entry.jpeg != null) {
+                return ByteBuffer.wrap(reference.entry.jpeg);
+            }
+            if (reference.entry.buffer != null) {
+                return reference.entry.buffer.duplicate();
+            }
+            file = reference.entry.file;
+        }
+        if (file == null) {
+            return null;
+        }
+        try {
+            return mapSpilledJpeg(file);
+        } catch (final IOException e) {
+            LOG.error("Could not map spilled jpeg from {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the jpeg, if it isn't stored yet, and returns a new token which holds a reference to
+     * it until the token is released. Storing the same array again only adds a reference.
+     */
+    @NonNull
+    public synchronized Token storeJpeg(@NonNull final byte[] documentJpeg) {
+        final Token token = Token.next();
+        Entry entry = findEntry(documentJpeg);
+        if (entry == null) {
+            entry = new Entry(documentJpeg);
+            entry.jpeg = documentJpeg;
+            entry.size = documentJpeg.length;
+            addEntry(entry);
+        }
+        addReference(token, entry);
+        return token;
     }
 
-    public Token storeJpeg(@NonNull final byte[] documentJpeg) {
+    /**
+     * Stores the jpeg between the buffer's position and limit without copying it and returns a
+     * new token which holds a reference to it until the token is released. Storing the same
+     * buffer again only adds a reference. The buffer's content must not be changed while it is
+     * stored.
+     * <p>
+     * Direct buffers, like memory-mapped files, don't count towards the memory budget. Buffers
+     * wrapping a whole array are stored like the array.
+     */
+    @NonNull
+    public synchronized Token storeJpegBuffer(@NonNull final ByteBuffer documentJpeg) {
+        if (documentJpeg.hasArray() && documentJpeg.arrayOffset() == 0
+                && documentJpeg.position() == 0
+                && documentJpeg.remaining() == documentJpeg.array().length) {
+            return storeJpeg(documentJpeg.array());
+        }
         final Token token = Token.next();
-        mJpegCache.put(token, documentJpeg);
+        Entry entry = findEntry(documentJpeg);
+        if (entry == null) {
+            entry = new Entry(documentJpeg);
+            entry.buffer = documentJpeg.duplicate();
+            entry.size = documentJpeg.remaining();
+            // Direct buffers are outside of the heap, they are not spilled
+            entry.inMemory = !documentJpeg.isDirect();
+            addEntry(entry);
+        }
+        addReference(token, entry);
         return token;
     }
 
-    public void removeJpeg(@NonNull final Token token) {
-        mJpegCache.remove(token);
+    /**
+     * Releases the token's reference to the jpeg. See {@link #release(Token)}.
+     */
+    public synchronized void removeJpeg(@NonNull final Token token) {
+        release(token);
+    }
+
+    /**
+     * @return whether the token was not released yet
+     */
+    public synchronized boolean isStored(@NonNull final Token token) {
+        return mReferences.containsKey(token);
+    }
+
+    /**
+     * Releases the token's reference to its image. The image is removed when no token refers to
+     * it anymore. Releasing a token more than once has no effect.
+     */
+    public synchronized void release(@NonNull final Token token) {
+        final Reference reference = mReferences.remove(token);
+        if (reference == null) {
+            return;
+        }
+        final Entry entry = reference.entry;
+        entry.references--;
+        if (entry.references == 0) {
+            removeEntry(entry);
+        }
+        if (mReferences.isEmpty()) {
+            cancelLeakCheck();
+        }
+    }
+
+    /**
+     * Removes all entries and their spill files.
+     */
+    @VisibleForTesting
+    synchronized void clear() {
+        for (final Token token : new ArrayList<>(mReferences.keySet())) {
+            release(token);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized long getMemoryBytes() {
+        return mMemoryBytes;
+    }
+
+    @VisibleForTesting
+    synchronized long getDiskBytes() {
+        return mDiskBytes;
+    }
+
+    @VisibleForTesting
+    synchronized boolean isInMemory(@NonNull final Token token) {
+        final Reference reference = mReferences.get(token);
+        return reference != null && !reference.entry.removed && reference.entry.inMemory;
+    }
+
+    @VisibleForTesting
+    synchronized int getStoredImageCount() {
+        int count = 0;
+        for (final List<Entry> entries : mEntriesByImage.values()) {
+            count += entries.size();
+        }
+        return count;
+    }
+
+    @VisibleForTesting
+    synchronized int getTokenCount() {
+        return mReferences.size();
+    }
+
+    @Nullable
+    private Entry findEntry(@NonNull final Object image) {
+        final List<Entry> entries = mEntriesByImage.get(System.identityHashCode(image));
+        if (entries == null) {
+            return null;
+        }
+        for (final Entry entry : entries) {
+            if (entry.image.get() == image) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void addEntry(@NonNull final Entry entry) {
+        List<Entry> entries = mEntriesByImage.get(entry.imageHashCode);
+        if (entries == null) {
+            entries = new ArrayList<>(1);
+            mEntriesByImage.put(entry.imageHashCode, entries);
+        }
+        entries.add(entry);
+        if (entry.inMemory) {
+            mMemoryBytes += entry.size;
+        }
+    }
+
+    private void addReference(@NonNull final Token token, @NonNull final Entry entry) {
+        final long nowMillis = elapsedMillis();
+        final Reference reference = new Reference(entry, nowMillis);
+        if (mTrackStoreOrigins) {
+            reference.origin = new Throwable(token + " was stored here");
+        }
+        entry.references++;
+        mReferences.put(token, reference);
+        checkForLeaks(nowMillis);
+        scheduleLeakCheck(nowMillis);
+        trimMemory();
+    }
+
+    /**
+     * Removes the image. Tokens which still refer to it won't return it anymore.
+     */
+    private void removeEntry(@NonNull final Entry entry) {
+        if (entry.removed) {
+            return;
+        }
+        final List<Entry> entries = mEntriesByImage.get(entry.imageHashCode);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                mEntriesByImage.remove(entry.imageHashCode);
+            }
+        }
+        if (entry.inMemory) {
+            mMemoryBytes -= entry.size;
+        }
+        if (entry.onDisk) {
+            mDiskBytes -= entry.size;
+        }
+        if (entry.file != null) {
+            deleteFile(entry.file);
+        }
+        entry.removed = true;
+        entry.jpeg = null;
+        entry.buffer = null;
+        entry.bitmap = null;
+        entry.file = null;
+    }
+
+    /**
+     * Reports and spills entries which were stored longer than the leak timeout.
+     */
+    @VisibleForTesting
+    synchronized void checkForLeaks(final long nowMillis) {
+        for (final Map.Entry<Token, Reference> mapEntry : mReferences.entrySet()) {
+            final Reference reference = mapEntry.getValue();
+            final long ageMillis = nowMillis - reference.storedAtMillis;
+            if (reference.leaked || ageMillis <= mLeakTimeoutMillis) {
+                continue;
+            }
+            reference.leaked = true;
+            if (reference.origin != null) {
+                LOG.warn("{} was not read back for {} ms ({} bytes)", mapEntry.getKey(),
+                        ageMillis, reference.entry.size, reference.origin);
+            } else {
+                LOG.warn("{} was not read back for {} ms ({} bytes)", mapEntry.getKey(),
+                        ageMillis, reference.entry.size);
+            }
+            if (mLeakListener != null) {
+                mLeakListener.onTokenLeaked(mapEntry.getKey(), ageMillis, reference.entry.size,
+                        reference.origin);
+            }
+        }
+        for (final Reference reference : new ArrayList<>(mReferences.values())) {
+            if (reference.leaked) {
+                moveOutOfMemory(reference.entry);
+            }
+        }
+    }
+
+    /**
+     * Schedules a leak check for when the oldest token which is not yet leaked times out, unless
+     * a check is already scheduled. Leaks are detected even if no further images are stored.
+     */
+    private void scheduleLeakCheck(final long nowMillis) {
+        if (mLeakCheckScheduled) {
+            return;
+        }
+        long oldestStoredAtMillis = Long.MAX_VALUE;
+        for (final Reference reference : mReferences.values()) {
+            if (!reference.leaked) {
+                oldestStoredAtMillis = Math.min(oldestStoredAtMillis, reference.storedAtMillis);
+            }
+        }
+        if (oldestStoredAtMillis == Long.MAX_VALUE) {
+            return;
+        }
+        final long delayMillis = Math.max(0,
+                oldestStoredAtMillis + mLeakTimeoutMillis + 1 - nowMillis);
+        try {
+            mLeakCheck = getLeakCheckExecutor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (ImageCache.this) {
+                        mLeakCheckScheduled = false;
+                        mLeakCheck = null;
+                        final long checkMillis = elapsedMillis();
+                        checkForLeaks(checkMillis);
+                        scheduleLeakCheck(checkMillis);
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+            mLeakCheckScheduled = true;
+        } catch (final RejectedExecutionException e) {
+            LOG.error("Could not schedule the leak check", e);
+        }
+    }
+
+    private void cancelLeakCheck() {
+        if (mLeakCheck != null) {
+            mLeakCheck.cancel(false);
+            mLeakCheck = null;
+        }
+        mLeakCheckScheduled = false;
+    }
+
+    private void trimMemory() {
+        if (mMemoryBytes <= mMaxMemoryBytes) {
+            return;
+        }
+        // Copy, because moving out of memory modifies the map
+        final List<Reference> leastRecentlyUsedFirst = new ArrayList<>(mReferences.values());
+        for (final Reference reference : leastRecentlyUsedFirst) {
+            if (mMemoryBytes <= mMaxMemoryBytes) {
+                return;
+            }
+            moveOutOfMemory(reference.entry);
+        }
+        if (mMemoryBytes > mMaxMemoryBytes) {
+            LOG.warn("Image cache exceeds its memory budget: {} of {} bytes", mMemoryBytes,
+                    mMaxMemoryBytes);
+        }
+    }
+
+    private void moveOutOfMemory(@NonNull final Entry entry) {
+        if (!entry.inMemory || entry.removed) {
+            return;
+        }
+        if (entry.bitmap != null) {
+            // Previews are decoded again from the jpeg
+            LOG.debug("Dropping bitmap of {} bytes", entry.size);
+            removeEntry(entry);
+        } else if ((entry.jpeg != null || entry.buffer != null) && mSpillDirectory != null) {
+            if (mDiskBytes + entry.size > mMaxDiskBytes) {
+                // Dropping a spilled jpeg would lose an image a token still refers to
+                LOG.warn("Image cache exceeds its disk budget, keeping {} bytes in memory",
+                        entry.size);
+                return;
+            }
+            entry.inMemory = false;
+            mMemoryBytes -= entry.size;
+            // Reserved before writing to keep concurrent spills within the budget
+            entry.onDisk = true;
+            mDiskBytes += entry.size;
+            spill(entry, new File(mSpillDirectory, entry.id + SPILL_FILE_SUFFIX));
+        }
+    }
+
+    private void spill(@NonNull final Entry entry, @NonNull final File file) {
+        final ByteBuffer jpeg = entry.jpeg != null ? ByteBuffer.wrap(entry.jpeg)
+                : entry.buffer.duplicate();
+        getSpillExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                // The jpeg stays readable from memory until it was written
+                final boolean written = writeSpillFile(jpeg, file);
+                synchronized (ImageCache.this) {
+                    if (entry.removed) {
+                        // Removed in the meantime
+                        deleteFile(file);
+                        return;
+                    }
+                    if (!written) {
+                        entry.onDisk = false;
+                        mDiskBytes -= entry.size;
+                        entry.inMemory = true;
+                        mMemoryBytes += entry.size;
+                        return;
+                    }
+                    entry.file = file;
+                    entry.jpeg = null;
+                    entry.buffer = null;
+                    LOG.debug("Spilled jpeg to {}", file.getAbsolutePath());
+                }
+            }
+        });
+    }
+
+    @NonNull
+    private Executor getSpillExecutor() {
+        if (mSpillExecutor == null) {
+            mSpillExecutor = createSpillExecutor();
+        }
+        return mSpillExecutor;
+    }
+
+    @NonNull
+    private ScheduledExecutorService getLeakCheckExecutor() {
+        if (mLeakCheckExecutor == null) {
+            mLeakCheckExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "ImageCacheLeakCheck");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return mLeakCheckExecutor;
+    }
+
+    @NonNull
+    private static ExecutorService createSpillExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "ImageCacheSpill");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    private static boolean writeSpillFile(@NonNull final ByteBuffer jpeg, @NonNull final File file) {
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(file);
+            final FileChannel channel = outputStream.getChannel();
+            while (jpeg.hasRemaining()) {
+                channel.write(jpeg);
+            }
+            return true;
+        } catch (final IOException e) {
+            LOG.error("Could not spill jpeg to {}", file.getAbsolutePath(), e);
+            deleteFile(file);
+            return false;
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (final IOException e) {
+                    LOG.error("Closing FileOutputStream failed for file {}",
+                            file.getAbsolutePath(), e);
+                }
+            }
+        }
+    }
+
+    @NonNull
+    private static byte[] readSpilledJpeg(@NonNull final File file) throws IOException {
+        final MappedByteBuffer buffer = mapSpilledJpeg(file);
+        final byte[] jpeg = new byte[buffer.remaining()];
+        buffer.get(jpeg);
+        return jpeg;
+    }
+
+    @NonNull
+    private static MappedByteBuffer mapSpilledJpeg(@NonNull final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void deleteFile(@NonNull final File file) {
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Could not delete {}", file.getAbsolutePath());
+        }
+    }
+
+    @VisibleForTesting
+    static long elapsedMillis() {
+        return System.nanoTime() / 1000000;
     }
 
     @NonNull
     public static ImageCache getInstance() {
         return INSTANCE;
     }
+
+    /**
+     * A stored image, shared by all tokens which refer to it.
+     */
+    private static final class Entry {
+
+        private static final AtomicInteger COUNTER = new AtomicInteger(0);
+
+        final int id = COUNTER.getAndIncrement();
+        // Weak, so spilled and dropped images can be garbage collected
+        final WeakReference<Object> image;
+        final int imageHashCode;
+        byte[] jpeg;
+        ByteBuffer buffer;
+        Bitmap bitmap;
+        File file;
+        long size;
+        int references;
+        boolean inMemory = true;
+        // Counted in the disk bytes from when the spill was scheduled
+        boolean onDisk;
+        boolean removed;
+
+        Entry(@NonNull final Object image) {
+            this.image = new WeakReference<>(image);
+            this.imageHashCode = System.identityHashCode(image);
+        }
+    }
+
+    /**
+     * A token's reference to a stored image.
+     */
+    private static final class Reference {
+
+        final Entry entry;
+        final long storedAtMillis;
+        boolean leaked;
+        Throwable origin;
+
+        Reference(@NonNull final Entry entry, final long storedAtMillis) {
+            this.entry = entry;
+            this.storedAtMillis = storedAtMillis;
+        }
+    }
 }
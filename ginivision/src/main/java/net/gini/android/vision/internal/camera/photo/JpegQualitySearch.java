@@ -0,0 +1,66 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ *     Finds the highest jpeg quality whose estimated size fits into a byte budget.
+ * </p>
+ * <p>
+ *     The jpeg size grows with the quality, so the qualities are binary searched. The maximum
+ *     quality is tried first, because smaller images usually fit and need only one estimate. If
+ *     even the minimum quality exceeds the budget the minimum is used: below it the compression
+ *     artifacts blur small print and the upload would be useless for extraction.
+ * </p>
+ *
+ * @exclude
+ */
+final class JpegQualitySearch {
+
+    static final int MIN_QUALITY = 35;
+
+    /**
+     * Estimates the size of the full jpeg at a quality.
+     */
+    interface SizeEstimator {
+
+        long estimateSize(int quality) throws IOException;
+    }
+
+    private JpegQualitySearch() {
+    }
+
+    /**
+     * @param estimator  estimates the jpeg size for a quality
+     * @param maxBytes   the byte budget
+     * @param minQuality the lowest acceptable quality
+     * @param maxQuality the highest quality to use, even if a higher one would fit
+     * @return the highest quality in {@code [minQuality, maxQuality]} within the budget or {@code
+     * minQuality}, if none fits
+     * @throws IOException if the estimator failed
+     */
+    static int findQuality(@NonNull final SizeEstimator estimator, final long maxBytes,
+            final int minQuality, final int maxQuality) throws IOException {
+        if (minQuality > maxQuality) {
+            throw new IllegalArgumentException(
+                    "Minimum quality " + minQuality + " exceeds maximum quality " + maxQuality);
+        }
+        if (estimator.estimateSize(maxQuality) <= maxBytes) {
+            return maxQuality;
+        }
+        // Invariant: low fits or is the minimum, high doesn't fit
+        int low = minQuality;
+        int high = maxQuality;
+        while (high - low > 1) {
+            final int middle = (low + high) >>> 1;
+            if (estimator.estimateSize(middle) <= maxBytes) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,20 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * <p>
+ *     Decodes and encodes a jpeg with a new quality. The result has no EXIF metadata.
+ * </p>
+ *
+ * @exclude
+ */
+interface JpegRecompressor {
+
+    /**
+     * @return the recompressed jpeg or {@code null}, if recompression failed
+     */
+    @Nullable
+    byte[] recompress(@NonNull byte[] jpeg, int quality);
+}
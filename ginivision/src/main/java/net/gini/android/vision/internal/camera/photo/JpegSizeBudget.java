@@ -0,0 +1,50 @@
+package net.gini.android.vision.internal.camera.photo;
+
+/**
+ * <p>
+ *     The maximum size of a recompressed jpeg, either as a fixed number of bytes or relative to the
+ *     image's resolution in bits per pixel.
+ * </p>
+ *
+ * @exclude
+ */
+final class JpegSizeBudget {
+
+    private final long mMaxBytes;
+    private final float mBitsPerPixel;
+
+    private JpegSizeBudget(final long maxBytes, final float bitsPerPixel) {
+        mMaxBytes = maxBytes;
+        mBitsPerPixel = bitsPerPixel;
+    }
+
+    static JpegSizeBudget ofBytes(final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The byte budget must be positive: " + maxBytes);
+        }
+        return new JpegSizeBudget(maxBytes, 0);
+    }
+
+    static JpegSizeBudget ofBitsPerPixel(final float bitsPerPixel) {
+        if (bitsPerPixel <= 0) {
+            throw new IllegalArgumentException(
+                    "The bits per pixel budget must be positive: " + bitsPerPixel);
+        }
+        return new JpegSizeBudget(0, bitsPerPixel);
+    }
+
+    /**
+     * @return the maximum number of bytes for a jpeg with the given resolution
+     */
+    long getMaxBytes(final int width, final int height) {
+        if (mMaxBytes > 0) {
+            return mMaxBytes;
+        }
+        return (long) ((double) width * height * mBitsPerPixel / 8);
+    }
+
+    @Override
+    public String toString() {
+        return mMaxBytes > 0 ? mMaxBytes + " bytes" : mBitsPerPixel + " bits per pixel";
+    }
+}
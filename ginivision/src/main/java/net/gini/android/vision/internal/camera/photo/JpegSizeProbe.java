@@ -0,0 +1,124 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ *     Estimates the size of a recompressed jpeg by encoding a probe image instead of the full
+ *     resolution image.
+ * </p>
+ * <p>
+ *     The probe consists of full resolution strips spread evenly over the image. Scaling the image
+ *     down would change its detail per pixel and with it the bits per pixel of the encoded jpeg.
+ *     The strips keep the original detail and their encoded size is extrapolated to the full
+ *     height. Images within the probe's pixel limit are probed completely.
+ * </p>
+ * <p>
+ *     The probe is decoded once and can be encoded at several qualities. Call {@link #recycle()}
+ *     when done.
+ * </p>
+ *
+ * @exclude
+ */
+final class JpegSizeProbe implements JpegQualitySearch.SizeEstimator {
+
+    /**
+     * Pixels decoded for the probe. About 4MB for ARGB_8888.
+     */
+    static final int MAX_PROBE_PIXELS = 1024 * 1024;
+
+    /**
+     * Approximate size of the markers and tables which are written once per jpeg.
+     */
+    private static final int JPEG_HEADER_BYTES = 620;
+
+    private final int mHeight;
+    private final int mProbeHeight;
+    private Bitmap mProbe;
+
+    JpegSizeProbe(@NonNull final byte[] jpeg) throws IOException {
+        final RegionDecoderStripSource stripSource = new RegionDecoderStripSource(jpeg);
+        try {
+            final int width = stripSource.getWidth();
+            mHeight = stripSource.getHeight();
+            final int stripHeight = stripSource.getStripHeight();
+            final boolean probeAll = (long) width * mHeight <= MAX_PROBE_PIXELS
+                    || mHeight < 2 * stripHeight;
+            // Only complete strips are sampled, the last one may be shorter
+            final int probeStrips = probeAll ? (mHeight + stripHeight - 1) / stripHeight
+                    : Math.max(1, Math.min(mHeight / stripHeight,
+                            MAX_PROBE_PIXELS / (width * stripHeight)));
+            mProbeHeight = probeAll ? mHeight : probeStrips * stripHeight;
+            mProbe = Bitmap.createBitmap(width, mProbeHeight, Bitmap.Config.ARGB_8888);
+
+            final int[] pixels = new int[width * stripHeight];
+            for (int i = 0; i < probeStrips; i++) {
+                // Spread the strips evenly and keep them aligned to the strip height
+                final int strip = probeAll ? i
+                        : (int) ((long) i * (mHeight / stripHeight) / probeStrips);
+                final int top = strip * stripHeight;
+                final int rows = Math.min(stripHeight, mHeight - top);
+                stripSource.readStrip(top, rows, pixels);
+                mProbe.setPixels(pixels, 0, width, 0, i * stripHeight, width, rows);
+            }
+        } catch (final IOException | RuntimeException e) {
+            recycle();
+            throw e;
+        } finally {
+            stripSource.recycle();
+        }
+    }
+
+    int getWidth() {
+        return mProbe.getWidth();
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public long estimateSize(final int quality) throws IOException {
+        if (mProbe == null) {
+            throw new IllegalStateException("The probe was recycled");
+        }
+        final CountingOutputStream outputStream = new CountingOutputStream();
+        if (!mProbe.compress(Bitmap.CompressFormat.JPEG, quality, outputStream)) {
+            throw new IOException("Could not encode the probe at quality " + quality);
+        }
+        if (mProbeHeight == mHeight) {
+            return outputStream.mCount;
+        }
+        final long scanBytes = Math.max(0, outputStream.mCount - JPEG_HEADER_BYTES);
+        return JPEG_HEADER_BYTES + scanBytes * mHeight / mProbeHeight;
+    }
+
+    void recycle() {
+        if (mProbe != null) {
+            mProbe.recycle();
+            mProbe = null;
+        }
+    }
+
+    /**
+     * Only counts the encoded bytes, the probe's jpeg is not needed.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        private long mCount;
+
+        @Override
+        public void write(final int b) {
+            mCount++;
+        }
+
+        @Override
+        public void write(@NonNull final byte[] bytes, final int offset, final int length) {
+            mCount += length;
+        }
+    }
+}
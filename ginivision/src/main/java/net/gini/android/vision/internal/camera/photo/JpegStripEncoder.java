@@ -0,0 +1,572 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ *     Baseline JPEG encoder which reads the image strip by strip from a {@link PixelStripSource}.
+ * </p>
+ * <p>
+ *     The working memory is allocated once per encoding and depends only on the image width and
+ *     the strip height: one strip of ARGB pixels and a few 8x8 blocks. The image is encoded as
+ *     YCbCr with 4:2:0 chroma subsampling using the standard quantization tables scaled by the
+ *     quality and the standard Huffman tables.
+ * </p>
+ *
+ * @exclude
+ */
+final class JpegStripEncoder {
+
+    /**
+     * Rows and columns covered by a minimum coded unit with 4:2:0 subsampling.
+     */
+    static final int MCU_SIZE = 16;
+
+    private static final int MAX_DIMENSION = 0xFFFF;
+
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10,
+            17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34,
+            27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36,
+            29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46,
+            53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    private static final int[] LUMINANCE_QUANTIZATION = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+
+    private static final int[] CHROMINANCE_QUANTIZATION = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    private static final int[] DC_LUMINANCE_BITS = {
+            0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0
+    };
+    private static final int[] DC_LUMINANCE_VALUES = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11
+    };
+    private static final int[] DC_CHROMINANCE_BITS = {
+            0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0
+    };
+    private static final int[] DC_CHROMINANCE_VALUES = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11
+    };
+    private static final int[] AC_LUMINANCE_BITS = {
+            0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d
+    };
+    private static final int[] AC_LUMINANCE_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12,
+            0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+            0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08,
+            0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+            0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16,
+            0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+            0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39,
+            0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59,
+            0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+            0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79,
+            0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+            0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98,
+            0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+            0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6,
+            0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+            0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4,
+            0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+            0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea,
+            0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+    private static final int[] AC_CHROMINANCE_BITS = {
+            0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77
+    };
+    private static final int[] AC_CHROMINANCE_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21,
+            0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+            0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91,
+            0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+            0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34,
+            0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+            0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38,
+            0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+            0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58,
+            0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78,
+            0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+            0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96,
+            0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+            0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4,
+            0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+            0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2,
+            0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+            0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9,
+            0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+
+    private static final double[] AAN_SCALE_FACTORS = {
+            1.0, 1.387039845, 1.306562965, 1.175875602,
+            1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    private final int[] mLuminanceQuantization;
+    private final int[] mChrominanceQuantization;
+    private final float[] mLuminanceDivisors;
+    private final float[] mChrominanceDivisors;
+
+    private final HuffmanTable mDcLuminance = new HuffmanTable(DC_LUMINANCE_BITS,
+            DC_LUMINANCE_VALUES);
+    private final HuffmanTable mDcChrominance = new HuffmanTable(DC_CHROMINANCE_BITS,
+            DC_CHROMINANCE_VALUES);
+    private final HuffmanTable mAcLuminance = new HuffmanTable(AC_LUMINANCE_BITS,
+            AC_LUMINANCE_VALUES);
+    private final HuffmanTable mAcChrominance = new HuffmanTable(AC_CHROMINANCE_BITS,
+            AC_CHROMINANCE_VALUES);
+
+    // Working blocks, reused for every MCU
+    private final float[] mBlock = new float[64];
+    private final int[] mQuantized = new int[64];
+    private final float[] mCb = new float[64];
+    private final float[] mCr = new float[64];
+
+    /**
+     * @param quality JPEG quality between 1 and 100
+     */
+    JpegStripEncoder(final int quality) {
+        final int clampedQuality = Math.max(1, Math.min(100, quality));
+        mLuminanceQuantization = scaleQuantizationTable(LUMINANCE_QUANTIZATION, clampedQuality);
+        mChrominanceQuantization = scaleQuantizationTable(CHROMINANCE_QUANTIZATION,
+                clampedQuality);
+        mLuminanceDivisors = createDivisors(mLuminanceQuantization);
+        mChrominanceDivisors = createDivisors(mChrominanceQuantization);
+    }
+
+    /**
+     * Size of the strip buffer in bytes which is allocated when encoding an image from the
+     * source.
+     */
+    static long getStripBufferSize(@NonNull final PixelStripSource source) {
+        return 4L * source.getWidth() * getEncoderStripHeight(source);
+    }
+
+    private static int getEncoderStripHeight(@NonNull final PixelStripSource source) {
+        final int stripHeight = Math.max(MCU_SIZE, source.getStripHeight());
+        // Strips contain whole MCU rows
+        return (stripHeight + MCU_SIZE - 1) / MCU_SIZE * MCU_SIZE;
+    }
+
+    /**
+     * Encodes the image provided by the source as a JPEG into the output stream. The stream is
+     * not closed.
+     *
+     * @throws IOException if reading from the source or writing to the stream failed
+     */
+    void encode(@NonNull final PixelStripSource source, @NonNull final OutputStream outputStream)
+            throws IOException {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        if (width <= 0 || height <= 0 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            throw new IOException("Unsupported image size: " + width + "x" + height);
+        }
+        final int stripHeight = getEncoderStripHeight(source);
+        final int[] pixels = new int[width * stripHeight];
+        final BitWriter bitWriter = new BitWriter(outputStream);
+
+        writeHeaders(bitWriter, width, height);
+
+        final int[] previousDc = new int[3];
+        for (int top = 0; top < height; top += stripHeight) {
+            final int rows = Math.min(stripHeight, height - top);
+            source.readStrip(top, rows, pixels);
+            for (int mcuY = 0; mcuY < rows; mcuY += MCU_SIZE) {
+                for (int mcuX = 0; mcuX < width; mcuX += MCU_SIZE) {
+                    encodeMcu(bitWriter, pixels, width, rows, mcuX, mcuY, previousDc);
+                }
+            }
+        }
+
+        bitWriter.flushBits();
+        bitWriter.writeMarker(0xD9);
+        bitWriter.flush();
+    }
+
+    private void encodeMcu(@NonNull final BitWriter bitWriter, @NonNull final int[] pixels,
+            final int width, final int rows, final int mcuX, final int mcuY,
+            @NonNull final int[] previousDc) throws IOException {
+        for (int i = 0; i < 64; i++) {
+            mCb[i] = 0;
+            mCr[i] = 0;
+        }
+        // Four luminance blocks, chrominance is accumulated for 2x2 pixel averages
+        for (int blockY = 0; blockY < 2; blockY++) {
+            for (int blockX = 0; blockX < 2; blockX++) {
+                for (int y = 0; y < 8; y++) {
+                    final int pixelY = Math.min(mcuY + blockY * 8 + y, rows - 1);
+                    final int rowOffset = pixelY * width;
+                    final int chromaRow = ((blockY * 8 + y) >> 1) * 8;
+                    for (int x = 0; x < 8; x++) {
+                        final int pixelX = Math.min(mcuX + blockX * 8 + x, width - 1);
+                        final int argb = pixels[rowOffset + pixelX];
+                        final int r = (argb >> 16) & 0xFF;
+                        final int g = (argb >> 8) & 0xFF;
+                        final int b = argb & 0xFF;
+                        mBlock[y * 8 + x] = 0.299f * r + 0.587f * g + 0.114f * b - 128f;
+                        final int chromaIndex = chromaRow + ((blockX * 8 + x) >> 1);
+                        mCb[chromaIndex] += -0.168736f * r - 0.331264f * g + 0.5f * b;
+                        mCr[chromaIndex] += 0.5f * r - 0.418688f * g - 0.081312f * b;
+                    }
+                }
+                previousDc[0] = encodeBlock(bitWriter, mBlock, mLuminanceDivisors, previousDc[0],
+                        mDcLuminance, mAcLuminance);
+            }
+        }
+        for (int i = 0; i < 64; i++) {
+            // Average of four pixels, level shift cancels the +128 offset of the color space
+            mCb[i] = mCb[i] * 0.25f;
+            mCr[i] = mCr[i] * 0.25f;
+        }
+        previousDc[1] = encodeBlock(bitWriter, mCb, mChrominanceDivisors, previousDc[1],
+                mDcChrominance, mAcChrominance);
+        previousDc[2] = encodeBlock(bitWriter, mCr, mChrominanceDivisors, previousDc[2],
+                mDcChrominance, mAcChrominance);
+    }
+
+    private int encodeBlock(@NonNull final BitWriter bitWriter, @NonNull final float[] block,
+            @NonNull final float[] divisors, final int previousDc,
+            @NonNull final HuffmanTable dcTable, @NonNull final HuffmanTable acTable)
+            throws IOException {
+        forwardDct(block);
+        for (int i = 0; i < 64; i++) {
+            mQuantized[i] = Math.round(block[i] * divisors[i]);
+        }
+
+        final int dc = mQuantized[0];
+        final int dcDifference = dc - previousDc;
+        final int dcCategory = getCategory(dcDifference);
+        bitWriter.writeBits(dcTable.codes[dcCategory], dcTable.lengths[dcCategory]);
+        writeValueBits(bitWriter, dcDifference, dcCategory);
+
+        int zeroRun = 0;
+        for (int k = 1; k < 64; k++) {
+            final int value = mQuantized[ZIGZAG[k]];
+            if (value == 0) {
+                zeroRun++;
+                continue;
+            }
+            while (zeroRun > 15) {
+                // ZRL: sixteen zeros
+                bitWriter.writeBits(acTable.codes[0xF0], acTable.lengths[0xF0]);
+                zeroRun -= 16;
+            }
+            final int category = getCategory(value);
+            final int symbol = (zeroRun << 4) | category;
+            bitWriter.writeBits(acTable.codes[symbol], acTable.lengths[symbol]);
+            writeValueBits(bitWriter, value, category);
+            zeroRun = 0;
+        }
+        if (zeroRun > 0) {
+            // EOB
+            bitWriter.writeBits(acTable.codes[0x00], acTable.lengths[0x00]);
+        }
+        return dc;
+    }
+
+    private static void writeValueBits(@NonNull final BitWriter bitWriter, final int value,
+            final int category) throws IOException {
+        if (category == 0) {
+            return;
+        }
+        // Negative values are written as the one's complement
+        final int bits = value < 0 ? value - 1 : value;
+        bitWriter.writeBits(bits & ((1 << category) - 1), category);
+    }
+
+    private static int getCategory(final int value) {
+        int magnitude = value < 0 ? -value : value;
+        int category = 0;
+        while (magnitude != 0) {
+            category++;
+            magnitude >>= 1;
+        }
+        return category;
+    }
+
+    /**
+     * Floating point AAN forward DCT (as in the IJG's jfdctflt.c). The output is scaled by the
+     * AAN factors which are compensated by the quantization divisors.
+     */
+    private static void forwardDct(@NonNull final float[] data) {
+        for (int pass = 0; pass < 2; pass++) {
+            // First pass on rows, second pass on columns
+            final int step = pass == 0 ? 1 : 8;
+            final int lineStep = pass == 0 ? 8 : 1;
+            for (int line = 0; line < 8; line++) {
+                final int o = line * lineStep;
+                final float tmp0 = data[o] + data[o + 7 * step];
+                final float tmp7 = data[o] - data[o + 7 * step];
+                final float tmp1 = data[o + step] + data[o + 6 * step];
+                final float tmp6 = data[o + step] - data[o + 6 * step];
+                final float tmp2 = data[o + 2 * step] + data[o + 5 * step];
+                final float tmp5 = data[o + 2 * step] - data[o + 5 * step];
+                final float tmp3 = data[o + 3 * step] + data[o + 4 * step];
+                final float tmp4 = data[o + 3 * step] - data[o + 4 * step];
+
+                // Even part
+                float tmp10 = tmp0 + tmp3;
+                final float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+
+                data[o] = tmp10 + tmp11;
+                data[o + 4 * step] = tmp10 - tmp11;
+
+                final float z1 = (tmp12 + tmp13) * 0.707106781f;
+                data[o + 2 * step] = tmp13 + z1;
+                data[o + 6 * step] = tmp13 - z1;
+
+                // Odd part
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+
+                final float z5 = (tmp10 - tmp12) * 0.382683433f;
+                final float z2 = 0.541196100f * tmp10 + z5;
+                final float z4 = 1.306562965f * tmp12 + z5;
+                final float z3 = tmp11 * 0.707106781f;
+
+                final float z11 = tmp7 + z3;
+                final float z13 = tmp7 - z3;
+
+                data[o + 5 * step] = z13 + z2;
+                data[o + 3 * step] = z13 - z2;
+                data[o + step] = z11 + z4;
+                data[o + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    private void writeHeaders(@NonNull final BitWriter writer, final int width, final int height)
+            throws IOException {
+        // SOI
+        writer.writeMarker(0xD8);
+
+        // APP0 JFIF 1.01, no density, no thumbnail
+        writer.writeMarker(0xE0);
+        writer.writeShort(16);
+        writer.writeByte('J');
+        writer.writeByte('F');
+        writer.writeByte('I');
+        writer.writeByte('F');
+        writer.writeByte(0);
+        writer.writeByte(1);
+        writer.writeByte(1);
+        writer.writeByte(0);
+        writer.writeShort(1);
+        writer.writeShort(1);
+        writer.writeByte(0);
+        writer.writeByte(0);
+
+        // DQT
+        writer.writeMarker(0xDB);
+        writer.writeShort(2 + 2 * 65);
+        writer.writeByte(0);
+        for (int k = 0; k < 64; k++) {
+            writer.writeByte(mLuminanceQuantization[ZIGZAG[k]]);
+        }
+        writer.writeByte(1);
+        for (int k = 0; k < 64; k++) {
+            writer.writeByte(mChrominanceQuantization[ZIGZAG[k]]);
+        }
+
+        // SOF0: baseline, 8 bit, three components
+        writer.writeMarker(0xC0);
+        writer.writeShort(8 + 3 * 3);
+        writer.writeByte(8);
+        writer.writeShort(height);
+        writer.writeShort(width);
+        writer.writeByte(3);
+        // Y: 2x2 sampling, quantization table 0
+        writer.writeByte(1);
+        writer.writeByte(0x22);
+        writer.writeByte(0);
+        // Cb and Cr: 1x1 sampling, quantization table 1
+        writer.writeByte(2);
+        writer.writeByte(0x11);
+        writer.writeByte(1);
+        writer.writeByte(3);
+        writer.writeByte(0x11);
+        writer.writeByte(1);
+
+        // DHT
+        writer.writeMarker(0xC4);
+        writer.writeShort(2
+                + 17 + DC_LUMINANCE_VALUES.length
+                + 17 + AC_LUMINANCE_VALUES.length
+                + 17 + DC_CHROMINANCE_VALUES.length
+                + 17 + AC_CHROMINANCE_VALUES.length);
+        writeHuffmanTable(writer, 0x00, DC_LUMINANCE_BITS, DC_LUMINANCE_VALUES);
+        writeHuffmanTable(writer, 0x10, AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+        writeHuffmanTable(writer, 0x01, DC_CHROMINANCE_BITS, DC_CHROMINANCE_VALUES);
+        writeHuffmanTable(writer, 0x11, AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+        // SOS
+        writer.writeMarker(0xDA);
+        writer.writeShort(6 + 2 * 3);
+        writer.writeByte(3);
+        writer.writeByte(1);
+        writer.writeByte(0x00);
+        writer.writeByte(2);
+        writer.writeByte(0x11);
+        writer.writeByte(3);
+        writer.writeByte(0x11);
+        // Spectral selection and successive approximation for baseline
+        writer.writeByte(0);
+        writer.writeByte(63);
+        writer.writeByte(0);
+    }
+
+    private static void writeHuffmanTable(@NonNull final BitWriter writer, final int classAndId,
+            @NonNull final int[] bits, @NonNull final int[] values) throws IOException {
+        writer.writeByte(classAndId);
+        for (final int count : bits) {
+            writer.writeByte(count);
+        }
+        for (final int value : values) {
+            writer.writeByte(value);
+        }
+    }
+
+    /**
+     * Scales a quantization table like the IJG's {@code jpeg_set_quality()}.
+     */
+    @VisibleForTesting
+    static int[] scaleQuantizationTable(@NonNull final int[] table, final int quality) {
+        final int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        final int[] scaled = new int[64];
+        for (int i = 0; i < 64; i++) {
+            final int value = (table[i] * scale + 50) / 100;
+            scaled[i] = Math.max(1, Math.min(255, value));
+        }
+        return scaled;
+    }
+
+    @NonNull
+    private static float[] createDivisors(@NonNull final int[] quantization) {
+        final float[] divisors = new float[64];
+        for (int row = 0; row < 8; row++) {
+            for (int column = 0; column < 8; column++) {
+                final int i = row * 8 + column;
+                divisors[i] = (float) (1.0 / (quantization[i] * AAN_SCALE_FACTORS[row]
+                        * AAN_SCALE_FACTORS[column] * 8.0));
+            }
+        }
+        return divisors;
+    }
+
+    /**
+     * Huffman codes and code lengths indexed by symbol, derived from the code length counts and
+     * symbols as described in Annex C of the JPEG specification.
+     */
+    private static final class HuffmanTable {
+
+        final int[] codes = new int[256];
+        final int[] lengths = new int[256];
+
+        HuffmanTable(@NonNull final int[] bits, @NonNull final int[] values) {
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length - 1]; i++) {
+                    codes[values[k]] = code;
+                    lengths[values[k]] = length;
+                    code++;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+
+    /**
+     * Buffers the output and writes the entropy coded bits with 0xFF byte stuffing.
+     */
+    private static final class BitWriter {
+
+        private final OutputStream mOutputStream;
+        private final byte[] mBuffer = new byte[8192];
+        private int mBufferPosition;
+        private int mBits;
+        private int mBitCount;
+
+        BitWriter(@NonNull final OutputStream outputStream) {
+            mOutputStream = outputStream;
+        }
+
+        void writeBits(final int bits, final int count) throws IOException {
+            mBits = (mBits << count) | (bits & ((1 << count) - 1));
+            mBitCount += count;
+            while (mBitCount >= 8) {
+                final int b = (mBits >> (mBitCount - 8)) & 0xFF;
+                writeByte(b);
+                if (b == 0xFF) {
+                    writeByte(0);
+                }
+                mBitCount -= 8;
+            }
+            mBits &= (1 << mBitCount) - 1;
+        }
+
+        void flushBits() throws IOException {
+            if (mBitCount > 0) {
+                // Pad the last byte with ones
+                writeBits(0x7F, 8 - mBitCount);
+            }
+        }
+
+        void writeMarker(final int marker) throws IOException {
+            writeByte(0xFF);
+            writeByte(marker);
+        }
+
+        void writeShort(final int value) throws IOException {
+            writeByte((value >> 8) & 0xFF);
+            writeByte(value & 0xFF);
+        }
+
+        void writeByte(final int value) throws IOException {
+            if (mBufferPosition == mBuffer.length) {
+                mOutputStream.write(mBuffer, 0, mBufferPosition);
+                mBufferPosition = 0;
+            }
+            mBuffer[mBufferPosition++] = (byte) value;
+        }
+
+        void flush() throws IOException {
+            mOutputStream.write(mBuffer, 0, mBufferPosition);
+            mBufferPosition = 0;
+            mOutputStream.flush();
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package net.gini.android.vision.internal.camera.photo;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
@@ -12,6 +11,7 @@ import net.gini.android.vision.Document;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.formats.tiff.constants.TiffConstants;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.UUID;
 
+import jersey.repackaged.jsr166e.CompletableFuture;
+
 /**
  * @exclude
  */
@@ -31,6 +33,8 @@ public class Photo implements Parcelable {
     private int mRotationForDisplay = 0;
     private String mContentId = "";
     private int mRotationDelta = 0;
+    private int mJpegQuality = 0;
+    private CompletableFuture<Photo> mProcessed;
 
     public static Photo fromJpeg(@NonNull final byte[] jpeg, final int orientation) {
         return new Photo(jpeg, orientation);
@@ -40,13 +44,30 @@ public class Photo implements Parcelable {
         return new Photo(document);
     }
 
+    /**
+     * Creates a photo which only holds the jpeg as received from the camera. The preview and the
+     * EXIF have to be added by the {@link CapturePipeline}.
+     */
+    @NonNull
+    static Photo fromRawJpeg(@NonNull final byte[] jpeg, final int orientation,
+            @NonNull final CompletableFuture<Photo> processed) {
+        return new Photo(jpeg, orientation, processed);
+    }
+
     private Photo(@NonNull byte[] jpeg, int orientation) {
         mJpeg = jpeg;
         mRotationForDisplay = orientation;
         mBitmapPreview = createPreview();
         mContentId = generateUUID();
-        readRequiredTags();
-        updateExif();
+        normalizeExif();
+    }
+
+    private Photo(@NonNull final byte[] jpeg, final int orientation,
+            @NonNull final CompletableFuture<Photo> processed) {
+        mJpeg = jpeg;
+        mRotationForDisplay = orientation;
+        mContentId = generateUUID();
+        mProcessed = processed;
     }
 
     private Photo(@NonNull final Document document) {
@@ -65,15 +86,21 @@ public class Photo implements Parcelable {
             return;
         }
 
-        readRequiredTags();
+        final ExifReader exifReader;
+        try {
+            exifReader = ExifReader.forJpeg(mJpeg);
+        } catch (ExifReaderException e) {
+            // Without EXIF there are no camera tags to keep
+            mRequiredTags = new Exif.RequiredTags();
+            return;
+        }
+        mRequiredTags = exifReader.getRequiredTags();
 
         try {
-            ExifReader exifReader = ExifReader.forJpeg(mJpeg);
-            String userComment = exifReader.getUserComment();
-            mContentId = exifReader.getValueForKeyFromUserComment(Exif.USER_COMMENT_CONTENT_ID, userComment);
-            mRotationDelta = Integer.parseInt(
-                    exifReader.getValueForKeyFromUserComment(Exif.USER_COMMENT_ROTATION_DELTA,
-                            userComment));
+            final UserComment userComment = exifReader.getParsedUserComment();
+            mContentId = userComment.getContentId();
+            mRotationDelta = userComment.getRotationDelta();
+            mJpegQuality = userComment.getJpegQuality();
         } catch (ExifReaderException | NumberFormatException e) {
             // TODO log
         }
@@ -85,10 +112,29 @@ public class Photo implements Parcelable {
             return null;
         }
 
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inSampleSize = 2;
+        return decodePreview(mJpeg);
+    }
 
-        return BitmapFactory.decodeByteArray(mJpeg, 0, mJpeg.length, options);
+    @Nullable
+    static Bitmap decodePreview(@NonNull final byte[] jpeg) {
+        return PreviewDecoder.decode(jpeg, PreviewDecoder.getDefaultTargetSize(),
+                PreviewDecoder.DEFAULT_CONFIG, BitmapPool.getInstance());
+    }
+
+    /**
+     * <p>
+     *     Photos taken with the camera are processed in the background. The preview and the
+     *     EXIF are available only after the returned future completed.
+     * </p>
+     *
+     * @return a future which completes when the photo was processed
+     */
+    @NonNull
+    public synchronized CompletableFuture<Photo> whenProcessed() {
+        if (mProcessed == null) {
+            return CompletableFuture.completedFuture(this);
+        }
+        return mProcessed;
     }
 
     @Nullable
@@ -96,8 +142,22 @@ public class Photo implements Parcelable {
         return mBitmapPreview;
     }
 
-    synchronized void updateBitmapPreview() {
-        mBitmapPreview = createPreview();
+    synchronized void setBitmapPreview(@Nullable final Bitmap bitmapPreview) {
+        mBitmapPreview = bitmapPreview;
+    }
+
+    /**
+     * <p>
+     *     Returns the preview bitmap to the shared pool to be reused when decoding the next
+     *     preview.
+     * </p>
+     * <p>
+     *     <b>Note:</b> the preview must not be displayed anymore.
+     * </p>
+     */
+    public synchronized void releaseBitmapPreview() {
+        BitmapPool.getInstance().put(mBitmapPreview);
+        mBitmapPreview = null;
     }
 
     @Nullable
@@ -128,6 +188,15 @@ public class Photo implements Parcelable {
         return mRotationDelta;
     }
 
+    synchronized void setJpegQuality(final int quality) {
+        mJpegQuality = quality;
+    }
+
+    @VisibleForTesting
+    synchronized int getJpegQuality() {
+        return mJpegQuality;
+    }
+
     @VisibleForTesting
     @NonNull
     synchronized String getContentId() {
@@ -145,38 +214,56 @@ public class Photo implements Parcelable {
         }
     }
 
-    synchronized boolean updateExif() {
-        if (mJpeg == null) {
+    /**
+     * Reads the camera's EXIF tags and replaces the EXIF with the one required by the library.
+     * The jpeg is parsed without holding the photo's lock, so the getters don't block meanwhile.
+     */
+    boolean normalizeExif() {
+        final byte[] jpeg = getJpeg();
+        if (jpeg == null) {
             return false;
         }
         try {
-            boolean addMake = false;
-            boolean addModel = false;
-
-            Exif.Builder exifBuilder = Exif.builder(mJpeg);
-
-            if (mRequiredTags != null) {
-                exifBuilder.setRequiredTags(mRequiredTags);
-                addMake = mRequiredTags.make == null;
-                addModel = mRequiredTags.model == null;
+            final Exif.RequiredTags requiredTags = Exif.readRequiredTags(jpeg);
+            synchronized (this) {
+                if (mJpeg == jpeg) {
+                    mRequiredTags = requiredTags;
+                }
             }
+        } catch (IOException | ImageReadException e) {
+            // TODO log: mLogger.error("Could not read required exif tags", e);
+        }
+        return updateExif();
+    }
 
-            String userComment = Exif.userCommentBuilder()
-                    .setAddMake(addMake)
-                    .setAddModel(addModel)
-                    .setContentId(mContentId)
-                    .setRotationDelta(mRotationDelta)
-                    .build();
-
-            exifBuilder.setUserComment(userComment);
-            exifBuilder.setOrientationFromDegrees(mRotationForDisplay);
-
-            mJpeg = exifBuilder.build().writeToJpeg(mJpeg);
-        } catch (ImageReadException | ImageWriteException | IOException e) {
-            // TODO log: mLogger.error("Could not add required exif tags", e);
-            return false;
+    /**
+     * Replaces the jpeg's EXIF with one built from the current fields. The new jpeg is built from
+     * a snapshot of the fields without holding the photo's lock and is swapped in only if the
+     * fields didn't change in the meantime. Otherwise it is built again from the changed fields.
+     */
+    boolean updateExif() {
+        while (true) {
+            final ExifSnapshot snapshot;
+            synchronized (this) {
+                if (mJpeg == null) {
+                    return false;
+                }
+                snapshot = new ExifSnapshot(this);
+            }
+            final byte[] jpeg;
+            try {
+                jpeg = snapshot.buildJpeg();
+            } catch (ImageReadException | ImageWriteException | IOException e) {
+                // TODO log: mLogger.error("Could not add required exif tags", e);
+                return false;
+            }
+            synchronized (this) {
+                if (snapshot.isCurrent(this)) {
+                    mJpeg = jpeg;
+                    return true;
+                }
+            }
         }
-        return true;
     }
 
     public synchronized PhotoEdit edit() {
@@ -229,9 +316,10 @@ public class Photo implements Parcelable {
     }
 
     @Override
-    public void writeToParcel(Parcel dest, int flags) {
+    public synchronized void writeToParcel(Parcel dest, int flags) {
         ImageCache cache = ImageCache.getInstance();
 
+        // The cache stores the preview and the jpeg only once, however often the photo is parcelled
         ImageCache.Token token = cache.storeBitmap(mBitmapPreview);
         dest.writeParcelable(token, flags);
 
@@ -241,6 +329,7 @@ public class Photo implements Parcelable {
         dest.writeInt(mRotationForDisplay);
         dest.writeString(mContentId);
         dest.writeInt(mRotationDelta);
+        dest.writeInt(mJpegQuality);
     }
 
     public static final Parcelable.Creator<Photo> CREATOR = new Parcelable.Creator<Photo>() {
@@ -266,9 +355,15 @@ public class Photo implements Parcelable {
         mJpeg = cache.getJpeg(token);
         cache.removeJpeg(token);
 
+        if (mBitmapPreview == null) {
+            // The cache drops previews when it exceeds its memory budget
+            mBitmapPreview = createPreview();
+        }
+
         mRotationForDisplay = in.readInt();
         mContentId = in.readString();
         mRotationDelta = in.readInt();
+        mJpegQuality = in.readInt();
         readRequiredTags();
     }
 
@@ -281,6 +376,7 @@ public class Photo implements Parcelable {
 
         if (mRotationForDisplay != photo.mRotationForDisplay) return false;
         if (mRotationDelta != photo.mRotationDelta) return false;
+        if (mJpegQuality != photo.mJpegQuality) return false;
         if (mBitmapPreview != null ? !mBitmapPreview.equals(photo.mBitmapPreview)
                 : photo.mBitmapPreview != null) {
             return false;
@@ -301,6 +397,67 @@ public class Photo implements Parcelable {
         result = 31 * result + mRotationForDisplay;
         result = 31 * result + (mContentId != null ? mContentId.hashCode() : 0);
         result = 31 * result + mRotationDelta;
+        result = 31 * result + mJpegQuality;
         return result;
     }
+
+    /**
+     * The fields from which the EXIF is built, copied while holding the photo's lock.
+     */
+    private static class ExifSnapshot {
+
+        private final byte[] mJpeg;
+        private final Exif.RequiredTags mRequiredTags;
+        private final String mContentId;
+        private final int mRotationDelta;
+        private final int mJpegQuality;
+        private final int mRotationForDisplay;
+
+        ExifSnapshot(@NonNull final Photo photo) {
+            mJpeg = photo.mJpeg;
+            mRequiredTags = photo.mRequiredTags;
+            mContentId = photo.mContentId;
+            mRotationDelta = photo.mRotationDelta;
+            mJpegQuality = photo.mJpegQuality;
+            mRotationForDisplay = photo.mRotationForDisplay;
+        }
+
+        boolean isCurrent(@NonNull final Photo photo) {
+            return mJpeg == photo.mJpeg
+                    && mRequiredTags == photo.mRequiredTags
+                    && mContentId == photo.mContentId
+                    && mRotationDelta == photo.mRotationDelta
+                    && mJpegQuality == photo.mJpegQuality
+                    && mRotationForDisplay == photo.mRotationForDisplay;
+        }
+
+        @NonNull
+        byte[] buildJpeg() throws ImageReadException, ImageWriteException, IOException {
+            boolean addMake = false;
+            boolean addModel = false;
+
+            final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(mJpeg);
+            Exif.Builder exifBuilder = Exif.builder(
+                    splicer.getByteOrder(TiffConstants.DEFAULT_TIFF_BYTE_ORDER));
+
+            if (mRequiredTags != null) {
+                exifBuilder.setRequiredTags(mRequiredTags);
+                addMake = mRequiredTags.make == null;
+                addModel = mRequiredTags.model == null;
+            }
+
+            String userComment = Exif.userCommentBuilder()
+                    .setAddMake(addMake)
+                    .setAddModel(addModel)
+                    .setContentId(mContentId)
+                    .setRotationDelta(mRotationDelta)
+                    .setJpegQuality(mJpegQuality)
+                    .build();
+
+            exifBuilder.setUserComment(userComment);
+            exifBuilder.setOrientationFromDegrees(mRotationForDisplay);
+
+            return splicer.splice(exifBuilder.build().toTiff());
+        }
+    }
 }
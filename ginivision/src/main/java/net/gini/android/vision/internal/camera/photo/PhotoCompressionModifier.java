@@ -3,45 +3,220 @@ package net.gini.android.vision.internal.camera.photo;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 
 /**
  * @exclude
  */
 class PhotoCompressionModifier implements PhotoModifier {
 
+    private static final Logger LOG = LoggerFactory.getLogger(PhotoCompressionModifier.class);
+
+    private static final int BYTES_PER_DECODED_PIXEL = 4;
+
+    private static final JpegRecompressor FULL_BITMAP_RECOMPRESSOR = new JpegRecompressor() {
+        @Nullable
+        @Override
+        public byte[] recompress(@NonNull final byte[] jpeg, final int quality) {
+            return compressFullBitmap(jpeg, quality);
+        }
+    };
+
+    private static final JpegRecompressor TILED_RECOMPRESSOR = new JpegRecompressor() {
+        @Nullable
+        @Override
+        public byte[] recompress(@NonNull final byte[] jpeg, final int quality) {
+            return compressTiled(jpeg, quality);
+        }
+    };
+
+    private static final JpegRecompressor AUTO_RECOMPRESSOR = new JpegRecompressor() {
+        @Nullable
+        @Override
+        public byte[] recompress(@NonNull final byte[] jpeg, final int quality) {
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+            final boolean tiled = !fullBitmapFitsIntoMemory(Runtime.getRuntime(),
+                    options.outWidth, options.outHeight, jpeg.length);
+            LOG.debug("Compressing {}x{} jpeg {}", options.outWidth, options.outHeight,
+                    tiled ? "in strips" : "as a full bitmap");
+            return tiled ? compressTiled(jpeg, quality) : compressFullBitmap(jpeg, quality);
+        }
+    };
+
     private final Photo mPhoto;
     private final int mQuality;
+    private final JpegSizeBudget mSizeBudget;
+    private final PhotoEdit.CompressionMode mMode;
+    private final JpegRecompressor mRecompressor;
+
+    PhotoCompressionModifier(final int quality, @NonNull final PhotoEdit.CompressionMode mode,
+            @NonNull final Photo photo) {
+        this(quality, null, mode, getRecompressor(mode), photo);
+    }
+
+    /**
+     * Compresses with the highest quality up to {@code maxQuality} which fits into the size
+     * budget.
+     */
+    PhotoCompressionModifier(@NonNull final JpegSizeBudget sizeBudget, final int maxQuality,
+            @NonNull final PhotoEdit.CompressionMode mode, @NonNull final Photo photo) {
+        this(maxQuality, sizeBudget, mode, getRecompressor(mode), photo);
+    }
+
+    @VisibleForTesting
+    PhotoCompressionModifier(final int quality, @NonNull final PhotoEdit.CompressionMode mode,
+            @NonNull final JpegRecompressor recompressor, @NonNull final Photo photo) {
+        this(quality, null, mode, recompressor, photo);
+    }
 
-    PhotoCompressionModifier(final int quality, @NonNull final Photo photo) {
+    private PhotoCompressionModifier(final int quality, @Nullable final JpegSizeBudget sizeBudget,
+            @NonNull final PhotoEdit.CompressionMode mode,
+            @NonNull final JpegRecompressor recompressor, @NonNull final Photo photo) {
         mQuality = quality;
+        mSizeBudget = sizeBudget;
+        mMode = mode;
+        mRecompressor = recompressor;
         mPhoto = photo;
     }
 
+    @NonNull
+    private static JpegRecompressor getRecompressor(
+            @NonNull final PhotoEdit.CompressionMode mode) {
+        switch (mode) {
+            case FULL_BITMAP:
+                return FULL_BITMAP_RECOMPRESSOR;
+            case TILED:
+                return TILED_RECOMPRESSOR;
+            case AUTO:
+            default:
+                return AUTO_RECOMPRESSOR;
+        }
+    }
+
     @VisibleForTesting
     int getQuality() {
         return mQuality;
     }
 
+    @VisibleForTesting
+    @Nullable
+    JpegSizeBudget getSizeBudget() {
+        return mSizeBudget;
+    }
+
+    @VisibleForTesting
+    @NonNull
+    PhotoEdit.CompressionMode getMode() {
+        return mMode;
+    }
+
     @Override
     public void modify() {
         if (mPhoto.getJpeg() == null) {
             return;
         }
         synchronized (mPhoto) {
-            final Bitmap originalImage = BitmapFactory.decodeByteArray(mPhoto.getJpeg(), 0,
-                    mPhoto.getJpeg().length);
+            final int quality = selectQuality(mPhoto.getJpeg());
+            final byte[] jpeg = mRecompressor.recompress(mPhoto.getJpeg(), quality);
+            if (jpeg == null) {
+                LOG.error("Compression failed, the jpeg is left unchanged");
+                return;
+            }
+            // The recompressed jpeg has no EXIF, the PhotoEdit writes it after all modifiers
+            // were applied
+            mPhoto.setJpeg(jpeg);
+            mPhoto.setJpegQuality(quality);
+            // The preview is kept: compression doesn't change the image's size and the existing
+            // preview was decoded from the higher quality jpeg
+        }
+    }
+
+    /**
+     * Searches the quality for the size budget on a probe of the jpeg. Only the final jpeg is
+     * encoded at full resolution.
+     */
+    private int selectQuality(@NonNull final byte[] jpeg) {
+        if (mSizeBudget == null) {
+            return mQuality;
+        }
+        final int minQuality = Math.min(JpegQualitySearch.MIN_QUALITY, mQuality);
+        JpegSizeProbe probe = null;
+        try {
+            probe = new JpegSizeProbe(jpeg);
+            final long maxBytes = mSizeBudget.getMaxBytes(probe.getWidth(), probe.getHeight());
+            final int quality = JpegQualitySearch.findQuality(probe, maxBytes, minQuality,
+                    mQuality);
+            LOG.debug("Selected quality {} for a budget of {}", quality, mSizeBudget);
+            return quality;
+        } catch (final IOException | RuntimeException | OutOfMemoryError e) {
+            LOG.error("Could not select a quality for the size budget, using quality {}",
+                    mQuality, e);
+            return mQuality;
+        } finally {
+            if (probe != null) {
+                probe.recycle();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the decoded bitmap and the compressed output (estimated with the size of the
+     * original jpeg) fit into the heap which is not yet in use.
+     */
+    @VisibleForTesting
+    static boolean fullBitmapFitsIntoMemory(@NonNull final Runtime runtime, final int width,
+            final int height, final int jpegLength) {
+        if (width <= 0 || height <= 0) {
+            // Unknown size, the platform decoder will report the error
+            return true;
+        }
+        final long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+        final long availableMemory = runtime.maxMemory() - usedMemory;
+        final long neededMemory = (long) width * height * BYTES_PER_DECODED_PIXEL + jpegLength;
+        return neededMemory < availableMemory;
+    }
 
-            final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            originalImage.compress(Bitmap.CompressFormat.JPEG, mQuality, byteArrayOutputStream);
+    @Nullable
+    private static byte[] compressFullBitmap(@NonNull final byte[] jpeg, final int quality) {
+        final Bitmap originalImage = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        if (originalImage == null) {
+            return null;
+        }
 
-            final byte[] jpeg = byteArrayOutputStream.toByteArray();
-            mPhoto.setJpeg(jpeg);
-            mPhoto.updateBitmapPreview();
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        originalImage.compress(Bitmap.CompressFormat.JPEG, quality, byteArrayOutputStream);
+        originalImage.recycle();
+
+        return byteArrayOutputStream.toByteArray();
+    }
 
-            mPhoto.updateExif();
+    @Nullable
+    private static byte[] compressTiled(@NonNull final byte[] jpeg, final int quality) {
+        RegionDecoderStripSource stripSource = null;
+        try {
+            stripSource = new RegionDecoderStripSource(jpeg);
+            // Recompressing at a lower quality usually shrinks the jpeg, starting with the
+            // original size avoids growing the output buffer
+            final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(
+                    jpeg.length);
+            new JpegStripEncoder(quality).encode(stripSource, byteArrayOutputStream);
+            return byteArrayOutputStream.toByteArray();
+        } catch (final IOException e) {
+            LOG.error("Tiled compression failed", e);
+            return null;
+        } finally {
+            if (stripSource != null) {
+                stripSource.recycle();
+            }
         }
     }
 }
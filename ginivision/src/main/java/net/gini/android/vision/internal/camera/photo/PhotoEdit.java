@@ -1,12 +1,16 @@
 package net.gini.android.vision.internal.camera.photo;
 
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.VisibleForTesting;
 
+import net.gini.android.vision.internal.camera.api.UIExecutor;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
 
 /**
  * @exclude
@@ -37,8 +41,41 @@ public class PhotoEdit {
 
     @NonNull
     public PhotoEdit compressBy(int quality) {
+        return compressBy(quality, CompressionMode.FULL_BITMAP);
+    }
+
+    @NonNull
+    public PhotoEdit compressBy(int quality, @NonNull CompressionMode mode) {
         removeCompressionModifier();
-        final PhotoCompressionModifier compressionModifier = new PhotoCompressionModifier(quality, mPhoto);
+        final PhotoCompressionModifier compressionModifier = new PhotoCompressionModifier(quality,
+                mode, mPhoto);
+        getPhotoModifiers().add(compressionModifier);
+        return this;
+    }
+
+    /**
+     * Compresses with the highest quality up to {@code maxQuality} for which the jpeg's size
+     * doesn't exceed {@code maxBytes}.
+     */
+    @NonNull
+    public PhotoEdit compressToSize(long maxBytes, int maxQuality) {
+        return compressToBudget(JpegSizeBudget.ofBytes(maxBytes), maxQuality);
+    }
+
+    /**
+     * Compresses with the highest quality up to {@code maxQuality} for which the jpeg's size
+     * doesn't exceed {@code bitsPerPixel} times the number of pixels.
+     */
+    @NonNull
+    public PhotoEdit compressToBitsPerPixel(float bitsPerPixel, int maxQuality) {
+        return compressToBudget(JpegSizeBudget.ofBitsPerPixel(bitsPerPixel), maxQuality);
+    }
+
+    @NonNull
+    private PhotoEdit compressToBudget(@NonNull JpegSizeBudget sizeBudget, int maxQuality) {
+        removeCompressionModifier();
+        final PhotoCompressionModifier compressionModifier = new PhotoCompressionModifier(
+                sizeBudget, maxQuality, CompressionMode.FULL_BITMAP, mPhoto);
         getPhotoModifiers().add(compressionModifier);
         return this;
     }
@@ -54,69 +91,110 @@ public class PhotoEdit {
     }
 
     public void apply() {
-        applyChanges(mPhotoModifiers);
+        applyChanges(mPhoto, mPhotoModifiers);
         mPhotoModifiers = null;
     }
 
-    public void applyAsync(@NonNull final PhotoEditCallback callback) {
-        final EditAsync async = new EditAsync(mPhoto, mPhotoModifiers);
+    /**
+     * Applies the modifiers on the library's photo edit thread. Pending edits of the same photo
+     * are superseded, if this edit contains all their modifier types.
+     *
+     * @param priority edits with a higher priority run first
+     * @return a future which completes with the edited photo or is cancelled, if the edit was
+     * superseded
+     */
+    @NonNull
+    public CompletableFuture<Photo> applyAsync(@NonNull final Priority priority) {
+        final CompletableFuture<Photo> future = PhotoEditExecutor.getInstance().submit(mPhoto,
+                mPhotoModifiers, priority);
         mPhotoModifiers = null;
-        async.setCallback(callback);
-        async.execute((Void[]) null);
-    }
-
-    private static void applyChanges(@Nullable final List<PhotoModifier> modifiers) {
-        if (modifiers == null) {
-            return;
-        }
-        for (final PhotoModifier modifier : modifiers) {
-            modifier.modify();
-        }
+        return future;
     }
 
-    private static class EditAsync extends AsyncTask<Void, Void, Photo> {
-
-        private static final PhotoEditCallback NO_OP_CALLBACK = new PhotoEditCallback() {
-            @Override
-            public void onDone(@NonNull Photo photo) {
-            }
-
+    /**
+     * Same as {@link #applyAsync(Priority)}, but the callback is invoked on the UI thread.
+     * Cancelled edits don't invoke the callback.
+     */
+    @NonNull
+    public CompletableFuture<Photo> applyAsync(@NonNull final Priority priority,
+            @NonNull final PhotoEditCallback callback) {
+        final CompletableFuture<Photo> future = applyAsync(priority);
+        final UIExecutor uiExecutor = new UIExecutor();
+        future.handle(new CompletableFuture.BiFun<Photo, Throwable, Void>() {
             @Override
-            public void onFailed() {
+            public Void apply(final Photo photo, final Throwable throwable) {
+                if (throwable instanceof CancellationException) {
+                    return null;
+                }
+                uiExecutor.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (throwable != null || photo == null) {
+                            callback.onFailed();
+                        } else {
+                            callback.onDone(photo);
+                        }
+                    }
+                });
+                return null;
             }
-        };
-
-        private final Photo mPhoto;
-        private final List<PhotoModifier> mPhotoModifiers;
-        private PhotoEditCallback mCallback = NO_OP_CALLBACK;
+        });
+        return future;
+    }
 
-        EditAsync(@NonNull final Photo photo, @Nullable final List<PhotoModifier> photoModifiers) {
-            mPhoto = photo;
-            mPhotoModifiers = photoModifiers;
+    /**
+     * Applies the modifiers and writes the EXIF once at the end. Rotations only change the
+     * photo's fields and compression decodes and encodes the jpeg once, regardless of how the
+     * modifiers were chained.
+     */
+    @VisibleForTesting
+    static void applyChanges(@NonNull final Photo photo,
+            @Nullable final List<PhotoModifier> modifiers) {
+        if (modifiers == null || modifiers.isEmpty()) {
+            return;
         }
-
-        public void setCallback(@Nullable PhotoEditCallback callback) {
-            if (callback == null) {
-                mCallback = NO_OP_CALLBACK;
-            } else {
-                mCallback = callback;
+        synchronized (photo) {
+            for (final PhotoModifier modifier : modifiers) {
+                modifier.modify();
             }
+            photo.updateExif();
         }
+    }
 
-        @Override
-        protected Photo doInBackground(Void... params) {
-            applyChanges(mPhotoModifiers);
-            return mPhoto;
-        }
+    /**
+     * Priorities of asynchronous edits, from highest to lowest.
+     */
+    public enum Priority {
+        /**
+         * The user is waiting for the edit, e.g. after tapping the rotate button.
+         */
+        USER_VISIBLE,
+        /**
+         * The edit prepares the photo in the background, e.g. compression for the upload.
+         */
+        BACKGROUND
+    }
 
-        @Override
-        protected void onPostExecute(Photo result) {
-            if (result != null) {
-                mCallback.onDone(result);
-            } else {
-                mCallback.onFailed();
-            }
-        }
+    /**
+     * Controls how the jpeg is recompressed.
+     */
+    public enum CompressionMode {
+        /**
+         * Decodes the whole image into a bitmap and compresses it with the platform encoder. Used
+         * by default.
+         */
+        FULL_BITMAP,
+        /**
+         * Decodes and encodes the image in strips. Peak memory usage is independent of the image
+         * height.
+         */
+        TILED,
+        /**
+         * Uses {@link #FULL_BITMAP}, if the decoded image fits into the available heap, otherwise
+         * {@link #TILED}. Has to be requested explicitly: the speed of {@link #TILED} was measured
+         * only on desktop JVMs so far, so it is used only when the full bitmap can't be decoded.
+         */
+        AUTO
     }
 
     public interface PhotoEditCallback {
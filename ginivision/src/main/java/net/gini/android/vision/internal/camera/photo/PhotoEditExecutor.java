@@ -0,0 +1,163 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
+/**
+ * <p>
+ *     Runs photo edits on a single background thread owned by the library.
+ * </p>
+ * <p>
+ *     Pending edits are ordered by their {@link PhotoEdit.Priority} and then by submission order.
+ *     An edit supersedes the pending edits of the same photo if it contains all their modifier
+ *     types: modifiers set absolute values (e.g. rotate to 90 degrees), so only the latest one
+ *     matters. Superseded and cancelled edits are not run and their futures are cancelled.
+ * </p>
+ *
+ * @exclude
+ */
+final class PhotoEditExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PhotoEditExecutor.class);
+
+    private static PhotoEditExecutor sInstance;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicLong mSequence = new AtomicLong();
+    private final List<EditTask> mPendingTasks = new ArrayList<>();
+
+    @NonNull
+    static synchronized PhotoEditExecutor getInstance() {
+        if (sInstance == null) {
+            sInstance = new PhotoEditExecutor();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PhotoEditExecutor() {
+        mExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "PhotoEdit");
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Schedules the modifiers to be applied to the photo.
+     *
+     * @return a future which completes with the photo after the modifiers were applied or is
+     * cancelled if the edit was superseded
+     */
+    @NonNull
+    CompletableFuture<Photo> submit(@NonNull final Photo photo,
+            @Nullable final List<PhotoModifier> modifiers,
+            @NonNull final PhotoEdit.Priority priority) {
+        final EditTask task = new EditTask(photo, modifiers, priority,
+                mSequence.getAndIncrement());
+        synchronized (this) {
+            supersedePendingTasks(task);
+            mPendingTasks.add(task);
+        }
+        mExecutor.execute(task);
+        return task.mFuture;
+    }
+
+    private void supersedePendingTasks(@NonNull final EditTask newTask) {
+        final Iterator<EditTask> iterator = mPendingTasks.iterator();
+        while (iterator.hasNext()) {
+            final EditTask pendingTask = iterator.next();
+            if (newTask.supersedes(pendingTask)) {
+                LOG.debug("Edit {} superseded by edit {}", pendingTask.mSequence,
+                        newTask.mSequence);
+                iterator.remove();
+                mExecutor.remove(pendingTask);
+                pendingTask.mFuture.cancel(false);
+                // The superseding edit shouldn't run later than the superseded one would have
+                if (pendingTask.mPriority.compareTo(newTask.mPriority) < 0) {
+                    newTask.mPriority = pendingTask.mPriority;
+                }
+            }
+        }
+    }
+
+    private synchronized boolean startTask(@NonNull final EditTask task) {
+        mPendingTasks.remove(task);
+        return !task.mFuture.isDone();
+    }
+
+    private final class EditTask implements Runnable, Comparable<EditTask> {
+
+        private final Photo mPhoto;
+        private final List<PhotoModifier> mModifiers;
+        private final Set<Class<?>> mModifierTypes = new HashSet<>();
+        private PhotoEdit.Priority mPriority;
+        private final long mSequence;
+        private final CompletableFuture<Photo> mFuture = new CompletableFuture<>();
+
+        EditTask(@NonNull final Photo photo, @Nullable final List<PhotoModifier> modifiers,
+                @NonNull final PhotoEdit.Priority priority, final long sequence) {
+            mPhoto = photo;
+            mModifiers = modifiers;
+            mPriority = priority;
+            mSequence = sequence;
+            if (modifiers != null) {
+                for (final PhotoModifier modifier : modifiers) {
+                    mModifierTypes.add(modifier.getClass());
+                }
+            }
+        }
+
+        boolean supersedes(@NonNull final EditTask other) {
+            return other.mPhoto == mPhoto
+                    && !other.mModifierTypes.isEmpty()
+                    && mModifierTypes.containsAll(other.mModifierTypes);
+        }
+
+        @Override
+        public void run() {
+            if (!startTask(this)) {
+                // Cancelled by the caller
+                return;
+            }
+            try {
+                PhotoEdit.applyChanges(mPhoto, mModifiers);
+                mFuture.complete(mPhoto);
+            } catch (final RuntimeException | OutOfMemoryError e) {
+                LOG.error("Photo edit failed", e);
+                mFuture.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull final EditTask other) {
+            final int priorityComparison = mPriority.compareTo(other.mPriority);
+            if (priorityComparison != 0) {
+                return priorityComparison;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
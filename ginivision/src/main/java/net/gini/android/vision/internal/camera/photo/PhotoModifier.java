@@ -1,6 +1,11 @@
 package net.gini.android.vision.internal.camera.photo;
 
 /**
+ * <p>
+ *     Modifies a photo's fields or jpeg. Modifiers don't update the jpeg's EXIF, the {@link
+ *     PhotoEdit} does it once after all modifiers were applied.
+ * </p>
+ *
  * @exclude
  */
 interface PhotoModifier {
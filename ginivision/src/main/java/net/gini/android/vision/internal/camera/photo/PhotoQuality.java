@@ -0,0 +1,52 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ *     The image quality measures of a photo, computed by the {@link PhotoQualityAnalyzer}.
+ * </p>
+ *
+ * @exclude
+ */
+public final class PhotoQuality {
+
+    private final float mLaplacianVariance;
+    private final float mClippedHighlights;
+    private final float mMeanLuminance;
+
+    PhotoQuality(final float laplacianVariance, final float clippedHighlights,
+            final float meanLuminance) {
+        mLaplacianVariance = laplacianVariance;
+        mClippedHighlights = clippedHighlights;
+        mMeanLuminance = meanLuminance;
+    }
+
+    /**
+     * @return the variance of the luminance's Laplacian, low values mean a blurry photo
+     */
+    public float getLaplacianVariance() {
+        return mLaplacianVariance;
+    }
+
+    /**
+     * @return the share of pixels with clipped highlights, from 0 to 1
+     */
+    public float getClippedHighlights() {
+        return mClippedHighlights;
+    }
+
+    /**
+     * @return the mean luminance, from 0 to 255
+     */
+    public float getMeanLuminance() {
+        return mMeanLuminance;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "PhotoQuality{laplacianVariance=%.1f, clippedHighlights=%.3f, meanLuminance=%.1f}",
+                mLaplacianVariance, mClippedHighlights, mMeanLuminance);
+    }
+}
@@ -0,0 +1,196 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
+/**
+ * <p>
+ *     Measures the image quality of a photo's preview to detect blurry, overexposed and dark
+ *     photos before they are uploaded.
+ * </p>
+ * <p>
+ *     Every n-th pixel of every n-th row is sampled, so that the longer side has at most {@link
+ *     #MAX_ANALYSIS_SIZE} samples. Only one row of the preview is read at a time. On the sampled
+ *     luminance the analyzer computes:
+ *     <ul>
+ *         <li>the variance of the Laplacian (4 * center - the 4 neighbours): text and edges have
+ *         strong Laplacians, which blur flattens</li>
+ *         <li>the share of clipped highlights (luminance of at least {@link #CLIPPED_LUMINANCE}),
+ *         caused by glare or overexposure</li>
+ *         <li>the mean luminance</li>
+ *     </ul>
+ * </p>
+ *
+ * @exclude
+ */
+public final class PhotoQualityAnalyzer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PhotoQualityAnalyzer.class);
+
+    /**
+     * Large enough to keep the strokes of the text resolved on preview sized images.
+     */
+    @VisibleForTesting
+    static final int MAX_ANALYSIS_SIZE = 640;
+    @VisibleForTesting
+    static final int CLIPPED_LUMINANCE = 250;
+
+    private static final Executor EXECUTOR = createExecutor();
+
+    /**
+     * Reads one row of ARGB pixels.
+     */
+    @VisibleForTesting
+    interface RowReader {
+
+        void readRow(int y, @NonNull int[] pixels);
+    }
+
+    private static Executor createExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "PhotoQuality");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Analyzes the photo's preview on a background thread.
+     *
+     * @return a future which completes with the quality or with {@code null}, if the photo has no
+     * preview
+     */
+    @NonNull
+    public static CompletableFuture<PhotoQuality> analyzeAsync(@NonNull final Photo photo) {
+        final CompletableFuture<PhotoQuality> future = new CompletableFuture<>();
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    final Bitmap preview = photo.getBitmapPreview();
+                    final PhotoQuality quality = preview != null ? analyze(preview) : null;
+                    LOG.debug("Photo quality: {}", quality);
+                    future.complete(quality);
+                } catch (final RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    @NonNull
+    static PhotoQuality analyze(@NonNull final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        return analyze(width, bitmap.getHeight(), new RowReader() {
+            @Override
+            public void readRow(final int y, @NonNull final int[] pixels) {
+                bitmap.getPixels(pixels, 0, width, 0, y, width, 1);
+            }
+        });
+    }
+
+    /**
+     * @param pixels ARGB pixels with the width as stride
+     */
+    @NonNull
+    @VisibleForTesting
+    static PhotoQuality analyze(@NonNull final int[] pixels, final int width,
+            final int height) {
+        return analyze(width, height, new RowReader() {
+            @Override
+            public void readRow(final int y, @NonNull final int[] row) {
+                System.arraycopy(pixels, y * width, row, 0, width);
+            }
+        });
+    }
+
+    @NonNull
+    @VisibleForTesting
+    static PhotoQuality analyze(final int width, final int height,
+            @NonNull final RowReader rowReader) {
+        if (width <= 0 || height <= 0) {
+            return new PhotoQuality(0, 0, 0);
+        }
+        final int step = (Math.max(width, height) + MAX_ANALYSIS_SIZE - 1) / MAX_ANALYSIS_SIZE;
+        final int sampledWidth = (width + step - 1) / step;
+        final int sampledHeight = (height + step - 1) / step;
+        final int[] luminance = sampleLuminance(width, sampledWidth, sampledHeight, step,
+                rowReader);
+
+        long luminanceSum = 0;
+        int clipped = 0;
+        for (final int value : luminance) {
+            luminanceSum += value;
+            if (value >= CLIPPED_LUMINANCE) {
+                clipped++;
+            }
+        }
+        final int samples = luminance.length;
+        return new PhotoQuality(laplacianVariance(luminance, sampledWidth, sampledHeight),
+                (float) clipped / samples, (float) luminanceSum / samples);
+    }
+
+    @NonNull
+    private static int[] sampleLuminance(final int width, final int sampledWidth,
+            final int sampledHeight, final int step, @NonNull final RowReader rowReader) {
+        final int[] row = new int[width];
+        final int[] luminance = new int[sampledWidth * sampledHeight];
+        for (int sy = 0; sy < sampledHeight; sy++) {
+            rowReader.readRow(sy * step, row);
+            final int offset = sy * sampledWidth;
+            for (int sx = 0; sx < sampledWidth; sx++) {
+                final int pixel = row[sx * step];
+                // Rec. 601 luma in fixed point
+                luminance[offset + sx] = (77 * ((pixel >> 16) & 0xFF)
+                        + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+            }
+        }
+        return luminance;
+    }
+
+    private static float laplacianVariance(@NonNull final int[] luminance, final int width,
+            final int height) {
+        if (width < 3 || height < 3) {
+            return 0;
+        }
+        long sum = 0;
+        long sumOfSquares = 0;
+        for (int y = 1; y < height - 1; y++) {
+            int i = y * width + 1;
+            for (int x = 1; x < width - 1; x++, i++) {
+                final int laplacian = 4 * luminance[i] - luminance[i - 1] - luminance[i + 1]
+                        - luminance[i - width] - luminance[i + width];
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+            }
+        }
+        final long count = (long) (width - 2) * (height - 2);
+        final double mean = (double) sum / count;
+        return (float) ((double) sumOfSquares / count - mean * mean);
+    }
+
+    private PhotoQualityAnalyzer() {
+    }
+}
@@ -23,8 +23,6 @@ class PhotoRotationModifier implements PhotoModifier {
         synchronized (mPhoto) {
             mPhoto.updateRotationDeltaBy(mRotationDegrees - mPhoto.getRotationForDisplay());
             mPhoto.setRotationForDisplay(mRotationDegrees);
-
-            mPhoto.updateExif();
         }
     }
 }
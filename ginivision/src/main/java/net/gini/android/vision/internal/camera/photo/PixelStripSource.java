@@ -0,0 +1,36 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ *     Provides the pixels of an image in horizontal strips. Used by the {@link JpegStripEncoder}
+ *     to encode images without holding all pixels in memory.
+ * </p>
+ *
+ * @exclude
+ */
+interface PixelStripSource {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @return the preferred number of rows per strip
+     */
+    int getStripHeight();
+
+    /**
+     * Reads the rows {@code [top, top + rows)} as ARGB pixels into the array using the image
+     * width as stride.
+     *
+     * @param top    first row of the strip
+     * @param rows   number of rows in the strip
+     * @param pixels destination, at least {@code width * rows} large
+     * @throws IOException if the pixels could not be read
+     */
+    void readStrip(int top, int rows, @NonNull int[] pixels) throws IOException;
+}
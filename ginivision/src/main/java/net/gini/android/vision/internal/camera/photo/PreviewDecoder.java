@@ -0,0 +1,109 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.DisplayMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *     Decodes downsampled previews of JPEGs.
+ * </p>
+ * <p>
+ *     The sample size is calculated from the JPEG's bounds so that the preview is not smaller
+ *     than the target size. Decoding reuses bitmaps from the {@link BitmapPool}, if possible.
+ * </p>
+ *
+ * @exclude
+ */
+final class PreviewDecoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PreviewDecoder.class);
+
+    /**
+     * JPEGs have no alpha channel and the previews are only displayed, so 16 bits per pixel are
+     * sufficient.
+     */
+    static final Bitmap.Config DEFAULT_CONFIG = Bitmap.Config.RGB_565;
+
+    /**
+     * The target size for previews shown in full screen. The preview image views are never larger
+     * than the display.
+     */
+    @NonNull
+    static Size getDefaultTargetSize() {
+        final DisplayMetrics displayMetrics = Resources.getSystem().getDisplayMetrics();
+        return new Size(displayMetrics.widthPixels, displayMetrics.heightPixels);
+    }
+
+    @Nullable
+    static Bitmap decode(@NonNull final byte[] jpeg, @NonNull final Size targetSize,
+            @NonNull final Bitmap.Config config, @NonNull final BitmapPool bitmapPool) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            LOG.error("Cannot decode preview: invalid jpeg bounds");
+            return null;
+        }
+
+        final int sampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                targetSize.width, targetSize.height);
+        final int sampledWidth = divideRoundingUp(options.outWidth, sampleSize);
+        final int sampledHeight = divideRoundingUp(options.outHeight, sampleSize);
+        LOG.debug("Decoding preview {}x{} with sample size {} for target {}x{}",
+                sampledWidth, sampledHeight, sampleSize, targetSize.width, targetSize.height);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        options.inMutable = BitmapPool.isSupported();
+        options.inBitmap = bitmapPool.get(sampledWidth, sampledHeight, config);
+        try {
+            return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap was rejected by the decoder
+            LOG.warn("Could not reuse pooled bitmap", e);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        }
+    }
+
+    /**
+     * Calculates the largest power of two sample size which keeps the decoded image at least as
+     * large as the target size.
+     * <p>
+     * Previews are rotated for display, therefore the longer and shorter sides are compared
+     * independently of the orientation.
+     */
+    @VisibleForTesting
+    static int calculateInSampleSize(final int width, final int height, final int targetWidth,
+            final int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+        final int longerSide = Math.max(width, height);
+        final int shorterSide = Math.min(width, height);
+        final int targetLongerSide = Math.max(targetWidth, targetHeight);
+        final int targetShorterSide = Math.min(targetWidth, targetHeight);
+        while (longerSide / (sampleSize * 2) >= targetLongerSide
+                && shorterSide / (sampleSize * 2) >= targetShorterSide) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int divideRoundingUp(final int value, final int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private PreviewDecoder() {
+    }
+}
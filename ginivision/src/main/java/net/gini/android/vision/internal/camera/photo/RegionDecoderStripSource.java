@@ -0,0 +1,85 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ *     Decodes a JPEG strip by strip using a {@link BitmapRegionDecoder}. Only one strip is decoded
+ *     into memory at a time.
+ * </p>
+ *
+ * @exclude
+ */
+class RegionDecoderStripSource implements PixelStripSource {
+
+    static final int STRIP_HEIGHT = 64;
+
+    private final BitmapRegionDecoder mRegionDecoder;
+    private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+    private final Rect mRegion = new Rect();
+    private Bitmap mStripBitmap;
+
+    RegionDecoderStripSource(@NonNull final byte[] jpeg) throws IOException {
+        mRegionDecoder = BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length, true);
+        mOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    }
+
+    @Override
+    public int getWidth() {
+        return mRegionDecoder.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mRegionDecoder.getHeight();
+    }
+
+    @Override
+    public int getStripHeight() {
+        return STRIP_HEIGHT;
+    }
+
+    @Override
+    public void readStrip(final int top, final int rows, @NonNull final int[] pixels)
+            throws IOException {
+        final int width = getWidth();
+        mRegion.set(0, top, width, top + rows);
+        // Reusing the strip bitmap is supported by the region decoder since Jelly Bean. The last
+        // strip may be shorter, the bitmap is reused only for strips of equal size.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                && mStripBitmap != null
+                && mStripBitmap.getWidth() == width
+                && mStripBitmap.getHeight() == rows) {
+            mOptions.inBitmap = mStripBitmap;
+        } else {
+            mOptions.inBitmap = null;
+        }
+        final Bitmap strip = mRegionDecoder.decodeRegion(mRegion, mOptions);
+        if (strip == null) {
+            throw new IOException("Could not decode rows " + top + " to " + (top + rows));
+        }
+        strip.getPixels(pixels, 0, width, 0, 0, width, rows);
+        if (strip != mStripBitmap && mStripBitmap != null) {
+            mStripBitmap.recycle();
+        }
+        mStripBitmap = strip;
+    }
+
+    /**
+     * Releases the native decoder and the strip bitmap.
+     */
+    void recycle() {
+        mRegionDecoder.recycle();
+        if (mStripBitmap != null) {
+            mStripBitmap.recycle();
+            mStripBitmap = null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ *     The key-value pairs of the User Comment written by the {@link Exif.UserCommentBuilder}.
+ * </p>
+ * <p>
+ *     The comma separated pairs are parsed once. Pairs without a value are ignored and the first
+ *     value is kept if a key appears more than once.
+ * </p>
+ *
+ * @exclude
+ */
+public final class UserComment {
+
+    private final Map<String, String> mValues;
+
+    private UserComment(@NonNull final Map<String, String> values) {
+        mValues = values;
+    }
+
+    /**
+     * @param jpeg a jpeg
+     * @return the jpeg's parsed User Comment or {@code null}, if it has none
+     */
+    @Nullable
+    public static UserComment readFromJpeg(@NonNull final byte[] jpeg) {
+        try {
+            return ExifReader.forJpeg(jpeg).getParsedUserComment();
+        } catch (final ExifReaderException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    static UserComment parse(@NonNull final String userComment) {
+        final Map<String, String> values = new HashMap<>();
+        int pairStart = 0;
+        while (pairStart < userComment.length()) {
+            int pairEnd = userComment.indexOf(',', pairStart);
+            if (pairEnd == -1) {
+                pairEnd = userComment.length();
+            }
+            addKeyValuePair(userComment, pairStart, pairEnd, values);
+            pairStart = pairEnd + 1;
+        }
+        return new UserComment(Collections.unmodifiableMap(values));
+    }
+
+    /**
+     * Adds the pair if it has a key and a value. The value ends at the next {@code =}, if there
+     * is one.
+     */
+    private static void addKeyValuePair(@NonNull final String userComment, final int start,
+            final int end, @NonNull final Map<String, String> values) {
+        final int keyEnd = userComment.indexOf('=', start);
+        if (keyEnd == -1 || keyEnd >= end) {
+            return;
+        }
+        // Skip empty values
+        int valueStart = keyEnd + 1;
+        while (valueStart < end && userComment.charAt(valueStart) == '=') {
+            valueStart++;
+        }
+        if (valueStart == end) {
+            return;
+        }
+        int valueEnd = userComment.indexOf('=', keyEnd + 1);
+        if (valueEnd == -1 || valueEnd > end) {
+            valueEnd = end;
+        }
+        final String key = userComment.substring(start, keyEnd);
+        if (!values.containsKey(key)) {
+            values.put(key, userComment.substring(keyEnd + 1, valueEnd));
+        }
+    }
+
+    @Nullable
+    String getValue(@NonNull final String key) {
+        return mValues.get(key);
+    }
+
+    @Nullable
+    public String getContentId() {
+        return getValue(Exif.USER_COMMENT_CONTENT_ID);
+    }
+
+    /**
+     * @return the rotation delta or 0, if it was missing
+     * @throws NumberFormatException if the rotation delta is not a number
+     */
+    public int getRotationDelta() {
+        final String rotationDelta = getValue(Exif.USER_COMMENT_ROTATION_DELTA);
+        if (rotationDelta == null) {
+            return 0;
+        }
+        return Integer.parseInt(rotationDelta);
+    }
+
+    /**
+     * @return the jpeg quality or 0, if it was missing
+     * @throws NumberFormatException if the jpeg quality is not a number
+     */
+    int getJpegQuality() {
+        final String jpegQuality = getValue(Exif.USER_COMMENT_JPEG_QUALITY);
+        if (jpegQuality == null) {
+            return 0;
+        }
+        return Integer.parseInt(jpegQuality);
+    }
+}
@@ -0,0 +1,92 @@
+package net.gini.android.vision.internal.camera.view;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.support.annotation.Nullable;
+import android.util.AttributeSet;
+import android.widget.ImageView;
+
+import net.gini.android.vision.R;
+import net.gini.android.vision.internal.camera.detection.Quadrilateral;
+
+/**
+ * <p>
+ *     Shows the document corner guides and replaces them with the outline of the document while a
+ *     document is tracked in the camera preview.
+ * </p>
+ * <p>
+ *     The view must have the same bounds as the camera preview. The outline ignores the padding
+ *     which is used for the corner guides image.
+ * </p>
+ *
+ * @exclude
+ */
+public class DocumentCornersView extends ImageView {
+
+    private final Quadrilateral mDocument = new Quadrilateral();
+    private final Path mOutline = new Path();
+    private final Paint mOutlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private boolean mTracking;
+
+    public DocumentCornersView(final Context context) {
+        super(context);
+        init(context);
+    }
+
+    public DocumentCornersView(final Context context, final AttributeSet attrs) {
+        super(context, attrs);
+        init(context);
+    }
+
+    public DocumentCornersView(final Context context, final AttributeSet attrs,
+            final int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context);
+    }
+
+    private void init(final Context context) {
+        mOutlinePaint.setStyle(Paint.Style.STROKE);
+        mOutlinePaint.setStrokeJoin(Paint.Join.ROUND);
+        final Resources resources = context.getResources();
+        //noinspection deprecation, Resources#getColor(int, Theme) requires API level 23
+        mOutlinePaint.setColor(resources.getColor(R.color.gv_camera_document_outline));
+        mOutlinePaint.setStrokeWidth(
+                resources.getDimension(R.dimen.gv_camera_document_outline_width));
+    }
+
+    /**
+     * @param document the document's corners relative to the camera preview or {@code null} to
+     *                 show the corner guides
+     */
+    public void setDocument(@Nullable final Quadrilateral document) {
+        mTracking = document != null;
+        if (document != null) {
+            mDocument.set(document);
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        if (!mTracking) {
+            super.onDraw(canvas);
+            return;
+        }
+        final int width = getWidth();
+        final int height = getHeight();
+        mOutline.rewind();
+        mOutline.moveTo(mDocument.getX(Quadrilateral.TOP_LEFT) * width,
+                mDocument.getY(Quadrilateral.TOP_LEFT) * height);
+        mOutline.lineTo(mDocument.getX(Quadrilateral.TOP_RIGHT) * width,
+                mDocument.getY(Quadrilateral.TOP_RIGHT) * height);
+        mOutline.lineTo(mDocument.getX(Quadrilateral.BOTTOM_RIGHT) * width,
+                mDocument.getY(Quadrilateral.BOTTOM_RIGHT) * height);
+        mOutline.lineTo(mDocument.getX(Quadrilateral.BOTTOM_LEFT) * width,
+                mDocument.getY(Quadrilateral.BOTTOM_LEFT) * height);
+        mOutline.close();
+        canvas.drawPath(mOutline, mOutlinePaint);
+    }
+}
@@ -0,0 +1,177 @@
+package net.gini.android.vision.internal.metrics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+
+import net.gini.android.vision.CaptureLatency.Phase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ *     Records the timestamps of the phases of taking a picture and showing it on the Review
+ *     Screen.
+ * </p>
+ * <p>
+ *     The phases run on different threads and in different components, which look up the trace of
+ *     the picture being taken with {@link #current()}. Only one picture is taken at a time.
+ * </p>
+ * <p>
+ *     While no listener is set, {@link #start()} returns a trace which records nothing and
+ *     allocates nothing.
+ * </p>
+ *
+ * @exclude
+ */
+public final class CaptureTrace {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaptureTrace.class);
+
+    private static final long NOT_RECORDED = -1;
+
+    private static final CaptureTrace NO_OP = new CaptureTrace(false);
+
+    private static volatile Listener sListener;
+    private static volatile CaptureTrace sCurrent = NO_OP;
+
+    /**
+     * @exclude
+     */
+    public interface Listener {
+
+        /**
+         * @param startNanos      the start of the trace
+         * @param endNanos        the end of the trace
+         * @param phaseStartNanos the start of each phase by its ordinal or -1
+         * @param phaseEndNanos   the end of each phase by its ordinal or -1
+         */
+        @UiThread
+        void onTraceFinished(long startNanos, long endNanos, @NonNull long[] phaseStartNanos,
+                @NonNull long[] phaseEndNanos);
+    }
+
+    private final boolean mRecording;
+    private final long mStartNanos;
+    private final AtomicLongArray mPhaseStartNanos;
+    private final AtomicLongArray mPhaseEndNanos;
+
+    private CaptureTrace(final boolean recording) {
+        mRecording = recording;
+        if (recording) {
+            mStartNanos = System.nanoTime();
+            final int phaseCount = Phase.values().length;
+            mPhaseStartNanos = new AtomicLongArray(phaseCount);
+            mPhaseEndNanos = new AtomicLongArray(phaseCount);
+            for (int i = 0; i < phaseCount; i++) {
+                mPhaseStartNanos.set(i, NOT_RECORDED);
+                mPhaseEndNanos.set(i, NOT_RECORDED);
+            }
+        } else {
+            mStartNanos = NOT_RECORDED;
+            mPhaseStartNanos = null;
+            mPhaseEndNanos = null;
+        }
+    }
+
+    public static void setListener(@Nullable final Listener listener) {
+        sListener = listener;
+        if (listener == null) {
+            sCurrent = NO_OP;
+        }
+    }
+
+    /**
+     * Starts the trace of a new picture. The previous trace is discarded.
+     *
+     * @return the new trace, which records nothing if no listener is set
+     */
+    @NonNull
+    public static CaptureTrace start() {
+        final CaptureTrace trace = sListener != null ? new CaptureTrace(true) : NO_OP;
+        synchronized (CaptureTrace.class) {
+            sCurrent = trace;
+        }
+        return trace;
+    }
+
+    /**
+     * @return the trace of the picture being taken or a trace which records nothing
+     */
+    @NonNull
+    public static CaptureTrace current() {
+        return sCurrent;
+    }
+
+    public boolean isRecording() {
+        return mRecording;
+    }
+
+    /**
+     * Records the start of the phase. Only the first start is recorded, for example a document
+     * parceled again doesn't change the trace.
+     */
+    public void beginPhase(@NonNull final Phase phase) {
+        if (!mRecording) {
+            return;
+        }
+        mPhaseStartNanos.compareAndSet(phase.ordinal(), NOT_RECORDED, System.nanoTime());
+    }
+
+    /**
+     * Records the end of the phase, if it was started and not finished yet.
+     */
+    public void endPhase(@NonNull final Phase phase) {
+        if (!mRecording || mPhaseStartNanos.get(phase.ordinal()) == NOT_RECORDED) {
+            return;
+        }
+        mPhaseEndNanos.compareAndSet(phase.ordinal(), NOT_RECORDED, System.nanoTime());
+    }
+
+    /**
+     * Ends the trace and notifies the listener, if this is still the current trace.
+     */
+    @UiThread
+    public void finish() {
+        if (!mRecording || !clearCurrent()) {
+            return;
+        }
+        final long endNanos = System.nanoTime();
+        final Listener listener = sListener;
+        if (listener != null) {
+            listener.onTraceFinished(mStartNanos, endNanos, toArray(mPhaseStartNanos),
+                    toArray(mPhaseEndNanos));
+        }
+    }
+
+    /**
+     * Ends the trace without notifying the listener, for example if taking the picture failed.
+     */
+    public void discard() {
+        if (mRecording && clearCurrent()) {
+            LOG.debug("Capture trace discarded");
+        }
+    }
+
+    private boolean clearCurrent() {
+        synchronized (CaptureTrace.class) {
+            if (sCurrent != this) {
+                return false;
+            }
+            sCurrent = NO_OP;
+            return true;
+        }
+    }
+
+    @NonNull
+    private static long[] toArray(@NonNull final AtomicLongArray atomicArray) {
+        final long[] array = new long[atomicArray.length()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = atomicArray.get(i);
+        }
+        return array;
+    }
+}
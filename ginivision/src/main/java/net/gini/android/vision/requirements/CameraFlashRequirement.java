@@ -3,7 +3,7 @@ package net.gini.android.vision.requirements;
 import android.hardware.Camera;
 import android.support.annotation.NonNull;
 
-import java.util.List;
+import net.gini.android.vision.internal.camera.api.CameraCapabilities;
 
 class CameraFlashRequirement implements Requirement {
 
@@ -26,10 +26,9 @@ class CameraFlashRequirement implements Requirement {
         String details = "";
 
         try {
-            Camera.Parameters parameters = mCameraHolder.getCameraParameters();
-            if (parameters != null) {
-                List<String> supportedFlashModes = parameters.getSupportedFlashModes();
-                if (supportedFlashModes == null || !supportedFlashModes.contains(Camera.Parameters.FLASH_MODE_ON)) {
+            CameraCapabilities capabilities = mCameraHolder.getCameraCapabilities();
+            if (capabilities != null) {
+                if (!capabilities.isFlashModeSupported(Camera.Parameters.FLASH_MODE_ON)) {
                     result = false;
                     details = "Camera does not support flash";
                 }
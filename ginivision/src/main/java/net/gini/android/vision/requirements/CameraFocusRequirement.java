@@ -3,7 +3,7 @@ package net.gini.android.vision.requirements;
 import android.hardware.Camera;
 import android.support.annotation.NonNull;
 
-import java.util.List;
+import net.gini.android.vision.internal.camera.api.CameraCapabilities;
 
 class CameraFocusRequirement implements Requirement {
 
@@ -26,10 +26,9 @@ class CameraFocusRequirement implements Requirement {
         String details = "";
 
         try {
-            Camera.Parameters parameters = mCameraHolder.getCameraParameters();
-            if (parameters != null) {
-                List<String> supportedFocusModes = parameters.getSupportedFocusModes();
-                if (supportedFocusModes == null || !supportedFocusModes.contains(Camera.Parameters.FOCUS_MODE_AUTO)) {
+            CameraCapabilities capabilities = mCameraHolder.getCameraCapabilities();
+            if (capabilities != null) {
+                if (!capabilities.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_AUTO)) {
                     fulfilled = false;
                     details = "Camera does not support auto-focus";
                 }
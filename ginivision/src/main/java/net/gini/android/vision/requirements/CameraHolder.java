@@ -1,11 +1,28 @@
 package net.gini.android.vision.requirements;
 
+import android.content.Context;
 import android.hardware.Camera;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import net.gini.android.vision.internal.camera.api.CameraCapabilities;
+import net.gini.android.vision.internal.camera.api.CameraCapabilitiesStore;
+import net.gini.android.vision.internal.camera.api.CameraController;
+
+/**
+ * Provides the capabilities of the back-facing camera. The camera is opened only, if its
+ * capabilities weren't stored when the camera was used before.
+ */
 class CameraHolder {
 
+    private final CameraCapabilitiesStore mCapabilitiesStore;
     private Camera mCamera;
+    private CameraCapabilities mCapabilities;
+    private int mCameraId = -1;
+
+    CameraHolder(@NonNull final Context context) {
+        mCapabilitiesStore = new CameraCapabilitiesStore(context);
+    }
 
     public void closeCamera() {
         if (mCamera != null) {
@@ -15,22 +32,51 @@ class CameraHolder {
     }
 
     public boolean hasCamera() throws RuntimeException {
+        if (findCameraId() < 0) {
+            return false;
+        }
+        // Stored capabilities prove that the camera was opened before
+        if (getStoredCapabilities() != null) {
+            return true;
+        }
         openCamera();
         return mCamera != null;
     }
 
     @Nullable
-    public Camera.Parameters getCameraParameters() throws RuntimeException {
+    public CameraCapabilities getCameraCapabilities() throws RuntimeException {
+        if (findCameraId() < 0) {
+            return null;
+        }
+        if (getStoredCapabilities() != null) {
+            return mCapabilities;
+        }
         openCamera();
         if (mCamera != null) {
-            return mCamera.getParameters();
+            mCapabilities = CameraCapabilities.fromParameters(mCamera.getParameters());
+            mCapabilitiesStore.put(mCameraId, mCapabilities);
+        }
+        return mCapabilities;
+    }
+
+    private int findCameraId() {
+        if (mCameraId < 0) {
+            mCameraId = CameraController.getBackFacingCameraId(new Camera.CameraInfo());
+        }
+        return mCameraId;
+    }
+
+    @Nullable
+    private CameraCapabilities getStoredCapabilities() {
+        if (mCapabilities == null) {
+            mCapabilities = mCapabilitiesStore.get(mCameraId);
         }
-        return null;
+        return mCapabilities;
     }
 
     private void openCamera() throws RuntimeException {
         if (mCamera == null) {
-            mCamera = Camera.open();
+            mCamera = Camera.open(mCameraId);
         }
     }
 }
@@ -1,18 +1,15 @@
 package net.gini.android.vision.requirements;
 
-import android.hardware.Camera;
 import android.support.annotation.NonNull;
 
-import net.gini.android.vision.internal.camera.api.SizeSelectionHelper;
+import net.gini.android.vision.internal.camera.api.CameraCapabilities;
+import net.gini.android.vision.internal.camera.api.PictureSizePolicy;
 import net.gini.android.vision.internal.camera.photo.Size;
 
 import java.util.Locale;
 
 class CameraResolutionRequirement implements Requirement {
 
-    // We require ~8MP or higher picture resolutions
-    private static final int MIN_PICTURE_AREA = 7900000;
-
     private final CameraHolder mCameraHolder;
 
     CameraResolutionRequirement(CameraHolder cameraHolder) {
@@ -32,21 +29,22 @@ class CameraResolutionRequirement implements Requirement {
         String details = "";
 
         try {
-            Camera.Parameters parameters = mCameraHolder.getCameraParameters();
-            if (parameters != null) {
-                Size pictureSize = SizeSelectionHelper.getLargestSize(parameters.getSupportedPictureSizes());
+            CameraCapabilities capabilities = mCameraHolder.getCameraCapabilities();
+            if (capabilities != null) {
+                PictureSizePolicy sizePolicy = PictureSizePolicy.getCurrent();
+                Size pictureSize = sizePolicy.selectPictureSize(capabilities.getPictureSizes());
                 if (pictureSize == null) {
                     result = false;
                     details = "Camera has no picture resolutions";
                     return new RequirementReport(getId(), result, details);
                 } else if (!isAround8MPOrHigher(pictureSize)) {
                     result = false;
-                    details = "Largest camera picture resolution is lower than 8MP";
+                    details = "Selected camera picture resolution is lower than 8MP";
                     return new RequirementReport(getId(), result, details);
                 }
 
-                Size previewSize = SizeSelectionHelper.getLargestSizeWithSimilarAspectRatio(
-                        parameters.getSupportedPreviewSizes(), pictureSize);
+                Size previewSize = sizePolicy.selectPreviewSize(capabilities.getPreviewSizes(),
+                        pictureSize);
                 if (previewSize == null) {
                     result = false;
                     details = String.format(Locale.US,
@@ -68,7 +66,7 @@ class CameraResolutionRequirement implements Requirement {
     }
 
     private boolean isAround8MPOrHigher(Size size) {
-        return size.width * size.height >= MIN_PICTURE_AREA;
+        return size.width * size.height >= PictureSizePolicy.MIN_PICTURE_AREA;
     }
 
 }
@@ -1,10 +1,10 @@
 package net.gini.android.vision.requirements;
 
-import android.hardware.Camera;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
-import net.gini.android.vision.internal.camera.api.SizeSelectionHelper;
+import net.gini.android.vision.internal.camera.api.CameraCapabilities;
+import net.gini.android.vision.internal.camera.api.PictureSizePolicy;
 import net.gini.android.vision.internal.camera.photo.Size;
 
 class DeviceMemoryRequirement implements Requirement {
@@ -28,9 +28,11 @@ class DeviceMemoryRequirement implements Requirement {
         String details = "";
 
         try {
-            Camera.Parameters parameters = mCameraHolder.getCameraParameters();
-            if (parameters != null) {
-                Size pictureSize = SizeSelectionHelper.getLargestSize(parameters.getSupportedPictureSizes());
+            CameraCapabilities capabilities = mCameraHolder.getCameraCapabilities();
+            if (capabilities != null) {
+                // The memory is needed for the size the camera will use
+                Size pictureSize = PictureSizePolicy.getCurrent().selectPictureSize(
+                        capabilities.getPictureSizes());
                 if (pictureSize == null) {
                     result = false;
                     details = "Cannot determine memory requirement as the camera has no picture resolution with a 4:3 aspect ratio";
@@ -72,7 +74,6 @@ class DeviceMemoryRequirement implements Requirement {
     }
 
     private float calculateMemoryUsageForSize(final Size photoSize) {
-        // We have three channels of one byte each and we hold about three pictures in memory.
-        return photoSize.width * photoSize.height * 3 * 3;
+        return PictureSizePolicy.getDecodedFootprint(photoSize);
     }
 }
@@ -20,6 +20,9 @@ import java.util.Arrays;
  * <p>
  *     On Android 6.0 and later you need to ask the user for the camera permission before you check the requirements.
  * </p>
+ * <p>
+ *     The camera's capabilities are stored when the camera is opened for the first time, later checks don't need to open the camera.
+ * </p>
  */
 public final class GiniVisionRequirements {
 
@@ -34,7 +37,7 @@ public final class GiniVisionRequirements {
      */
     public static RequirementsReport checkRequirements(Context context) {
         LOG.info("Checking requirements");
-        CameraHolder cameraHolder = new CameraHolder();
+        CameraHolder cameraHolder = new CameraHolder(context);
 
         RequirementsReport requirementsReport = new RequirementsChecker(Arrays.asList(
                 new CameraPermissionRequirement(context),
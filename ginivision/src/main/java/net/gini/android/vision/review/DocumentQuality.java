@@ -0,0 +1,89 @@
+package net.gini.android.vision.review;
+
+import java.util.Locale;
+
+/**
+ * <p>
+ *     The image quality of a photo taken with the camera.
+ * </p>
+ * <p>
+ *     The quality is measured on the photo's preview right after it was taken. Blurry, overexposed
+ *     or too dark photos usually lead to poor analysis results. You can use the quality to skip or
+ *     defer the analysis in {@link ReviewFragmentListener#onShouldAnalyzeDocument(net.gini.android.vision.Document)}.
+ *     It is received by implementing the {@link DocumentQualityListener}.
+ * </p>
+ */
+public final class DocumentQuality {
+
+    private static final float MIN_SHARPNESS = 100;
+    private static final float MAX_CLIPPED_HIGHLIGHTS = 0.05f;
+    private static final float MIN_MEAN_LUMINANCE = 60;
+
+    private final float mSharpness;
+    private final float mClippedHighlights;
+    private final float mMeanLuminance;
+
+    DocumentQuality(final float sharpness, final float clippedHighlights,
+            final float meanLuminance) {
+        mSharpness = sharpness;
+        mClippedHighlights = clippedHighlights;
+        mMeanLuminance = meanLuminance;
+    }
+
+    /**
+     * @return the variance of the Laplacian of the luminance, higher values mean sharper photos
+     */
+    public float getSharpness() {
+        return mSharpness;
+    }
+
+    /**
+     * @return the share of overexposed pixels, from 0 to 1
+     */
+    public float getClippedHighlights() {
+        return mClippedHighlights;
+    }
+
+    /**
+     * @return the mean luminance, from 0 (black) to 255 (white)
+     */
+    public float getMeanLuminance() {
+        return mMeanLuminance;
+    }
+
+    /**
+     * @return {@code true}, if the sharpness is below 100
+     */
+    public boolean isBlurry() {
+        return mSharpness < MIN_SHARPNESS;
+    }
+
+    /**
+     * @return {@code true}, if more than 5% of the pixels are overexposed, for example because of
+     * glare from a lamp or a flash
+     */
+    public boolean hasGlare() {
+        return mClippedHighlights > MAX_CLIPPED_HIGHLIGHTS;
+    }
+
+    /**
+     * @return {@code true}, if the mean luminance is below 60
+     */
+    public boolean isTooDark() {
+        return mMeanLuminance < MIN_MEAN_LUMINANCE;
+    }
+
+    /**
+     * @return {@code true}, if the photo is neither blurry, nor has glare, nor is too dark
+     */
+    public boolean isAcceptable() {
+        return !isBlurry() && !hasGlare() && !isTooDark();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "DocumentQuality{sharpness=%.1f, clippedHighlights=%.3f, meanLuminance=%.1f}",
+                mSharpness, mClippedHighlights, mMeanLuminance);
+    }
+}
@@ -0,0 +1,32 @@
+package net.gini.android.vision.review;
+
+import android.support.annotation.NonNull;
+
+import net.gini.android.vision.Document;
+
+/**
+ * <p>
+ *     Optional interface to receive the image quality of the original document from {@link ReviewFragmentStandard} and {@link ReviewFragmentCompat}.
+ * </p>
+ * <p>
+ *     Implement it in addition to the {@link ReviewFragmentListener} in the Activity hosting the Review Fragment. Activities which implement only the {@link ReviewFragmentListener} keep working without changes, they are not informed about the quality.
+ * </p>
+ * <p>
+ *     The {@link ReviewActivity} implements this interface, override {@link ReviewActivity#onDocumentQualityAnalyzed(DocumentQuality)} to receive the quality in the Screen API.
+ * </p>
+ */
+public interface DocumentQualityListener {
+
+    /**
+     * <p>
+     *     Called when the image quality of the original document was measured, which takes a few milliseconds after the Review Fragment was created.
+     * </p>
+     * <p>
+     *     It is always called before {@link ReviewFragmentListener#onShouldAnalyzeDocument(Document)}, so you can use the quality to skip or defer the analysis of blurry, overexposed or too dark photos.
+     *     Not called if the quality could not be measured.
+     * </p>
+     *
+     * @param quality the image quality of the original document
+     */
+    void onDocumentQualityAnalyzed(@NonNull DocumentQuality quality);
+}
@@ -42,6 +42,7 @@ import net.gini.android.vision.onboarding.OnboardingActivity;
  *     </ul>
  *     You can also override the following methods:
  *     <ul>
+ *         <li>{@link ReviewActivity#onDocumentQualityAnalyzed(DocumentQuality)} - called before {@link ReviewActivity#onShouldAnalyzeDocument(Document)} with the image quality of the original document. You can skip or defer the analysis, if the {@link DocumentQuality} is not acceptable.</li>
  *         <li>{@link ReviewActivity#onDocumentWasRotated(Document, int, int)} - you should cancel the analysis started in {@link ReviewActivity#onShouldAnalyzeDocument(Document)} because the document was rotated and analysing the original is not necessary anymore. The Gini Vision Library will proceed to the Analysis Screen where the reviewed document can be analyzed.</li>
  *         <li>{@link ReviewActivity#onProceedToAnalysisScreen(Document)} - called when the Gini Vision Library will continue to the Analysis Screen. For example you can unsubscribe your analysis listener, if you want to continue the analysis in your {@link AnalysisActivity} subclass in case the document wasn't modified.</li>
  *         <li>{@link ReviewActivity#onBackPressed()} - called when the back or the up button was clicked. You should cancel the analysis started in {@link ReviewActivity#onShouldAnalyzeDocument(Document)}.</li>
@@ -119,7 +120,7 @@ import net.gini.android.vision.onboarding.OnboardingActivity;
  *     </ul>
  * </p>
  */
-public abstract class ReviewActivity extends AppCompatActivity implements ReviewFragmentListener, ReviewFragmentInterface {
+public abstract class ReviewActivity extends AppCompatActivity implements ReviewFragmentListener, DocumentQualityListener, ReviewFragmentInterface {
 
     /**
      * @exclude
@@ -245,6 +246,20 @@ public abstract class ReviewActivity extends AppCompatActivity implements Review
     @Override
     public abstract void onShouldAnalyzeDocument(@NonNull Document document);
 
+    /**
+     * <p>
+     *     Called with the image quality of the original document before {@link ReviewActivity#onShouldAnalyzeDocument(Document)}.
+     * </p>
+     * <p>
+     *     Override this method to skip or defer the analysis of blurry, overexposed or too dark photos. The default implementation does nothing.
+     * </p>
+     *
+     * @param quality the image quality of the original document
+     */
+    @Override
+    public void onDocumentQualityAnalyzed(@NonNull DocumentQuality quality) {
+    }
+
     @Override
     public void onProceedToAnalysisScreen(@NonNull Document document) {
         mAnalyzeDocumentActivityIntent.putExtra(AnalysisActivity.EXTRA_IN_DOCUMENT, document);
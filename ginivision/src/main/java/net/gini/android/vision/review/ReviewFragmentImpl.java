@@ -2,6 +2,7 @@ package net.gini.android.vision.review;
 
 import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
+import android.app.Activity;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -15,21 +16,31 @@ import android.widget.ImageButton;
 
 import com.ortiz.touch.TouchImageView;
 
+import net.gini.android.vision.CaptureLatency.Phase;
 import net.gini.android.vision.Document;
 import net.gini.android.vision.GiniVisionError;
 import net.gini.android.vision.R;
+import net.gini.android.vision.internal.camera.api.UIExecutor;
+import net.gini.android.vision.internal.camera.photo.ImageCache;
 import net.gini.android.vision.internal.camera.photo.Photo;
 import net.gini.android.vision.internal.camera.photo.PhotoEdit;
+import net.gini.android.vision.internal.camera.photo.PhotoQuality;
+import net.gini.android.vision.internal.camera.photo.PhotoQualityAnalyzer;
+import net.gini.android.vision.internal.metrics.CaptureTrace;
 import net.gini.android.vision.internal.ui.FragmentImplCallback;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jersey.repackaged.jsr166e.CompletableFuture;
+
 class ReviewFragmentImpl implements ReviewFragmentInterface {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReviewFragmentImpl.class);
 
     private static final int JPEG_COMPRESSION_QUALITY_FOR_UPLOAD = 50;
+    // Lower qualities are used only if the jpeg would be larger
+    private static final long JPEG_SIZE_BUDGET_FOR_UPLOAD = 1024 * 1024;
 
     private static final ReviewFragmentListener NO_OP_LISTENER = new ReviewFragmentListener() {
         @Override
@@ -59,17 +70,28 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
     private ImageButton mButtonNext;
 
     private final FragmentImplCallback mFragment;
+    private final Document mDocument;
     private Photo mPhoto;
     private ReviewFragmentListener mListener = NO_OP_LISTENER;
+    private DocumentQualityListener mQualityListener;
     private boolean mDocumentWasAnalyzed = false;
     private boolean mDocumentWasModified = false;
     private int mCurrentRotation = 0;
     private boolean mNextClicked = false;
     private boolean mStopped = false;
+    private final UIExecutor mUIExecutor = new UIExecutor();
+    private CompletableFuture<Photo> mCompressionFuture;
+    private CompletableFuture<PhotoQuality> mQualityFuture;
+    private boolean mQualityAnalyzed = false;
+    private boolean mShouldAnalyzeDocumentPending = false;
 
     public ReviewFragmentImpl(@NonNull FragmentImplCallback fragment, @NonNull Document document) {
         mFragment = fragment;
+        mDocument = document;
+        final CaptureTrace trace = CaptureTrace.current();
+        trace.beginPhase(Phase.REVIEW_PREVIEW_DECODING);
         mPhoto = Photo.fromDocument(document);
+        trace.endPhase(Phase.REVIEW_PREVIEW_DECODING);
     }
 
     @VisibleForTesting
@@ -83,6 +105,9 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
         } else {
             mListener = listener;
         }
+        // Optional, hosts implementing only the ReviewFragmentListener are not informed
+        mQualityListener = listener instanceof DocumentQualityListener
+                ? (DocumentQualityListener) listener : null;
     }
 
     public void onDocumentAnalyzed() {
@@ -91,14 +116,19 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
     }
 
     public void onCreate(@Nullable Bundle savedInstanceState) {
+        if (mFragment.getActivity() != null) {
+            ImageCache.getInstance().init(mFragment.getActivity());
+        }
+        analyzeQuality();
         applyCompressionToJpeg(new PhotoEdit.PhotoEditCallback() {
             @Override
             public void onDone(@NonNull Photo photo) {
-                if (mNextClicked || mDocumentWasModified || mStopped) {
-                    return;
+                // The quality is reported first to allow skipping the analysis
+                if (mQualityAnalyzed) {
+                    shouldAnalyzeDocument();
+                } else {
+                    mShouldAnalyzeDocumentPending = true;
                 }
-                LOG.info("Should analyze document");
-                mListener.onShouldAnalyzeDocument(Document.fromPhoto(mPhoto));
             }
 
             @Override
@@ -112,6 +142,55 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
         });
     }
 
+    private void shouldAnalyzeDocument() {
+        if (mNextClicked || mDocumentWasModified || mStopped) {
+            return;
+        }
+        LOG.info("Should analyze document");
+        mListener.onShouldAnalyzeDocument(Document.fromPhoto(mPhoto));
+    }
+
+    private void analyzeQuality() {
+        LOG.info("Analyzing the photo quality");
+        mQualityFuture = PhotoQualityAnalyzer.analyzeAsync(mPhoto);
+        mQualityFuture.handle(new CompletableFuture.BiFun<PhotoQuality, Throwable, Void>() {
+            @Override
+            public Void apply(final PhotoQuality quality, final Throwable throwable) {
+                mUIExecutor.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onQualityAnalyzed(quality, throwable);
+                    }
+                });
+                return null;
+            }
+        });
+    }
+
+    private void onQualityAnalyzed(@Nullable final PhotoQuality quality,
+            @Nullable final Throwable throwable) {
+        if (mPhoto == null) {
+            return;
+        }
+        mQualityAnalyzed = true;
+        if (throwable != null) {
+            LOG.error("Failed to analyze the photo quality", throwable);
+        } else if (quality == null) {
+            LOG.warn("Cannot analyze the photo quality: no preview");
+        } else {
+            LOG.info("Photo quality analyzed: {}", quality);
+            if (mQualityListener != null && !mDocumentWasModified && !mStopped) {
+                mQualityListener.onDocumentQualityAnalyzed(
+                        new DocumentQuality(quality.getLaplacianVariance(),
+                                quality.getClippedHighlights(), quality.getMeanLuminance()));
+            }
+        }
+        if (mShouldAnalyzeDocumentPending) {
+            mShouldAnalyzeDocumentPending = false;
+            shouldAnalyzeDocument();
+        }
+    }
+
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.gv_fragment_review, container, false);
@@ -129,6 +208,10 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
 
     private void showDocument() {
         mImageDocument.setImageBitmap(mPhoto.getBitmapPreview());
+        // Completes the trace of the picture taken on the Camera Screen
+        final CaptureTrace trace = CaptureTrace.current();
+        trace.endPhase(Phase.REVIEW_START);
+        trace.finish();
     }
 
     public void onStop() {
@@ -136,7 +219,35 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
     }
 
     public void onDestroy() {
+        if (mCompressionFuture != null) {
+            mCompressionFuture.cancel(false);
+            mCompressionFuture = null;
+        }
+        releasePreview();
         mPhoto = null;
+        releaseCachedDocument();
+    }
+
+    private void releaseCachedDocument() {
+        final Activity activity = mFragment.getActivity();
+        if (activity == null || activity.isFinishing()) {
+            // The fragment's arguments won't be restored anymore
+            mDocument.close();
+        }
+    }
+
+    private void releasePreview() {
+        if (mImageDocument != null) {
+            mImageDocument.setImageBitmap(null);
+        }
+        if (mPhoto != null) {
+            if (mQualityFuture != null && !mQualityFuture.isDone()) {
+                // The analysis may still read the preview, so it must not be reused
+                mQualityFuture.cancel(false);
+            } else {
+                mPhoto.releaseBitmapPreview();
+            }
+        }
     }
 
     private void bindViews(@NonNull View view) {
@@ -226,7 +337,7 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
                     if (mStopped) {
                         return;
                     }
-                    proceedToAnalysisScreen();
+                    proceedToAnalysisScreenWhenCompressed();
                 }
 
                 @Override
@@ -241,6 +352,29 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
         }
     }
 
+    private void proceedToAnalysisScreenWhenCompressed() {
+        if (mCompressionFuture == null || mCompressionFuture.isDone()) {
+            proceedToAnalysisScreen();
+            return;
+        }
+        LOG.debug("Waiting for the compression to finish");
+        mCompressionFuture.handle(new CompletableFuture.BiFun<Photo, Throwable, Void>() {
+            @Override
+            public Void apply(Photo photo, Throwable throwable) {
+                mUIExecutor.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mStopped || mPhoto == null) {
+                            return;
+                        }
+                        proceedToAnalysisScreen();
+                    }
+                });
+                return null;
+            }
+        });
+    }
+
     private void proceedToAnalysisScreen() {
         LOG.info("Proceed to Analysis Screen");
         mListener.onProceedToAnalysisScreen(Document.fromPhoto(mPhoto));
@@ -250,14 +384,15 @@ class ReviewFragmentImpl implements ReviewFragmentInterface {
         LOG.info("Rotating the jpeg {} degrees", mCurrentRotation);
         mPhoto.edit()
                 .rotateTo(mCurrentRotation)
-                .applyAsync(callback);
+                .applyAsync(PhotoEdit.Priority.USER_VISIBLE, callback);
     }
 
     private void applyCompressionToJpeg(@NonNull PhotoEdit.PhotoEditCallback callback) {
-        LOG.info("Compressing the jpeg to quality {}", JPEG_COMPRESSION_QUALITY_FOR_UPLOAD);
-        mPhoto.edit()
-                .compressBy(JPEG_COMPRESSION_QUALITY_FOR_UPLOAD)
-                .applyAsync(callback);
+        LOG.info("Compressing the jpeg to {} bytes with quality up to {}",
+                JPEG_SIZE_BUDGET_FOR_UPLOAD, JPEG_COMPRESSION_QUALITY_FOR_UPLOAD);
+        mCompressionFuture = mPhoto.edit()
+                .compressToSize(JPEG_SIZE_BUDGET_FOR_UPLOAD, JPEG_COMPRESSION_QUALITY_FOR_UPLOAD)
+                .applyAsync(PhotoEdit.Priority.BACKGROUND, callback);
     }
 
     private void rotateImageView(int degrees, boolean animated) {
@@ -24,6 +24,9 @@ import net.gini.android.vision.internal.ui.FragmentImplCallback;
  *     Your Activity must implement the {@link ReviewFragmentListener} interface to receive events from the Review Document Fragment. Failing to do so will throw an exception.
  * </p>
  * <p>
+ *     Your Activity can also implement the {@link DocumentQualityListener} interface to receive the image quality of the photographed document before you should analyze it.
+ * </p>
+ * <p>
  *     Your Activity is automatically set as the listener in {@link ReviewFragmentStandard#onCreate(Bundle)}.
  * </p>
  *
@@ -0,0 +1,47 @@
+package net.gini.android.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.internal.camera.photo.TestJpegs.getTestJpeg;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+@RunWith(JUnit4.class)
+public class DocumentKeyTest {
+
+    @Test
+    public void should_beEqual_forSameJpeg() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        // When
+        final DocumentKey key = DocumentKey.fromJpeg(jpeg);
+        final DocumentKey otherKey = DocumentKey.fromJpeg(Arrays.copyOf(jpeg, jpeg.length));
+        // Then
+        assertThat(key).isEqualTo(otherKey);
+        assertThat(key.hashCode()).isEqualTo(otherKey.hashCode());
+        assertThat(key.getJpegDigest()).hasLength(64);
+    }
+
+    @Test
+    public void should_differ_forDifferentJpegs() throws Exception {
+        // When
+        final DocumentKey key = DocumentKey.fromJpeg(getTestJpeg());
+        final DocumentKey otherKey = DocumentKey.fromJpeg(getTestJpeg("remslip-no-metadata.jpeg"));
+        // Then
+        assertThat(key).isNotEqualTo(otherKey);
+    }
+
+    @Test
+    public void should_haveNoContentId_ifJpegHasNoMetadata() throws Exception {
+        // When
+        final DocumentKey key = DocumentKey.fromJpeg(getTestJpeg("remslip-no-metadata.jpeg"));
+        // Then
+        assertThat(key.getContentId()).isNull();
+        assertThat(key.getRotationDelta()).isEqualTo(0);
+        assertThat(key.asString()).matches("_0_[0-9a-f]{64}");
+    }
+}
@@ -0,0 +1,196 @@
+package net.gini.android.vision;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.internal.camera.photo.TestJpegs.getTestJpeg;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import net.gini.android.vision.internal.camera.photo.ImageCache;
+import net.gini.android.vision.internal.camera.photo.Photo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
+@RunWith(JUnit4.class)
+public class DocumentTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void should_readJpegLazily_fromFile() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final File jpegFile = writeToFile(jpeg);
+        final Document document = Document.fromFile(jpegFile, 90);
+        // When
+        final byte[] readJpeg = document.getJpeg();
+        // Then
+        assertThat(readJpeg).isEqualTo(jpeg);
+        assertThat(document.getJpeg()).isSameAs(readJpeg);
+        assertThat(document.getJpegSize()).isEqualTo(jpeg.length);
+        assertThat(document.getRotationForDisplay()).isEqualTo(90);
+    }
+
+    @Test
+    public void should_writeJpeg_fromFile() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final Document document = Document.fromFile(writeToFile(jpeg), 0);
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        // When
+        document.writeTo(outputStream);
+        // Then
+        assertThat(outputStream.toByteArray()).isEqualTo(jpeg);
+    }
+
+    @Test
+    public void should_streamJpeg_fromByteBuffer_withoutChangingItsPosition() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final byte[] padded = new byte[jpeg.length + 10];
+        System.arraycopy(jpeg, 0, padded, 10, jpeg.length);
+        final ByteBuffer buffer = ByteBuffer.wrap(padded, 10, jpeg.length);
+        final Document document = Document.fromByteBuffer(buffer, 0);
+        // When
+        final byte[] firstRead = readAll(document.openStream());
+        final byte[] secondRead = readAll(document.openStream());
+        // Then
+        assertThat(firstRead).isEqualTo(jpeg);
+        assertThat(secondRead).isEqualTo(jpeg);
+        assertThat(buffer.position()).isEqualTo(10);
+        assertThat(document.getJpeg()).isEqualTo(jpeg);
+    }
+
+    @Test
+    public void should_notCopy_wrappedArray() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        // When
+        final Document document = Document.fromByteBuffer(ByteBuffer.wrap(jpeg), 0);
+        // Then
+        assertThat(document.getJpeg()).isSameAs(jpeg);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void should_throw_ifFileIsMissing() throws Exception {
+        // Given
+        final Document document = Document.fromFile(new File(mTemporaryFolder.getRoot(), "missing.jpeg"), 0);
+        // When
+        document.getJpeg();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void should_throw_ifPhotoIsStillBeingProcessed() throws Exception {
+        // Given
+        final Photo photo = mock(Photo.class);
+        when(photo.whenProcessed()).thenReturn(new CompletableFuture<Photo>());
+        // When
+        Document.fromPhoto(photo);
+    }
+
+    @Test
+    public void should_storeBufferBackedDocument_inCache_withoutCopying() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(jpeg.length);
+        // Written through a duplicate to keep the buffer's position at 0
+        buffer.duplicate().put(jpeg);
+        final Document document = Document.fromByteBuffer(buffer, 0);
+        // When
+        final ImageCache.Token token = document.storeJpegInCache();
+        // Then
+        final ByteBuffer cached = ImageCache.getInstance().getJpegBuffer(token);
+        assertThat(cached.isDirect()).isTrue();
+        assertThat(cached.remaining()).isEqualTo(jpeg.length);
+        document.close();
+    }
+
+    @Test
+    public void should_releaseCachedJpeg_whenClosed() throws Exception {
+        // Given
+        final Document document = Document.fromByteBuffer(ByteBuffer.wrap(getTestJpeg()), 0);
+        final ImageCache.Token firstToken = document.storeJpegInCache();
+        final ImageCache.Token secondToken = document.storeJpegInCache();
+        // When
+        document.close();
+        // Then
+        assertThat(ImageCache.getInstance().isStored(firstToken)).isFalse();
+        assertThat(ImageCache.getInstance().isStored(secondToken)).isFalse();
+        assertThat(document.getParcelTokenCount()).isEqualTo(0);
+        // The document itself can still be used
+        assertThat(document.getJpeg()).isEqualTo(getTestJpeg());
+    }
+
+    @Test
+    public void should_forgetTokens_ofParcelsWhichWereRead() throws Exception {
+        // Given
+        final Document document = Document.fromByteBuffer(ByteBuffer.wrap(getTestJpeg()), 0);
+        final ImageCache.Token readToken = document.storeJpegInCache();
+        final ImageCache.Token unreadToken = document.storeJpegInCache();
+        // Reading a parcel releases its token
+        ImageCache.getInstance().removeJpeg(readToken);
+        // When
+        document.storeJpegInCache();
+        // Then
+        assertThat(document.getParcelTokenCount()).isEqualTo(2);
+        assertThat(ImageCache.getInstance().isStored(unreadToken)).isTrue();
+        document.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void should_throw_ifFileIsLargerThanAByteArray() throws Exception {
+        // Given
+        final File file = mTemporaryFolder.newFile("large.jpeg");
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // Sparse, doesn't use the disk space
+            randomAccessFile.setLength(Integer.MAX_VALUE + 1L);
+        } finally {
+            randomAccessFile.close();
+        }
+        final Document document = Document.fromFile(file, 0);
+        // When
+        document.getJpeg();
+    }
+
+    private File writeToFile(final byte[] jpeg) throws IOException {
+        final File file = mTemporaryFolder.newFile("document.jpeg");
+        final FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(jpeg);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            final byte[] buffer = new byte[1000];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,259 @@
+package net.gini.android.vision.internal.camera.api;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.view.Surface;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.ExecutionException;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
+@RunWith(JUnit4.class)
+public class Camera2SessionTest {
+
+    private FakeCamera2Device mDevice;
+    private Camera2Session mSession;
+
+    @Before
+    public void setUp() {
+        mDevice = new FakeCamera2Device();
+        mSession = new Camera2Session(mDevice);
+    }
+
+    @Test
+    public void should_completeOpen_whenDeviceWasOpened() {
+        // Given
+        final CompletableFuture<Void> open = mSession.open();
+        assertThat(open.isDone()).isFalse();
+        // When
+        mDevice.listener.onOpened();
+        // Then
+        assertThat(open.isDone()).isTrue();
+        assertThat(hasFailed(open)).isFalse();
+        assertThat(mSession.getState()).isEqualTo(Camera2Session.State.OPENED);
+    }
+
+    @Test
+    public void should_failOpen_ifDeviceCannotBeOpened() {
+        // Given
+        mDevice.openException = new SecurityException("No camera permission");
+        // When
+        final CompletableFuture<Void> open = mSession.open();
+        // Then
+        assertThat(hasFailed(open)).isTrue();
+        assertThat(mSession.getState()).isEqualTo(Camera2Session.State.CLOSED);
+    }
+
+    @Test
+    public void should_startRepeatingPreview_afterSessionWasConfigured() {
+        // Given
+        openSession();
+        final CompletableFuture<Void> preview = mSession.startPreview(mock(Surface.class));
+        assertThat(preview.isDone()).isFalse();
+        // When
+        mDevice.listener.onSessionConfigured();
+        // Then
+        assertThat(preview.isDone()).isTrue();
+        assertThat(mDevice.calls).containsExactly("open", "createSession",
+                "startRepeatingPreview").inOrder();
+        assertThat(mSession.isPreviewRunning()).isTrue();
+    }
+
+    @Test
+    public void should_failPreview_ifSessionConfigurationFailed() {
+        // Given
+        openSession();
+        final CompletableFuture<Void> preview = mSession.startPreview(mock(Surface.class));
+        // When
+        mDevice.listener.onSessionConfigurationFailed();
+        // Then
+        assertThat(hasFailed(preview)).isTrue();
+        assertThat(mSession.getState()).isEqualTo(Camera2Session.State.OPENED);
+    }
+
+    @Test
+    public void should_failPreview_ifCameraIsNotOpen() {
+        // When
+        final CompletableFuture<Void> preview = mSession.startPreview(mock(Surface.class));
+        // Then
+        assertThat(hasFailed(preview)).isTrue();
+        assertThat(mDevice.calls).isEmpty();
+    }
+
+    @Test
+    public void should_restartPreview_withoutNewSession() {
+        // Given
+        startPreview();
+        mSession.stopPreview();
+        // When
+        final CompletableFuture<Void> preview = mSession.startPreview();
+        // Then
+        assertThat(preview.isDone()).isTrue();
+        assertThat(mDevice.calls).containsExactly("open", "createSession",
+                "startRepeatingPreview", "stopRepeatingPreview", "startRepeatingPreview")
+                .inOrder();
+    }
+
+    @Test
+    public void should_createNewSession_forPreviewSurface_ifPreviewWasStopped() {
+        // Given
+        startPreview();
+        mSession.stopPreview();
+        // When
+        final CompletableFuture<Void> preview = mSession.startPreview(mock(Surface.class));
+        mDevice.listener.onSessionConfigured();
+        // Then
+        assertThat(preview.isDone()).isTrue();
+        assertThat(mSession.isPreviewRunning()).isTrue();
+        assertThat(mDevice.calls).containsExactly("open", "createSession",
+                "startRepeatingPreview", "stopRepeatingPreview", "createSession",
+                "startRepeatingPreview")
+                .inOrder();
+    }
+
+    @Test
+    public void should_captureWithoutFocusRun_ifUsingContinuousFocus() {
+        // Given
+        startPreview();
+        // When
+        mSession.takePicture();
+        // Then
+        assertThat(mDevice.calls).contains("capture");
+        assertThat(mDevice.calls).doesNotContain("triggerAutoFocus");
+    }
+
+    @Test
+    public void should_focusBeforeCapture_ifNotUsingContinuousFocus() {
+        // Given
+        mDevice.usingContinuousFocus = false;
+        startPreview();
+        // When
+        mSession.takePicture();
+        // Then
+        assertThat(mDevice.calls).contains("triggerAutoFocus");
+        assertThat(mDevice.calls).doesNotContain("capture");
+        // When
+        mDevice.listener.onFocusCompleted(false);
+        // Then
+        assertThat(mDevice.calls).contains("capture");
+    }
+
+    @Test
+    public void should_captureWithZeroShutterLag_ifAvailable() {
+        // Given
+        mDevice.zeroShutterLagSupported = true;
+        startPreview();
+        // When
+        mSession.takePicture();
+        // Then
+        assertThat(mDevice.calls).contains("captureZeroShutterLag");
+    }
+
+    @Test
+    public void should_completePicture_withJpeg_andKeepPreviewRunning() throws Exception {
+        // Given
+        startPreview();
+        final CompletableFuture<byte[]> picture = mSession.takePicture();
+        final byte[] jpeg = new byte[]{1, 2, 3};
+        // When
+        mDevice.listener.onPictureTaken(jpeg);
+        // Then
+        assertThat(picture.get()).isSameAs(jpeg);
+        assertThat(mSession.isPreviewRunning()).isTrue();
+        assertThat(mDevice.calls).doesNotContain("stopRepeatingPreview");
+    }
+
+    @Test
+    public void should_returnPendingPicture_whileTakingPicture() {
+        // Given
+        startPreview();
+        final CompletableFuture<byte[]> picture = mSession.takePicture();
+        // When
+        final CompletableFuture<byte[]> secondPicture = mSession.takePicture();
+        // Then
+        assertThat(secondPicture).isSameAs(picture);
+    }
+
+    @Test
+    public void should_failPicture_ifCaptureFailed() {
+        // Given
+        startPreview();
+        final CompletableFuture<byte[]> picture = mSession.takePicture();
+        // When
+        mDevice.listener.onPictureFailed();
+        // Then
+        assertThat(hasFailed(picture)).isTrue();
+    }
+
+    @Test
+    public void should_failPendingFutures_whenCameraWasDisconnected() {
+        // Given
+        mDevice.usingContinuousFocus = false;
+        startPreview();
+        final CompletableFuture<byte[]> picture = mSession.takePicture();
+        // When
+        mDevice.listener.onClosed(new CameraException("Camera disconnected"));
+        // Then
+        assertThat(hasFailed(picture)).isTrue();
+        assertThat(mSession.getState()).isEqualTo(Camera2Session.State.CLOSED);
+        // The focus run completed by the disconnect must not capture
+        assertThat(mDevice.calls).doesNotContain("capture");
+    }
+
+    @Test
+    public void should_completeFocusWithFalse_whenClosed() throws Exception {
+        // Given
+        startPreview();
+        final CompletableFuture<Boolean> focus = mSession.focus(null);
+        // When
+        mSession.close();
+        // Then
+        assertThat(focus.get()).isFalse();
+        assertThat(mDevice.calls).contains("close");
+    }
+
+    @Test
+    public void should_notFocus_ifAutoFocusIsNotSupported()
+            throws ExecutionException, InterruptedException {
+        // Given
+        mDevice.autoFocusSupported = false;
+        startPreview();
+        // When
+        final CompletableFuture<Boolean> focus = mSession.focus(null);
+        // Then
+        assertThat(focus.get()).isFalse();
+        assertThat(mDevice.calls).doesNotContain("triggerAutoFocus");
+    }
+
+    private void openSession() {
+        mSession.open();
+        mDevice.listener.onOpened();
+    }
+
+    private void startPreview() {
+        openSession();
+        mSession.startPreview(mock(Surface.class));
+        mDevice.listener.onSessionConfigured();
+    }
+
+    private static boolean hasFailed(final CompletableFuture<?> future) {
+        if (!future.isDone()) {
+            return false;
+        }
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
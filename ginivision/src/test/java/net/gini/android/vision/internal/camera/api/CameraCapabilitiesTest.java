@@ -0,0 +1,123 @@
+package net.gini.android.vision.internal.camera.api;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import android.hardware.Camera;
+
+import net.gini.android.vision.internal.camera.photo.Size;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class CameraCapabilitiesTest {
+
+    @Test
+    public void should_verifyThatFocusMode_isSupported() {
+        // Given
+        final CameraCapabilities capabilities = createCapabilities();
+        // Then
+        assertThat(capabilities.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_AUTO)).isTrue();
+        assertThat(capabilities.isFocusModeSupported(Camera.Parameters.FOCUS_MODE_MACRO)).isFalse();
+    }
+
+    @Test
+    public void should_verifyThatFlashMode_isSupported() {
+        // Given
+        final CameraCapabilities capabilities = createCapabilities();
+        // Then
+        assertThat(capabilities.isFlashModeSupported(Camera.Parameters.FLASH_MODE_ON)).isTrue();
+        assertThat(capabilities.isFlashModeSupported(Camera.Parameters.FLASH_MODE_TORCH)).isFalse();
+    }
+
+    @Test
+    public void should_readCapabilities_fromParameters_withoutFlash() {
+        // Given
+        final Camera.Parameters parameters = mock(Camera.Parameters.class);
+        when(parameters.getSupportedPictureSizes()).thenReturn(
+                Collections.singletonList(createCameraSize(4000, 3000)));
+        when(parameters.getSupportedPreviewSizes()).thenReturn(
+                Arrays.asList(createCameraSize(1440, 1080), createCameraSize(1280, 720)));
+        when(parameters.getSupportedFocusModes()).thenReturn(
+                Collections.singletonList(Camera.Parameters.FOCUS_MODE_AUTO));
+        when(parameters.getSupportedFlashModes()).thenReturn(null);
+        when(parameters.getMaxNumFocusAreas()).thenReturn(1);
+        // When
+        final CameraCapabilities capabilities = CameraCapabilities.fromParameters(parameters);
+        // Then
+        assertThat(capabilities.getPictureSizes()).hasLength(1);
+        assertThat(capabilities.getPictureSizes()[0].width).isEqualTo(4000);
+        assertThat(capabilities.getPreviewSizes()).hasLength(2);
+        assertThat(capabilities.getPreviewSizes()[1].height).isEqualTo(720);
+        assertThat(capabilities.getFocusModes()).containsExactly(
+                Camera.Parameters.FOCUS_MODE_AUTO);
+        assertThat(capabilities.getFlashModes()).isEmpty();
+        assertThat(capabilities.getMaxNumFocusAreas()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_restoreFlattenedCapabilities() {
+        // Given
+        final CameraCapabilities capabilities = createCapabilities();
+        // When
+        final CameraCapabilities restored = CameraCapabilities.unflatten(capabilities.flatten());
+        // Then
+        assertThat(restored).isNotNull();
+        assertThat(restored.flatten()).isEqualTo(capabilities.flatten());
+        assertThat(restored.getPictureSizes()[1].width).isEqualTo(3840);
+        assertThat(restored.getPictureSizes()[1].height).isEqualTo(2160);
+        assertThat(restored.getFocusModes()).containsExactlyElementsIn(
+                capabilities.getFocusModes()).inOrder();
+        assertThat(restored.getFlashModes()).containsExactlyElementsIn(
+                capabilities.getFlashModes()).inOrder();
+        assertThat(restored.getMaxNumFocusAreas()).isEqualTo(3);
+    }
+
+    @Test
+    public void should_restoreFlattenedCapabilities_withoutModes() {
+        // Given
+        final CameraCapabilities capabilities = new CameraCapabilities(new Size[0],
+                new Size[]{new Size(640, 480)}, Collections.<String>emptyList(),
+                Collections.<String>emptyList(), 0);
+        // When
+        final CameraCapabilities restored = CameraCapabilities.unflatten(capabilities.flatten());
+        // Then
+        assertThat(restored).isNotNull();
+        assertThat(restored.getPictureSizes()).isEmpty();
+        assertThat(restored.getPreviewSizes()).hasLength(1);
+        assertThat(restored.getFocusModes()).isEmpty();
+        assertThat(restored.getFlashModes()).isEmpty();
+    }
+
+    @Test
+    public void should_returnNull_forMalformedCapabilities() {
+        assertThat(CameraCapabilities.unflatten("")).isNull();
+        assertThat(CameraCapabilities.unflatten("1;4000x;;auto;on;1")).isNull();
+        assertThat(CameraCapabilities.unflatten("1;4000x3000;;auto;on;many")).isNull();
+        assertThat(CameraCapabilities.unflatten("0;4000x3000;;auto;on;1")).isNull();
+    }
+
+    private static CameraCapabilities createCapabilities() {
+        return new CameraCapabilities(
+                new Size[]{new Size(2880, 2160), new Size(3840, 2160)},
+                new Size[]{new Size(1440, 1080), new Size(1280, 720)},
+                Arrays.asList(Camera.Parameters.FOCUS_MODE_AUTO,
+                        Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE),
+                Arrays.asList(Camera.Parameters.FLASH_MODE_OFF, Camera.Parameters.FLASH_MODE_ON),
+                3);
+    }
+
+    private static Camera.Size createCameraSize(final int width, final int height) {
+        final Camera.Size size = mock(Camera.Size.class);
+        size.width = width;
+        size.height = height;
+        return size;
+    }
+}
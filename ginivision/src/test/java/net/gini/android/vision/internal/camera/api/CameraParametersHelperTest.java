@@ -12,46 +12,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
-import java.util.Arrays;
-import java.util.Collections;
-
 @RunWith(JUnit4.class)
 public class CameraParametersHelperTest {
 
-    private Camera mCamera;
     private Camera.Parameters mParameters;
 
     @Before
     public void setUp() throws Exception {
-        // Mock camera and parameters
-        mCamera = mock(Camera.class);
+        // Mock parameters
         mParameters = mock(Camera.Parameters.class);
-        when(mCamera.getParameters()).thenReturn(mParameters);
-    }
-
-    @Test
-    public void should_verifyThatFocusMode_isSupported() {
-        // Mock supported focus modes
-        when(mParameters.getSupportedFocusModes()).thenReturn(
-                Arrays.asList(Camera.Parameters.FOCUS_MODE_AUTO,
-                        Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE));
-
-        boolean isSupported = CameraParametersHelper.isFocusModeSupported(
-                Camera.Parameters.FOCUS_MODE_AUTO, mCamera);
-
-        assertThat(isSupported).isTrue();
-    }
-
-    @Test
-    public void should_verifyThatFocusMode_isNotSupported() {
-        // Mock supported focus modes
-        when(mParameters.getSupportedFocusModes()).thenReturn(
-                Collections.singletonList(Camera.Parameters.FOCUS_MODE_AUTO));
-
-        boolean isSupported = CameraParametersHelper.isFocusModeSupported(
-                Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE, mCamera);
-
-        assertThat(isSupported).isFalse();
     }
 
     @Test
@@ -60,7 +29,7 @@ public class CameraParametersHelperTest {
         when(mParameters.getFocusMode()).thenReturn(Camera.Parameters.FOCUS_MODE_AUTO);
 
         boolean isUsed = CameraParametersHelper.isUsingFocusMode(
-                Camera.Parameters.FOCUS_MODE_AUTO, mCamera);
+                Camera.Parameters.FOCUS_MODE_AUTO, mParameters);
 
         assertThat(isUsed).isTrue();
     }
@@ -71,33 +40,8 @@ public class CameraParametersHelperTest {
         when(mParameters.getFocusMode()).thenReturn(Camera.Parameters.FOCUS_MODE_AUTO);
 
         boolean isUsed = CameraParametersHelper.isUsingFocusMode(
-                Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE, mCamera);
+                Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE, mParameters);
 
         assertThat(isUsed).isFalse();
     }
-
-    @Test
-    public void should_verifyThatFlashMode_isSupported() {
-        // Mock used flash mode
-        when(mParameters.getSupportedFlashModes())
-                .thenReturn(Arrays.asList(Camera.Parameters.FLASH_MODE_AUTO,
-                        Camera.Parameters.FLASH_MODE_TORCH));
-
-        boolean isSupported = CameraParametersHelper.isFlashModeSupported(
-                Camera.Parameters.FLASH_MODE_AUTO, mCamera);
-
-        assertThat(isSupported).isTrue();
-    }
-
-    @Test
-    public void should_verifyThatFlashMode_isNotSupported() {
-        // Mock used flash mode
-        when(mParameters.getSupportedFlashModes())
-                .thenReturn(Collections.singletonList(Camera.Parameters.FLASH_MODE_AUTO));
-
-        boolean isSupported = CameraParametersHelper.isFlashModeSupported(
-                Camera.Parameters.FLASH_MODE_TORCH, mCamera);
-
-        assertThat(isSupported).isFalse();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package net.gini.android.vision.internal.camera.api;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class CameraRetentionTest {
+
+    private Runnable mReleaseCamera;
+    private FakeCameraRetention mRetention;
+    private Application mApplication;
+    private LibraryActivity mHostActivity;
+
+    @Before
+    public void setUp() {
+        mReleaseCamera = mock(Runnable.class);
+        mRetention = new FakeCameraRetention(mReleaseCamera);
+        mApplication = mock(Application.class);
+        mHostActivity = mock(LibraryActivity.class);
+        mRetention.register(mApplication, mHostActivity);
+    }
+
+    @Test
+    public void should_keepCameraOpen_whileLibraryActivityIsStarted() {
+        // Given
+        mRetention.onActivityStarted(mock(LibraryActivity.class));
+        // When
+        mRetention.onCameraStopped();
+        // Then
+        assertThat(mRetention.isRetained()).isTrue();
+        assertThat(mRetention.scheduled).isEmpty();
+        verify(mReleaseCamera, never()).run();
+    }
+
+    @Test
+    public void should_reuseRetainedCamera_whenCameraIsStartedAgain() {
+        // Given
+        final LibraryActivity reviewActivity = mock(LibraryActivity.class);
+        mRetention.onActivityStarted(reviewActivity);
+        mRetention.onCameraStopped();
+        // When
+        final boolean reused = mRetention.onCameraStarted();
+        mRetention.onActivityStopped(reviewActivity);
+        // Then
+        assertThat(reused).isTrue();
+        assertThat(mRetention.isRetained()).isFalse();
+        assertThat(mRetention.scheduled).isEmpty();
+        verify(mReleaseCamera, never()).run();
+    }
+
+    @Test
+    public void should_releaseCamera_afterGracePeriod_ifLibraryActivitiesWereStopped() {
+        // Given
+        final LibraryActivity reviewActivity = mock(LibraryActivity.class);
+        mRetention.onActivityStarted(reviewActivity);
+        mRetention.onCameraStopped();
+        // When
+        mRetention.onActivityStopped(reviewActivity);
+        // Then
+        assertThat(mRetention.scheduled).hasSize(1);
+        mRetention.runScheduled();
+        verify(mReleaseCamera).run();
+        assertThat(mRetention.isRetained()).isFalse();
+    }
+
+    @Test
+    public void should_ignoreOtherActivities() {
+        // Given
+        mRetention.onActivityStarted(mock(Activity.class));
+        mRetention.onActivityStarted(mHostActivity);
+        // When
+        mRetention.onCameraStopped();
+        // Then
+        assertThat(mRetention.scheduled).hasSize(1);
+    }
+
+    @Test
+    public void should_releaseCameraRightAway_whenMemoryIsLow() {
+        // Given
+        mRetention.onActivityStarted(mock(LibraryActivity.class));
+        mRetention.onCameraStopped();
+        // When
+        mRetention.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        mRetention.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        mRetention.onLowMemory();
+        // Then
+        verify(mReleaseCamera, times(1)).run();
+        assertThat(mRetention.isRetained()).isFalse();
+    }
+
+    @Test
+    public void should_releaseCamera_whenUnregistered() {
+        // Given
+        mRetention.onActivityStarted(mock(LibraryActivity.class));
+        mRetention.onCameraStopped();
+        // When
+        mRetention.unregister();
+        // Then
+        verify(mReleaseCamera).run();
+        verify(mApplication).unregisterActivityLifecycleCallbacks(mRetention);
+        verify(mApplication).unregisterComponentCallbacks(mRetention);
+    }
+
+    @Test
+    public void should_releaseOnTrimMemory_fromRunningLowLevel() {
+        assertThat(CameraRetention.shouldReleaseOnTrimMemory(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE)).isFalse();
+        assertThat(CameraRetention.shouldReleaseOnTrimMemory(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)).isTrue();
+        assertThat(CameraRetention.shouldReleaseOnTrimMemory(
+                ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN)).isTrue();
+        assertThat(CameraRetention.shouldReleaseOnTrimMemory(
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE)).isTrue();
+    }
+
+    static class LibraryActivity extends Activity {
+    }
+
+    private static class FakeCameraRetention extends CameraRetention {
+
+        final List<Runnable> scheduled = new ArrayList<>();
+
+        FakeCameraRetention(@NonNull final Runnable releaseCamera) {
+            super(releaseCamera, DEFAULT_GRACE_PERIOD_MS, LibraryActivity.class);
+        }
+
+        @Override
+        protected void postDelayed(@NonNull final Runnable runnable, final long delayMs) {
+            scheduled.add(runnable);
+        }
+
+        @Override
+        protected void removeCallbacks(@NonNull final Runnable runnable) {
+            scheduled.remove(runnable);
+        }
+
+        void runScheduled() {
+            final List<Runnable> runnables = new ArrayList<>(scheduled);
+            scheduled.clear();
+            for (final Runnable runnable : runnables) {
+                runnable.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package net.gini.android.vision.internal.camera.api;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Camera2Device} which records the calls. Tests deliver the camera's callbacks through
+ * the {@link #listener}.
+ */
+class FakeCamera2Device implements Camera2Device {
+
+    Listener listener;
+    final List<String> calls = new ArrayList<>();
+
+    boolean autoFocusSupported = true;
+    boolean usingContinuousFocus = true;
+    boolean zeroShutterLagSupported = false;
+    RuntimeException openException;
+
+    @Override
+    public void open(@NonNull final Listener listener) {
+        calls.add("open");
+        if (openException != null) {
+            throw openException;
+        }
+        this.listener = listener;
+    }
+
+    @Override
+    public void createSession(@NonNull final Surface previewSurface) {
+        calls.add("createSession");
+    }
+
+    @Override
+    public void startRepeatingPreview() {
+        calls.add("startRepeatingPreview");
+    }
+
+    @Override
+    public void stopRepeatingPreview() {
+        calls.add("stopRepeatingPreview");
+    }
+
+    @Override
+    public void setPreviewFramesEnabled(final boolean enabled) {
+        calls.add(enabled ? "enablePreviewFrames" : "disablePreviewFrames");
+    }
+
+    @Override
+    public boolean isAutoFocusSupported() {
+        return autoFocusSupported;
+    }
+
+    @Override
+    public boolean isUsingContinuousFocus() {
+        return usingContinuousFocus;
+    }
+
+    @Override
+    public void triggerAutoFocus(@Nullable final Rect focusArea) {
+        calls.add("triggerAutoFocus");
+    }
+
+    @Override
+    public boolean isZeroShutterLagSupported() {
+        return zeroShutterLagSupported;
+    }
+
+    @Override
+    public void capture(final boolean zeroShutterLag) {
+        calls.add(zeroShutterLag ? "captureZeroShutterLag" : "capture");
+    }
+
+    @Override
+    public void close() {
+        calls.add("close");
+    }
+}
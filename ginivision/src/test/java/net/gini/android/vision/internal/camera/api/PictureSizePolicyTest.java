@@ -0,0 +1,111 @@
+package net.gini.android.vision.internal.camera.api;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.internal.camera.api.Resolutions.DECREASING_RESOLUTIONS;
+import static net.gini.android.vision.internal.camera.api.Resolutions.INCREASING_RESOLUTIONS;
+import static net.gini.android.vision.internal.camera.api.Resolutions.UNSORTED_RESOLUTIONS;
+import static net.gini.android.vision.internal.camera.api.Resolutions.assertSizeEqualsResolution;
+import static net.gini.android.vision.internal.camera.api.Resolutions.toSizesArray;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import net.gini.android.vision.internal.camera.photo.Size;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PictureSizePolicyTest {
+
+    @Test
+    public void should_selectLargestSize() {
+        final PictureSizePolicy policy = PictureSizePolicy.largest();
+
+        assertSizeEqualsResolution(policy.selectPictureSize(toSizesArray(UNSORTED_RESOLUTIONS)),
+                new int[]{4096, 3072});
+    }
+
+    @Test
+    public void should_selectSmallest4to3Size_withMinimumArea() {
+        final PictureSizePolicy policy = PictureSizePolicy.minimumArea(
+                PictureSizePolicy.MIN_PICTURE_AREA);
+
+        // 3840x2160 is smaller than 4096x3072, but not 4:3
+        for (final int[][] resolutions : new int[][][]{DECREASING_RESOLUTIONS,
+                INCREASING_RESOLUTIONS, UNSORTED_RESOLUTIONS}) {
+            assertSizeEqualsResolution(policy.selectPictureSize(toSizesArray(resolutions)),
+                    new int[]{3264, 2448});
+        }
+    }
+
+    @Test
+    public void should_selectSmallestSize_withMinimumArea_ifNo4to3Size_isLargeEnough() {
+        final PictureSizePolicy policy = PictureSizePolicy.minimumArea(
+                PictureSizePolicy.MIN_PICTURE_AREA);
+
+        assertSizeEqualsResolution(policy.selectPictureSize(toSizesArray(new int[][]{
+                {4096, 2304}, {3840, 2160}, {3200, 2400}, {1920, 1080}})), new int[]{3840, 2160});
+    }
+
+    @Test
+    public void should_selectLargestSize_ifNoSize_hasTheMinimumArea() {
+        final PictureSizePolicy policy = PictureSizePolicy.minimumArea(
+                PictureSizePolicy.MIN_PICTURE_AREA);
+
+        assertSizeEqualsResolution(policy.selectPictureSize(toSizesArray(new int[][]{
+                {1920, 1080}, {3200, 2400}, {2592, 1944}})), new int[]{3200, 2400});
+        assertThat(policy.selectPictureSize(new Size[0])).isNull();
+    }
+
+    @Test
+    public void should_selectLargestSize_fittingIntoTheMemoryBudget() {
+        // Given
+        // 3264x2448 needs ~68.6MB, 3840x2160 ~71.2MB
+        final PictureSizePolicy policy = PictureSizePolicy.memoryBudget(
+                createRuntime(140 * 1024 * 1024), 0.5f);
+        // When
+        final Size size = policy.selectPictureSize(toSizesArray(UNSORTED_RESOLUTIONS));
+        // Then
+        assertSizeEqualsResolution(size, new int[]{3264, 2448});
+        assertThat(PictureSizePolicy.getDecodedFootprint(size)).isAtMost(70L * 1024 * 1024);
+    }
+
+    @Test
+    public void should_selectSmallestSize_ifNoSize_fitsIntoTheMemoryBudget() {
+        final PictureSizePolicy policy = PictureSizePolicy.memoryBudget(
+                createRuntime(1024 * 1024), 0.5f);
+
+        assertSizeEqualsResolution(policy.selectPictureSize(toSizesArray(UNSORTED_RESOLUTIONS)),
+                new int[]{800, 600});
+    }
+
+    @Test
+    public void should_selectLargestPreviewSize_notLargerThanThePicture() {
+        final PictureSizePolicy policy = PictureSizePolicy.largest();
+
+        assertSizeEqualsResolution(policy.selectPreviewSize(toSizesArray(UNSORTED_RESOLUTIONS),
+                new Size(2048, 1536)), new int[]{2048, 1536});
+        assertSizeEqualsResolution(policy.selectPreviewSize(toSizesArray(UNSORTED_RESOLUTIONS),
+                new Size(2000, 1500)), new int[]{1600, 1200});
+    }
+
+    @Test
+    public void should_selectLargestPreviewSize_withSimilarAspectRatio_ifAllAreLarger() {
+        final PictureSizePolicy policy = PictureSizePolicy.largest();
+
+        assertSizeEqualsResolution(policy.selectPreviewSize(toSizesArray(new int[][]{
+                {1920, 1080}, {1440, 1080}, {1280, 960}}), new Size(1024, 768)),
+                new int[]{1440, 1080});
+        assertThat(policy.selectPreviewSize(toSizesArray(new int[][]{{1920, 1080}}),
+                new Size(1024, 768))).isNull();
+    }
+
+    private static Runtime createRuntime(final long maxMemory) {
+        final Runtime runtime = mock(Runtime.class);
+        when(runtime.maxMemory()).thenReturn(maxMemory);
+        return runtime;
+    }
+}
@@ -0,0 +1,251 @@
+package net.gini.android.vision.internal.camera.api;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+@RunWith(JUnit4.class)
+public class PreviewFramePipelineTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+    private static final int BUFFER_SIZE = WIDTH * HEIGHT * 3 / 2;
+
+    private QueuedExecutor mWorker;
+    private RecordingRecycler mRecycler;
+    private RecordingProcessor mProcessor;
+    private PreviewFramePipeline mPipeline;
+
+    @Before
+    public void setUp() {
+        mWorker = new QueuedExecutor();
+        mRecycler = new RecordingRecycler();
+        mProcessor = new RecordingProcessor();
+        mPipeline = new PreviewFramePipeline(mWorker);
+        mPipeline.addProcessor(mProcessor);
+    }
+
+    @Test
+    public void should_allocateRingOfBuffers() {
+        // When
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        // Then
+        assertThat(buffers.length).isEqualTo(PreviewFramePipeline.BUFFER_COUNT);
+        for (final byte[] buffer : buffers) {
+            assertThat(buffer.length).isEqualTo(BUFFER_SIZE);
+        }
+    }
+
+    @Test
+    public void should_processSubmittedFrame_onWorker() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        // When
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 42);
+        // Then
+        assertThat(mProcessor.processedData).isEmpty();
+        mWorker.runAll();
+        assertThat(mProcessor.processedData).containsExactly(buffers[0]);
+        assertThat(mProcessor.widths).containsExactly(WIDTH);
+        assertThat(mProcessor.heights).containsExactly(HEIGHT);
+        assertThat(mProcessor.rotations).containsExactly(90);
+        assertThat(mProcessor.timestamps).containsExactly(42L);
+    }
+
+    @Test
+    public void should_recycleBuffer_afterProcessing() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 0);
+        assertThat(mRecycler.recycled).isEmpty();
+        // When
+        mWorker.runAll();
+        // Then
+        assertThat(mRecycler.recycled).containsExactly(buffers[0]);
+    }
+
+    @Test
+    public void should_replaceUnprocessedFrame_withNewerFrame() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 1);
+        // When
+        mPipeline.submit(buffers[1], WIDTH, HEIGHT, 90, 2);
+        // Then
+        assertThat(mRecycler.recycled).containsExactly(buffers[0]);
+        mWorker.runAll();
+        assertThat(mProcessor.processedData).containsExactly(buffers[1]);
+        assertThat(mProcessor.timestamps).containsExactly(2L);
+        assertThat(mPipeline.getProcessedFrameCount()).isEqualTo(1);
+        assertThat(mPipeline.getDroppedFrameCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_scheduleWorkerOnce_whileDraining() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        // When
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 1);
+        mPipeline.submit(buffers[1], WIDTH, HEIGHT, 90, 2);
+        mPipeline.submit(buffers[2], WIDTH, HEIGHT, 90, 3);
+        // Then
+        assertThat(mWorker.tasks).hasSize(1);
+    }
+
+    @Test
+    public void should_processFrameSubmittedDuringProcessing_inSameDrain() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mPipeline.addProcessor(new PreviewFrameProcessor() {
+            @Override
+            public void process(@NonNull final PreviewFrame frame) {
+                if (frame.getData() == buffers[0]) {
+                    mPipeline.submit(buffers[1], WIDTH, HEIGHT, 90, 2);
+                }
+            }
+        });
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 1);
+        // When
+        mWorker.runAll();
+        // Then
+        assertThat(mProcessor.processedData).containsExactly(buffers[0], buffers[1]).inOrder();
+        assertThat(mWorker.executedTasks).isEqualTo(1);
+        assertThat(mPipeline.getDroppedFrameCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_recycleFrame_withoutProcessing_ifThereAreNoProcessors() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mPipeline.removeProcessor(mProcessor);
+        // When
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 0);
+        // Then
+        assertThat(mWorker.tasks).isEmpty();
+        assertThat(mRecycler.recycled).containsExactly(buffers[0]);
+        assertThat(mPipeline.hasProcessors()).isFalse();
+    }
+
+    @Test
+    public void should_notRecycleBuffers_ofPreviousRing() {
+        // Given
+        final byte[][] oldBuffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mPipeline.submit(oldBuffers[0], WIDTH, HEIGHT, 90, 0);
+        // When
+        mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mWorker.runAll();
+        // Then
+        assertThat(mProcessor.processedData).containsExactly(oldBuffers[0]);
+        assertThat(mRecycler.recycled).isEmpty();
+    }
+
+    @Test
+    public void should_notRecycleBuffers_afterRelease() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 0);
+        // When
+        mPipeline.releaseBuffers();
+        mWorker.runAll();
+        // Then
+        assertThat(mRecycler.recycled).isEmpty();
+        assertThat(mPipeline.getRecycler()).isNull();
+    }
+
+    @Test
+    public void should_keepProcessing_ifProcessorThrows() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mPipeline.removeProcessor(mProcessor);
+        mPipeline.addProcessor(new PreviewFrameProcessor() {
+            @Override
+            public void process(@NonNull final PreviewFrame frame) {
+                throw new IllegalStateException("Processor failed");
+            }
+        });
+        mPipeline.addProcessor(mProcessor);
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 0);
+        // When
+        mWorker.runAll();
+        // Then
+        assertThat(mProcessor.processedData).containsExactly(buffers[0]);
+        assertThat(mRecycler.recycled).containsExactly(buffers[0]);
+    }
+
+    @Test
+    public void should_countDroppedFrames_ofSource() {
+        // When
+        mPipeline.countDroppedFrame();
+        // Then
+        assertThat(mPipeline.getDroppedFrameCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_reportNoThroughput_beforeTwoFramesWereProcessed() {
+        // Given
+        final byte[][] buffers = mPipeline.allocateBuffers(BUFFER_SIZE, mRecycler);
+        mPipeline.submit(buffers[0], WIDTH, HEIGHT, 90, 0);
+        // When
+        mWorker.runAll();
+        // Then
+        assertThat(mPipeline.getProcessedFramesPerSecond()).isEqualTo(0f);
+    }
+
+    /**
+     * Runs the tasks only when the test asks for it.
+     */
+    private static class QueuedExecutor implements Executor {
+
+        final List<Runnable> tasks = new ArrayList<>();
+        int executedTasks;
+
+        @Override
+        public void execute(@NonNull final Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+                executedTasks++;
+            }
+        }
+    }
+
+    private static class RecordingRecycler implements PreviewFramePipeline.BufferRecycler {
+
+        final List<byte[]> recycled = new ArrayList<>();
+
+        @Override
+        public void recycle(@NonNull final byte[] buffer) {
+            recycled.add(buffer);
+        }
+    }
+
+    private static class RecordingProcessor implements PreviewFrameProcessor {
+
+        final List<byte[]> processedData = new ArrayList<>();
+        final List<Integer> widths = new ArrayList<>();
+        final List<Integer> heights = new ArrayList<>();
+        final List<Integer> rotations = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+
+        @Override
+        public void process(@NonNull final PreviewFrame frame) {
+            processedData.add(frame.getData());
+            widths.add(frame.getWidth());
+            heights.add(frame.getHeight());
+            rotations.add(frame.getRotation());
+            timestamps.add(frame.getTimestampNanos());
+        }
+    }
+}
@@ -94,6 +94,14 @@ final class Resolutions {
         return sizes;
     }
 
+    static Size[] toSizesArray(final int[][] resolutions) {
+        final Size[] sizes = new Size[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            sizes[i] = toSize(resolutions[i]);
+        }
+        return sizes;
+    }
+
     static Size toSize(int[] resolution) {
         return new Size(resolution[0], resolution[1]);
     }
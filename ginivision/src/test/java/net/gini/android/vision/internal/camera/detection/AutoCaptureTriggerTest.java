@@ -0,0 +1,151 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class AutoCaptureTriggerTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int STABLE_FRAMES = 4;
+    private static final float[] CORNERS = {100, 60, 540, 60, 540, 420, 100, 420};
+    private static final float[] MOVED_CORNERS = {112, 66, 552, 66, 552, 426, 112, 426};
+
+    private static byte[][] sStillFrames;
+    private static byte[] sMovedFrame;
+    private static byte[] sBlurredFrame;
+
+    private AutoCaptureTrigger mTrigger;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() {
+        if (sStillFrames == null) {
+            // Frames of a still camera differ only in their noise
+            sStillFrames = new byte[2][];
+            for (int i = 0; i < sStillFrames.length; i++) {
+                sStillFrames[i] = SyntheticFrames.drawDocument(WIDTH, HEIGHT, CORNERS, 8, true, i);
+            }
+            sMovedFrame = SyntheticFrames.drawDocument(WIDTH, HEIGHT, MOVED_CORNERS, 8, true);
+            sBlurredFrame = SyntheticFrames.blur(sStillFrames[0], WIDTH, HEIGHT, 4);
+        }
+        mTrigger = new AutoCaptureTrigger();
+        mTrigger.setRequiredStableFrames(STABLE_FRAMES);
+        mListener = new RecordingListener();
+        mTrigger.setListener(mListener);
+    }
+
+    private void processStillFrames(final int count) {
+        for (int i = 0; i < count; i++) {
+            mTrigger.process(sStillFrames[i % sStillFrames.length], WIDTH, HEIGHT);
+        }
+    }
+
+    @Test
+    public void should_capture_afterRequiredStableFrames() {
+        // When
+        // The first frame has no motion estimate
+        processStillFrames(STABLE_FRAMES + 1);
+        // Then
+        assertThat(mListener.decisions).hasSize(STABLE_FRAMES + 1);
+        assertThat(mListener.decisions.get(STABLE_FRAMES - 1))
+                .isEqualTo(AutoCaptureTrigger.Decision.STABILIZING);
+        assertThat(mListener.decisions.get(STABLE_FRAMES))
+                .isEqualTo(AutoCaptureTrigger.Decision.CAPTURE);
+        assertThat(mListener.stableFrames.get(STABLE_FRAMES)).isEqualTo(STABLE_FRAMES);
+    }
+
+    @Test
+    public void should_notCapture_blurredFrames() {
+        // When
+        for (int i = 0; i < STABLE_FRAMES + 1; i++) {
+            mTrigger.process(sBlurredFrame, WIDTH, HEIGHT);
+        }
+        // Then
+        assertThat(mListener.decisions).doesNotContain(AutoCaptureTrigger.Decision.CAPTURE);
+        assertThat(mListener.decisions.get(STABLE_FRAMES))
+                .isEqualTo(AutoCaptureTrigger.Decision.NOT_SHARP);
+    }
+
+    @Test
+    public void should_restartCounting_ifCameraMoved() {
+        // Given
+        processStillFrames(STABLE_FRAMES);
+        // When
+        mTrigger.process(sMovedFrame, WIDTH, HEIGHT);
+        mTrigger.process(sStillFrames[0], WIDTH, HEIGHT);
+        // Then
+        assertThat(mListener.decisions.get(STABLE_FRAMES))
+                .isEqualTo(AutoCaptureTrigger.Decision.MOVING);
+        assertThat(mListener.decisions.get(STABLE_FRAMES + 1))
+                .isEqualTo(AutoCaptureTrigger.Decision.MOVING);
+        assertThat(mListener.stableFrames.get(STABLE_FRAMES + 1)).isEqualTo(0);
+    }
+
+    @Test
+    public void should_waitForFocus_ifSharpnessChanges() {
+        // Given
+        processStillFrames(2);
+        // When
+        mTrigger.process(sBlurredFrame, WIDTH, HEIGHT);
+        mTrigger.process(sStillFrames[0], WIDTH, HEIGHT);
+        // Then
+        assertThat(mListener.decisions.get(3)).isEqualTo(AutoCaptureTrigger.Decision.FOCUSING);
+        assertThat(mListener.stableFrames.get(3)).isEqualTo(0);
+    }
+
+    @Test
+    public void should_ignoreFrames_afterCapture_untilArmed() {
+        // Given
+        processStillFrames(STABLE_FRAMES + 1);
+        // When
+        processStillFrames(STABLE_FRAMES + 1);
+        // Then
+        assertThat(mTrigger.isArmed()).isFalse();
+        assertThat(mListener.decisions).hasSize(STABLE_FRAMES + 1);
+    }
+
+    @Test
+    public void should_measureStabilityFromScratch_afterArmed() {
+        // Given
+        processStillFrames(STABLE_FRAMES + 1);
+        // When
+        mTrigger.arm();
+        processStillFrames(STABLE_FRAMES + 1);
+        // Then
+        assertThat(mListener.decisions).hasSize(2 * (STABLE_FRAMES + 1));
+        assertThat(mListener.decisions.get(STABLE_FRAMES + 1))
+                .isEqualTo(AutoCaptureTrigger.Decision.MOVING);
+        assertThat(mListener.decisions.get(2 * STABLE_FRAMES + 1))
+                .isEqualTo(AutoCaptureTrigger.Decision.CAPTURE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_throwException_ifRequiredStableFramesIsLessThanOne() {
+        // When
+        mTrigger.setRequiredStableFrames(0);
+    }
+
+    private static class RecordingListener implements AutoCaptureTrigger.Listener {
+
+        final List<AutoCaptureTrigger.Decision> decisions = new ArrayList<>();
+        final List<Integer> stableFrames = new ArrayList<>();
+
+        @Override
+        public void onDecision(@NonNull final AutoCaptureTrigger.Decision decision,
+                final float sharpness, final float motion, final int stableFrames) {
+            decisions.add(decision);
+            this.stableFrames.add(stableFrames);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DocumentDetectorTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    /**
+     * Relative to the frame, about two working pixels.
+     */
+    private static final float TOLERANCE = 0.015f;
+
+    private DocumentDetector mDetector;
+    private Quadrilateral mResult;
+
+    @Before
+    public void setUp() {
+        mDetector = new DocumentDetector();
+        mResult = new Quadrilateral();
+    }
+
+    @Test
+    public void should_detectUprightDocument() {
+        // Given
+        final float[] corners = {100, 60, 540, 60, 540, 420, 100, 420};
+        final byte[] frame = SyntheticFrames.drawDocument(WIDTH, HEIGHT, corners, 0, false);
+        // When
+        final boolean detected = mDetector.detect(frame, WIDTH, HEIGHT, mResult);
+        // Then
+        assertThat(detected).isTrue();
+        assertCorners(mResult, corners);
+    }
+
+    @Test
+    public void should_detectTiltedDocument_withTextAndNoise() {
+        // Given
+        final float[] corners = {130, 50, 560, 90, 520, 440, 90, 400};
+        final byte[] frame = SyntheticFrames.drawDocument(WIDTH, HEIGHT, corners, 20, true);
+        // When
+        final boolean detected = mDetector.detect(frame, WIDTH, HEIGHT, mResult);
+        // Then
+        assertThat(detected).isTrue();
+        assertCorners(mResult, corners);
+    }
+
+    @Test
+    public void should_detectDocument_inPerspective() {
+        // Given
+        final float[] corners = {170, 70, 470, 70, 560, 430, 80, 430};
+        final byte[] frame = SyntheticFrames.drawDocument(WIDTH, HEIGHT, corners, 10, true);
+        // When
+        final boolean detected = mDetector.detect(frame, WIDTH, HEIGHT, mResult);
+        // Then
+        assertThat(detected).isTrue();
+        assertCorners(mResult, corners);
+    }
+
+    @Test
+    public void should_notDetect_ifThereIsNoDocument() {
+        // Given
+        final byte[] frame = SyntheticFrames.drawNoise(WIDTH, HEIGHT, 20);
+        // When
+        final boolean detected = mDetector.detect(frame, WIDTH, HEIGHT, mResult);
+        // Then
+        assertThat(detected).isFalse();
+    }
+
+    @Test
+    public void should_notDetect_ifDocumentIsTooSmall() {
+        // Given
+        final float[] corners = {270, 190, 370, 190, 370, 290, 270, 290};
+        final byte[] frame = SyntheticFrames.drawDocument(WIDTH, HEIGHT, corners, 0, false);
+        // When
+        final boolean detected = mDetector.detect(frame, WIDTH, HEIGHT, mResult);
+        // Then
+        assertThat(detected).isFalse();
+    }
+
+    @Test
+    public void should_notDetect_ifDocumentIsCutOff() {
+        // Given
+        final float[] corners = {100, -100, 540, -100, 540, 420, 100, 420};
+        final byte[] frame = SyntheticFrames.drawDocument(WIDTH, HEIGHT, corners, 0, false);
+        // When
+        final boolean detected = mDetector.detect(frame, WIDTH, HEIGHT, mResult);
+        // Then
+        assertThat(detected).isFalse();
+    }
+
+    @Test
+    public void should_notDetect_ifFrameIsTooShort() {
+        // When
+        final boolean detected = mDetector.detect(new byte[10], WIDTH, HEIGHT, mResult);
+        // Then
+        assertThat(detected).isFalse();
+    }
+
+    @Test
+    public void should_downscaleToWorkingSize() {
+        // Given
+        final byte[] frame = SyntheticFrames.drawNoise(1920, 1440, 0);
+        // When
+        mDetector.detect(frame, 1920, 1440, mResult);
+        // Then
+        assertThat(mDetector.getWorkingWidth()).isEqualTo(DocumentDetector.MAX_WORKING_SIZE);
+        assertThat(mDetector.getWorkingHeight()).isEqualTo(180);
+    }
+
+    @Test
+    public void should_detectDocument_inFramesOfDifferentSizes() {
+        // Given
+        final float[] corners = {100, 60, 540, 60, 540, 420, 100, 420};
+        final byte[] small = SyntheticFrames.drawDocument(WIDTH, HEIGHT, corners, 0, false);
+        final float[] largeCorners = new float[corners.length];
+        for (int i = 0; i < corners.length; i++) {
+            largeCorners[i] = corners[i] * 2;
+        }
+        final byte[] large = SyntheticFrames.drawDocument(2 * WIDTH, 2 * HEIGHT, largeCorners, 0,
+                false);
+        // When
+        final boolean detectedInSmall = mDetector.detect(small, WIDTH, HEIGHT, mResult);
+        final boolean detectedInLarge = mDetector.detect(large, 2 * WIDTH, 2 * HEIGHT, mResult);
+        // Then
+        assertThat(detectedInSmall).isTrue();
+        assertThat(detectedInLarge).isTrue();
+        assertCorners(mResult, corners);
+    }
+
+    private static void assertCorners(final Quadrilateral quadrilateral, final float[] corners) {
+        for (int corner = 0; corner < 4; corner++) {
+            assertThat(quadrilateral.getX(corner)).isWithin(TOLERANCE).of(
+                    corners[2 * corner] / WIDTH);
+            assertThat(quadrilateral.getY(corner)).isWithin(TOLERANCE).of(
+                    corners[2 * corner + 1] / HEIGHT);
+        }
+    }
+}
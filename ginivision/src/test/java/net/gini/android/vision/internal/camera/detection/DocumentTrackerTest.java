@@ -0,0 +1,148 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class DocumentTrackerTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    private static byte[] sDocumentFrame;
+    private static byte[] sMovedDocumentFrame;
+    private static byte[] sEmptyFrame;
+
+    private DocumentTracker mTracker;
+    private RecordingListener mListener;
+
+    @Before
+    public void setUp() {
+        if (sDocumentFrame == null) {
+            sDocumentFrame = SyntheticFrames.drawDocument(WIDTH, HEIGHT,
+                    new float[]{50, 30, 270, 30, 270, 210, 50, 210}, 0, false);
+            sMovedDocumentFrame = SyntheticFrames.drawDocument(WIDTH, HEIGHT,
+                    new float[]{60, 30, 280, 30, 280, 210, 60, 210}, 0, false);
+            sEmptyFrame = SyntheticFrames.drawNoise(WIDTH, HEIGHT, 0);
+        }
+        mTracker = new DocumentTracker();
+        mListener = new RecordingListener();
+        mTracker.setListener(mListener);
+    }
+
+    @Test
+    public void should_reportDocument_afterConsecutiveDetections() {
+        // When
+        for (int i = 0; i < DocumentTracker.FRAMES_TO_ACQUIRE - 1; i++) {
+            mTracker.process(sDocumentFrame, WIDTH, HEIGHT, 0);
+        }
+        // Then
+        assertThat(mListener.tracked).isEmpty();
+        mTracker.process(sDocumentFrame, WIDTH, HEIGHT, 0);
+        assertThat(mListener.tracked).hasSize(1);
+        assertThat(mTracker.isTracking()).isTrue();
+    }
+
+    @Test
+    public void should_notReportDocument_ifDetectionIsInterrupted() {
+        // When
+        mTracker.process(sDocumentFrame, WIDTH, HEIGHT, 0);
+        mTracker.process(sEmptyFrame, WIDTH, HEIGHT, 0);
+        mTracker.process(sDocumentFrame, WIDTH, HEIGHT, 0);
+        // Then
+        assertThat(mListener.tracked).isEmpty();
+    }
+
+    @Test
+    public void should_keepTracking_ifDocumentIsMissedInFewFrames() {
+        // Given
+        acquireDocument();
+        // When
+        for (int i = 0; i < DocumentTracker.FRAMES_TO_LOSE - 1; i++) {
+            mTracker.process(sEmptyFrame, WIDTH, HEIGHT, 0);
+        }
+        mTracker.process(sDocumentFrame, WIDTH, HEIGHT, 0);
+        // Then
+        assertThat(mListener.lostCount).isEqualTo(0);
+        assertThat(mTracker.isTracking()).isTrue();
+        assertThat(mListener.tracked).hasSize(DocumentTracker.FRAMES_TO_ACQUIRE);
+    }
+
+    @Test
+    public void should_reportLostDocument_afterConsecutiveMisses() {
+        // Given
+        acquireDocument();
+        // When
+        for (int i = 0; i < DocumentTracker.FRAMES_TO_LOSE; i++) {
+            mTracker.process(sEmptyFrame, WIDTH, HEIGHT, 0);
+        }
+        // Then
+        assertThat(mListener.lostCount).isEqualTo(1);
+        assertThat(mTracker.isTracking()).isFalse();
+    }
+
+    @Test
+    public void should_smoothSmallMovements() {
+        // Given
+        acquireDocument();
+        final Quadrilateral before = mListener.tracked.get(mListener.tracked.size() - 1);
+        // When
+        mTracker.process(sMovedDocumentFrame, WIDTH, HEIGHT, 0);
+        // Then
+        final Quadrilateral after = mListener.tracked.get(mListener.tracked.size() - 1);
+        // Moved by 10 of 320 pixels, half of it after smoothing
+        final float movement = after.getX(Quadrilateral.TOP_LEFT)
+                - before.getX(Quadrilateral.TOP_LEFT);
+        assertThat(movement).isWithin(0.01f).of(5f / WIDTH);
+    }
+
+    @Test
+    public void should_rotateDocument_toPortrait() {
+        // When
+        acquireDocument(90);
+        // Then
+        final Quadrilateral tracked = mListener.tracked.get(0);
+        // The frame's bottom left corner (50, 210) is the top left corner in portrait
+        assertThat(tracked.getX(Quadrilateral.TOP_LEFT)).isWithin(0.02f).of(
+                1 - 210f / HEIGHT);
+        assertThat(tracked.getY(Quadrilateral.TOP_LEFT)).isWithin(0.02f).of(50f / WIDTH);
+    }
+
+    private void acquireDocument() {
+        acquireDocument(0);
+    }
+
+    private void acquireDocument(final int rotation) {
+        for (int i = 0; i < DocumentTracker.FRAMES_TO_ACQUIRE; i++) {
+            mTracker.process(sDocumentFrame, WIDTH, HEIGHT, rotation);
+        }
+    }
+
+    private static class RecordingListener implements DocumentTracker.Listener {
+
+        final List<Quadrilateral> tracked = new ArrayList<>();
+        int lostCount;
+
+        @Override
+        public void onDocumentTracked(@NonNull final Quadrilateral document) {
+            // The tracker reuses the quadrilateral
+            final Quadrilateral copy = new Quadrilateral();
+            copy.set(document);
+            tracked.add(copy);
+        }
+
+        @Override
+        public void onDocumentLost() {
+            lostCount++;
+        }
+    }
+}
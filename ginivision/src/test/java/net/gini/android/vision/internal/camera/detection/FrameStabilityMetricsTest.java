@@ -0,0 +1,100 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FrameStabilityMetricsTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final float[] CORNERS = {100, 60, 540, 60, 540, 420, 100, 420};
+    private static final float[] MOVED_CORNERS = {112, 66, 552, 66, 552, 426, 112, 426};
+
+    private FrameStabilityMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mMetrics = new FrameStabilityMetrics();
+    }
+
+    @Test
+    public void should_measureLowerSharpness_forBlurredFrame() {
+        // Given
+        final byte[] sharp = SyntheticFrames.drawDocument(WIDTH, HEIGHT, CORNERS, 8, true);
+        final byte[] blurred = SyntheticFrames.blur(sharp, WIDTH, HEIGHT, 4);
+        // When
+        mMetrics.measure(sharp, WIDTH, HEIGHT);
+        final float sharpSharpness = mMetrics.getSharpness();
+        mMetrics.measure(blurred, WIDTH, HEIGHT);
+        final float blurredSharpness = mMetrics.getSharpness();
+        // Then
+        assertThat(sharpSharpness).isGreaterThan(AutoCaptureTrigger.MIN_SHARPNESS);
+        assertThat(blurredSharpness).isLessThan(AutoCaptureTrigger.MIN_SHARPNESS);
+    }
+
+    @Test
+    public void should_haveNoMotion_forFirstFrame() {
+        // When
+        mMetrics.measure(SyntheticFrames.drawDocument(WIDTH, HEIGHT, CORNERS, 8, true), WIDTH,
+                HEIGHT);
+        // Then
+        assertThat(Float.isNaN(mMetrics.getMotion())).isTrue();
+    }
+
+    @Test
+    public void should_measureLowMotion_ifOnlyNoiseChanged() {
+        // When
+        mMetrics.measure(SyntheticFrames.drawDocument(WIDTH, HEIGHT, CORNERS, 8, true, 1), WIDTH,
+                HEIGHT);
+        mMetrics.measure(SyntheticFrames.drawDocument(WIDTH, HEIGHT, CORNERS, 8, true, 2), WIDTH,
+                HEIGHT);
+        // Then
+        assertThat(mMetrics.getMotion()).isLessThan(AutoCaptureTrigger.MAX_MOTION);
+    }
+
+    @Test
+    public void should_measureHighMotion_ifDocumentMoved() {
+        // When
+        mMetrics.measure(SyntheticFrames.drawDocument(WIDTH, HEIGHT, CORNERS, 8, true, 1), WIDTH,
+                HEIGHT);
+        mMetrics.measure(SyntheticFrames.drawDocument(WIDTH, HEIGHT, MOVED_CORNERS, 8, true, 2),
+                WIDTH, HEIGHT);
+        // Then
+        assertThat(mMetrics.getMotion()).isGreaterThan(AutoCaptureTrigger.MAX_MOTION);
+    }
+
+    @Test
+    public void should_forgetPreviousFrame_afterReset() {
+        // Given
+        final byte[] frame = SyntheticFrames.drawDocument(WIDTH, HEIGHT, CORNERS, 8, true);
+        mMetrics.measure(frame, WIDTH, HEIGHT);
+        // When
+        mMetrics.reset();
+        mMetrics.measure(frame, WIDTH, HEIGHT);
+        // Then
+        assertThat(Float.isNaN(mMetrics.getMotion())).isTrue();
+    }
+
+    @Test
+    public void should_forgetPreviousFrame_ifFrameSizeChanged() {
+        // Given
+        mMetrics.measure(SyntheticFrames.drawDocument(WIDTH, HEIGHT, CORNERS, 8, true), WIDTH,
+                HEIGHT);
+        // When
+        mMetrics.measure(SyntheticFrames.drawDocument(320, 240, CORNERS, 8, true), 320, 240);
+        // Then
+        assertThat(Float.isNaN(mMetrics.getMotion())).isTrue();
+    }
+
+    @Test
+    public void should_notMeasure_invalidFrame() {
+        // Then
+        assertThat(mMetrics.measure(new byte[10], WIDTH, HEIGHT)).isFalse();
+        assertThat(mMetrics.measure(new byte[10], 0, 0)).isFalse();
+    }
+}
@@ -0,0 +1,100 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class QuadrilateralTest {
+
+    private static final float TOLERANCE = 1e-5f;
+
+    @Test
+    public void should_rotateClockwise_andKeepCornerOrder() {
+        // Given
+        final Quadrilateral quadrilateral = createQuadrilateral(0.1f, 0.2f, 0.8f, 0.1f, 0.9f, 0.7f,
+                0.2f, 0.9f);
+        // When
+        quadrilateral.rotate(90);
+        // Then
+        // The bottom left corner (0.2, 0.9) becomes the top left one
+        assertCorner(quadrilateral, Quadrilateral.TOP_LEFT, 0.1f, 0.2f);
+        assertCorner(quadrilateral, Quadrilateral.TOP_RIGHT, 0.8f, 0.1f);
+        assertCorner(quadrilateral, Quadrilateral.BOTTOM_RIGHT, 0.9f, 0.8f);
+        assertCorner(quadrilateral, Quadrilateral.BOTTOM_LEFT, 0.3f, 0.9f);
+    }
+
+    @Test
+    public void should_returnToOriginal_afterFullRotation() {
+        // Given
+        final Quadrilateral original = createQuadrilateral(0.1f, 0.2f, 0.8f, 0.1f, 0.9f, 0.7f,
+                0.2f, 0.9f);
+        final Quadrilateral quadrilateral = new Quadrilateral();
+        quadrilateral.set(original);
+        // When
+        quadrilateral.rotate(90);
+        quadrilateral.rotate(270);
+        // Then
+        assertThat(quadrilateral.maxCornerDistance(original)).isWithin(TOLERANCE).of(0);
+    }
+
+    @Test
+    public void should_notChange_whenRotatedByZeroDegrees() {
+        // Given
+        final Quadrilateral quadrilateral = createQuadrilateral(0.1f, 0.2f, 0.8f, 0.1f, 0.9f, 0.7f,
+                0.2f, 0.9f);
+        final Quadrilateral original = new Quadrilateral();
+        original.set(quadrilateral);
+        // When
+        quadrilateral.rotate(0);
+        // Then
+        assertThat(quadrilateral).isEqualTo(original);
+    }
+
+    @Test
+    public void should_calculateArea() {
+        // Given
+        final Quadrilateral quadrilateral = createQuadrilateral(0.25f, 0.25f, 0.75f, 0.25f, 0.75f,
+                0.75f, 0.25f, 0.75f);
+        // Then
+        assertThat(quadrilateral.area()).isWithin(TOLERANCE).of(0.25f);
+    }
+
+    @Test
+    public void should_interpolateCorners() {
+        // Given
+        final Quadrilateral quadrilateral = createQuadrilateral(0, 0, 1, 0, 1, 1, 0, 1);
+        final Quadrilateral target = createQuadrilateral(0.2f, 0.2f, 0.8f, 0.2f, 0.8f, 0.8f,
+                0.2f, 0.8f);
+        // When
+        quadrilateral.interpolate(target, 0.5f);
+        // Then
+        assertCorner(quadrilateral, Quadrilateral.TOP_LEFT, 0.1f, 0.1f);
+        assertCorner(quadrilateral, Quadrilateral.BOTTOM_RIGHT, 0.9f, 0.9f);
+    }
+
+    @Test
+    public void should_returnLargestCornerDistance() {
+        // Given
+        final Quadrilateral quadrilateral = createQuadrilateral(0, 0, 1, 0, 1, 1, 0, 1);
+        final Quadrilateral other = createQuadrilateral(0, 0, 1, 0, 0.7f, 0.6f, 0, 1);
+        // Then
+        assertThat(quadrilateral.maxCornerDistance(other)).isWithin(TOLERANCE).of(0.5f);
+    }
+
+    static Quadrilateral createQuadrilateral(final float... corners) {
+        final Quadrilateral quadrilateral = new Quadrilateral();
+        for (int corner = 0; corner < 4; corner++) {
+            quadrilateral.setCorner(corner, corners[2 * corner], corners[2 * corner + 1]);
+        }
+        return quadrilateral;
+    }
+
+    private static void assertCorner(final Quadrilateral quadrilateral, final int corner,
+            final float x, final float y) {
+        assertThat(quadrilateral.getX(corner)).isWithin(TOLERANCE).of(x);
+        assertThat(quadrilateral.getY(corner)).isWithin(TOLERANCE).of(y);
+    }
+}
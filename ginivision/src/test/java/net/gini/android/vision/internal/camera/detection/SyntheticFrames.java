@@ -0,0 +1,133 @@
+package net.gini.android.vision.internal.camera.detection;
+
+import java.util.Random;
+
+/**
+ * Draws luminance planes with a bright document on a darker background.
+ */
+final class SyntheticFrames {
+
+    static final int BACKGROUND = 60;
+    static final int PAPER = 210;
+    static final int TEXT = 40;
+
+    /**
+     * @param corners the document's corners in pixels, clockwise from the top left: x0, y0, x1,
+     *                y1, ...
+     * @param noise   the amplitude of the sensor noise
+     */
+    static byte[] drawDocument(final int width, final int height, final float[] corners,
+            final int noise, final boolean withText) {
+        return drawDocument(width, height, corners, noise, withText, 42);
+    }
+
+    /**
+     * @param seed the seed of the sensor noise, frames with different seeds differ only in their
+     *             noise
+     */
+    static byte[] drawDocument(final int width, final int height, final float[] corners,
+            final int noise, final boolean withText, final long seed) {
+        final byte[] luminance = new byte[width * height * 3 / 2];
+        final Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = BACKGROUND;
+                if (isInside(x + 0.5f, y + 0.5f, corners)) {
+                    value = PAPER;
+                    if (withText && isText(x, y, corners)) {
+                        value = TEXT;
+                    }
+                }
+                if (noise > 0) {
+                    value += random.nextInt(2 * noise + 1) - noise;
+                }
+                luminance[y * width + x] = (byte) Math.max(0, Math.min(255, value));
+            }
+        }
+        return luminance;
+    }
+
+    static byte[] drawNoise(final int width, final int height, final int noise) {
+        final byte[] luminance = new byte[width * height * 3 / 2];
+        final Random random = new Random(42);
+        for (int i = 0; i < width * height; i++) {
+            luminance[i] = (byte) (128 + random.nextInt(2 * noise + 1) - noise);
+        }
+        return luminance;
+    }
+
+    /**
+     * Box blur with a (2 * radius + 1) pixel wide kernel, applied horizontally and vertically.
+     */
+    static byte[] blur(final byte[] luminance, final int width, final int height,
+            final int radius) {
+        final byte[] horizontal = new byte[luminance.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int dx = -radius; dx <= radius; dx++) {
+                    if (x + dx >= 0 && x + dx < width) {
+                        sum += luminance[y * width + x + dx] & 0xFF;
+                        count++;
+                    }
+                }
+                horizontal[y * width + x] = (byte) (sum / count);
+            }
+        }
+        final byte[] blurred = new byte[luminance.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int dy = -radius; dy <= radius; dy++) {
+                    if (y + dy >= 0 && y + dy < height) {
+                        sum += horizontal[(y + dy) * width + x] & 0xFF;
+                        count++;
+                    }
+                }
+                blurred[y * width + x] = (byte) (sum / count);
+            }
+        }
+        return blurred;
+    }
+
+    private static boolean isInside(final float x, final float y, final float[] corners) {
+        for (int i = 0; i < 4; i++) {
+            final int next = (i + 1) % 4;
+            final float cross = (corners[2 * next] - corners[2 * i]) * (y - corners[2 * i + 1])
+                    - (corners[2 * next + 1] - corners[2 * i + 1]) * (x - corners[2 * i]);
+            if (cross < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Text lines in the inner part of the document's bounding box.
+     */
+    private static boolean isText(final int x, final int y, final float[] corners) {
+        float minX = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            minX = Math.min(minX, corners[2 * i]);
+            maxX = Math.max(maxX, corners[2 * i]);
+            minY = Math.min(minY, corners[2 * i + 1]);
+            maxY = Math.max(maxY, corners[2 * i + 1]);
+        }
+        final float marginX = (maxX - minX) * 0.2f;
+        final float marginY = (maxY - minY) * 0.2f;
+        if (x < minX + marginX || x > maxX - marginX || y < minY + marginY
+                || y > maxY - marginY) {
+            return false;
+        }
+        // 4 pixel high lines every 16 pixels with gaps between the words
+        return (y % 16) < 4 && (x % 24) < 18;
+    }
+
+    private SyntheticFrames() {
+    }
+}
@@ -0,0 +1,153 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.internal.camera.photo.TestJpegs.getTestJpeg;
+
+import static org.apache.commons.imaging.Imaging.getMetadata;
+
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffField;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Compares the tags read from the EXIF segment with the tags found by commons-imaging.
+ */
+@RunWith(JUnit4.class)
+public class ExifReader_TagsTest {
+
+    private static final String USER_COMMENT = "Platform=Android,OSVer=7.0,"
+            + "ContentId=21e5bc66-ee46-4ec4-93db-16bd553561bf,RotDeltaDeg=90";
+
+    @Test
+    public void should_readRequiredTags_likeCommonsImaging() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final JpegImageMetadata metadata = (JpegImageMetadata) getMetadata(jpeg);
+        // When
+        final Exif.RequiredTags requiredTags = ExifReader.readRequiredTags(jpeg);
+        // Then
+        assertSameField(requiredTags.make, metadata, TiffTagConstants.TIFF_TAG_MAKE);
+        assertSameField(requiredTags.model, metadata, TiffTagConstants.TIFF_TAG_MODEL);
+        assertSameField(requiredTags.iso, metadata, ExifTagConstants.EXIF_TAG_ISO);
+        assertSameField(requiredTags.exposure, metadata, ExifTagConstants.EXIF_TAG_EXPOSURE_TIME);
+        assertSameField(requiredTags.aperture, metadata, ExifTagConstants.EXIF_TAG_APERTURE_VALUE);
+        assertSameField(requiredTags.flash, metadata, ExifTagConstants.EXIF_TAG_FLASH);
+        assertSameField(requiredTags.compressedBitsPerPixel, metadata,
+                ExifTagConstants.EXIF_TAG_COMPRESSED_BITS_PER_PIXEL);
+    }
+
+    @Test
+    public void should_readRequiredTags_writtenByExifBuilder() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final Exif.RequiredTags requiredTags = ExifReader.readRequiredTags(jpeg);
+        // When
+        final byte[] processedJpeg = Exif.builder(ByteOrder.LITTLE_ENDIAN)
+                .setRequiredTags(requiredTags)
+                .setUserComment(USER_COMMENT)
+                .build()
+                .writeToJpeg(jpeg);
+        // Then
+        final JpegImageMetadata metadata = (JpegImageMetadata) getMetadata(processedJpeg);
+        final Exif.RequiredTags processedTags = ExifReader.readRequiredTags(processedJpeg);
+        assertSameField(processedTags.make, metadata, TiffTagConstants.TIFF_TAG_MAKE);
+        assertSameField(processedTags.model, metadata, TiffTagConstants.TIFF_TAG_MODEL);
+        assertSameField(processedTags.exposure, metadata, ExifTagConstants.EXIF_TAG_EXPOSURE_TIME);
+        assertSameField(processedTags.flash, metadata, ExifTagConstants.EXIF_TAG_FLASH);
+        assertThat(processedTags.make.getByteOrder()).isEqualTo(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void should_returnEmptyRequiredTags_ifJpeg_hadNoExif() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg("remslip-no-metadata.jpeg");
+        // When
+        final Exif.RequiredTags requiredTags = ExifReader.readRequiredTags(jpeg);
+        // Then
+        assertThat(requiredTags.make).isNull();
+        assertThat(requiredTags.model).isNull();
+        assertThat(requiredTags.iso).isNull();
+        assertThat(requiredTags.exposure).isNull();
+        assertThat(requiredTags.aperture).isNull();
+        assertThat(requiredTags.flash).isNull();
+        assertThat(requiredTags.compressedBitsPerPixel).isNull();
+    }
+
+    @Test
+    public void should_readUserComment_andParseItOnce() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final byte[] processedJpeg = Exif.builder(jpeg)
+                .setUserComment(USER_COMMENT)
+                .build()
+                .writeToJpeg(jpeg);
+        final ExifReader exifReader = ExifReader.forJpeg(processedJpeg);
+        // When
+        final UserComment userComment = exifReader.getParsedUserComment();
+        // Then
+        assertThat(exifReader.getUserComment()).isEqualTo(USER_COMMENT);
+        assertThat(userComment.getContentId()).isEqualTo("21e5bc66-ee46-4ec4-93db-16bd553561bf");
+        assertThat(userComment.getRotationDelta()).isEqualTo(90);
+        assertThat(exifReader.getParsedUserComment()).isSameAs(userComment);
+    }
+
+    @Test
+    public void should_readUserComment_likeCommonsImaging() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final byte[] processedJpeg = Exif.builder(jpeg)
+                .setUserComment(USER_COMMENT)
+                .build()
+                .writeToJpeg(jpeg);
+        final JpegImageMetadata metadata = (JpegImageMetadata) getMetadata(processedJpeg);
+        final byte[] rawUserComment = metadata.findEXIFValue(
+                ExifTagConstants.EXIF_TAG_USER_COMMENT).getByteArrayValue();
+        // When
+        final String userComment = ExifReader.forJpeg(processedJpeg).getUserComment();
+        // Then
+        assertThat(userComment).isEqualTo(
+                new String(Arrays.copyOfRange(rawUserComment, 8, rawUserComment.length),
+                        "US-ASCII"));
+    }
+
+    @Test(expected = ExifReaderException.class)
+    public void should_throwException_ifUserComment_wasMissing() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final byte[] processedJpeg = Exif.builder(jpeg)
+                .setOrientationFromDegrees(90)
+                .build()
+                .writeToJpeg(jpeg);
+        // When
+        ExifReader.forJpeg(processedJpeg).getUserComment();
+    }
+
+    @Test(expected = ExifReaderException.class)
+    public void should_throwException_ifJpeg_hadNoExif() throws Exception {
+        ExifReader.forJpeg(getTestJpeg("remslip-no-metadata.jpeg"));
+    }
+
+    private static void assertSameField(final TiffField field,
+            final JpegImageMetadata metadata, final TagInfo tagInfo) throws Exception {
+        final TiffField expected = metadata.findEXIFValue(tagInfo);
+        if (expected == null) {
+            assertThat(field).isNull();
+            return;
+        }
+        assertThat(field).isNotNull();
+        assertThat(field.getTagInfo()).isEqualTo(expected.getTagInfo());
+        assertThat(field.getFieldType()).isEqualTo(expected.getFieldType());
+        assertThat(field.getCount()).isEqualTo(expected.getCount());
+        assertThat(field.getByteArrayValue()).isEqualTo(expected.getByteArrayValue());
+        assertThat(field.getValueDescription()).isEqualTo(expected.getValueDescription());
+    }
+}
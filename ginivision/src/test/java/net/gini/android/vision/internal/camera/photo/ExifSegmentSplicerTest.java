@@ -0,0 +1,167 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.internal.camera.photo.TestJpegs.getTestJpeg;
+
+import static org.apache.commons.imaging.Imaging.getMetadata;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffField;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+@RunWith(JUnit4.class)
+public class ExifSegmentSplicerTest {
+
+    @Test
+    public void should_replaceExifSegment() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(jpeg);
+        // When
+        final byte[] spliced = splicer.splice(createTiff(splicer, "replaced"));
+        // Then
+        assertThat(splicer.hasExifSegment()).isTrue();
+        assertThat(readUserComment(spliced)).isEqualTo("replaced");
+    }
+
+    @Test
+    public void should_insertExifSegment_ifJpeg_hadNone() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg("remslip-no-metadata.jpeg");
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(jpeg);
+        // When
+        final byte[] spliced = splicer.splice(createTiff(splicer, "inserted"));
+        // Then
+        assertThat(splicer.hasExifSegment()).isFalse();
+        assertThat(readUserComment(spliced)).isEqualTo("inserted");
+        // Inserted right after SOI
+        assertThat(spliced[2] & 0xFF).isEqualTo(0xFF);
+        assertThat(spliced[3] & 0xFF).isEqualTo(0xE1);
+    }
+
+    @Test
+    public void should_keepOtherSegments_andScanData_untouched() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(jpeg);
+        final int oldExifSegmentLength = 2 + 1594;
+        final byte[] tiff = createTiff(splicer, "comment");
+        // When
+        final byte[] spliced = splicer.splice(tiff);
+        // Then
+        assertThat(spliced.length).isEqualTo(splicer.getSplicedLength(tiff));
+        final int newExifSegmentLength = 2 + 2 + 6 + tiff.length;
+        // Everything after the exif segment (including the XMP APP1 segment) is unchanged
+        final int oldRemainderOffset = 2 + 2 + 16 + oldExifSegmentLength;
+        final int newRemainderOffset = 2 + 2 + 16 + newExifSegmentLength;
+        assertThat(Arrays.copyOfRange(spliced, newRemainderOffset, spliced.length))
+                .isEqualTo(Arrays.copyOfRange(jpeg, oldRemainderOffset, jpeg.length));
+        // SOI and APP0 are unchanged
+        assertThat(Arrays.copyOfRange(spliced, 0, 2 + 2 + 16))
+                .isEqualTo(Arrays.copyOfRange(jpeg, 0, 2 + 2 + 16));
+    }
+
+    @Test
+    public void should_writeSameBytes_toStream_andToArray() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(jpeg);
+        final byte[] tiff = createTiff(splicer, "comment");
+        // When
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        splicer.splice(tiff, outputStream);
+        // Then
+        assertThat(outputStream.toByteArray()).isEqualTo(splicer.splice(tiff));
+    }
+
+    @Test
+    public void should_writeSameExif_asExifWriteToJpeg() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(jpeg);
+        // When
+        final byte[] spliced = splicer.splice(createTiff(splicer, "ContentId=splicer"));
+        final byte[] rewritten = Exif.builder(jpeg)
+                .setUserComment("ContentId=splicer")
+                .setOrientationFromDegrees(90)
+                .build()
+                .writeToJpeg(jpeg);
+        // Then
+        assertThat(readUserComment(spliced)).isEqualTo(readUserComment(rewritten));
+        assertThat(readOrientation(spliced)).isEqualTo(readOrientation(rewritten));
+    }
+
+    @Test
+    public void should_readByteOrder_fromTiffHeader() throws Exception {
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(getTestJpeg());
+        final JpegImageMetadata metadata = (JpegImageMetadata) getMetadata(getTestJpeg());
+
+        assertThat(splicer.getByteOrder(ByteOrder.nativeOrder()))
+                .isEqualTo(metadata.getExif().getOutputSet().byteOrder);
+    }
+
+    @Test
+    public void should_returnDefaultByteOrder_ifJpeg_hadNoExif() throws Exception {
+        final ExifSegmentSplicer splicer = ExifSegmentSplicer.forJpeg(
+                getTestJpeg("remslip-no-metadata.jpeg"));
+
+        assertThat(splicer.getByteOrder(ByteOrder.LITTLE_ENDIAN))
+                .isEqualTo(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void should_throwException_ifByteArray_wasNotJpeg() throws Exception {
+        ImageReadException exception = null;
+        try {
+            ExifSegmentSplicer.forJpeg(new byte[]{0x00, 0x01, 0x02, 0x03, 0x04});
+        } catch (ImageReadException e) {
+            exception = e;
+        }
+        assertThat(exception).isNotNull();
+    }
+
+    @Test
+    public void should_throwException_ifSegment_wasTruncated() throws Exception {
+        final byte[] jpeg = Arrays.copyOfRange(getTestJpeg(), 0, 100);
+        ImageReadException exception = null;
+        try {
+            ExifSegmentSplicer.forJpeg(jpeg);
+        } catch (ImageReadException e) {
+            exception = e;
+        }
+        assertThat(exception).isNotNull();
+    }
+
+    private static byte[] createTiff(final ExifSegmentSplicer splicer, final String userComment)
+            throws Exception {
+        return Exif.builder(splicer.getByteOrder(TiffConstants.DEFAULT_TIFF_BYTE_ORDER))
+                .setUserComment(userComment)
+                .setOrientationFromDegrees(90)
+                .build()
+                .toTiff();
+    }
+
+    private static String readUserComment(final byte[] jpeg) throws Exception {
+        final JpegImageMetadata metadata = (JpegImageMetadata) getMetadata(jpeg);
+        final TiffField userComment = metadata.findEXIFValue(
+                ExifTagConstants.EXIF_TAG_USER_COMMENT);
+        final byte[] rawUserComment = userComment.getByteArrayValue();
+        return new String(Arrays.copyOfRange(rawUserComment, 8, rawUserComment.length), "US-ASCII");
+    }
+
+    private static int readOrientation(final byte[] jpeg) throws Exception {
+        final JpegImageMetadata metadata = (JpegImageMetadata) getMetadata(jpeg);
+        return metadata.findEXIFValue(TiffTagConstants.TIFF_TAG_ORIENTATION).getIntValue();
+    }
+}
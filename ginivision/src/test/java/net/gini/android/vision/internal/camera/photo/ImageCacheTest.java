@@ -0,0 +1,422 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class ImageCacheTest {
+
+    private static final Executor SYNCHRONOUS_EXECUTOR = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private ImageCache mImageCache;
+    private File mSpillDirectory;
+    private ScheduledExecutorService mLeakCheckExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        mImageCache = ImageCache.getInstance();
+        mSpillDirectory = mTemporaryFolder.newFolder("spill");
+        mImageCache.setSpillExecutor(SYNCHRONOUS_EXECUTOR);
+        mLeakCheckExecutor = mock(ScheduledExecutorService.class);
+        mImageCache.setLeakCheckExecutor(mLeakCheckExecutor);
+        mImageCache.setSpillDirectory(mSpillDirectory);
+        mImageCache.setMaxMemoryBytes(250);
+        mImageCache.setMaxDiskBytes(1000);
+        mImageCache.setLeakTimeoutMillis(60000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mImageCache.clear();
+        mImageCache.setLeakListener(null);
+        mImageCache.setSpillDirectory(null);
+        mImageCache.setSpillExecutor(null);
+        mImageCache.setLeakCheckExecutor(null);
+        mImageCache.setMaxMemoryBytes(Runtime.getRuntime().maxMemory() / 8);
+        mImageCache.setMaxDiskBytes(64 * 1024 * 1024);
+        mImageCache.setLeakTimeoutMillis(5 * 60 * 1000);
+    }
+
+    @Test
+    public void should_returnStoredJpeg() {
+        // Given
+        final byte[] jpeg = createJpeg(100, 1);
+        // When
+        final ImageCache.Token token = mImageCache.storeJpeg(jpeg);
+        // Then
+        assertThat(mImageCache.getJpeg(token)).isSameAs(jpeg);
+        assertThat(mImageCache.getMemoryBytes()).isEqualTo(100);
+    }
+
+    @Test
+    public void should_spillLeastRecentlyUsedJpeg_whenMemoryBudget_isExceeded() {
+        // Given
+        final byte[] first = createJpeg(100, 1);
+        final ImageCache.Token firstToken = mImageCache.storeJpeg(first);
+        final ImageCache.Token secondToken = mImageCache.storeJpeg(createJpeg(100, 2));
+        // When
+        final ImageCache.Token thirdToken = mImageCache.storeJpeg(createJpeg(100, 3));
+        // Then
+        assertThat(mImageCache.isInMemory(firstToken)).isFalse();
+        assertThat(mImageCache.isInMemory(secondToken)).isTrue();
+        assertThat(mImageCache.isInMemory(thirdToken)).isTrue();
+        assertThat(mImageCache.getMemoryBytes()).isEqualTo(200);
+        assertThat(mImageCache.getDiskBytes()).isEqualTo(100);
+        assertThat(Arrays.equals(mImageCache.getJpeg(firstToken), first)).isTrue();
+    }
+
+    @Test
+    public void should_keepRecentlyReadJpegs_inMemory() {
+        // Given
+        final ImageCache.Token firstToken = mImageCache.storeJpeg(createJpeg(100, 1));
+        final ImageCache.Token secondToken = mImageCache.storeJpeg(createJpeg(100, 2));
+        mImageCache.getJpeg(firstToken);
+        // When
+        mImageCache.storeJpeg(createJpeg(100, 3));
+        // Then
+        assertThat(mImageCache.isInMemory(firstToken)).isTrue();
+        assertThat(mImageCache.isInMemory(secondToken)).isFalse();
+    }
+
+    @Test
+    public void should_storeSameJpeg_onlyOnce() {
+        // Given
+        final byte[] jpeg = createJpeg(100, 1);
+        // When
+        final ImageCache.Token firstToken = mImageCache.storeJpeg(jpeg);
+        final ImageCache.Token secondToken = mImageCache.storeJpeg(jpeg);
+        // Then
+        assertThat(secondToken).isNotEqualTo(firstToken);
+        assertThat(mImageCache.getStoredImageCount()).isEqualTo(1);
+        assertThat(mImageCache.getMemoryBytes()).isEqualTo(100);
+        assertThat(mImageCache.getJpeg(secondToken)).isSameAs(jpeg);
+    }
+
+    @Test
+    public void should_keepJpeg_untilLastTokenIsReleased() {
+        // Given
+        final byte[] jpeg = createJpeg(100, 1);
+        final ImageCache.Token firstToken = mImageCache.storeJpeg(jpeg);
+        final ImageCache.Token secondToken = mImageCache.storeJpeg(jpeg);
+        // When
+        mImageCache.release(firstToken);
+        mImageCache.release(firstToken);
+        // Then
+        assertThat(mImageCache.getJpeg(firstToken)).isNull();
+        assertThat(mImageCache.getJpeg(secondToken)).isSameAs(jpeg);
+        // When
+        mImageCache.release(secondToken);
+        // Then
+        assertThat(mImageCache.getStoredImageCount()).isEqualTo(0);
+        assertThat(mImageCache.getTokenCount()).isEqualTo(0);
+        assertThat(mImageCache.getMemoryBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_keepMemoryFlat_whenParcellingRepeatedly() {
+        // Given
+        final byte[] jpeg = createJpeg(100, 1);
+        // When
+        for (int i = 0; i < 10; i++) {
+            mImageCache.storeJpeg(jpeg);
+        }
+        // Then
+        assertThat(mImageCache.getStoredImageCount()).isEqualTo(1);
+        assertThat(mImageCache.getMemoryBytes()).isEqualTo(100);
+        assertThat(mImageCache.getDiskBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_reuseSpilledJpeg_whenStoredAgain() {
+        // Given
+        final byte[] jpeg = createJpeg(300, 1);
+        final ImageCache.Token firstToken = mImageCache.storeJpeg(jpeg);
+        assertThat(mImageCache.isInMemory(firstToken)).isFalse();
+        // When
+        final ImageCache.Token secondToken = mImageCache.storeJpeg(jpeg);
+        // Then
+        assertThat(mImageCache.getStoredImageCount()).isEqualTo(1);
+        assertThat(mImageCache.getDiskBytes()).isEqualTo(300);
+        assertThat(mSpillDirectory.list()).hasLength(1);
+        assertThat(mImageCache.getJpeg(secondToken)).isEqualTo(jpeg);
+    }
+
+    @Test
+    public void should_deleteSpillFile_whenJpeg_isRemoved() {
+        // Given
+        final ImageCache.Token token = mImageCache.storeJpeg(createJpeg(300, 1));
+        assertThat(mSpillDirectory.list()).hasLength(1);
+        // When
+        mImageCache.removeJpeg(token);
+        // Then
+        assertThat(mSpillDirectory.list()).hasLength(0);
+        assertThat(mImageCache.getDiskBytes()).isEqualTo(0);
+        assertThat(mImageCache.getJpeg(token)).isNull();
+    }
+
+    @Test
+    public void should_mapSpilledJpeg_withoutCopying() {
+        // Given
+        final byte[] jpeg = createJpeg(300, 1);
+        final ImageCache.Token token = mImageCache.storeJpeg(jpeg);
+        // When
+        final ByteBuffer buffer = mImageCache.getJpegBuffer(token);
+        mImageCache.removeJpeg(token);
+        // Then
+        assertThat(buffer).isInstanceOf(MappedByteBuffer.class);
+        final byte[] mapped = new byte[buffer.remaining()];
+        buffer.get(mapped);
+        assertThat(mapped).isEqualTo(jpeg);
+    }
+
+    @Test
+    public void should_wrapJpegInMemory() {
+        // Given
+        final byte[] jpeg = createJpeg(100, 1);
+        final ImageCache.Token token = mImageCache.storeJpeg(jpeg);
+        // When
+        final ByteBuffer buffer = mImageCache.getJpegBuffer(token);
+        // Then
+        assertThat(buffer.array()).isSameAs(jpeg);
+    }
+
+    @Test
+    public void should_storeDirectBuffer_withoutCopying() {
+        // Given
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(300);
+        // Written through a duplicate to keep the buffer's position at 0
+        buffer.duplicate().put(createJpeg(300, 1));
+        // When
+        final ImageCache.Token firstToken = mImageCache.storeJpegBuffer(buffer);
+        final ImageCache.Token secondToken = mImageCache.storeJpegBuffer(buffer);
+        // Then
+        assertThat(mImageCache.getStoredImageCount()).isEqualTo(1);
+        assertThat(mImageCache.getMemoryBytes()).isEqualTo(0);
+        assertThat(mImageCache.getDiskBytes()).isEqualTo(0);
+        final ByteBuffer stored = mImageCache.getJpegBuffer(secondToken);
+        assertThat(stored.isDirect()).isTrue();
+        assertThat(stored.remaining()).isEqualTo(300);
+        assertThat(mImageCache.getJpeg(firstToken)).isEqualTo(createJpeg(300, 1));
+    }
+
+    @Test
+    public void should_storeBufferWrappingWholeArray_asArray() {
+        // Given
+        final byte[] jpeg = createJpeg(100, 1);
+        // When
+        final ImageCache.Token token = mImageCache.storeJpegBuffer(ByteBuffer.wrap(jpeg));
+        // Then
+        assertThat(mImageCache.getJpeg(token)).isSameAs(jpeg);
+        assertThat(mImageCache.storeJpeg(jpeg)).isNotNull();
+        assertThat(mImageCache.getStoredImageCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_spillHeapBuffer_whenMemoryBudget_isExceeded() {
+        // Given
+        final byte[] padded = createJpeg(310, 1);
+        final ByteBuffer buffer = ByteBuffer.wrap(padded, 10, 300).slice();
+        // When
+        final ImageCache.Token token = mImageCache.storeJpegBuffer(buffer);
+        // Then
+        assertThat(mImageCache.isInMemory(token)).isFalse();
+        assertThat(mImageCache.getMemoryBytes()).isEqualTo(0);
+        assertThat(mImageCache.getDiskBytes()).isEqualTo(300);
+        assertThat(mImageCache.getJpeg(token)).isEqualTo(createJpeg(300, 1));
+    }
+
+    @Test
+    public void should_keepJpegInMemory_whenDiskBudget_isExceeded() {
+        // Given
+        final byte[] first = createJpeg(600, 1);
+        final byte[] second = createJpeg(600, 2);
+        final ImageCache.Token firstToken = mImageCache.storeJpeg(first);
+        // When
+        final ImageCache.Token secondToken = mImageCache.storeJpeg(second);
+        // Then
+        assertThat(mImageCache.getJpeg(firstToken)).isEqualTo(first);
+        assertThat(mImageCache.getJpeg(secondToken)).isSameAs(second);
+        assertThat(mImageCache.isInMemory(firstToken)).isFalse();
+        assertThat(mImageCache.isInMemory(secondToken)).isTrue();
+        assertThat(mImageCache.getDiskBytes()).isEqualTo(600);
+        assertThat(mSpillDirectory.list()).hasLength(1);
+    }
+
+    @Test
+    public void should_keepSpilledJpegs_whenDiskBudget_isLowered() {
+        // Given
+        final byte[] jpeg = createJpeg(600, 1);
+        final ImageCache.Token token = mImageCache.storeJpeg(jpeg);
+        // When
+        mImageCache.setMaxDiskBytes(100);
+        mImageCache.storeJpeg(createJpeg(300, 2));
+        // Then
+        assertThat(mImageCache.getJpeg(token)).isEqualTo(jpeg);
+        assertThat(mImageCache.getDiskBytes()).isEqualTo(600);
+    }
+
+    @Test
+    public void should_keepJpegsInMemory_withoutSpillDirectory() {
+        // Given
+        mImageCache.setSpillDirectory(null);
+        // When
+        final ImageCache.Token token = mImageCache.storeJpeg(createJpeg(300, 1));
+        // Then
+        assertThat(mImageCache.isInMemory(token)).isTrue();
+        assertThat(mImageCache.getMemoryBytes()).isEqualTo(300);
+    }
+
+    @Test
+    public void should_reportAndSpill_leakedTokens() {
+        // Given
+        final ImageCache.LeakListener leakListener = mock(ImageCache.LeakListener.class);
+        mImageCache.setLeakListener(leakListener);
+        final ImageCache.Token token = mImageCache.storeJpeg(createJpeg(100, 1));
+        final long now = ImageCache.elapsedMillis();
+        // When
+        mImageCache.checkForLeaks(now + 30000);
+        // Then
+        verify(leakListener, never()).onTokenLeaked(any(ImageCache.Token.class), anyLong(),
+                anyLong(), any(Throwable.class));
+        // When
+        mImageCache.checkForLeaks(now + 120000);
+        mImageCache.checkForLeaks(now + 180000);
+        // Then
+        verify(leakListener, times(1)).onTokenLeaked(eq(token), anyLong(), eq(100L),
+                any(Throwable.class));
+        assertThat(mImageCache.isInMemory(token)).isFalse();
+        assertThat(mImageCache.getJpeg(token)).isNotNull();
+    }
+
+    @Test
+    public void should_reportStoreOrigin_ofLeakedToken_ifTracked() {
+        // Given
+        final ImageCache.LeakListener leakListener = mock(ImageCache.LeakListener.class);
+        mImageCache.setLeakListener(leakListener);
+        mImageCache.setTrackStoreOrigins(true);
+        final ImageCache.Token token;
+        try {
+            token = mImageCache.storeJpeg(createJpeg(100, 1));
+        } finally {
+            mImageCache.setTrackStoreOrigins(false);
+        }
+        // When
+        mImageCache.checkForLeaks(ImageCache.elapsedMillis() + 120000);
+        // Then
+        final ArgumentCaptor<Throwable> storeOrigin = ArgumentCaptor.forClass(Throwable.class);
+        verify(leakListener).onTokenLeaked(eq(token), anyLong(), eq(100L),
+                storeOrigin.capture());
+        assertThat(storeOrigin.getValue().getMessage()).contains(token.toString());
+        assertThat(getMethodNames(storeOrigin.getValue().getStackTrace()))
+                .contains("should_reportStoreOrigin_ofLeakedToken_ifTracked");
+    }
+
+    @Test
+    public void should_notTrackStoreOrigins_byDefault() {
+        // Given
+        final ImageCache.LeakListener leakListener = mock(ImageCache.LeakListener.class);
+        mImageCache.setLeakListener(leakListener);
+        final ImageCache.Token token = mImageCache.storeJpeg(createJpeg(100, 1));
+        // When
+        mImageCache.checkForLeaks(ImageCache.elapsedMillis() + 120000);
+        // Then
+        verify(leakListener).onTokenLeaked(eq(token), anyLong(), eq(100L),
+                (Throwable) isNull());
+    }
+
+    @Test
+    public void should_scheduleLeakCheck_forOldestToken() {
+        // Given
+        mImageCache.storeJpeg(createJpeg(100, 1));
+        // When
+        mImageCache.storeJpeg(createJpeg(100, 2));
+        // Then
+        verify(mLeakCheckExecutor, times(1)).schedule(any(Runnable.class), anyLong(),
+                eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void should_reportLeakedToken_withoutFurtherStores() throws Exception {
+        // Given
+        final ImageCache.LeakListener leakListener = mock(ImageCache.LeakListener.class);
+        mImageCache.setLeakListener(leakListener);
+        mImageCache.setLeakTimeoutMillis(1);
+        final ImageCache.Token token = mImageCache.storeJpeg(createJpeg(100, 1));
+        final ArgumentCaptor<Runnable> leakCheck = ArgumentCaptor.forClass(Runnable.class);
+        final ArgumentCaptor<Long> delayMillis = ArgumentCaptor.forClass(Long.class);
+        verify(mLeakCheckExecutor).schedule(leakCheck.capture(), delayMillis.capture(),
+                eq(TimeUnit.MILLISECONDS));
+        assertThat(delayMillis.getValue()).isAtMost(2L);
+        // When
+        Thread.sleep(10);
+        leakCheck.getValue().run();
+        // Then
+        verify(leakListener).onTokenLeaked(eq(token), anyLong(), eq(100L),
+                any(Throwable.class));
+        // No tokens left to time out
+        verifyNoMoreInteractions(mLeakCheckExecutor);
+    }
+
+    @Test
+    public void should_deleteStaleSpillFiles_whenInitialized() throws Exception {
+        // Given
+        final File staleFile = new File(mSpillDirectory, "7.jpeg");
+        assertThat(staleFile.createNewFile()).isTrue();
+        // When
+        mImageCache.setSpillDirectory(mSpillDirectory);
+        // Then
+        assertThat(staleFile.exists()).isFalse();
+    }
+
+    private static byte[] createJpeg(final int length, final int value) {
+        final byte[] jpeg = new byte[length];
+        Arrays.fill(jpeg, (byte) value);
+        return jpeg;
+    }
+
+    @NonNull
+    private static List<String> getMethodNames(@NonNull final StackTraceElement[] stackTrace) {
+        final List<String> methodNames = new ArrayList<>(stackTrace.length);
+        for (final StackTraceElement element : stackTrace) {
+            methodNames.add(element.getMethodName());
+        }
+        return methodNames;
+    }
+}
@@ -0,0 +1,85 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class JpegQualitySearchTest {
+
+    @Test
+    public void should_returnMaxQuality_ifItFits_withOneEstimate() throws Exception {
+        // Given
+        final LinearEstimator estimator = new LinearEstimator();
+        // When
+        final int quality = JpegQualitySearch.findQuality(estimator, 80 * 1000, 35, 80);
+        // Then
+        assertThat(quality).isEqualTo(80);
+        assertThat(estimator.estimatedQualities).containsExactly(80);
+    }
+
+    @Test
+    public void should_returnHighestQuality_withinBudget() throws Exception {
+        // Given
+        final LinearEstimator estimator = new LinearEstimator();
+        // When
+        final int quality = JpegQualitySearch.findQuality(estimator, 57 * 1000 + 999, 35, 80);
+        // Then
+        assertThat(quality).isEqualTo(57);
+    }
+
+    @Test
+    public void should_returnMinQuality_ifNothingFits() throws Exception {
+        // Given
+        final LinearEstimator estimator = new LinearEstimator();
+        // When
+        final int quality = JpegQualitySearch.findQuality(estimator, 1000, 35, 80);
+        // Then
+        assertThat(quality).isEqualTo(35);
+    }
+
+    @Test
+    public void should_needLogarithmicNumberOfEstimates() throws Exception {
+        // Given
+        final LinearEstimator estimator = new LinearEstimator();
+        // When
+        JpegQualitySearch.findQuality(estimator, 36 * 1000, 1, 100);
+        // Then
+        // One for the maximum and at most ceil(log2(99)) for the search
+        assertThat(estimator.estimatedQualities.size()).isAtMost(1 + 7);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_throwException_ifMinQuality_exceedsMaxQuality() throws Exception {
+        JpegQualitySearch.findQuality(new LinearEstimator(), 1000, 60, 50);
+    }
+
+    @Test
+    public void should_convertBitsPerPixel_toBytes() {
+        // When
+        final long maxBytes = JpegSizeBudget.ofBitsPerPixel(2).getMaxBytes(4160, 3120);
+        // Then
+        assertThat(maxBytes).isEqualTo(4160L * 3120 * 2 / 8);
+    }
+
+    @Test
+    public void should_ignoreResolution_forByteBudget() {
+        assertThat(JpegSizeBudget.ofBytes(500000).getMaxBytes(4160, 3120)).isEqualTo(500000);
+    }
+
+    private static class LinearEstimator implements JpegQualitySearch.SizeEstimator {
+
+        final List<Integer> estimatedQualities = new ArrayList<>();
+
+        @Override
+        public long estimateSize(final int quality) {
+            estimatedQualities.add(quality);
+            return quality * 1000L;
+        }
+    }
+}
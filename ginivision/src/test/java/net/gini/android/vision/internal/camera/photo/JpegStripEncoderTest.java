@@ -0,0 +1,227 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.internal.camera.photo.TestJpegs.getTestJpeg;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.imageio.ImageIO;
+
+@RunWith(JUnit4.class)
+public class JpegStripEncoderTest {
+
+    private static final String[] TEST_JPEGS = {"invoice.jpg", "remslip-no-metadata.jpeg"};
+
+    @Test
+    public void should_encodeJpegs_withSameSize_andSimilarContent() throws Exception {
+        for (final String filename : TEST_JPEGS) {
+            // Given
+            final BufferedImage original = decode(getTestJpeg(filename));
+            // When
+            final byte[] jpeg = encode(new BufferedImageStripSource(original), 90);
+            // Then
+            final BufferedImage encoded = decode(jpeg);
+            assertThat(encoded.getWidth()).isEqualTo(original.getWidth());
+            assertThat(encoded.getHeight()).isEqualTo(original.getHeight());
+            assertThat(psnr(original, encoded)).isGreaterThan(30.0);
+        }
+    }
+
+    @Test
+    public void should_encodeImages_withSizeNotMultipleOfMcuSize() throws Exception {
+        // Given
+        final BufferedImage original = createGradient(37, 21);
+        // When
+        final byte[] jpeg = encode(new BufferedImageStripSource(original), 90);
+        // Then
+        final BufferedImage encoded = decode(jpeg);
+        assertThat(encoded.getWidth()).isEqualTo(37);
+        assertThat(encoded.getHeight()).isEqualTo(21);
+        assertThat(psnr(original, encoded)).isGreaterThan(30.0);
+    }
+
+    @Test
+    public void should_createSmallerJpegs_forLowerQuality() throws Exception {
+        // Given
+        final BufferedImage original = decode(getTestJpeg());
+        // When
+        final byte[] highQuality = encode(new BufferedImageStripSource(original), 90);
+        final byte[] lowQuality = encode(new BufferedImageStripSource(original), 50);
+        // Then
+        assertThat(lowQuality.length).isLessThan(highQuality.length);
+    }
+
+    @Test
+    public void should_scaleQuantizationTables_likeLibjpeg() {
+        final int[] table = new int[64];
+        table[0] = 16;
+        table[1] = 99;
+        // Quality 50 keeps the tables unchanged
+        assertThat(JpegStripEncoder.scaleQuantizationTable(table, 50)[0]).isEqualTo(16);
+        // Quality 100 quantizes with 1
+        assertThat(JpegStripEncoder.scaleQuantizationTable(table, 100)[1]).isEqualTo(1);
+        // Low qualities are limited to 255
+        assertThat(JpegStripEncoder.scaleQuantizationTable(table, 1)[1]).isEqualTo(255);
+    }
+
+    @Test
+    public void should_limitAllocations_toStripBuffers_for13MPImages() throws Exception {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocationBean =
+                (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Given
+        final SyntheticStripSource source = new SyntheticStripSource(4160, 3120, 64);
+        final JpegStripEncoder encoder = new JpegStripEncoder(50);
+        final long threadId = Thread.currentThread().getId();
+        // Warm up to exclude class loading from the measurement
+        encoder.encode(new SyntheticStripSource(64, 64, 64), new DiscardingOutputStream());
+        // When
+        final long allocatedBefore = allocationBean.getThreadAllocatedBytes(threadId);
+        encoder.encode(source, new DiscardingOutputStream());
+        final long allocated = allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        // Then
+        final long fullBitmapSize = 4L * 4160 * 3120;
+        final long stripBufferSize = JpegStripEncoder.getStripBufferSize(source);
+        assertThat(allocated).isLessThan(stripBufferSize + 256 * 1024);
+        assertThat(allocated).isLessThan(fullBitmapSize / 20);
+    }
+
+    private static byte[] encode(final PixelStripSource source, final int quality)
+            throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new JpegStripEncoder(quality).encode(source, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static BufferedImage decode(final byte[] jpeg) throws IOException {
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        if (image == null) {
+            throw new IOException("Could not decode jpeg");
+        }
+        return image;
+    }
+
+    private static BufferedImage createGradient(final int width, final int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int r = x * 255 / width;
+                final int g = y * 255 / height;
+                image.setRGB(x, y, (r << 16) | (g << 8) | 128);
+            }
+        }
+        return image;
+    }
+
+    private static double psnr(final BufferedImage expected, final BufferedImage actual) {
+        double squaredErrorSum = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                final int expectedRgb = expected.getRGB(x, y);
+                final int actualRgb = actual.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    final int difference = ((expectedRgb >> shift) & 0xFF)
+                            - ((actualRgb >> shift) & 0xFF);
+                    squaredErrorSum += difference * difference;
+                }
+            }
+        }
+        final double meanSquaredError = squaredErrorSum
+                / (3.0 * expected.getWidth() * expected.getHeight());
+        return 10 * Math.log10(255.0 * 255.0 / meanSquaredError);
+    }
+
+    private static class BufferedImageStripSource implements PixelStripSource {
+
+        private final BufferedImage mImage;
+
+        BufferedImageStripSource(final BufferedImage image) {
+            mImage = image;
+        }
+
+        @Override
+        public int getWidth() {
+            return mImage.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return mImage.getHeight();
+        }
+
+        @Override
+        public int getStripHeight() {
+            return 64;
+        }
+
+        @Override
+        public void readStrip(final int top, final int rows, final int[] pixels) {
+            mImage.getRGB(0, top, getWidth(), rows, pixels, 0, getWidth());
+        }
+    }
+
+    private static class SyntheticStripSource implements PixelStripSource {
+
+        private final int mWidth;
+        private final int mHeight;
+        private final int mStripHeight;
+
+        SyntheticStripSource(final int width, final int height, final int stripHeight) {
+            mWidth = width;
+            mHeight = height;
+            mStripHeight = stripHeight;
+        }
+
+        @Override
+        public int getWidth() {
+            return mWidth;
+        }
+
+        @Override
+        public int getHeight() {
+            return mHeight;
+        }
+
+        @Override
+        public int getStripHeight() {
+            return mStripHeight;
+        }
+
+        @Override
+        public void readStrip(final int top, final int rows, final int[] pixels) {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < mWidth; x++) {
+                    final int value = (x ^ (top + y)) & 0xFF;
+                    pixels[y * mWidth + x] = 0xFF000000 | (value << 16) | (value << 8) | value;
+                }
+            }
+        }
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+
+        @Override
+        public void write(final int b) {
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+        }
+    }
+}
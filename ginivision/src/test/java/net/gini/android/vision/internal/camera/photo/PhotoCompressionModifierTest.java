@@ -0,0 +1,52 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PhotoCompressionModifierTest {
+
+    @Test
+    public void should_useFullBitmap_ifEnoughMemory_isAvailable() {
+        // Given
+        // 13MP decoded: ~50MB, 200MB available
+        Runtime runtime = getRuntimeMock(56, 20, 256);
+        // Then
+        assertThat(PhotoCompressionModifier.fullBitmapFitsIntoMemory(runtime, 4160, 3120,
+                3 * 1024 * 1024)).isTrue();
+    }
+
+    @Test
+    public void should_notUseFullBitmap_ifEnoughMemory_isNotAvailable() {
+        // Given
+        // 13MP decoded: ~50MB, 40MB available
+        Runtime runtime = getRuntimeMock(60, 4, 96);
+        // Then
+        assertThat(PhotoCompressionModifier.fullBitmapFitsIntoMemory(runtime, 4160, 3120,
+                3 * 1024 * 1024)).isFalse();
+    }
+
+    @Test
+    public void should_useFullBitmap_ifSize_isUnknown() {
+        // Given
+        Runtime runtime = getRuntimeMock(60, 4, 64);
+        // Then
+        assertThat(PhotoCompressionModifier.fullBitmapFitsIntoMemory(runtime, -1, -1,
+                1024)).isTrue();
+    }
+
+    private Runtime getRuntimeMock(int totalMemoryMbs, int freeMemoryMbs, int maxMemoryMbs) {
+        // Memory used = total memory - free memory
+        Runtime runtime = mock(Runtime.class);
+        when(runtime.totalMemory()).thenReturn(totalMemoryMbs * 1024L * 1024L);
+        when(runtime.freeMemory()).thenReturn(freeMemoryMbs * 1024L * 1024L);
+        // Max memory
+        when(runtime.maxMemory()).thenReturn(maxMemoryMbs * 1024L * 1024L);
+        return runtime;
+    }
+}
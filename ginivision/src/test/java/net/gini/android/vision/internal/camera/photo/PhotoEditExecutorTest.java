@@ -0,0 +1,244 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jersey.repackaged.jsr166e.CompletableFuture;
+
+@RunWith(JUnit4.class)
+public class PhotoEditExecutorTest {
+
+    private PhotoEditExecutor mExecutor;
+    private Photo mPhoto;
+    private List<String> mApplied;
+    private CountDownLatch mBlockingLatch;
+
+    @Before
+    public void setUp() throws Exception {
+        mExecutor = new PhotoEditExecutor();
+        mPhoto = mock(Photo.class);
+        mApplied = new CopyOnWriteArrayList<>();
+        mBlockingLatch = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mBlockingLatch.countDown();
+    }
+
+    @Test
+    public void should_runUserVisibleEdits_beforeBackgroundEdits() throws Exception {
+        // Given
+        blockExecutor();
+        final CompletableFuture<Photo> background = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("background")), PhotoEdit.Priority.BACKGROUND);
+        final CompletableFuture<Photo> userVisible = mExecutor.submit(mock(Photo.class),
+                modifiers(new SecondModifier("user visible")), PhotoEdit.Priority.USER_VISIBLE);
+        // When
+        mBlockingLatch.countDown();
+        background.get(5, TimeUnit.SECONDS);
+        userVisible.get(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(mApplied).containsExactly("blocking", "user visible", "background").inOrder();
+    }
+
+    @Test
+    public void should_runEdits_withSamePriority_inSubmissionOrder() throws Exception {
+        // Given
+        blockExecutor();
+        final CompletableFuture<Photo> first = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("first")), PhotoEdit.Priority.BACKGROUND);
+        final CompletableFuture<Photo> second = mExecutor.submit(mPhoto,
+                modifiers(new SecondModifier("second")), PhotoEdit.Priority.BACKGROUND);
+        // When
+        mBlockingLatch.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(mApplied).containsExactly("blocking", "first", "second").inOrder();
+    }
+
+    @Test
+    public void should_supersedePendingEdit_withSameModifierTypes() throws Exception {
+        // Given
+        blockExecutor();
+        final CompletableFuture<Photo> superseded = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("rotate to 90")), PhotoEdit.Priority.USER_VISIBLE);
+        // When
+        final CompletableFuture<Photo> latest = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("rotate to 180")), PhotoEdit.Priority.USER_VISIBLE);
+        mBlockingLatch.countDown();
+        latest.get(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(superseded.isCancelled()).isTrue();
+        assertThat(mApplied).containsExactly("blocking", "rotate to 180").inOrder();
+    }
+
+    @Test
+    public void should_notSupersedePendingEdit_withOtherModifierTypes() throws Exception {
+        // Given
+        blockExecutor();
+        final CompletableFuture<Photo> pending = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("rotate"), new SecondModifier("compress")),
+                PhotoEdit.Priority.BACKGROUND);
+        // When
+        final CompletableFuture<Photo> latest = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("rotate again")), PhotoEdit.Priority.BACKGROUND);
+        mBlockingLatch.countDown();
+        pending.get(5, TimeUnit.SECONDS);
+        latest.get(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(mApplied).containsExactly("blocking", "rotate", "compress", "rotate again")
+                .inOrder();
+    }
+
+    @Test
+    public void should_notSupersedeEdits_ofOtherPhotos() throws Exception {
+        // Given
+        blockExecutor();
+        final CompletableFuture<Photo> pending = mExecutor.submit(mock(Photo.class),
+                modifiers(new FirstModifier("other photo")), PhotoEdit.Priority.BACKGROUND);
+        // When
+        final CompletableFuture<Photo> latest = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("photo")), PhotoEdit.Priority.BACKGROUND);
+        mBlockingLatch.countDown();
+        pending.get(5, TimeUnit.SECONDS);
+        latest.get(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(mApplied).containsExactly("blocking", "other photo", "photo").inOrder();
+    }
+
+    @Test
+    public void should_keepPriority_ofSupersededEdit() throws Exception {
+        // Given
+        blockExecutor();
+        mExecutor.submit(mPhoto, modifiers(new FirstModifier("user visible")),
+                PhotoEdit.Priority.USER_VISIBLE);
+        final CompletableFuture<Photo> background = mExecutor.submit(mock(Photo.class),
+                modifiers(new SecondModifier("background")), PhotoEdit.Priority.BACKGROUND);
+        // When
+        final CompletableFuture<Photo> superseding = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("superseding")), PhotoEdit.Priority.BACKGROUND);
+        mBlockingLatch.countDown();
+        background.get(5, TimeUnit.SECONDS);
+        superseding.get(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(mApplied).containsExactly("blocking", "superseding", "background").inOrder();
+    }
+
+    @Test
+    public void should_notRunEdits_cancelledByTheCaller() throws Exception {
+        // Given
+        blockExecutor();
+        final CompletableFuture<Photo> cancelled = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("cancelled")), PhotoEdit.Priority.BACKGROUND);
+        final CompletableFuture<Photo> next = mExecutor.submit(mock(Photo.class),
+                modifiers(new SecondModifier("next")), PhotoEdit.Priority.BACKGROUND);
+        // When
+        cancelled.cancel(false);
+        mBlockingLatch.countDown();
+        next.get(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(mApplied).containsExactly("blocking", "next").inOrder();
+    }
+
+    @Test
+    public void should_passCancellationException_toHandlers() throws Exception {
+        // Given
+        blockExecutor();
+        final CompletableFuture<Photo> cancelled = mExecutor.submit(mPhoto,
+                modifiers(new FirstModifier("cancelled")), PhotoEdit.Priority.BACKGROUND);
+        final AtomicReference<Throwable> handledThrowable = new AtomicReference<>();
+        cancelled.handle(new CompletableFuture.BiFun<Photo, Throwable, Void>() {
+            @Override
+            public Void apply(final Photo photo, final Throwable throwable) {
+                handledThrowable.set(throwable);
+                return null;
+            }
+        });
+        // When
+        cancelled.cancel(false);
+        // Then
+        assertThat(handledThrowable.get()).isInstanceOf(CancellationException.class);
+    }
+
+    @Test
+    public void should_completeExceptionally_ifEdit_failed() throws Exception {
+        // Given
+        final PhotoModifier failingModifier = new PhotoModifier() {
+            @Override
+            public void modify() {
+                throw new IllegalStateException("failed");
+            }
+        };
+        // When
+        final CompletableFuture<Photo> future = mExecutor.submit(mPhoto,
+                modifiers(failingModifier), PhotoEdit.Priority.USER_VISIBLE);
+        // Then
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            throw new AssertionError("Edit should have failed");
+        } catch (final ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    private void blockExecutor() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        mExecutor.submit(mock(Photo.class), Collections.<PhotoModifier>singletonList(
+                new PhotoModifier() {
+                    @Override
+                    public void modify() {
+                        mApplied.add("blocking");
+                        started.countDown();
+                        try {
+                            mBlockingLatch.await(5, TimeUnit.SECONDS);
+                        } catch (final InterruptedException ignored) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }), PhotoEdit.Priority.USER_VISIBLE);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static List<PhotoModifier> modifiers(final PhotoModifier... modifiers) {
+        return Arrays.asList(modifiers);
+    }
+
+    private class FirstModifier implements PhotoModifier {
+
+        private final String mName;
+
+        FirstModifier(final String name) {
+            mName = name;
+        }
+
+        @Override
+        public void modify() {
+            mApplied.add(mName);
+        }
+    }
+
+    private class SecondModifier extends FirstModifier {
+
+        SecondModifier(final String name) {
+            super(name);
+        }
+    }
+}
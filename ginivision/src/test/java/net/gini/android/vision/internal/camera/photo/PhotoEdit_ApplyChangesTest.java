@@ -0,0 +1,142 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+@RunWith(JUnit4.class)
+public class PhotoEdit_ApplyChangesTest {
+
+    private static final byte[] ORIGINAL_JPEG = new byte[]{1, 2, 3};
+    private static final byte[] RECOMPRESSED_JPEG = new byte[]{4, 5, 6};
+
+    private Photo mPhoto;
+    private byte[] mPhotoJpeg;
+    private JpegRecompressor mRecompressor;
+
+    @Before
+    public void setUp() throws Exception {
+        mPhotoJpeg = ORIGINAL_JPEG;
+        mPhoto = mock(Photo.class);
+        when(mPhoto.getJpeg()).thenAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(final InvocationOnMock invocation) throws Throwable {
+                return mPhotoJpeg;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                mPhotoJpeg = (byte[]) invocation.getArguments()[0];
+                return null;
+            }
+        }).when(mPhoto).setJpeg(any(byte[].class));
+        mRecompressor = mock(JpegRecompressor.class);
+        when(mRecompressor.recompress(any(byte[].class), anyInt())).thenReturn(RECOMPRESSED_JPEG);
+    }
+
+    @Test
+    public void should_recompressOnce_andWriteExifOnce_forRotationAndCompression() {
+        // Given
+        final PhotoEdit photoEdit = new PhotoEdit(mPhoto).rotateTo(90);
+        addCompression(photoEdit, 50);
+        // When
+        PhotoEdit.applyChanges(mPhoto, photoEdit.mPhotoModifiers);
+        // Then
+        verify(mRecompressor, times(1)).recompress(aryEq(ORIGINAL_JPEG), eq(50));
+        verify(mPhoto, times(1)).updateExif();
+        assertThat(mPhotoJpeg).isEqualTo(RECOMPRESSED_JPEG);
+    }
+
+    @Test
+    public void should_recompressOnce_withLastQuality_ifCompressionWasChained() {
+        // Given
+        final PhotoEdit photoEdit = new PhotoEdit(mPhoto);
+        addCompression(photoEdit, 80);
+        photoEdit.rotateTo(90);
+        addCompression(photoEdit, 50);
+        // When
+        PhotoEdit.applyChanges(mPhoto, photoEdit.mPhotoModifiers);
+        // Then
+        verify(mRecompressor, times(1)).recompress(any(byte[].class), anyInt());
+        verify(mRecompressor).recompress(aryEq(ORIGINAL_JPEG), eq(50));
+        verify(mPhoto).setJpegQuality(50);
+        assertThat(mPhotoJpeg).isEqualTo(RECOMPRESSED_JPEG);
+    }
+
+    @Test
+    public void should_foldChainedRotations_intoOneExifWrite() {
+        // Given
+        final PhotoEdit photoEdit = new PhotoEdit(mPhoto).rotateTo(90).rotateTo(180)
+                .rotateTo(270);
+        addCompression(photoEdit, 50);
+        // When
+        PhotoEdit.applyChanges(mPhoto, photoEdit.mPhotoModifiers);
+        // Then
+        verify(mRecompressor, times(1)).recompress(aryEq(ORIGINAL_JPEG), eq(50));
+        verify(mPhoto, times(1)).updateExif();
+        verify(mPhoto).setRotationForDisplay(270);
+    }
+
+    @Test
+    public void should_notRecompress_forRotationOnly() {
+        // Given
+        final PhotoEdit photoEdit = new PhotoEdit(mPhoto).rotateTo(90);
+        // When
+        photoEdit.apply();
+        // Then
+        verifyZeroInteractions(mRecompressor);
+        verify(mPhoto, times(1)).updateExif();
+        assertThat(mPhotoJpeg).isSameAs(ORIGINAL_JPEG);
+    }
+
+    @Test
+    public void should_notWriteExif_withoutModifiers() {
+        // Given
+        final PhotoEdit photoEdit = new PhotoEdit(mPhoto);
+        // When
+        photoEdit.apply();
+        // Then
+        verify(mPhoto, never()).updateExif();
+    }
+
+    @Test
+    public void should_keepJpeg_ifRecompression_failed() {
+        // Given
+        when(mRecompressor.recompress(any(byte[].class), anyInt())).thenReturn(null);
+        final PhotoEdit photoEdit = new PhotoEdit(mPhoto);
+        addCompression(photoEdit, 50);
+        // When
+        PhotoEdit.applyChanges(mPhoto, photoEdit.mPhotoModifiers);
+        // Then
+        verify(mPhoto, never()).setJpeg(any(byte[].class));
+        verify(mPhoto, times(1)).updateExif();
+        assertThat(mPhotoJpeg).isSameAs(ORIGINAL_JPEG);
+    }
+
+    private void addCompression(@NonNull final PhotoEdit photoEdit, final int quality) {
+        // Same as PhotoEdit.compressBy() but with the mocked recompressor
+        photoEdit.compressBy(quality);
+        photoEdit.mPhotoModifiers.remove(photoEdit.mPhotoModifiers.size() - 1);
+        photoEdit.mPhotoModifiers.add(new PhotoCompressionModifier(quality,
+                PhotoEdit.CompressionMode.AUTO, mRecompressor, mPhoto));
+    }
+}
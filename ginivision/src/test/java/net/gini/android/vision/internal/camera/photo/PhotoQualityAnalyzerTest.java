@@ -0,0 +1,140 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.internal.camera.photo.TestJpegs.getTestJpeg;
+
+import android.support.annotation.NonNull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.awt.image.RescaleOp;
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+
+@RunWith(JUnit4.class)
+public class PhotoQualityAnalyzerTest {
+
+    // Preview size on a 720p display
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 960;
+
+    private static BufferedImage sPreview;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        final BufferedImage invoice = ImageIO.read(new ByteArrayInputStream(getTestJpeg()));
+        sPreview = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = sPreview.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(invoice, 0, 0, WIDTH, HEIGHT, null);
+        graphics.dispose();
+    }
+
+    @Test
+    public void should_measureHighSharpness_forSharpPhoto() {
+        // When
+        final PhotoQuality quality = analyze(sPreview);
+        // Then
+        assertThat(quality.getLaplacianVariance()).isGreaterThan(1000f);
+        assertThat(quality.getClippedHighlights()).isLessThan(0.01f);
+        assertThat(quality.getMeanLuminance()).isWithin(20f).of(160f);
+    }
+
+    @Test
+    public void should_measureLowSharpness_forBlurredPhoto() {
+        // Given
+        final int kernelSize = 9;
+        final float[] kernel = new float[kernelSize * kernelSize];
+        Arrays.fill(kernel, 1f / kernel.length);
+        final BufferedImage blurred = new ConvolveOp(new Kernel(kernelSize, kernelSize, kernel),
+                ConvolveOp.EDGE_NO_OP, null).filter(sPreview, null);
+        // When
+        final PhotoQuality quality = analyze(blurred);
+        // Then
+        assertThat(quality.getLaplacianVariance()).isLessThan(100f);
+    }
+
+    @Test
+    public void should_measureClippedHighlights_forPhotoWithGlare() {
+        // Given
+        final BufferedImage glare = copy(sPreview);
+        final Graphics2D graphics = glare.createGraphics();
+        graphics.setColor(Color.WHITE);
+        // A tenth of the photo
+        graphics.fillRect(0, 0, WIDTH, HEIGHT / 10);
+        graphics.dispose();
+        // When
+        final PhotoQuality quality = analyze(glare);
+        // Then
+        assertThat(quality.getClippedHighlights()).isWithin(0.01f).of(0.1f);
+    }
+
+    @Test
+    public void should_measureLowMeanLuminance_forDarkPhoto() {
+        // Given
+        final BufferedImage dark = new RescaleOp(0.25f, 0, null).filter(sPreview, null);
+        // When
+        final PhotoQuality quality = analyze(dark);
+        // Then
+        assertThat(quality.getMeanLuminance()).isLessThan(50f);
+    }
+
+    @Test
+    public void should_readOnlySampledRows() {
+        // Given
+        final int width = 1440;
+        final int height = 2560;
+        final Set<Integer> readRows = new HashSet<>();
+        // When
+        PhotoQualityAnalyzer.analyze(width, height, new PhotoQualityAnalyzer.RowReader() {
+            @Override
+            public void readRow(final int y, @NonNull final int[] pixels) {
+                readRows.add(y);
+            }
+        });
+        // Then
+        assertThat(readRows.size()).isAtMost(PhotoQualityAnalyzer.MAX_ANALYSIS_SIZE);
+        assertThat(readRows.size()).isAtLeast(PhotoQualityAnalyzer.MAX_ANALYSIS_SIZE / 2);
+    }
+
+    @Test
+    public void should_handleTinyImages() {
+        // When
+        final PhotoQuality quality = PhotoQualityAnalyzer.analyze(new int[]{0xFFFFFFFF}, 1, 1);
+        // Then
+        assertThat(quality.getLaplacianVariance()).isEqualTo(0f);
+        assertThat(quality.getClippedHighlights()).isEqualTo(1f);
+        assertThat(quality.getMeanLuminance()).isWithin(1f).of(255f);
+    }
+
+    private static PhotoQuality analyze(final BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        return PhotoQualityAnalyzer.analyze(image.getRGB(0, 0, width, height, null, 0, width),
+                width, height);
+    }
+
+    private static BufferedImage copy(final BufferedImage image) {
+        final BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = copy.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return copy;
+    }
+}
@@ -0,0 +1,37 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PreviewDecoderTest {
+
+    @Test
+    public void should_keepSampledImage_atLeastAsLarge_asTarget() {
+        // 13MP on a 1080p display: 2080x1560 covers 1920x1080, 1040x780 doesn't
+        assertThat(PreviewDecoder.calculateInSampleSize(4160, 3120, 1080, 1920)).isEqualTo(2);
+        // 48MP on a 1080p display
+        assertThat(PreviewDecoder.calculateInSampleSize(8000, 6000, 1080, 1920)).isEqualTo(4);
+        // 8MP on a 720p display
+        assertThat(PreviewDecoder.calculateInSampleSize(3264, 2448, 720, 1280)).isEqualTo(2);
+    }
+
+    @Test
+    public void should_ignoreOrientation_whenComparingSizes() {
+        assertThat(PreviewDecoder.calculateInSampleSize(4160, 3120, 1080, 1920))
+                .isEqualTo(PreviewDecoder.calculateInSampleSize(3120, 4160, 1920, 1080));
+    }
+
+    @Test
+    public void should_notSample_ifImage_isSmallerThanTarget() {
+        assertThat(PreviewDecoder.calculateInSampleSize(640, 480, 1080, 1920)).isEqualTo(1);
+    }
+
+    @Test
+    public void should_notSample_ifTarget_isInvalid() {
+        assertThat(PreviewDecoder.calculateInSampleSize(4160, 3120, 0, 0)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,40 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public final class TestJpegs {
+
+    public static byte[] getTestJpeg() throws IOException {
+        return getTestJpeg("invoice.jpg");
+    }
+
+    public static byte[] getTestJpeg(String filename) throws IOException {
+        InputStream inputStream = null;
+        try {
+            inputStream = TestJpegs.class.getClassLoader().getResourceAsStream(filename);
+            if (inputStream == null) {
+                throw new IOException("Test resource not found: " + filename);
+            }
+            return inputStreamToByteArray(inputStream);
+        } finally {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+    }
+
+    private static byte[] inputStreamToByteArray(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int readBytes;
+        while ((readBytes = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, readBytes);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private TestJpegs() {
+    }
+}
@@ -0,0 +1,93 @@
+package net.gini.android.vision.internal.camera.photo;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static net.gini.android.vision.internal.camera.photo.TestJpegs.getTestJpeg;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class UserCommentTest {
+
+    @Test
+    public void should_parseKeyValuePairs() {
+        // When
+        final UserComment userComment = UserComment.parse(
+                "Platform=Android,OSVer=7.0,GiniVisionVer=2.1.0(SNAPSHOT),"
+                        + "ContentId=21e5bc66-ee46-4ec4-93db-16bd553561bf,RotDeltaDeg=270");
+        // Then
+        assertThat(userComment.getValue("Platform")).isEqualTo("Android");
+        assertThat(userComment.getValue("OSVer")).isEqualTo("7.0");
+        assertThat(userComment.getValue("GiniVisionVer")).isEqualTo("2.1.0(SNAPSHOT)");
+        assertThat(userComment.getContentId()).isEqualTo("21e5bc66-ee46-4ec4-93db-16bd553561bf");
+        assertThat(userComment.getRotationDelta()).isEqualTo(270);
+    }
+
+    @Test
+    public void should_returnNull_ifKey_wasNotFound() {
+        // When
+        final UserComment userComment = UserComment.parse("no such key here");
+        // Then
+        assertThat(userComment.getValue("unknownKey")).isNull();
+        assertThat(userComment.getContentId()).isNull();
+    }
+
+    @Test
+    public void should_ignoreMalformedPairs() {
+        // When
+        final UserComment userComment = UserComment.parse(",Key1=OSVer=,Key2=");
+        // Then
+        assertThat(userComment.getValue("OSVer")).isNull();
+        assertThat(userComment.getValue("Key2")).isNull();
+    }
+
+    @Test
+    public void should_returnZeroRotationDelta_ifMissing() {
+        assertThat(UserComment.parse("ContentId=id").getRotationDelta()).isEqualTo(0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void should_throwException_ifRotationDelta_isNotANumber() {
+        UserComment.parse("RotDeltaDeg=ninety").getRotationDelta();
+    }
+
+    @Test
+    public void should_keepFirstValue_ifKey_isRepeated() {
+        assertThat(UserComment.parse("ContentId=first,ContentId=second").getContentId())
+                .isEqualTo("first");
+    }
+
+    @Test
+    public void should_parseJpegQuality() {
+        assertThat(UserComment.parse("ContentId=id,RotDeltaDeg=0,JpegQuality=42").getJpegQuality())
+                .isEqualTo(42);
+    }
+
+    @Test
+    public void should_returnZeroJpegQuality_ifMissing() {
+        assertThat(UserComment.parse("ContentId=id,RotDeltaDeg=0").getJpegQuality()).isEqualTo(0);
+    }
+
+    @Test
+    public void should_readUserComment_fromJpeg() throws Exception {
+        // Given
+        final byte[] jpeg = getTestJpeg();
+        final byte[] processedJpeg = Exif.builder(jpeg)
+                .setUserComment("ContentId=21e5bc66-ee46-4ec4-93db-16bd553561bf,RotDeltaDeg=180")
+                .build()
+                .writeToJpeg(jpeg);
+        // When
+        final UserComment userComment = UserComment.readFromJpeg(processedJpeg);
+        // Then
+        assertThat(userComment).isNotNull();
+        assertThat(userComment.getContentId()).isEqualTo("21e5bc66-ee46-4ec4-93db-16bd553561bf");
+        assertThat(userComment.getRotationDelta()).isEqualTo(180);
+    }
+
+    @Test
+    public void should_returnNull_ifJpegHasNoUserComment() throws Exception {
+        assertThat(UserComment.readFromJpeg(getTestJpeg("remslip-no-metadata.jpeg"))).isNull();
+    }
+}
@@ -0,0 +1,135 @@
+package net.gini.android.vision.internal.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.support.annotation.NonNull;
+
+import net.gini.android.vision.CaptureLatency;
+import net.gini.android.vision.CaptureLatency.Phase;
+import net.gini.android.vision.GiniVisionMetrics;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class CaptureTraceTest {
+
+    private final List<CaptureLatency> mLatencies = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        GiniVisionMetrics.setCaptureLatencyListener(null);
+    }
+
+    @Test
+    public void should_notRecord_ifNoListener_isSet() {
+        // When
+        final CaptureTrace trace = CaptureTrace.start();
+        // Then
+        assertThat(trace.isRecording()).isFalse();
+        assertThat(CaptureTrace.start()).isSameAs(trace);
+        assertThat(CaptureTrace.current()).isSameAs(trace);
+    }
+
+    @Test
+    public void should_reportRecordedPhases_whenFinished() throws Exception {
+        // Given
+        setListener();
+        final CaptureTrace trace = CaptureTrace.start();
+        // When
+        trace.beginPhase(Phase.CAPTURE);
+        Thread.sleep(2);
+        trace.endPhase(Phase.CAPTURE);
+        trace.beginPhase(Phase.DOCUMENT_CREATION);
+        trace.endPhase(Phase.DOCUMENT_CREATION);
+        CaptureTrace.current().finish();
+        // Then
+        assertThat(mLatencies).hasSize(1);
+        final CaptureLatency latency = mLatencies.get(0);
+        assertThat(latency.hasPhase(Phase.CAPTURE)).isTrue();
+        assertThat(latency.getPhaseDurationNanos(Phase.CAPTURE)).isAtLeast(2000000L);
+        assertThat(latency.getPhaseStartNanos(Phase.CAPTURE)).isAtLeast(latency.getStartNanos());
+        assertThat(latency.getPhaseStartNanos(Phase.DOCUMENT_CREATION)).isAtLeast(
+                latency.getPhaseEndNanos(Phase.CAPTURE));
+        assertThat(latency.getEndNanos()).isAtLeast(
+                latency.getPhaseEndNanos(Phase.DOCUMENT_CREATION));
+        assertThat(latency.getTotalNanos()).isAtLeast(
+                latency.getPhaseDurationNanos(Phase.CAPTURE));
+    }
+
+    @Test
+    public void should_notReportSkippedPhases() {
+        // Given
+        setListener();
+        final CaptureTrace trace = CaptureTrace.start();
+        // When
+        trace.endPhase(Phase.FOCUS);
+        trace.beginPhase(Phase.PHOTO_PROCESSING);
+        trace.finish();
+        // Then
+        final CaptureLatency latency = mLatencies.get(0);
+        assertThat(latency.hasPhase(Phase.FOCUS)).isFalse();
+        assertThat(latency.getPhaseDurationNanos(Phase.FOCUS)).isEqualTo(-1);
+        assertThat(latency.hasPhase(Phase.PHOTO_PROCESSING)).isFalse();
+        assertThat(latency.getPhaseStartNanos(Phase.PHOTO_PROCESSING)).isEqualTo(-1);
+    }
+
+    @Test
+    public void should_recordOnlyTheFirstRun_ofAPhase() throws Exception {
+        // Given
+        setListener();
+        final CaptureTrace trace = CaptureTrace.start();
+        trace.beginPhase(Phase.DOCUMENT_PARCELING);
+        trace.endPhase(Phase.DOCUMENT_PARCELING);
+        Thread.sleep(2);
+        // When
+        trace.beginPhase(Phase.DOCUMENT_PARCELING);
+        trace.endPhase(Phase.DOCUMENT_PARCELING);
+        trace.finish();
+        // Then
+        assertThat(mLatencies.get(0).getPhaseDurationNanos(Phase.DOCUMENT_PARCELING))
+                .isLessThan(2000000L);
+    }
+
+    @Test
+    public void should_notReport_discardedTraces() {
+        // Given
+        setListener();
+        final CaptureTrace trace = CaptureTrace.start();
+        // When
+        trace.discard();
+        trace.finish();
+        // Then
+        assertThat(mLatencies).isEmpty();
+        assertThat(CaptureTrace.current().isRecording()).isFalse();
+    }
+
+    @Test
+    public void should_onlyReport_theCurrentTrace() {
+        // Given
+        setListener();
+        final CaptureTrace previousTrace = CaptureTrace.start();
+        final CaptureTrace trace = CaptureTrace.start();
+        // When
+        previousTrace.finish();
+        trace.finish();
+        trace.finish();
+        // Then
+        assertThat(mLatencies).hasSize(1);
+    }
+
+    private void setListener() {
+        GiniVisionMetrics.setCaptureLatencyListener(
+                new GiniVisionMetrics.CaptureLatencyListener() {
+                    @Override
+                    public void onCaptureLatencyMeasured(@NonNull final CaptureLatency latency) {
+                        mLatencies.add(latency);
+                    }
+                });
+    }
+}
@@ -1,11 +1,14 @@
 package net.gini.android.vision.requirements;
 
 import static com.google.common.truth.Truth.assertThat;
+import static net.gini.android.vision.requirements.TestUtil.createCapabilities;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import android.hardware.Camera;
 
+import net.gini.android.vision.internal.camera.photo.Size;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -44,12 +47,12 @@ public class CameraFlashRequirementTest {
 
     private CameraHolder getCameraHolder(boolean isFlashSupported) {
         CameraHolder cameraHolder = mock(CameraHolder.class);
-        Camera.Parameters parameters = mock(Camera.Parameters.class);
-        when(cameraHolder.getCameraParameters()).thenReturn(parameters);
-        when(parameters.getSupportedFlashModes()).thenReturn(
-                isFlashSupported ?
-                        Collections.singletonList(Camera.Parameters.FLASH_MODE_ON)
-                        : Collections.singletonList(Camera.Parameters.FLASH_MODE_OFF));
+        when(cameraHolder.getCameraCapabilities()).thenReturn(
+                createCapabilities(Collections.<Size>emptyList(), Collections.<Size>emptyList(),
+                        Collections.<String>emptyList(),
+                        isFlashSupported ?
+                                Collections.singletonList(Camera.Parameters.FLASH_MODE_ON)
+                                : Collections.singletonList(Camera.Parameters.FLASH_MODE_OFF)));
 
         return cameraHolder;
     }
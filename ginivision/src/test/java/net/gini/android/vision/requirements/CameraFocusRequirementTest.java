@@ -1,12 +1,15 @@
 package net.gini.android.vision.requirements;
 
 import static com.google.common.truth.Truth.assertThat;
+import static net.gini.android.vision.requirements.TestUtil.createCapabilities;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import android.hardware.Camera;
 
+import net.gini.android.vision.internal.camera.photo.Size;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -45,12 +48,12 @@ public class CameraFocusRequirementTest {
 
     public CameraHolder getCameraHolder(boolean isAutoFocusSupported) {
         CameraHolder cameraHolder = mock(CameraHolder.class);
-        Camera.Parameters parameters = mock(Camera.Parameters.class);
-        when(cameraHolder.getCameraParameters()).thenReturn(parameters);
-        when(parameters.getSupportedFocusModes()).thenReturn(
-                isAutoFocusSupported ?
-                        Collections.singletonList(Camera.Parameters.FOCUS_MODE_AUTO)
-                        : Collections.singletonList(Camera.Parameters.FOCUS_MODE_FIXED));
+        when(cameraHolder.getCameraCapabilities()).thenReturn(
+                createCapabilities(Collections.<Size>emptyList(), Collections.<Size>emptyList(),
+                        isAutoFocusSupported ?
+                                Collections.singletonList(Camera.Parameters.FOCUS_MODE_AUTO)
+                                : Collections.singletonList(Camera.Parameters.FOCUS_MODE_FIXED),
+                        Collections.<String>emptyList()));
 
         return cameraHolder;
     }
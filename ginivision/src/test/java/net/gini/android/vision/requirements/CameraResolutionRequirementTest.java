@@ -1,11 +1,12 @@
 package net.gini.android.vision.requirements;
 
 import static com.google.common.truth.Truth.assertThat;
+import static net.gini.android.vision.requirements.TestUtil.createCapabilities;
 import static net.gini.android.vision.requirements.TestUtil.createSize;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import android.hardware.Camera;
+import net.gini.android.vision.internal.camera.photo.Size;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -39,7 +40,7 @@ public class CameraResolutionRequirementTest {
         CameraResolutionRequirement requirement = new CameraResolutionRequirement(cameraHolder);
 
         assertThat(requirement.check().isFulfilled()).isFalse();
-        assertThat(requirement.check().getDetails()).isEqualTo("Largest camera picture resolution is lower than 8MP");
+        assertThat(requirement.check().getDetails()).isEqualTo("Selected camera picture resolution is lower than 8MP");
     }
 
     @Test
@@ -62,22 +63,20 @@ public class CameraResolutionRequirementTest {
         assertThat(requirement.check().getDetails()).isEqualTo("Camera not open");
     }
 
-    private CameraHolder getCameraHolder(List<Camera.Size> previewSizes, List<Camera.Size> pictureSizes) {
+    private CameraHolder getCameraHolder(List<Size> previewSizes, List<Size> pictureSizes) {
         CameraHolder cameraHolder = mock(CameraHolder.class);
-        Camera.Parameters parameters = mock(Camera.Parameters.class);
-        when(cameraHolder.getCameraParameters()).thenReturn(parameters);
         if (previewSizes == null) {
-            Camera.Size size4to3 = createSize(1440, 1080);
-            Camera.Size size16to9 = createSize(1280, 720);
+            Size size4to3 = createSize(1440, 1080);
+            Size size16to9 = createSize(1280, 720);
             previewSizes = Arrays.asList(size4to3, size16to9);
         }
         if (pictureSizes == null) {
-            Camera.Size size4to3 = createSize(2880, 2160);
-            Camera.Size size16to9 = createSize(3840, 2160);
+            Size size4to3 = createSize(2880, 2160);
+            Size size16to9 = createSize(3840, 2160);
             pictureSizes = Arrays.asList(size4to3, size16to9);
         }
-        when(parameters.getSupportedPreviewSizes()).thenReturn(previewSizes);
-        when(parameters.getSupportedPictureSizes()).thenReturn(pictureSizes);
+        when(cameraHolder.getCameraCapabilities()).thenReturn(
+                createCapabilities(pictureSizes, previewSizes));
         return cameraHolder;
     }
 }
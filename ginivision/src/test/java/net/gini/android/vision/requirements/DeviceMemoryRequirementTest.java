@@ -1,20 +1,21 @@
 package net.gini.android.vision.requirements;
 
 import static com.google.common.truth.Truth.assertThat;
+import static net.gini.android.vision.requirements.TestUtil.createCapabilities;
 import static net.gini.android.vision.requirements.TestUtil.createSize;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import android.hardware.Camera;
-
 import net.gini.android.vision.internal.camera.photo.Size;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -52,6 +53,23 @@ public class DeviceMemoryRequirementTest {
         assertThat(requirement.check().isFulfilled()).isTrue();
     }
 
+    @Test
+    public void should_checkMemory_forTheSelectedPictureSize() {
+        // Given
+        CameraHolder cameraHolder = getCameraHolder(Arrays.asList(
+                createSize(4128, 3096),
+                createSize(3264, 2448),
+                createSize(1600, 1200)));
+        DeviceMemoryRequirement requirement = spy(new DeviceMemoryRequirement(cameraHolder));
+        // When
+        requirement.check();
+        // Then
+        ArgumentCaptor<Size> sizeCaptor = ArgumentCaptor.forClass(Size.class);
+        verify(requirement).sufficientMemoryAvailable(sizeCaptor.capture());
+        assertThat(sizeCaptor.getValue().width).isEqualTo(3264);
+        assertThat(sizeCaptor.getValue().height).isEqualTo(2448);
+    }
+
     @Test
     public void should_checkIfPictureSize_fitsIntoUnusedMemory() {
         CameraHolder cameraHolder = getCameraHolder(null);
@@ -65,16 +83,15 @@ public class DeviceMemoryRequirementTest {
         assertThat(requirement.sufficientMemoryAvailable(runtime, new Size(1024, 768))).isFalse();
     }
 
-    private CameraHolder getCameraHolder(List<Camera.Size> pictureSizes) {
+    private CameraHolder getCameraHolder(List<Size> pictureSizes) {
         CameraHolder cameraHolder = mock(CameraHolder.class);
-        Camera.Parameters parameters = mock(Camera.Parameters.class);
-        when(cameraHolder.getCameraParameters()).thenReturn(parameters);
         if (pictureSizes == null) {
-            Camera.Size size4to3 = createSize(4128, 3096);
-            Camera.Size sizeOther = createSize(4128, 2322);
+            Size size4to3 = createSize(4128, 3096);
+            Size sizeOther = createSize(4128, 2322);
             pictureSizes = Arrays.asList(size4to3, sizeOther);
         }
-        when(parameters.getSupportedPictureSizes()).thenReturn(pictureSizes);
+        when(cameraHolder.getCameraCapabilities()).thenReturn(
+                createCapabilities(pictureSizes, Collections.<Size>emptyList()));
         return cameraHolder;
     }
 
@@ -1,16 +1,27 @@
 package net.gini.android.vision.requirements;
 
-import static org.mockito.Mockito.mock;
+import net.gini.android.vision.internal.camera.api.CameraCapabilities;
+import net.gini.android.vision.internal.camera.photo.Size;
 
-import android.hardware.Camera;
+import java.util.Collections;
+import java.util.List;
 
 public final class TestUtil {
 
-    public static Camera.Size createSize(int width, int height) {
-        Camera.Size size = mock(Camera.Size.class);
-        size.width = width;
-        size.height = height;
-        return size;
+    public static Size createSize(int width, int height) {
+        return new Size(width, height);
+    }
+
+    public static CameraCapabilities createCapabilities(List<Size> pictureSizes,
+            List<Size> previewSizes) {
+        return createCapabilities(pictureSizes, previewSizes,
+                Collections.<String>emptyList(), Collections.<String>emptyList());
+    }
+
+    public static CameraCapabilities createCapabilities(List<Size> pictureSizes,
+            List<Size> previewSizes, List<String> focusModes, List<String> flashModes) {
+        return new CameraCapabilities(pictureSizes.toArray(new Size[pictureSizes.size()]),
+                previewSizes.toArray(new Size[previewSizes.size()]), focusModes, flashModes, 0);
     }
 
     private TestUtil() {
@@ -0,0 +1,397 @@
+package net.gini.android.vision.screen;
+
+import android.support.annotation.VisibleForTesting;
+
+import net.gini.android.DocumentTaskManager;
+import net.gini.android.models.SpecificExtraction;
+import net.gini.android.vision.Document;
+import net.gini.android.vision.internal.camera.api.UIExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * <p>
+ *     Analyzes several documents, for example a stack of invoices scanned one after the other.
+ * </p>
+ * <p>
+ *     Documents are queued with {@link DocumentAnalysisQueue#analyzeDocument(Document)} and at most the configured number of
+ *     documents are uploaded, polled and their extractions retrieved at the same time. The others wait in the queue.
+ * </p>
+ * <p>
+ *     Each document's analysis can be cancelled with {@link AnalysisRequest#cancel()}. A queued document won't be uploaded,
+ *     a running analysis stops after the current request to the Gini API finished and its result is not published.
+ * </p>
+ * <p>
+ *     The results are published on the main thread either in the order the documents were queued or as soon as they are
+ *     available, depending on the {@link ResultOrder}. Results are kept until a listener is set.
+ * </p>
+ * <p>
+ *     In this app the queue analyzes only the documents uploaded later by the {@link UploadQueue}. The document shown in
+ *     the {@link ReviewActivity} and the {@link AnalysisActivity} is still analyzed by the {@link SingleDocumentAnalyzer},
+ *     because the Gini Vision Library hands over one document at a time and its analysis has to continue from one screen
+ *     to the other.
+ * </p>
+ * <p>
+ *     The Gini API is accessed only through the given {@link DocumentTaskManager}, so the queue can be used with a Gini API
+ *     SDK instance pointed at a local stub of the Gini API.
+ * </p>
+ */
+public class DocumentAnalysisQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DocumentAnalysisQueue.class);
+
+    public enum ResultOrder {
+        /**
+         * Results are published in the order the documents were queued. A slow analysis delays the results of the
+         * documents queued after it.
+         */
+        SUBMISSION,
+        /**
+         * Results are published as soon as they are available.
+         */
+        COMPLETION
+    }
+
+    private final DocumentTaskManager mDocumentTaskManager;
+    private final int mMaxConcurrentAnalyses;
+    private final ResultOrder mResultOrder;
+    private final Executor mResultExecutor;
+
+    private final Queue<AnalysisRequest> mQueuedRequests = new ArrayDeque<>();
+    // Requests whose result wasn't published yet, in the order they were queued
+    private final List<AnalysisRequest> mUnpublishedRequests = new ArrayList<>();
+    private int mRunningAnalyses = 0;
+    private int mNextRequestId = 1;
+    private DocumentAnalysisListener mListener;
+
+    private final Runnable mPublishResults = new Runnable() {
+        @Override
+        public void run() {
+            publishResults();
+        }
+    };
+
+    public DocumentAnalysisQueue(DocumentTaskManager documentTaskManager, int maxConcurrentAnalyses,
+                                 ResultOrder resultOrder) {
+        this(documentTaskManager, maxConcurrentAnalyses, resultOrder, new Executor() {
+            private final UIExecutor mUIExecutor = new UIExecutor();
+
+            @Override
+            public void execute(Runnable runnable) {
+                mUIExecutor.runOnUiThread(runnable);
+            }
+        });
+    }
+
+    /**
+     * @param resultExecutor runs the publishing of the results, on the main thread outside of tests
+     */
+    @VisibleForTesting
+    DocumentAnalysisQueue(DocumentTaskManager documentTaskManager, int maxConcurrentAnalyses,
+                          ResultOrder resultOrder, Executor resultExecutor) {
+        if (maxConcurrentAnalyses < 1) {
+            throw new IllegalArgumentException("At least one analysis must be allowed to run");
+        }
+        mDocumentTaskManager = documentTaskManager;
+        mMaxConcurrentAnalyses = maxConcurrentAnalyses;
+        mResultOrder = resultOrder;
+        mResultExecutor = resultExecutor;
+    }
+
+    /**
+     * <p>
+     *     Queues the document for analysis. The analysis starts right away, if less than the maximum number of analyses
+     *     are running.
+     * </p>
+     *
+     * @return the {@link AnalysisRequest} for cancelling the analysis and identifying its result
+     */
+    public AnalysisRequest analyzeDocument(Document document) {
+        return queue(document, null);
+    }
+
+    /**
+     * <p>
+     *     Queues a document which was already uploaded to the Gini API, for example by the {@link UploadQueue}. Only
+     *     polling and retrieving the extractions are left to do.
+     * </p>
+     *
+     * @param giniApiDocumentId the id of the document in the Gini API
+     * @return the {@link AnalysisRequest} for cancelling the analysis and identifying its result
+     */
+    public AnalysisRequest analyzeUploadedDocument(String giniApiDocumentId) {
+        return queue(null, giniApiDocumentId);
+    }
+
+    private AnalysisRequest queue(Document document, String giniApiDocumentId) {
+        final AnalysisRequest request;
+        synchronized (this) {
+            request = new AnalysisRequest(mNextRequestId++, document, giniApiDocumentId);
+            LOG.debug("Queueing document for analysis: request {}", request.getId());
+            mQueuedRequests.add(request);
+            mUnpublishedRequests.add(request);
+        }
+        startQueuedAnalyses();
+        return request;
+    }
+
+    /**
+     * <p>
+     *     Cancels the analysis of all queued and running documents.
+     * </p>
+     */
+    public void cancelAll() {
+        final List<AnalysisRequest> requests;
+        synchronized (this) {
+            LOG.debug("Canceling all analyses");
+            requests = new ArrayList<>(mUnpublishedRequests);
+        }
+        for (AnalysisRequest request : requests) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * <p>
+     *     Sets the listener which receives the results on the main thread. Results which became available while no
+     *     listener was set are published to the new listener.
+     * </p>
+     */
+    public void setListener(DocumentAnalysisListener listener) {
+        synchronized (this) {
+            mListener = listener;
+        }
+        mResultExecutor.execute(mPublishResults);
+    }
+
+    public void removeListener() {
+        synchronized (this) {
+            mListener = null;
+        }
+    }
+
+    /**
+     * @return the number of documents which are queued or being analyzed
+     */
+    public synchronized int getPendingCount() {
+        return mQueuedRequests.size() + mRunningAnalyses;
+    }
+
+    public interface DocumentAnalysisListener {
+        void onExtractionsReceived(AnalysisRequest request, Map<String, SpecificExtraction> extractions);
+
+        void onException(AnalysisRequest request, Exception exception);
+    }
+
+    private void startQueuedAnalyses() {
+        while (true) {
+            final AnalysisRequest request;
+            synchronized (this) {
+                if (mRunningAnalyses >= mMaxConcurrentAnalyses || mQueuedRequests.isEmpty()) {
+                    return;
+                }
+                request = mQueuedRequests.remove();
+                mRunningAnalyses++;
+                LOG.debug("Starting analysis: request {} ({} running)", request.getId(), mRunningAnalyses);
+            }
+            request.analyze();
+        }
+    }
+
+    private void onAnalysisFinished(AnalysisRequest request) {
+        synchronized (this) {
+            mRunningAnalyses--;
+            LOG.debug("Analysis finished: request {} ({} running)", request.getId(), mRunningAnalyses);
+        }
+        startQueuedAnalyses();
+        mResultExecutor.execute(mPublishResults);
+    }
+
+    private void onAnalysisCancelled(AnalysisRequest request) {
+        synchronized (this) {
+            if (mQueuedRequests.remove(request)) {
+                LOG.debug("Removed request {} from the queue", request.getId());
+            }
+            mUnpublishedRequests.remove(request);
+        }
+        // Results of requests queued after the cancelled one may be waiting for it
+        mResultExecutor.execute(mPublishResults);
+    }
+
+    private void publishResults() {
+        final DocumentAnalysisListener listener;
+        final List<AnalysisRequest> requestsToPublish = new ArrayList<>();
+        synchronized (this) {
+            listener = mListener;
+            if (listener == null) {
+                return;
+            }
+            final Iterator<AnalysisRequest> iterator = mUnpublishedRequests.iterator();
+            while (iterator.hasNext()) {
+                final AnalysisRequest request = iterator.next();
+                if (request.isCompleted()) {
+                    requestsToPublish.add(request);
+                    iterator.remove();
+                } else if (mResultOrder == ResultOrder.SUBMISSION) {
+                    break;
+                }
+            }
+        }
+        for (AnalysisRequest request : requestsToPublish) {
+            if (request.isCancelled()) {
+                continue;
+            }
+            final Task<Map<String, SpecificExtraction>> resultTask = request.getResultTask();
+            LOG.debug("Publishing result: request {}", request.getId());
+            if (resultTask.isFaulted()) {
+                LOG.error("Analysis failed: request {}", request.getId(), resultTask.getError());
+                listener.onException(request, resultTask.getError());
+            } else if (resultTask.isCancelled()) {
+                // Not cancelled by us, but by the Gini API SDK
+                LOG.error("Analysis was cancelled by the Gini API SDK: request {}", request.getId());
+                listener.onException(request, new CancellationException("Analysis was cancelled by the Gini API SDK"));
+            } else {
+                listener.onExtractionsReceived(request, resultTask.getResult());
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     The analysis of a queued document.
+     * </p>
+     */
+    public class AnalysisRequest {
+
+        private final int mId;
+        private final Document mDocument;
+        private final String mUploadedDocumentId;
+        private boolean mCancelled = false;
+        private Task<Map<String, SpecificExtraction>> mResultTask;
+        private net.gini.android.models.Document mGiniApiDocument;
+
+        private AnalysisRequest(int id, Document document, String uploadedDocumentId) {
+            mId = id;
+            mDocument = document;
+            mUploadedDocumentId = uploadedDocumentId;
+        }
+
+        /**
+         * @return the request's number, requests queued later have larger numbers
+         */
+        public int getId() {
+            return mId;
+        }
+
+        /**
+         * @return the queued document or {@code null}, if an uploaded document was queued
+         */
+        public Document getDocument() {
+            return mDocument;
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                if (mCancelled) {
+                    return;
+                }
+                LOG.debug("Canceling analysis: request {}", mId);
+                mCancelled = true;
+            }
+            onAnalysisCancelled(this);
+        }
+
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public synchronized boolean isCompleted() {
+            return mResultTask != null;
+        }
+
+        /**
+         * @return the document created in the Gini API or {@code null}, if it wasn't created yet
+         */
+        public synchronized net.gini.android.models.Document getGiniApiDocument() {
+            return mGiniApiDocument;
+        }
+
+        private void analyze() {
+            if (isCancelled()) {
+                LOG.debug("Analysis cancelled before upload: request {}", mId);
+                onAnalysisFinished(this);
+                return;
+            }
+            final Task<net.gini.android.models.Document> documentTask;
+            if (mDocument != null) {
+                documentTask = mDocumentTaskManager.createDocument(mDocument.getJpeg(), null, null);
+            } else {
+                LOG.debug("Analyzing uploaded document for request {}: {}", mId, mUploadedDocumentId);
+                documentTask = mDocumentTaskManager.getDocument(mUploadedDocumentId);
+            }
+            documentTask
+                    .onSuccessTask(new Continuation<net.gini.android.models.Document, Task<net.gini.android.models.Document>>() {
+                        @Override
+                        public Task<net.gini.android.models.Document> then(Task<net.gini.android.models.Document> task) throws Exception {
+                            net.gini.android.models.Document giniDocument = task.getResult();
+                            LOG.debug("Document created for request {}: {}", mId, giniDocument.getId());
+                            setGiniApiDocument(giniDocument);
+                            if (isCancelled()) {
+                                LOG.debug("Analysis cancelled for document: {}", giniDocument.getId());
+                                return Task.cancelled();
+                            }
+                            LOG.debug("Polling document: {}", giniDocument.getId());
+                            return mDocumentTaskManager.pollDocument(giniDocument);
+                        }
+                    })
+                    .onSuccessTask(new Continuation<net.gini.android.models.Document, Task<Map<String, SpecificExtraction>>>() {
+                        @Override
+                        public Task<Map<String, SpecificExtraction>> then(Task<net.gini.android.models.Document> task) throws Exception {
+                            net.gini.android.models.Document giniDocument = task.getResult();
+                            LOG.debug("Document polling done: {}", giniDocument.getId());
+                            if (isCancelled()) {
+                                LOG.debug("Analysis cancelled for document: {}", giniDocument.getId());
+                                return Task.cancelled();
+                            }
+                            LOG.debug("Getting extractions for document: {}", giniDocument.getId());
+                            return mDocumentTaskManager.getExtractions(giniDocument);
+                        }
+                    })
+                    .continueWith(new Continuation<Map<String, SpecificExtraction>, Void>() {
+                        @Override
+                        public Void then(Task<Map<String, SpecificExtraction>> task) throws Exception {
+                            LOG.debug("Analysis completed with {}: request {}",
+                                    task.isCancelled() ? "cancellation" : task.isFaulted() ? "fault" : "success", mId);
+                            setResultTask(task);
+                            onAnalysisFinished(AnalysisRequest.this);
+                            return null;
+                        }
+                    });
+        }
+
+        private synchronized void setGiniApiDocument(net.gini.android.models.Document giniApiDocument) {
+            mGiniApiDocument = giniApiDocument;
+        }
+
+        private synchronized Task<Map<String, SpecificExtraction>> getResultTask() {
+            return mResultTask;
+        }
+
+        private synchronized void setResultTask(Task<Map<String, SpecificExtraction>> resultTask) {
+            mResultTask = resultTask;
+        }
+    }
+}
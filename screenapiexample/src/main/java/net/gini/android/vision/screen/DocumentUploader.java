@@ -0,0 +1,38 @@
+package net.gini.android.vision.screen;
+
+import net.gini.android.DocumentTaskManager;
+
+import bolts.Continuation;
+import bolts.Task;
+
+/**
+ * <p>
+ *     Uploads the documents of the {@link UploadQueue} with the Gini API SDK.
+ * </p>
+ */
+public class DocumentUploader implements UploadQueue.Uploader {
+
+    private final DocumentTaskManager mDocumentTaskManager;
+
+    public DocumentUploader(DocumentTaskManager documentTaskManager) {
+        mDocumentTaskManager = documentTaskManager;
+    }
+
+    @Override
+    public void upload(byte[] jpeg, final UploadQueue.UploadCallback callback) {
+        mDocumentTaskManager.createDocument(jpeg, null, null)
+                .continueWith(new Continuation<net.gini.android.models.Document, Void>() {
+                    @Override
+                    public Void then(Task<net.gini.android.models.Document> task) throws Exception {
+                        if (task.isFaulted()) {
+                            callback.onFailed(task.getError());
+                        } else if (task.isCancelled()) {
+                            callback.onFailed(new IllegalStateException("Upload was cancelled"));
+                        } else {
+                            callback.onUploaded(task.getResult().getId());
+                        }
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,359 @@
+package net.gini.android.vision.screen;
+
+import net.gini.android.models.Box;
+import net.gini.android.models.Extraction;
+import net.gini.android.models.SpecificExtraction;
+import net.gini.android.vision.DocumentKey;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     Caches the extractions of analyzed documents by their {@link DocumentKey}, so a document analyzed again, for
+ *     example after returning from the Analysis Screen to the Review Screen or after the activity was recreated, isn't
+ *     uploaded and polled again.
+ * </p>
+ * <p>
+ *     The most recently used results are kept in memory. If a directory is given the extractions are also written to
+ *     disk, where the oldest files are deleted once there are more than the given number of files. Results read from
+ *     disk don't have the Gini API document, so no feedback can be sent for them.
+ * </p>
+ * <p>
+ *     The files start with the version of their format and files of other versions are ignored. The extractions are
+ *     written field by field, because the parcelled form of the Gini API SDK's models may change between Android and
+ *     SDK versions.
+ * </p>
+ * <p>
+ *     The cached results of a picture are removed with {@link ExtractionCache#invalidate(String)} when the picture was
+ *     rotated.
+ * </p>
+ */
+public class ExtractionCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExtractionCache.class);
+
+    private static final int DISK_FORMAT_VERSION = 2;
+    private static final String FILE_SUFFIX = ".extractions";
+
+    private final int mMaxMemoryEntries;
+    private final File mDiskDirectory;
+    private final int mMaxDiskEntries;
+    private final Map<DocumentKey, Result> mMemoryEntries;
+
+    private int mMemoryHits = 0;
+    private int mDiskHits = 0;
+    private int mMisses = 0;
+
+    /**
+     * @param maxMemoryEntries the number of results kept in memory
+     * @param diskDirectory    the directory for the disk tier or {@code null} to keep results only in memory
+     * @param maxDiskEntries   the number of results kept on disk
+     */
+    public ExtractionCache(final int maxMemoryEntries, final File diskDirectory, final int maxDiskEntries) {
+        mMaxMemoryEntries = maxMemoryEntries;
+        mDiskDirectory = diskDirectory;
+        mMaxDiskEntries = maxDiskEntries;
+        // Access order turns it into a least recently used cache
+        mMemoryEntries = new LinkedHashMap<DocumentKey, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<DocumentKey, Result> eldest) {
+                return size() > mMaxMemoryEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cached result or {@code null}, if the document wasn't analyzed before
+     */
+    public synchronized Result get(DocumentKey key) {
+        Result result = mMemoryEntries.get(key);
+        if (result != null) {
+            mMemoryHits++;
+            LOG.debug("Extractions found in memory: {}", key);
+            logStatistics();
+            return result;
+        }
+        result = readFromDisk(key);
+        if (result != null) {
+            mDiskHits++;
+            mMemoryEntries.put(key, result);
+            LOG.debug("Extractions found on disk: {}", key);
+            logStatistics();
+            return result;
+        }
+        mMisses++;
+        logStatistics();
+        return null;
+    }
+
+    public synchronized void put(DocumentKey key, net.gini.android.models.Document giniApiDocument,
+                                 Map<String, SpecificExtraction> extractions) {
+        LOG.debug("Caching extractions: {}", key);
+        mMemoryEntries.put(key, new Result(giniApiDocument, extractions));
+        writeToDisk(key, extractions);
+    }
+
+    /**
+     * <p>
+     *     Removes the results of all versions of a picture, for example when it was rotated.
+     * </p>
+     *
+     * @param contentId the content id of the picture, results without content id are kept
+     */
+    public synchronized void invalidate(String contentId) {
+        if (contentId == null) {
+            return;
+        }
+        LOG.debug("Invalidating extractions for content id: {}", contentId);
+        final Iterator<DocumentKey> iterator = mMemoryEntries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (contentId.equals(iterator.next().getContentId())) {
+                iterator.remove();
+            }
+        }
+        for (File file : listDiskFiles()) {
+            if (file.getName().startsWith(contentId + "_")) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        mMemoryEntries.clear();
+        for (File file : listDiskFiles()) {
+            deleteFile(file);
+        }
+    }
+
+    public synchronized int getMemoryHitCount() {
+        return mMemoryHits;
+    }
+
+    public synchronized int getDiskHitCount() {
+        return mDiskHits;
+    }
+
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    private void logStatistics() {
+        LOG.debug("Extraction cache: {} memory hits, {} disk hits, {} misses", mMemoryHits, mDiskHits, mMisses);
+    }
+
+    private Result readFromDisk(DocumentKey key) {
+        if (mDiskDirectory == null) {
+            return null;
+        }
+        final File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final Map<String, SpecificExtraction> extractions;
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != DISK_FORMAT_VERSION) {
+                    LOG.debug("Ignoring extractions with a different format: {}", file.getName());
+                    extractions = null;
+                } else {
+                    extractions = readExtractions(input);
+                }
+            } finally {
+                input.close();
+            }
+            if (extractions == null) {
+                deleteFile(file);
+                return null;
+            }
+            // Mark it as recently used
+            file.setLastModified(System.currentTimeMillis());
+            return new Result(null, extractions);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Could not read cached extractions: {}", file.getName(), e);
+            deleteFile(file);
+            return null;
+        }
+    }
+
+    private void writeToDisk(DocumentKey key, Map<String, SpecificExtraction> extractions) {
+        if (mDiskDirectory == null) {
+            return;
+        }
+        if (!mDiskDirectory.exists() && !mDiskDirectory.mkdirs()) {
+            LOG.error("Could not create the extraction cache directory: {}", mDiskDirectory);
+            return;
+        }
+        final File file = getFile(key);
+        try {
+            final DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                output.writeInt(DISK_FORMAT_VERSION);
+                writeExtractions(output, extractions);
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Could not write extractions to the cache: {}", key, e);
+            if (file.exists()) {
+                deleteFile(file);
+            }
+        }
+        trimDiskEntries();
+    }
+
+    private static void writeExtractions(DataOutputStream output, Map<String, SpecificExtraction> extractions)
+            throws IOException {
+        output.writeInt(extractions.size());
+        for (Map.Entry<String, SpecificExtraction> entry : extractions.entrySet()) {
+            final SpecificExtraction extraction = entry.getValue();
+            output.writeUTF(entry.getKey());
+            writeString(output, extraction.getName());
+            writeExtraction(output, extraction);
+            final List<Extraction> candidates = extraction.getCandidate();
+            output.writeInt(candidates != null ? candidates.size() : 0);
+            if (candidates != null) {
+                for (Extraction candidate : candidates) {
+                    writeExtraction(output, candidate);
+                }
+            }
+        }
+    }
+
+    private static Map<String, SpecificExtraction> readExtractions(DataInputStream input) throws IOException {
+        final int count = input.readInt();
+        final Map<String, SpecificExtraction> extractions = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            final String key = input.readUTF();
+            final String name = readString(input);
+            final Extraction extraction = readExtraction(input);
+            final int candidateCount = input.readInt();
+            final List<Extraction> candidates = new ArrayList<>(candidateCount);
+            for (int j = 0; j < candidateCount; j++) {
+                candidates.add(readExtraction(input));
+            }
+            extractions.put(key, new SpecificExtraction(name, extraction.getValue(), extraction.getEntity(),
+                    extraction.getBox(), candidates));
+        }
+        return extractions;
+    }
+
+    private static void writeExtraction(DataOutputStream output, Extraction extraction) throws IOException {
+        writeString(output, extraction.getValue());
+        writeString(output, extraction.getEntity());
+        final Box box = extraction.getBox();
+        output.writeBoolean(box != null);
+        if (box != null) {
+            output.writeInt(box.getPageNumber());
+            output.writeDouble(box.getLeft());
+            output.writeDouble(box.getTop());
+            output.writeDouble(box.getWidth());
+            output.writeDouble(box.getHeight());
+        }
+    }
+
+    private static Extraction readExtraction(DataInputStream input) throws IOException {
+        final String value = readString(input);
+        final String entity = readString(input);
+        Box box = null;
+        if (input.readBoolean()) {
+            box = new Box(input.readInt(), input.readDouble(), input.readDouble(), input.readDouble(),
+                    input.readDouble());
+        }
+        return new Extraction(value, entity, box);
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        output.writeBoolean(string != null);
+        if (string != null) {
+            output.writeUTF(string);
+        }
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private void trimDiskEntries() {
+        final File[] files = listDiskFiles();
+        if (files.length <= mMaxDiskEntries) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return Long.valueOf(lhs.lastModified()).compareTo(rhs.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length - mMaxDiskEntries; i++) {
+            deleteFile(files[i]);
+        }
+    }
+
+    private File getFile(DocumentKey key) {
+        return new File(mDiskDirectory, key.asString() + FILE_SUFFIX);
+    }
+
+    private File[] listDiskFiles() {
+        if (mDiskDirectory == null) {
+            return new File[0];
+        }
+        final File[] files = mDiskDirectory.listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    private static void deleteFile(File file) {
+        if (!file.delete()) {
+            LOG.error("Could not delete cached extractions: {}", file.getName());
+        }
+    }
+
+    /**
+     * <p>
+     *     The cached extractions and the Gini API document they were extracted from.
+     * </p>
+     */
+    public static class Result {
+
+        private final net.gini.android.models.Document mGiniApiDocument;
+        private final Map<String, SpecificExtraction> mExtractions;
+
+        private Result(net.gini.android.models.Document giniApiDocument, Map<String, SpecificExtraction> extractions) {
+            mGiniApiDocument = giniApiDocument;
+            mExtractions = new HashMap<>(extractions);
+        }
+
+        /**
+         * @return the Gini API document or {@code null}, if the result was read from disk
+         */
+        public net.gini.android.models.Document getGiniApiDocument() {
+            return mGiniApiDocument;
+        }
+
+        /**
+         * @return a copy of the extractions, which can be modified
+         */
+        public Map<String, SpecificExtraction> getExtractions() {
+            return new HashMap<>(mExtractions);
+        }
+    }
+}
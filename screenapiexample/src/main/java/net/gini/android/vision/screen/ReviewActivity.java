@@ -7,6 +7,7 @@ import android.support.annotation.NonNull;
 import net.gini.android.models.SpecificExtraction;
 import net.gini.android.vision.Document;
 import net.gini.android.vision.GiniVisionDebug;
+import net.gini.android.vision.review.DocumentQuality;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +19,7 @@ public class ReviewActivity extends net.gini.android.vision.review.ReviewActivit
     private static final Logger LOG = LoggerFactory.getLogger(ReviewActivity.class);
 
     private Map<String, SpecificExtraction> mExtractions;
+    private DocumentQuality mDocumentQuality;
 
     private SingleDocumentAnalyzer mSingleDocumentAnalyzer;
 
@@ -50,11 +52,24 @@ public class ReviewActivity extends net.gini.android.vision.review.ReviewActivit
         return extractionsBundle;
     }
 
+    @Override
+    public void onDocumentQualityAnalyzed(@NonNull DocumentQuality quality) {
+        LOG.debug("Document quality analyzed: {}", quality);
+        mDocumentQuality = quality;
+    }
+
     @Override
     public void onShouldAnalyzeDocument(@NonNull Document document) {
         LOG.debug("Should analyze document");
         GiniVisionDebug.writeDocumentToFile(this, document, "_for_review");
 
+        if (mDocumentQuality != null && !mDocumentQuality.isAcceptable()) {
+            // We don't upload blurry, overexposed or too dark photos right away. If the user doesn't retake the photo,
+            // the Gini Vision Library goes to the Analysis Screen where it will be analyzed.
+            LOG.debug("Deferring the analysis of a document with poor quality");
+            return;
+        }
+
         // We should start analyzing the document by sending it to the Gini API.
         // If the user did not modify the image we can get the analysis results earlier.
         // The Gini Vision Library does not go to the Analysis Screen, if the results were received in the Review Screen.
@@ -69,6 +84,8 @@ public class ReviewActivity extends net.gini.android.vision.review.ReviewActivit
         LOG.debug("Document was rotated");
         // We need to cancel the analysis here, we will have to upload the rotated document in the Analysis Screen
         mSingleDocumentAnalyzer.cancelAnalysis();
+        // Extractions cached for the picture don't apply to the rotated document
+        mSingleDocumentAnalyzer.invalidateCachedExtractions(document);
     }
 
     private void analyzeDocument(Document document) {
@@ -1,10 +1,27 @@
 package net.gini.android.vision.screen;
 
 import android.app.Application;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Bundle;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
 
 import net.gini.android.Gini;
 import net.gini.android.SdkBuilder;
 import net.gini.android.ginivisiontest.R;
+import net.gini.android.models.SpecificExtraction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Map;
 
 /**
  * <p>
@@ -17,19 +34,98 @@ import net.gini.android.ginivisiontest.R;
  *     {@link AnalysisActivity}, if the document wasn't modified. In case it is modified the analysis is cancelled and
  *     only started in the {@link AnalysisActivity} where the reviewed final document is available.
  * </p>
+ * <p>
+ *     Documents which couldn't be uploaded are kept in the {@link UploadQueue} and uploaded when the network is available
+ *     again. Uploaded documents are analyzed by the {@link DocumentAnalysisQueue}, which runs several of these deferred
+ *     analyses at the same time, and a notification opens their extractions in the {@link ExtractionsActivity}.
+ * </p>
  */
 public class ScreenApiApp extends Application {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ScreenApiApp.class);
+
+    private static final int MAX_CONCURRENT_ANALYSES = 3;
+    private static final int EXTRACTION_CACHE_MEMORY_ENTRIES = 10;
+    private static final int EXTRACTION_CACHE_DISK_ENTRIES = 50;
+    private static final long UPLOAD_QUEUE_MAX_DISK_BYTES = 50 * 1024 * 1024;
+
     private Gini mGiniApi;
     private SingleDocumentAnalyzer mSingleDocumentAnalyzer;
+    private DocumentAnalysisQueue mDocumentAnalysisQueue;
+    private ExtractionCache mExtractionCache;
+    private UploadQueue mUploadQueue;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Resumes uploading the documents queued before the app was closed
+        getUploadQueue();
+    }
 
     public SingleDocumentAnalyzer getSingleDocumentAnalyzer() {
         if (mSingleDocumentAnalyzer == null) {
-            mSingleDocumentAnalyzer = new SingleDocumentAnalyzer(getGiniApi());
+            mSingleDocumentAnalyzer = new SingleDocumentAnalyzer(getGiniApi(), getExtractionCache(),
+                    getUploadQueue());
         }
         return mSingleDocumentAnalyzer;
     }
 
+    public UploadQueue getUploadQueue() {
+        if (mUploadQueue == null) {
+            mUploadQueue = new UploadQueue.Builder(new File(getFilesDir(), "uploads"),
+                    new DocumentUploader(getGiniApi().getDocumentTaskManager()))
+                    .setMaxDiskBytes(UPLOAD_QUEUE_MAX_DISK_BYTES)
+                    .setConnected(isConnected())
+                    .setListener(new UploadQueue.Listener() {
+                        @Override
+                        public void onUploaded(UploadQueue.Entry entry, String documentId) {
+                            getDocumentAnalysisQueue().analyzeUploadedDocument(documentId);
+                        }
+
+                        @Override
+                        public void onDropped(UploadQueue.Entry entry, String reason) {
+                            LOG.warn("Queued document was not uploaded: {} ({})", entry, reason);
+                        }
+                    })
+                    .build();
+            registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    mUploadQueue.setConnected(isConnected());
+                }
+            }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+        return mUploadQueue;
+    }
+
+    public ExtractionCache getExtractionCache() {
+        if (mExtractionCache == null) {
+            mExtractionCache = new ExtractionCache(EXTRACTION_CACHE_MEMORY_ENTRIES,
+                    new File(getCacheDir(), "extractions"), EXTRACTION_CACHE_DISK_ENTRIES);
+        }
+        return mExtractionCache;
+    }
+
+    public synchronized DocumentAnalysisQueue getDocumentAnalysisQueue() {
+        if (mDocumentAnalysisQueue == null) {
+            mDocumentAnalysisQueue = new DocumentAnalysisQueue(getGiniApi().getDocumentTaskManager(),
+                    MAX_CONCURRENT_ANALYSES, DocumentAnalysisQueue.ResultOrder.SUBMISSION);
+            mDocumentAnalysisQueue.setListener(new DocumentAnalysisQueue.DocumentAnalysisListener() {
+                @Override
+                public void onExtractionsReceived(DocumentAnalysisQueue.AnalysisRequest request,
+                                                  Map<String, SpecificExtraction> extractions) {
+                    showExtractionsNotification(request, extractions);
+                }
+
+                @Override
+                public void onException(DocumentAnalysisQueue.AnalysisRequest request, Exception exception) {
+                    LOG.error("Analysis of queued document failed: request {}", request.getId(), exception);
+                }
+            });
+        }
+        return mDocumentAnalysisQueue;
+    }
+
     public Gini getGiniApi() {
         if (mGiniApi == null) {
             createGiniApi();
@@ -37,6 +133,33 @@ public class ScreenApiApp extends Application {
         return mGiniApi;
     }
 
+    private void showExtractionsNotification(DocumentAnalysisQueue.AnalysisRequest request,
+                                             Map<String, SpecificExtraction> extractions) {
+        final Bundle extractionsBundle = new Bundle();
+        for (Map.Entry<String, SpecificExtraction> entry : extractions.entrySet()) {
+            extractionsBundle.putParcelable(entry.getKey(), entry.getValue());
+        }
+        final Intent intent = new Intent(this, ExtractionsActivity.class);
+        intent.putExtra(ExtractionsActivity.EXTRA_IN_EXTRACTIONS, extractionsBundle);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        final PendingIntent pendingIntent = PendingIntent.getActivity(this, request.getId(), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(this)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.notification_queued_document_analyzed))
+                .setContentText(getString(R.string.notification_show_extractions))
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true);
+        NotificationManagerCompat.from(this).notify(request.getId(), builder.build());
+    }
+
+    private boolean isConnected() {
+        final ConnectivityManager connectivityManager =
+                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
     private void createGiniApi() {
         SdkBuilder builder = new SdkBuilder(this,
                 this.getString(R.string.gini_api_client_id),
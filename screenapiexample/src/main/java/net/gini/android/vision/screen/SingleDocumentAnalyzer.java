@@ -4,12 +4,17 @@ import net.gini.android.DocumentTaskManager;
 import net.gini.android.Gini;
 import net.gini.android.models.SpecificExtraction;
 import net.gini.android.vision.Document;
+import net.gini.android.vision.DocumentKey;
 import net.gini.android.vision.internal.camera.api.UIExecutor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import bolts.Continuation;
 import bolts.Task;
@@ -27,6 +32,14 @@ import bolts.Task;
  * <p>
  *     If the document wasn't modified the analysis started in the {@link ReviewActivity} continues in the {@link AnalysisActivity}.
  * </p>
+ * <p>
+ *     If an {@link ExtractionCache} is given, the extractions of documents which were analyzed before are taken from the
+ *     cache instead of uploading the document again.
+ * </p>
+ * <p>
+ *     If an {@link UploadQueue} is given, documents which couldn't be uploaded, for example because the network was not
+ *     available, are queued and uploaded later.
+ * </p>
  */
 public class SingleDocumentAnalyzer {
 
@@ -34,12 +47,35 @@ public class SingleDocumentAnalyzer {
 
     private Gini mGiniApi;
     private Analyzer mAnalyzer;
+    private ExtractionCache mExtractionCache;
+    private UploadQueue mUploadQueue;
     private UIExecutor mUIExecutor = new UIExecutor();
+    // Hashes the JPEGs and reads the cache from disk. Serial, so a rotated document is looked up only after the
+    // extractions of its previous version were invalidated. The daemon thread doesn't keep the process alive.
+    private final Executor mCacheExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "ExtractionCache");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     public SingleDocumentAnalyzer(Gini giniApi) {
         mGiniApi = giniApi;
     }
 
+    public SingleDocumentAnalyzer(Gini giniApi, ExtractionCache extractionCache) {
+        mGiniApi = giniApi;
+        mExtractionCache = extractionCache;
+    }
+
+    public SingleDocumentAnalyzer(Gini giniApi, ExtractionCache extractionCache, UploadQueue uploadQueue) {
+        mGiniApi = giniApi;
+        mExtractionCache = extractionCache;
+        mUploadQueue = uploadQueue;
+    }
+
     /**
      * <p>
      *     Analyzes a new document only, if there was no previous analysis or the previous one was cancelled.
@@ -72,6 +108,23 @@ public class SingleDocumentAnalyzer {
         }
     }
 
+    /**
+     * <p>
+     *     Removes the cached extractions of all versions of the document's picture, for example when it was rotated.
+     * </p>
+     */
+    public void invalidateCachedExtractions(final Document document) {
+        if (mExtractionCache == null) {
+            return;
+        }
+        mCacheExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mExtractionCache.invalidate(DocumentKey.readContentId(document));
+            }
+        });
+    }
+
     public void removeListener() {
         LOG.debug("Removing listener");
         if (mAnalyzer != null) {
@@ -157,7 +210,44 @@ public class SingleDocumentAnalyzer {
             mDocumentTaskManager = documentTaskManager;
         }
 
-        public synchronized void analyze(Document document) {
+        public synchronized void analyze(final Document document) {
+            if (mExtractionCache == null) {
+                upload(document, null);
+                return;
+            }
+            Task.call(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final DocumentKey documentKey = DocumentKey.of(document);
+                    final ExtractionCache.Result cachedResult = mExtractionCache.get(documentKey);
+                    if (cachedResult != null) {
+                        LOG.debug("Using cached extractions");
+                        setGiniApiDocument(cachedResult.getGiniApiDocument());
+                        setResultTask(Task.forResult(cachedResult.getExtractions()));
+                        publishResult();
+                        return null;
+                    }
+                    if (isCancelled()) {
+                        LOG.debug("Analysis cancelled before upload");
+                        return null;
+                    }
+                    upload(document, documentKey);
+                    return null;
+                }
+            }, mCacheExecutor).continueWith(new Continuation<Void, Void>() {
+                @Override
+                public Void then(Task<Void> task) throws Exception {
+                    if (task.isFaulted()) {
+                        LOG.error("Looking up the cached extractions failed", task.getError());
+                        setResultTask(Task.<Map<String, SpecificExtraction>>forError(task.getError()));
+                        publishResult();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        private void upload(final Document document, final DocumentKey documentKey) {
             mDocumentTaskManager.createDocument(document.getJpeg(), null, null)
                     .onSuccessTask(new Continuation<net.gini.android.models.Document, Task<net.gini.android.models.Document>>() {
                         @Override
@@ -190,10 +280,20 @@ public class SingleDocumentAnalyzer {
                         @Override
                         public Map<String, SpecificExtraction> then(final Task<Map<String, SpecificExtraction>> task) throws Exception {
                             if (isCancelled()) {
-                                LOG.debug("Analysis completed with cancellation for document: {}", getGiniApiDocument().getId());
+                                LOG.debug("Analysis completed with cancellation");
+                                return null;
+                            }
+                            if (getGiniApiDocument() == null) {
+                                LOG.debug("Analysis completed with upload fault");
+                                enqueueForUpload(document);
+                                setResultTask(task);
+                                publishResult();
                                 return null;
                             }
                             LOG.debug("Analysis completed with {} for document: {}", task.isFaulted() ? "fault" : "success", getGiniApiDocument().getId());
+                            if (documentKey != null && !task.isFaulted()) {
+                                mExtractionCache.put(documentKey, getGiniApiDocument(), task.getResult());
+                            }
                             setResultTask(task);
                             publishResult();
                             return null;
@@ -201,6 +301,14 @@ public class SingleDocumentAnalyzer {
                     });
         }
 
+        private void enqueueForUpload(Document document) {
+            if (mUploadQueue == null) {
+                return;
+            }
+            LOG.debug("Queueing document for uploading later");
+            mUploadQueue.enqueue(document);
+        }
+
         private synchronized void publishResult() {
             mUIExecutor.runOnUiThread(new Runnable() {
                 @Override
@@ -0,0 +1,731 @@
+package net.gini.android.vision.screen;
+
+import net.gini.android.vision.Document;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Keeps documents which couldn't be uploaded on disk and uploads them once the network is available again, so the
+ *     user doesn't have to take the picture again.
+ * </p>
+ * <p>
+ *     The JPEGs are stored in app-private storage next to an append-only index, which records when an entry was added,
+ *     when an upload failed and when it was removed. The index is replayed when the queue is created, so queued
+ *     documents survive app restarts. It is compacted once most of its lines refer to removed entries.
+ * </p>
+ * <p>
+ *     Failed uploads are retried with exponential backoff and jitter, up to the maximum number of attempts. All waiting
+ *     entries are retried right away when {@link UploadQueue#setConnected(boolean)} reports that the network is
+ *     available again. At most the batch size of entries are uploaded at the same time.
+ * </p>
+ * <p>
+ *     The oldest entries are dropped if the JPEGs would use more than the maximum disk space.
+ * </p>
+ * <p>
+ *     The uploads are started and the listener is called on the queue's own thread.
+ * </p>
+ */
+public class UploadQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadQueue.class);
+
+    private static final String INDEX_FILE = "index";
+    private static final String JPEG_SUFFIX = ".jpg";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String ADDED = "A";
+    private static final String FAILED = "F";
+    private static final String REMOVED = "R";
+    private static final int MIN_LINES_FOR_COMPACTION = 32;
+
+    /**
+     * <p>
+     *     Uploads a JPEG, for example with the Gini API SDK's {@link net.gini.android.DocumentTaskManager}.
+     * </p>
+     */
+    public interface Uploader {
+        /**
+         * Must call the callback exactly once, on any thread.
+         */
+        void upload(byte[] jpeg, UploadCallback callback);
+    }
+
+    public interface UploadCallback {
+        void onUploaded(String documentId);
+
+        void onFailed(Exception exception);
+    }
+
+    private interface JpegWriter {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    public interface Listener {
+        void onUploaded(Entry entry, String documentId);
+
+        /**
+         * Called when an entry was removed without being uploaded, because it failed too often or the disk space was
+         * needed for newer entries.
+         */
+        void onDropped(Entry entry, String reason);
+    }
+
+    /**
+     * <p>
+     *     A queued document.
+     * </p>
+     */
+    public static class Entry {
+
+        private final long mId;
+        private final long mCreatedAtMillis;
+        private final long mSizeBytes;
+        private int mAttempts;
+        private long mNextAttemptAtMillis;
+
+        private Entry(long id, long createdAtMillis, long sizeBytes) {
+            mId = id;
+            mCreatedAtMillis = createdAtMillis;
+            mSizeBytes = sizeBytes;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public long getCreatedAtMillis() {
+            return mCreatedAtMillis;
+        }
+
+        public long getSizeBytes() {
+            return mSizeBytes;
+        }
+
+        /**
+         * @return the number of failed uploads
+         */
+        public int getAttempts() {
+            return mAttempts;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{id=" + mId + ", sizeBytes=" + mSizeBytes + ", attempts=" + mAttempts + "}";
+        }
+    }
+
+    public static class Builder {
+
+        private final File mDirectory;
+        private final Uploader mUploader;
+        private long mMaxDiskBytes = 50 * 1024 * 1024;
+        private int mBatchSize = 2;
+        private int mMaxAttempts = 10;
+        private long mBaseRetryDelayMillis = 2000;
+        private long mMaxRetryDelayMillis = 5 * 60 * 1000;
+        private Random mRandom = new Random();
+        private boolean mConnected = true;
+        private Listener mListener;
+
+        public Builder(File directory, Uploader uploader) {
+            mDirectory = directory;
+            mUploader = uploader;
+        }
+
+        public Builder setMaxDiskBytes(long maxDiskBytes) {
+            mMaxDiskBytes = maxDiskBytes;
+            return this;
+        }
+
+        public Builder setBatchSize(int batchSize) {
+            mBatchSize = batchSize;
+            return this;
+        }
+
+        public Builder setMaxAttempts(int maxAttempts) {
+            mMaxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder setRetryDelays(long baseRetryDelayMillis, long maxRetryDelayMillis) {
+            mBaseRetryDelayMillis = baseRetryDelayMillis;
+            mMaxRetryDelayMillis = maxRetryDelayMillis;
+            return this;
+        }
+
+        public Builder setRandom(Random random) {
+            mRandom = random;
+            return this;
+        }
+
+        /**
+         * Sets whether the network is available when the queue is created. Later changes are reported with
+         * {@link UploadQueue#setConnected(boolean)}.
+         */
+        public Builder setConnected(boolean connected) {
+            mConnected = connected;
+            return this;
+        }
+
+        /**
+         * Sets the listener before the queue starts uploading the entries which were queued before it was created.
+         */
+        public Builder setListener(Listener listener) {
+            mListener = listener;
+            return this;
+        }
+
+        public UploadQueue build() {
+            if (mBatchSize < 1 || mMaxAttempts < 1 || mMaxDiskBytes < 1) {
+                throw new IllegalArgumentException("Batch size, maximum attempts and disk space must be positive");
+            }
+            return new UploadQueue(this);
+        }
+    }
+
+    private final File mDirectory;
+    private final File mIndexFile;
+    private final Uploader mUploader;
+    private final long mMaxDiskBytes;
+    private final int mBatchSize;
+    private final int mMaxAttempts;
+    private final long mBaseRetryDelayMillis;
+    private final long mMaxRetryDelayMillis;
+    private final Random mRandom;
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // Guarded by this, in the order the entries were added
+    private final Map<Long, Entry> mEntries = new LinkedHashMap<>();
+    private final List<Long> mUploadingIds = new ArrayList<>();
+    private long mNextId = 1;
+    private long mDiskBytes = 0;
+    private int mIndexLines = 0;
+    private boolean mConnected;
+    private Listener mListener;
+    private ScheduledFuture<?> mScheduledProcessing;
+
+    private final Runnable mProcess = new Runnable() {
+        @Override
+        public void run() {
+            process();
+        }
+    };
+
+    private UploadQueue(Builder builder) {
+        mDirectory = builder.mDirectory;
+        mIndexFile = new File(mDirectory, INDEX_FILE);
+        mUploader = builder.mUploader;
+        mMaxDiskBytes = builder.mMaxDiskBytes;
+        mBatchSize = builder.mBatchSize;
+        mMaxAttempts = builder.mMaxAttempts;
+        mBaseRetryDelayMillis = builder.mBaseRetryDelayMillis;
+        mMaxRetryDelayMillis = builder.mMaxRetryDelayMillis;
+        mRandom = builder.mRandom;
+        mConnected = builder.mConnected;
+        mListener = builder.mListener;
+        synchronized (this) {
+            readIndex();
+        }
+        mExecutor.execute(mProcess);
+    }
+
+    public synchronized void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * <p>
+     *     Stores the JPEG and uploads it as soon as possible.
+     * </p>
+     *
+     * @return the queued entry or {@code null}, if it couldn't be stored
+     */
+    public Entry enqueue(final byte[] jpeg) {
+        return enqueue(jpeg.length, new JpegWriter() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                outputStream.write(jpeg);
+            }
+        });
+    }
+
+    /**
+     * <p>
+     *     Stores the document's JPEG and uploads it as soon as possible. The JPEG is streamed to disk, so documents
+     *     backed by a file or a buffer are not copied into a byte array.
+     * </p>
+     *
+     * @return the queued entry or {@code null}, if it couldn't be stored
+     */
+    public Entry enqueue(final Document document) {
+        return enqueue(document.getJpegSize(), new JpegWriter() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                document.writeTo(outputStream);
+            }
+        });
+    }
+
+    private Entry enqueue(long sizeBytes, JpegWriter jpegWriter) {
+        if (sizeBytes > mMaxDiskBytes) {
+            LOG.error("Document is larger than the upload queue: {} bytes", sizeBytes);
+            return null;
+        }
+        final Entry entry;
+        synchronized (this) {
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                LOG.error("Could not create the upload queue directory: {}", mDirectory);
+                return null;
+            }
+            entry = new Entry(mNextId++, System.currentTimeMillis(), sizeBytes);
+        }
+        // Writing the JPEG takes long, the uploads of other entries must not wait for it. The file is not in the index
+        // yet, so it is ignored until it was written completely.
+        final File tempFile = new File(mDirectory, entry.getId() + JPEG_SUFFIX + TEMP_SUFFIX);
+        try {
+            writeFile(tempFile, jpegWriter);
+            if (!tempFile.renameTo(getJpegFile(entry.getId()))) {
+                throw new IOException("Could not rename " + tempFile);
+            }
+        } catch (IOException e) {
+            LOG.error("Could not store the document for uploading", e);
+            deleteFile(tempFile);
+            deleteFile(getJpegFile(entry.getId()));
+            return null;
+        }
+        final List<Entry> droppedEntries = new ArrayList<>();
+        synchronized (this) {
+            try {
+                appendToIndex(ADDED, entry.getId(), entry.getCreatedAtMillis(), entry.getSizeBytes());
+            } catch (IOException e) {
+                LOG.error("Could not store the document for uploading", e);
+                deleteFile(getJpegFile(entry.getId()));
+                return null;
+            }
+            mEntries.put(entry.getId(), entry);
+            mDiskBytes += entry.getSizeBytes();
+            LOG.debug("Queued document for uploading: {}", entry);
+            dropOldestEntries(droppedEntries);
+        }
+        notifyDropped(droppedEntries, "Disk space limit reached");
+        executeIfRunning(mProcess);
+        return entry;
+    }
+
+    /**
+     * <p>
+     *     Call this method when the connectivity changed. No uploads are started while not connected. When the
+     *     connection returns, all waiting entries are retried right away.
+     * </p>
+     */
+    public void setConnected(boolean connected) {
+        synchronized (this) {
+            if (mConnected == connected) {
+                return;
+            }
+            mConnected = connected;
+            LOG.debug("Connectivity changed: {}", connected ? "connected" : "disconnected");
+            if (connected) {
+                for (Entry entry : mEntries.values()) {
+                    entry.mNextAttemptAtMillis = 0;
+                }
+            }
+        }
+        executeIfRunning(mProcess);
+    }
+
+    /**
+     * @return the entries which were not uploaded yet, in the order they were added
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(mEntries.values());
+    }
+
+    public synchronized long getDiskBytes() {
+        return mDiskBytes;
+    }
+
+    /**
+     * <p>
+     *     Stops uploading. Running uploads are not cancelled, but their results are ignored and they are retried when
+     *     the queue is created again.
+     * </p>
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Starts uploading the next batch, if the previous batch has finished. Runs on the executor.
+     */
+    private void process() {
+        final List<Entry> batch = new ArrayList<>();
+        synchronized (this) {
+            if (mScheduledProcessing != null) {
+                mScheduledProcessing.cancel(false);
+                mScheduledProcessing = null;
+            }
+            if (!mConnected || !mUploadingIds.isEmpty() || mEntries.isEmpty()) {
+                return;
+            }
+            final long now = System.currentTimeMillis();
+            long nextAttemptAtMillis = Long.MAX_VALUE;
+            for (Entry entry : mEntries.values()) {
+                if (entry.mNextAttemptAtMillis <= now) {
+                    if (batch.size() < mBatchSize) {
+                        batch.add(entry);
+                    }
+                } else {
+                    nextAttemptAtMillis = Math.min(nextAttemptAtMillis, entry.mNextAttemptAtMillis);
+                }
+            }
+            if (batch.isEmpty()) {
+                LOG.debug("Next upload attempt in {} ms", nextAttemptAtMillis - now);
+                mScheduledProcessing = mExecutor.schedule(mProcess, nextAttemptAtMillis - now,
+                        TimeUnit.MILLISECONDS);
+                return;
+            }
+            for (Entry entry : batch) {
+                mUploadingIds.add(entry.getId());
+            }
+        }
+        LOG.debug("Uploading a batch of {} documents", batch.size());
+        for (Entry entry : batch) {
+            upload(entry);
+        }
+    }
+
+    private void upload(final Entry entry) {
+        final byte[] jpeg;
+        try {
+            jpeg = readFile(getJpegFile(entry.getId()));
+        } catch (IOException e) {
+            LOG.error("Could not read the queued document: {}", entry, e);
+            onUploadFinished(entry, null, e, true);
+            return;
+        }
+        mUploader.upload(jpeg, new UploadCallback() {
+            @Override
+            public void onUploaded(final String documentId) {
+                executeIfRunning(new Runnable() {
+                    @Override
+                    public void run() {
+                        onUploadFinished(entry, documentId, null, false);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(final Exception exception) {
+                executeIfRunning(new Runnable() {
+                    @Override
+                    public void run() {
+                        onUploadFinished(entry, null, exception, false);
+                    }
+                });
+            }
+        });
+    }
+
+    private void executeIfRunning(Runnable runnable) {
+        try {
+            mExecutor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Ignoring upload result after shutdown");
+        }
+    }
+
+    private void onUploadFinished(Entry entry, String documentId, Exception exception, boolean unreadable) {
+        final Listener listener;
+        boolean uploaded = false;
+        String droppedReason = null;
+        synchronized (this) {
+            mUploadingIds.remove(entry.getId());
+            listener = mListener;
+            if (!mEntries.containsKey(entry.getId())) {
+                // Dropped to limit the disk space while it was uploading, the listener was already notified
+                LOG.debug("Upload finished for dropped document: {}", entry);
+            } else if (exception == null) {
+                LOG.debug("Uploaded queued document {} as {}", entry, documentId);
+                remove(entry);
+                uploaded = true;
+            } else if (unreadable || entry.mAttempts + 1 >= mMaxAttempts) {
+                LOG.error("Giving up uploading queued document: {}", entry, exception);
+                remove(entry);
+                droppedReason = unreadable ? "Could not read the document" : "Upload failed too often";
+            } else {
+                entry.mAttempts++;
+                entry.mNextAttemptAtMillis = System.currentTimeMillis() + getRetryDelayMillis(entry.mAttempts);
+                LOG.debug("Upload failed, retrying {} in {} ms", entry,
+                        entry.mNextAttemptAtMillis - System.currentTimeMillis(), exception);
+                try {
+                    appendToIndex(FAILED, entry.getId(), entry.mAttempts, entry.mNextAttemptAtMillis);
+                } catch (IOException e) {
+                    LOG.error("Could not record the failed upload", e);
+                }
+            }
+        }
+        if (listener != null) {
+            if (uploaded) {
+                listener.onUploaded(entry, documentId);
+            } else if (droppedReason != null) {
+                listener.onDropped(entry, droppedReason);
+            }
+        }
+        process();
+    }
+
+    /**
+     * <p>
+     *     Exponential backoff with equal jitter: half of the delay is fixed, the other half is random, so retries of
+     *     documents which failed at the same time are spread out.
+     * </p>
+     */
+    long getRetryDelayMillis(int attempts) {
+        final int exponent = Math.min(attempts - 1, 30);
+        final long delay = Math.min(mMaxRetryDelayMillis, mBaseRetryDelayMillis << exponent);
+        final long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half));
+    }
+
+    private void dropOldestEntries(List<Entry> droppedEntries) {
+        while (mDiskBytes > mMaxDiskBytes && !mEntries.isEmpty()) {
+            final Entry oldest = mEntries.values().iterator().next();
+            LOG.debug("Dropping queued document to limit the disk space: {}", oldest);
+            remove(oldest);
+            droppedEntries.add(oldest);
+        }
+    }
+
+    private void notifyDropped(List<Entry> droppedEntries, String reason) {
+        final Listener listener;
+        synchronized (this) {
+            listener = mListener;
+        }
+        if (listener == null) {
+            return;
+        }
+        for (Entry entry : droppedEntries) {
+            listener.onDropped(entry, reason);
+        }
+    }
+
+    private void remove(Entry entry) {
+        mEntries.remove(entry.getId());
+        mDiskBytes -= entry.getSizeBytes();
+        try {
+            appendToIndex(REMOVED, entry.getId());
+        } catch (IOException e) {
+            LOG.error("Could not record the removed document", e);
+        }
+        deleteFile(getJpegFile(entry.getId()));
+        compactIndexIfNeeded();
+    }
+
+    private void readIndex() {
+        if (!mIndexFile.exists()) {
+            return;
+        }
+        boolean malformed = false;
+        try {
+            final BufferedReader reader = new BufferedReader(new FileReader(mIndexFile));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    mIndexLines++;
+                    try {
+                        replayLine(line);
+                    } catch (RuntimeException e) {
+                        // For example the last line was written only partly
+                        LOG.error("Ignoring malformed upload queue index line: {}", line);
+                        malformed = true;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            LOG.error("Could not read the upload queue index", e);
+        }
+        for (Entry entry : new ArrayList<>(mEntries.values())) {
+            final File jpegFile = getJpegFile(entry.getId());
+            if (!jpegFile.exists()) {
+                LOG.error("Queued document is missing: {}", entry);
+                mEntries.remove(entry.getId());
+                continue;
+            }
+            mDiskBytes += entry.getSizeBytes();
+        }
+        deleteOrphanedFiles();
+        if (malformed) {
+            // Appending to a partly written line would corrupt the next line, too
+            compactIndex();
+        }
+        LOG.debug("Upload queue contains {} documents", mEntries.size());
+    }
+
+    private void replayLine(String line) {
+        final String[] fields = line.split(" ");
+        final long id = Long.parseLong(fields[1]);
+        mNextId = Math.max(mNextId, id + 1);
+        switch (fields[0]) {
+            case ADDED:
+                mEntries.put(id, new Entry(id, Long.parseLong(fields[2]), Long.parseLong(fields[3])));
+                break;
+            case FAILED:
+                final Entry entry = mEntries.get(id);
+                if (entry != null) {
+                    entry.mAttempts = Integer.parseInt(fields[2]);
+                    entry.mNextAttemptAtMillis = Long.parseLong(fields[3]);
+                }
+                break;
+            case REMOVED:
+                mEntries.remove(id);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown index record: " + fields[0]);
+        }
+    }
+
+    private void deleteOrphanedFiles() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.equals(INDEX_FILE)) {
+                continue;
+            }
+            if (name.endsWith(TEMP_SUFFIX)) {
+                deleteFile(file);
+                continue;
+            }
+            if (name.endsWith(JPEG_SUFFIX)) {
+                try {
+                    final long id = Long.parseLong(name.substring(0, name.length() - JPEG_SUFFIX.length()));
+                    if (!mEntries.containsKey(id)) {
+                        deleteFile(file);
+                    }
+                } catch (NumberFormatException e) {
+                    deleteFile(file);
+                }
+            }
+        }
+    }
+
+    private void appendToIndex(String record, long... values) throws IOException {
+        final StringBuilder line = new StringBuilder(record);
+        for (long value : values) {
+            line.append(' ').append(value);
+        }
+        line.append('\n');
+        final Writer writer = new FileWriter(mIndexFile, true);
+        try {
+            writer.write(line.toString());
+        } finally {
+            writer.close();
+        }
+        mIndexLines++;
+    }
+
+    private void compactIndexIfNeeded() {
+        // Once most lines belong to removed entries
+        if (mIndexLines < MIN_LINES_FOR_COMPACTION || mIndexLines < mEntries.size() * 4) {
+            return;
+        }
+        compactIndex();
+    }
+
+    /**
+     * Rewrites the index with only the current entries.
+     */
+    private void compactIndex() {
+        final File tempFile = new File(mDirectory, INDEX_FILE + TEMP_SUFFIX);
+        try {
+            final Writer writer = new FileWriter(tempFile);
+            int lines = 0;
+            try {
+                for (Entry entry : mEntries.values()) {
+                    writer.write(ADDED + " " + entry.getId() + " " + entry.getCreatedAtMillis() + " "
+                            + entry.getSizeBytes() + "\n");
+                    lines++;
+                    if (entry.mAttempts > 0) {
+                        writer.write(FAILED + " " + entry.getId() + " " + entry.mAttempts + " "
+                                + entry.mNextAttemptAtMillis + "\n");
+                        lines++;
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+            if (!tempFile.renameTo(mIndexFile)) {
+                throw new IOException("Could not rename " + tempFile);
+            }
+            LOG.debug("Compacted the upload queue index from {} to {} lines", mIndexLines, lines);
+            mIndexLines = lines;
+        } catch (IOException e) {
+            LOG.error("Could not compact the upload queue index", e);
+            deleteFile(tempFile);
+        }
+    }
+
+    private File getJpegFile(long id) {
+        return new File(mDirectory, id + JPEG_SUFFIX);
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            LOG.error("Could not delete {}", file);
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        final byte[] bytes = new byte[(int) file.length()];
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < bytes.length) {
+                final int read = inputStream.read(bytes, offset, bytes.length - offset);
+                if (read == -1) {
+                    throw new IOException("Unexpected end of file");
+                }
+                offset += read;
+            }
+        } finally {
+            inputStream.close();
+        }
+        return bytes;
+    }
+
+    private static void writeFile(File file, JpegWriter jpegWriter) throws IOException {
+        final OutputStream outputStream = new FileOutputStream(file);
+        try {
+            jpegWriter.writeTo(outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package net.gini.android.vision.screen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import net.gini.android.DocumentTaskManager;
+import net.gini.android.models.SpecificExtraction;
+import net.gini.android.vision.Document;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+import bolts.Task;
+import bolts.TaskCompletionSource;
+
+@RunWith(JUnit4.class)
+public class DocumentAnalysisQueueTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private DocumentTaskManager mDocumentTaskManager;
+    private List<TaskCompletionSource<net.gini.android.models.Document>> mUploads;
+    private DocumentAnalysisQueue.DocumentAnalysisListener mListener;
+
+    @Before
+    public void setUp() {
+        mUploads = new ArrayList<>();
+        mDocumentTaskManager = mock(DocumentTaskManager.class);
+        // Uploads finish when the test completes them, polling and retrieving the extractions right away
+        when(mDocumentTaskManager.createDocument(any(byte[].class), anyString(), anyString())).thenAnswer(
+                new Answer<Task<net.gini.android.models.Document>>() {
+                    @Override
+                    public Task<net.gini.android.models.Document> answer(InvocationOnMock invocation) {
+                        final TaskCompletionSource<net.gini.android.models.Document> upload =
+                                new TaskCompletionSource<>();
+                        mUploads.add(upload);
+                        return upload.getTask();
+                    }
+                });
+        when(mDocumentTaskManager.pollDocument(any(net.gini.android.models.Document.class))).thenAnswer(
+                new Answer<Task<net.gini.android.models.Document>>() {
+                    @Override
+                    public Task<net.gini.android.models.Document> answer(InvocationOnMock invocation) {
+                        return Task.forResult((net.gini.android.models.Document) invocation.getArguments()[0]);
+                    }
+                });
+        when(mDocumentTaskManager.getExtractions(any(net.gini.android.models.Document.class))).thenReturn(
+                Task.forResult(Collections.<String, SpecificExtraction>emptyMap()));
+        mListener = mock(DocumentAnalysisQueue.DocumentAnalysisListener.class);
+    }
+
+    @Test
+    public void should_runAtMostMaxConcurrentAnalyses() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(2, DocumentAnalysisQueue.ResultOrder.COMPLETION);
+        // When
+        queue.analyzeDocument(createDocument());
+        queue.analyzeDocument(createDocument());
+        queue.analyzeDocument(createDocument());
+        // Then
+        assertEquals(2, mUploads.size());
+        assertEquals(3, queue.getPendingCount());
+    }
+
+    @Test
+    public void should_startQueuedAnalysis_whenRunningAnalysisFinished() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(2, DocumentAnalysisQueue.ResultOrder.COMPLETION);
+        queue.analyzeDocument(createDocument());
+        queue.analyzeDocument(createDocument());
+        queue.analyzeDocument(createDocument());
+        // When
+        completeUpload(1);
+        // Then
+        assertEquals(3, mUploads.size());
+        assertEquals(2, queue.getPendingCount());
+    }
+
+    @Test
+    public void should_notUploadQueuedDocument_ifCancelled() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(1, DocumentAnalysisQueue.ResultOrder.SUBMISSION);
+        final DocumentAnalysisQueue.AnalysisRequest first = queue.analyzeDocument(createDocument());
+        final DocumentAnalysisQueue.AnalysisRequest second = queue.analyzeDocument(createDocument());
+        // When
+        second.cancel();
+        completeUpload(0);
+        // Then
+        assertEquals(1, mUploads.size());
+        assertEquals(0, queue.getPendingCount());
+        verify(mListener).onExtractionsReceived(eq(first), any(Map.class));
+        verify(mListener, never()).onExtractionsReceived(eq(second), any(Map.class));
+        verify(mListener, never()).onException(any(DocumentAnalysisQueue.AnalysisRequest.class),
+                any(Exception.class));
+    }
+
+    @Test
+    public void should_stopRunningAnalysis_andNotPublishResult_ifCancelled() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(1, DocumentAnalysisQueue.ResultOrder.SUBMISSION);
+        final DocumentAnalysisQueue.AnalysisRequest request = queue.analyzeDocument(createDocument());
+        // When
+        request.cancel();
+        completeUpload(0);
+        // Then
+        verify(mDocumentTaskManager, never()).pollDocument(any(net.gini.android.models.Document.class));
+        verifyZeroInteractions(mListener);
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void should_publishResults_inSubmissionOrder() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(2, DocumentAnalysisQueue.ResultOrder.SUBMISSION);
+        final DocumentAnalysisQueue.AnalysisRequest first = queue.analyzeDocument(createDocument());
+        final DocumentAnalysisQueue.AnalysisRequest second = queue.analyzeDocument(createDocument());
+        // When
+        completeUpload(1);
+        // Then
+        verifyZeroInteractions(mListener);
+        // When
+        completeUpload(0);
+        // Then
+        final InOrder inOrder = inOrder(mListener);
+        inOrder.verify(mListener).onExtractionsReceived(eq(first), any(Map.class));
+        inOrder.verify(mListener).onExtractionsReceived(eq(second), any(Map.class));
+    }
+
+    @Test
+    public void should_publishResults_inCompletionOrder() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(2, DocumentAnalysisQueue.ResultOrder.COMPLETION);
+        final DocumentAnalysisQueue.AnalysisRequest first = queue.analyzeDocument(createDocument());
+        final DocumentAnalysisQueue.AnalysisRequest second = queue.analyzeDocument(createDocument());
+        // When
+        completeUpload(1);
+        completeUpload(0);
+        // Then
+        final InOrder inOrder = inOrder(mListener);
+        inOrder.verify(mListener).onExtractionsReceived(eq(second), any(Map.class));
+        inOrder.verify(mListener).onExtractionsReceived(eq(first), any(Map.class));
+    }
+
+    @Test
+    public void should_publishResults_queuedAfterCancelledRequest_inSubmissionOrder() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(2, DocumentAnalysisQueue.ResultOrder.SUBMISSION);
+        final DocumentAnalysisQueue.AnalysisRequest first = queue.analyzeDocument(createDocument());
+        final DocumentAnalysisQueue.AnalysisRequest second = queue.analyzeDocument(createDocument());
+        completeUpload(1);
+        // When
+        first.cancel();
+        // Then
+        verify(mListener).onExtractionsReceived(eq(second), any(Map.class));
+        verify(mListener, never()).onExtractionsReceived(eq(first), any(Map.class));
+    }
+
+    @Test
+    public void should_reportFailedAnalysis_asException() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(1, DocumentAnalysisQueue.ResultOrder.SUBMISSION);
+        final DocumentAnalysisQueue.AnalysisRequest request = queue.analyzeDocument(createDocument());
+        final Exception exception = new Exception("Network unreachable");
+        // When
+        mUploads.get(0).setError(exception);
+        // Then
+        verify(mListener).onException(request, exception);
+        verify(mListener, never()).onExtractionsReceived(any(DocumentAnalysisQueue.AnalysisRequest.class),
+                any(Map.class));
+    }
+
+    @Test
+    public void should_reportAnalysisCancelledByTheSdk_asException() {
+        // Given
+        final DocumentAnalysisQueue queue = createQueue(1, DocumentAnalysisQueue.ResultOrder.SUBMISSION);
+        final DocumentAnalysisQueue.AnalysisRequest request = queue.analyzeDocument(createDocument());
+        // When
+        mUploads.get(0).setCancelled();
+        // Then
+        final ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(mListener).onException(eq(request), exception.capture());
+        assertTrue(exception.getValue() instanceof CancellationException);
+        verify(mListener, never()).onExtractionsReceived(any(DocumentAnalysisQueue.AnalysisRequest.class),
+                any(Map.class));
+    }
+
+    @Test
+    public void should_analyzeUploadedDocument_withoutUploadingIt() {
+        // Given
+        final net.gini.android.models.Document giniApiDocument = mock(net.gini.android.models.Document.class);
+        when(mDocumentTaskManager.getDocument("document-1")).thenReturn(Task.forResult(giniApiDocument));
+        final DocumentAnalysisQueue queue = createQueue(1, DocumentAnalysisQueue.ResultOrder.SUBMISSION);
+        // When
+        final DocumentAnalysisQueue.AnalysisRequest request = queue.analyzeUploadedDocument("document-1");
+        // Then
+        assertTrue(mUploads.isEmpty());
+        verify(mDocumentTaskManager).pollDocument(giniApiDocument);
+        verify(mListener).onExtractionsReceived(eq(request), any(Map.class));
+        assertEquals(giniApiDocument, request.getGiniApiDocument());
+    }
+
+    @Test
+    public void should_keepResults_untilListenerIsSet() {
+        // Given
+        final DocumentAnalysisQueue queue = new DocumentAnalysisQueue(mDocumentTaskManager, 1,
+                DocumentAnalysisQueue.ResultOrder.SUBMISSION, DIRECT_EXECUTOR);
+        final DocumentAnalysisQueue.AnalysisRequest request = queue.analyzeDocument(createDocument());
+        completeUpload(0);
+        // When
+        queue.setListener(mListener);
+        // Then
+        verify(mListener, times(1)).onExtractionsReceived(eq(request), any(Map.class));
+    }
+
+    private DocumentAnalysisQueue createQueue(int maxConcurrentAnalyses,
+                                              DocumentAnalysisQueue.ResultOrder resultOrder) {
+        final DocumentAnalysisQueue queue = new DocumentAnalysisQueue(mDocumentTaskManager,
+                maxConcurrentAnalyses, resultOrder, DIRECT_EXECUTOR);
+        queue.setListener(mListener);
+        return queue;
+    }
+
+    private void completeUpload(int index) {
+        mUploads.get(index).setResult(mock(net.gini.android.models.Document.class));
+    }
+
+    private static Document createDocument() {
+        final Document document = mock(Document.class);
+        when(document.getJpeg()).thenReturn(new byte[]{1, 2, 3});
+        return document;
+    }
+}
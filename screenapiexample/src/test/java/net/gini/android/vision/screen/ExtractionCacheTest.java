@@ -0,0 +1,127 @@
+package net.gini.android.vision.screen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import net.gini.android.models.Box;
+import net.gini.android.models.Extraction;
+import net.gini.android.models.SpecificExtraction;
+import net.gini.android.vision.Document;
+import net.gini.android.vision.DocumentKey;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class ExtractionCacheTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private DocumentKey mKey;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mTemporaryFolder.newFolder("extractions");
+        final Document document = mock(Document.class);
+        when(document.getJpeg()).thenReturn(new byte[]{1, 2, 3});
+        mKey = DocumentKey.of(document);
+    }
+
+    @Test
+    public void should_readExtractions_writtenByAnotherCache() {
+        // Given
+        final Map<String, SpecificExtraction> extractions = new HashMap<>();
+        extractions.put("amountToPay", new SpecificExtraction("amountToPay", "24.99:EUR", "amount",
+                new Box(1, 10.5, 20.25, 100, 12), Arrays.asList(
+                new Extraction("24.99:EUR", "amount", new Box(1, 10.5, 20.25, 100, 12)),
+                new Extraction("4.99:EUR", "amount", null))));
+        extractions.put("iban", new SpecificExtraction("iban", "DE89370400440532013000", null, null,
+                Collections.<Extraction>emptyList()));
+        new ExtractionCache(10, mDirectory, 10).put(mKey, null, extractions);
+        // When
+        final ExtractionCache.Result result = new ExtractionCache(10, mDirectory, 10).get(mKey);
+        // Then
+        assertNull(result.getGiniApiDocument());
+        final Map<String, SpecificExtraction> readExtractions = result.getExtractions();
+        assertEquals(extractions.keySet(), readExtractions.keySet());
+
+        final SpecificExtraction amount = readExtractions.get("amountToPay");
+        assertEquals("amountToPay", amount.getName());
+        assertExtraction("24.99:EUR", "amount", amount);
+        assertBox(new Box(1, 10.5, 20.25, 100, 12), amount.getBox());
+        assertEquals(2, amount.getCandidate().size());
+        assertExtraction("24.99:EUR", "amount", amount.getCandidate().get(0));
+        assertBox(new Box(1, 10.5, 20.25, 100, 12), amount.getCandidate().get(0).getBox());
+        assertExtraction("4.99:EUR", "amount", amount.getCandidate().get(1));
+        assertNull(amount.getCandidate().get(1).getBox());
+
+        final SpecificExtraction iban = readExtractions.get("iban");
+        assertExtraction("DE89370400440532013000", null, iban);
+        assertNull(iban.getBox());
+        assertEquals(0, iban.getCandidate().size());
+    }
+
+    @Test
+    public void should_ignoreAndDeleteFiles_ofOtherFormatVersions() throws IOException {
+        // Given
+        final File file = new File(mDirectory, mKey.asString() + ".extractions");
+        final DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        output.writeInt(1);
+        output.writeUTF("Parcel of a previous version");
+        output.close();
+        // When
+        final ExtractionCache.Result result = new ExtractionCache(10, mDirectory, 10).get(mKey);
+        // Then
+        assertNull(result);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void should_ignoreAndDeleteTruncatedFiles() throws IOException {
+        // Given
+        final Map<String, SpecificExtraction> extractions = Collections.singletonMap("iban",
+                new SpecificExtraction("iban", "DE89370400440532013000", "iban", null,
+                        Collections.<Extraction>emptyList()));
+        new ExtractionCache(10, mDirectory, 10).put(mKey, null, extractions);
+        final File file = new File(mDirectory, mKey.asString() + ".extractions");
+        final FileOutputStream output = new FileOutputStream(file, true);
+        output.getChannel().truncate(file.length() - 4);
+        output.close();
+        // When
+        final ExtractionCache.Result result = new ExtractionCache(10, mDirectory, 10).get(mKey);
+        // Then
+        assertNull(result);
+        assertFalse(file.exists());
+    }
+
+    private static void assertExtraction(String value, String entity, Extraction extraction) {
+        assertEquals(value, extraction.getValue());
+        assertEquals(entity, extraction.getEntity());
+    }
+
+    private static void assertBox(Box expected, Box actual) {
+        assertEquals(expected.getPageNumber(), actual.getPageNumber());
+        assertEquals(expected.getLeft(), actual.getLeft(), 0);
+        assertEquals(expected.getTop(), actual.getTop(), 0);
+        assertEquals(expected.getWidth(), actual.getWidth(), 0);
+        assertEquals(expected.getHeight(), actual.getHeight(), 0);
+    }
+}
@@ -0,0 +1,436 @@
+package net.gini.android.vision.screen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import net.gini.android.vision.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class UploadQueueTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private StubServer mServer;
+    private RecordingListener mListener;
+    private List<UploadQueue> mQueues;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mTemporaryFolder.newFolder("uploads");
+        mServer = new StubServer();
+        mListener = new RecordingListener();
+        mQueues = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        for (UploadQueue queue : mQueues) {
+            queue.shutdown();
+        }
+        mServer.shutdown();
+    }
+
+    @Test
+    public void should_uploadQueuedDocument() throws Exception {
+        // Given
+        final UploadQueue queue = createQueue(builder());
+        // When
+        queue.enqueue(jpeg(10));
+        // Then
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.getUploadedCount() == 1;
+            }
+        });
+        assertEquals(1, mServer.getReceivedCount());
+        assertTrue(queue.getEntries().isEmpty());
+        assertEquals(0, queue.getDiskBytes());
+        assertEquals(0, countJpegs());
+    }
+
+    @Test
+    public void should_uploadDocumentBackedByFile() throws Exception {
+        // Given
+        final byte[] jpeg = jpeg(30);
+        final File jpegFile = mTemporaryFolder.newFile("document.jpg");
+        final FileOutputStream outputStream = new FileOutputStream(jpegFile);
+        outputStream.write(jpeg);
+        outputStream.close();
+        final UploadQueue queue = createQueue(builder());
+        // When
+        queue.enqueue(Document.fromFile(jpegFile, 0));
+        // Then
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.getUploadedCount() == 1;
+            }
+        });
+        assertArrayEquals(jpeg, mServer.getLastReceivedJpeg());
+    }
+
+    @Test
+    public void should_keepDocuments_acrossRestarts() throws Exception {
+        // Given
+        UploadQueue queue = createQueue(builder().setConnected(false));
+        queue.enqueue(jpeg(10));
+        queue.enqueue(jpeg(20));
+        queue.shutdown();
+        // When
+        queue = createQueue(builder());
+        // Then
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.getUploadedCount() == 2;
+            }
+        });
+        assertEquals(2, mServer.getReceivedCount());
+        assertTrue(queue.getEntries().isEmpty());
+    }
+
+    @Test
+    public void should_retryFailedUploads_untilTheySucceed() throws Exception {
+        // Given
+        mServer.failNextUploads(2);
+        final UploadQueue queue = createQueue(builder().setRetryDelays(10, 40));
+        // When
+        queue.enqueue(jpeg(10));
+        // Then
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.getUploadedCount() == 1;
+            }
+        });
+        assertEquals(3, mServer.getReceivedCount());
+        assertEquals(0, mListener.getDroppedCount());
+    }
+
+    @Test
+    public void should_dropDocument_afterMaxAttempts() throws Exception {
+        // Given
+        mServer.failNextUploads(Integer.MAX_VALUE);
+        final UploadQueue queue = createQueue(builder().setRetryDelays(10, 40).setMaxAttempts(3));
+        // When
+        queue.enqueue(jpeg(10));
+        // Then
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.getDroppedCount() == 1;
+            }
+        });
+        assertEquals(3, mServer.getReceivedCount());
+        assertTrue(queue.getEntries().isEmpty());
+        assertEquals(0, countJpegs());
+    }
+
+    @Test
+    public void should_dropOldestDocuments_whenDiskSpaceIsExceeded() throws Exception {
+        // Given
+        final UploadQueue queue = createQueue(builder().setMaxDiskBytes(100).setConnected(false));
+        final UploadQueue.Entry first = queue.enqueue(jpeg(40));
+        queue.enqueue(jpeg(40));
+        // When
+        queue.enqueue(jpeg(40));
+        // Then
+        assertEquals(2, queue.getEntries().size());
+        assertEquals(80, queue.getDiskBytes());
+        assertEquals(first.getId(), mListener.getDroppedIds().get(0).longValue());
+        assertEquals(2, countJpegs());
+    }
+
+    @Test
+    public void should_notReportUpload_ofDocumentDroppedWhileUploading() throws Exception {
+        // Given
+        mServer.setLatencyMs(200);
+        final UploadQueue queue = createQueue(builder().setMaxDiskBytes(100).setBatchSize(1));
+        final UploadQueue.Entry first = queue.enqueue(jpeg(60));
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mServer.getReceivedCount() == 1;
+            }
+        });
+        // When
+        final UploadQueue.Entry second = queue.enqueue(jpeg(60));
+        // Then
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.getUploadedCount() == 1;
+            }
+        });
+        assertEquals(Collections.singletonList(first.getId()), mListener.getDroppedIds());
+        assertEquals(Collections.singletonList(second.getId()), mListener.getUploadedIds());
+    }
+
+    @Test
+    public void should_rejectDocument_largerThanTheDiskSpace() throws Exception {
+        // Given
+        final UploadQueue queue = createQueue(builder().setMaxDiskBytes(100));
+        // When
+        final UploadQueue.Entry entry = queue.enqueue(jpeg(101));
+        // Then
+        assertNull(entry);
+        assertTrue(queue.getEntries().isEmpty());
+    }
+
+    @Test
+    public void should_uploadInBatches() throws Exception {
+        // Given
+        mServer.setLatencyMs(50);
+        final UploadQueue queue = createQueue(builder().setBatchSize(2).setConnected(false));
+        for (int i = 0; i < 5; i++) {
+            queue.enqueue(jpeg(10));
+        }
+        // When
+        queue.setConnected(true);
+        // Then
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.getUploadedCount() == 5;
+            }
+        });
+        assertEquals(2, mServer.getMaxConcurrentUploads());
+    }
+
+    @Test
+    public void should_notUpload_whileDisconnected() throws Exception {
+        // Given
+        final UploadQueue queue = createQueue(builder().setConnected(false));
+        // When
+        queue.enqueue(jpeg(10));
+        Thread.sleep(100);
+        // Then
+        assertEquals(0, mServer.getReceivedCount());
+        assertEquals(1, queue.getEntries().size());
+    }
+
+    @Test
+    public void should_retryRightAway_whenConnectionReturns() throws Exception {
+        // Given
+        mServer.failNextUploads(1);
+        final UploadQueue queue = createQueue(builder().setRetryDelays(60000, 60000));
+        queue.enqueue(jpeg(10));
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mServer.getReceivedCount() == 1 && queue.getEntries().get(0).getAttempts() == 1;
+            }
+        });
+        queue.setConnected(false);
+        // When
+        queue.setConnected(true);
+        // Then
+        waitUntil(new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.getUploadedCount() == 1;
+            }
+        });
+    }
+
+    @Test
+    public void should_ignoreTornIndexLine() throws Exception {
+        // Given
+        UploadQueue queue = createQueue(builder().setConnected(false));
+        queue.enqueue(jpeg(10));
+        queue.shutdown();
+        final Writer writer = new FileWriter(new File(mDirectory, "index"), true);
+        writer.write("A 2 14");
+        writer.close();
+        // When
+        queue = createQueue(builder().setConnected(false));
+        queue.enqueue(jpeg(20));
+        queue.shutdown();
+        queue = createQueue(builder().setConnected(false));
+        // Then
+        assertEquals(2, queue.getEntries().size());
+        assertEquals(30, queue.getDiskBytes());
+    }
+
+    @Test
+    public void should_useExponentialBackoff_withJitter() {
+        // Given
+        final UploadQueue queue = createQueue(builder().setRetryDelays(1000, 8000).setConnected(false));
+        // Then
+        assertWithin(queue.getRetryDelayMillis(1), 500, 1000);
+        assertWithin(queue.getRetryDelayMillis(2), 1000, 2000);
+        assertWithin(queue.getRetryDelayMillis(3), 2000, 4000);
+        assertWithin(queue.getRetryDelayMillis(10), 4000, 8000);
+        assertWithin(queue.getRetryDelayMillis(100), 4000, 8000);
+    }
+
+    private UploadQueue.Builder builder() {
+        return new UploadQueue.Builder(mDirectory, mServer)
+                .setRandom(new Random(42));
+    }
+
+    private UploadQueue createQueue(UploadQueue.Builder builder) {
+        final UploadQueue queue = builder.setListener(mListener).build();
+        mQueues.add(queue);
+        return queue;
+    }
+
+    private int countJpegs() {
+        int count = 0;
+        for (File file : mDirectory.listFiles()) {
+            if (file.getName().endsWith(".jpg")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] jpeg(int size) {
+        final byte[] jpeg = new byte[size];
+        new Random(size).nextBytes(jpeg);
+        return jpeg;
+    }
+
+    private static void assertWithin(long value, long min, long max) {
+        assertTrue(value + " should be within " + min + " and " + max, value >= min && value <= max);
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition not met within " + TIMEOUT_MS + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * Stands in for the Gini API: answers uploads on its own threads after a latency and fails the configured number
+     * of uploads.
+     */
+    private static class StubServer implements UploadQueue.Uploader {
+
+        private final ScheduledExecutorService mExecutor = Executors.newScheduledThreadPool(4);
+        private final AtomicInteger mReceived = new AtomicInteger();
+        private final AtomicInteger mFailuresLeft = new AtomicInteger();
+        private final AtomicInteger mConcurrentUploads = new AtomicInteger();
+        private final AtomicInteger mMaxConcurrentUploads = new AtomicInteger();
+        private volatile long mLatencyMs = 0;
+        private volatile byte[] mLastReceivedJpeg;
+
+        void failNextUploads(int count) {
+            mFailuresLeft.set(count);
+        }
+
+        void setLatencyMs(long latencyMs) {
+            mLatencyMs = latencyMs;
+        }
+
+        int getReceivedCount() {
+            return mReceived.get();
+        }
+
+        byte[] getLastReceivedJpeg() {
+            return mLastReceivedJpeg;
+        }
+
+        int getMaxConcurrentUploads() {
+            return mMaxConcurrentUploads.get();
+        }
+
+        void shutdown() {
+            mExecutor.shutdownNow();
+        }
+
+        @Override
+        public void upload(byte[] jpeg, final UploadQueue.UploadCallback callback) {
+            mLastReceivedJpeg = jpeg;
+            final int id = mReceived.incrementAndGet();
+            final int concurrentUploads = mConcurrentUploads.incrementAndGet();
+            while (true) {
+                final int max = mMaxConcurrentUploads.get();
+                if (concurrentUploads <= max
+                        || mMaxConcurrentUploads.compareAndSet(max, concurrentUploads)) {
+                    break;
+                }
+            }
+            mExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mConcurrentUploads.decrementAndGet();
+                    if (mFailuresLeft.getAndDecrement() > 0) {
+                        callback.onFailed(new IOException("Network unreachable"));
+                    } else {
+                        callback.onUploaded("document-" + id);
+                    }
+                }
+            }, mLatencyMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static class RecordingListener implements UploadQueue.Listener {
+
+        private final List<Long> mUploadedIds = Collections.synchronizedList(new ArrayList<Long>());
+        private final List<Long> mDroppedIds = Collections.synchronizedList(new ArrayList<Long>());
+
+        int getUploadedCount() {
+            return mUploadedIds.size();
+        }
+
+        int getDroppedCount() {
+            return mDroppedIds.size();
+        }
+
+        List<Long> getDroppedIds() {
+            return mDroppedIds;
+        }
+
+        List<Long> getUploadedIds() {
+            return mUploadedIds;
+        }
+
+        @Override
+        public void onUploaded(UploadQueue.Entry entry, String documentId) {
+            mUploadedIds.add(entry.getId());
+        }
+
+        @Override
+        public void onDropped(UploadQueue.Entry entry, String reason) {
+            mDroppedIds.add(entry.getId());
+        }
+    }
+}